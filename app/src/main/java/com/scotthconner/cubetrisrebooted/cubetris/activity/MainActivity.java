@@ -17,6 +17,7 @@ import com.scotthconner.cubetrisrebooted.lib.gamestate.IGameState;
 import com.scotthconner.cubetrisrebooted.lib.gamestate.IGameStateManager;
 import com.scotthconner.cubetrisrebooted.lib.render.sprite.Font;
 
+import java.io.File;
 import java.util.Stack;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -24,6 +25,7 @@ import javax.microedition.khronos.opengles.GL10;
 
 public class MainActivity extends ActionBarActivity implements IGameStateManager {
     private static final String TAG = MainActivity.class.getSimpleName();
+    private static final String SNAPSHOT_FILE = "arcade.snapshot";
 
     // OpenGL Surface
     GameSurfaceView glGameSurface;
@@ -54,7 +56,7 @@ public class MainActivity extends ActionBarActivity implements IGameStateManager
 
         // create the splash game state and push it onto the state stack
         gameStates = new Stack<IGameState>();
-        gameStates.push(new ArcadeGameState(true));
+        gameStates.push(new ArcadeGameState(true, 0, new File(getFilesDir(), SNAPSHOT_FILE)));
 
         // start the game loop
         thread = new GameThread(glGameSurface, this);
@@ -71,6 +73,11 @@ public class MainActivity extends ActionBarActivity implements IGameStateManager
 
     @Override
     protected void onStop() {
+        // write down the games in progress before they are torn down
+        for (IGameState state : gameStates) {
+            state.saveSnapshot();
+        }
+
         Log.d(TAG, "Clearing GameState Stack");
         while (!gameStates.isEmpty()) {
             terminateActiveState();
@@ -0,0 +1,116 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Deals piece styles out of a shuffled bag holding one of each style, refilling the bag once it
+ * runs dry. Every style shows up exactly once per bag, which keeps droughts and floods short.
+ * Upcoming styles are kept in a preview queue so they can be shown to the player.
+ *
+ * Nothing is allocated after construction.
+ *
+ * Created by scottc on 4/6/16.
+ */
+public class CubeBagRandomizer {
+    private final RandomStream mRandom;
+    private final int[] mBag;        // the current shuffled bag
+    private int mBagIndex;           // next style to take out of the bag
+
+    private final int[] mPreview;    // ring of upcoming styles
+    private int mPreviewHead;
+
+    /**
+     * @param styleCount   the number of styles in a bag
+     * @param previewCount how many upcoming styles to keep visible
+     * @param random       the random source for shuffling
+     */
+    public CubeBagRandomizer(int styleCount, int previewCount, RandomStream random) {
+        if (styleCount < 1 || previewCount < 1) {
+            throw new IllegalArgumentException("need at least one style and one preview slot");
+        }
+
+        mRandom = random;
+        mBag = new int[styleCount];
+        for (int x = 0; x < styleCount; x++) {
+            mBag[x] = x;
+        }
+        mBagIndex = styleCount;
+
+        mPreview = new int[previewCount];
+        mPreviewHead = 0;
+        for (int x = 0; x < previewCount; x++) {
+            mPreview[x] = takeFromBag();
+        }
+    }
+
+    public int getPreviewCount() {
+        return mPreview.length;
+    }
+
+    /**
+     * @param index 0 for the style next() will return, up to getPreviewCount() - 1
+     * @return the upcoming style
+     */
+    public int peek(int index) {
+        return mPreview[(mPreviewHead + index) % mPreview.length];
+    }
+
+    /**
+     * @return the next style, advancing the preview queue
+     */
+    public int next() {
+        int style = mPreview[mPreviewHead];
+        mPreview[mPreviewHead] = takeFromBag();
+        mPreviewHead = (mPreviewHead + 1) % mPreview.length;
+        return style;
+    }
+
+    /**
+     * Writes everything needed to deal the same sequence again, random state included.
+     *
+     * @param out the buffer to write to
+     */
+    public void saveState(ByteBuffer out) {
+        out.putLong(mRandom.getState());
+        out.put((byte) mBagIndex);
+        for (int style : mBag) {
+            out.put((byte) style);
+        }
+        for (int x = 0; x < mPreview.length; x++) {
+            out.put((byte) peek(x));
+        }
+    }
+
+    /**
+     * Reads back a state written by saveState for a bag of the same shape.
+     *
+     * @param in the buffer to read from
+     */
+    public void restoreState(ByteBuffer in) {
+        mRandom.setSeed(in.getLong());
+        mBagIndex = in.get();
+        for (int x = 0; x < mBag.length; x++) {
+            mBag[x] = in.get();
+        }
+        mPreviewHead = 0;
+        for (int x = 0; x < mPreview.length; x++) {
+            mPreview[x] = in.get();
+        }
+    }
+
+    private int takeFromBag() {
+        if (mBagIndex == mBag.length) {
+            // fisher-yates over the bag, the order of the previous bag doesn't matter
+            for (int x = mBag.length - 1; x > 0; x--) {
+                int swap = mRandom.nextInt(x + 1);
+                int style = mBag[x];
+                mBag[x] = mBag[swap];
+                mBag[swap] = style;
+            }
+            mBagIndex = 0;
+        }
+        return mBag[mBagIndex++];
+    }
+}
@@ -1,18 +1,21 @@
 package com.scotthconner.cubetrisrebooted.cubetris.board;
 
-import android.graphics.Point;
 import android.opengl.Matrix;
 import android.util.Log;
 
 import com.scotthconner.cubetrisrebooted.cubetris.geometry.CubeLibrary;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStream;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+import com.scotthconner.cubetrisrebooted.lib.core.RecordRing;
+import com.scotthconner.cubetrisrebooted.lib.core.TripleBuffer;
 import com.scotthconner.cubetrisrebooted.lib.core.Vertex;
 import com.scotthconner.cubetrisrebooted.lib.object.Line;
 import com.scotthconner.cubetrisrebooted.lib.render.core.Camera;
 import com.scotthconner.cubetrisrebooted.lib.render.core.SceneObject;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Random;
 import java.util.Vector;
 
 /**
@@ -20,138 +23,123 @@ import java.util.Vector;
  *
  * CubeBoard
  *
- * Represents the state of a player's board. Controls board rules.
+ * Represents a player's board in the scene. The board rules live in a CubeBoardModel, which
+ * this keeps mirrored with renderable cubes.
  */
-public class CubeBoard extends SceneObject {
+public class CubeBoard extends SceneObject implements ICubeBoardModelListener {
     // Constants
-    private static int mSideCount            = 4;    // the number of "sides" the board has
-    private static float mBoardRotationSpeed = 0.230f; // how fast the board rotates the required degrees
-    private static float[] mFaceRotations = { 0.0f, 90.0f, 180.0f, 270.0f};
     public static int MAX_EXTRA_CUBES = 100;
-    private static Vertex[] mFaceNormals = {
-            new Vertex(0,0, 1),
-            new Vertex(1,0,0),
-            new Vertex(0,0,-1),
-            new Vertex(-1,0,0)
-    };
-
-    // listener stuff
-    private interface IListenerStrategy {
-        void fire(ICubeBoardEventListener listener, CubeBoard cb);
-    }
-    private static IListenerStrategy mBoardRotateStrategy = new IListenerStrategy() {
-        public void fire(ICubeBoardEventListener listener, CubeBoard cb) {
-            listener.onBoardRotate(cb);
-        }
-    };
-    private static IListenerStrategy mPieceCommitStrategy = new IListenerStrategy() {
-        public void fire(ICubeBoardEventListener listener, CubeBoard cb) {
-            listener.onPieceCommit(cb);
-        }
-    };
-    private static IListenerStrategy mLineCompleteStrategy = new IListenerStrategy() {
-        public void fire(ICubeBoardEventListener listener, CubeBoard cb) {
-            listener.onLineComplete(cb);
-        }
-    };
-    private static IListenerStrategy mPieceDropStrategy = new IListenerStrategy() {
-        public void fire(ICubeBoardEventListener listener, CubeBoard cb) {
-            listener.onPieceDrop(cb);
-        }
-    };
-    private static IListenerStrategy mRotateBlockStrategy = new IListenerStrategy() {
-        public void fire(ICubeBoardEventListener listener, CubeBoard cb) {
-            listener.onBoardRotateBlock(cb);
-        }
-    };
-    private static IListenerStrategy mPieceHurryStrategy = new IListenerStrategy() {
-        public void fire(ICubeBoardEventListener listener, CubeBoard cb) {
-            listener.onPieceHurry(cb);
-        }
-    };
-    private static IListenerStrategy mPieceSlideStrategy = new IListenerStrategy() {
-        public void fire(ICubeBoardEventListener listener, CubeBoard cb) {
-            listener.onPieceSlide(cb);
-        }
-    };
-    private static IListenerStrategy mPieceMoveStrategy = new IListenerStrategy() {
-        public void fire(ICubeBoardEventListener listener, CubeBoard cb) {
-            listener.onPieceMove(cb);
-        }
-    };
-    private static IListenerStrategy mPieceRotateStrategy = new IListenerStrategy() {
-        public void fire(ICubeBoardEventListener listener, CubeBoard cb) {
-            listener.onPieceRotate(cb);
-        }
-    };
+
+    // board events, queued from any thread and handed out on the game thread
+    private static final int EVENT_CAPACITY = 64;
 
     // scene reference
     CubeBoardRenderer mRenderer;
-    Vector<ICubeBoardEventListener> mListeners = null;
+
+    // listeners are swapped for a new array when one is added, so dispatch never locks
+    private volatile ICubeBoardEventListener[] mListeners;
+    private final RecordRing<CubeBoardEvent> mEvents;
+    private int mLastEventCount;               // events handed out by the last update
+    private long mLastListenerNanos;           // time the listeners took with them
+    private long mEventCount;
+    private long mListenerNanos;
+
+    // the board rules
+    private CubeBoardModel mModel;
 
     // board dimensions
+    private int mSideCount;                   // the number of faces around the board
     private int mSideWidth;                   // the number of squares wide of each side
     private int mBoardHeight;                 // the height of the board itself.
     private int mBoardWidth;                  // each side shares slots with it's two adjacent sides
+    private CubeBoardGeometry mGeometry;      // where each slot sits around the board
 
     // board state
-    private CubeInstance[][]     mBoard; // the matrix of cubes itself
-    private Vector<Point> mCommitLocations;    // the array that holds the board positions the last piece committed to
-    private boolean mWasBadMove;               // used as a way to determine if the player boned themselves
-    private HashMap<String, String> mPathLocations; // used as a way to trace through the board for bad moves
+    private CubeInstance[][]     mBoard; // [row][x] the matrix of cubes itself, mirrors the model
+    private CubeBoardRowRing     mRowRing;     // which of mBoard's rows each board y is stored in
     private Vector<CubeInstance> mExtraCubes;  // need references for the renderer to do in one call
-
-    private int mActiveFace;                   // which face is facing the player?
-    private float mBoardModelRotation;         // holds the board y axis rotation for the cubes
-    private int mLastMoveLineCompletionCount;  // rather self explainatory
+    private int[] mRewindFrom;                 // scratch for rewind, where each row came from
+    private CubeInstance[][] mRewindCubes;     // scratch for rewind, the rows by board y before it
+    private boolean[] mRewindKept;             // scratch for rewind, the rows that stay on the board
+    private RandomStream mRandom;                    // used for the trajectories of cleared cubes
 
     // active piece, controlled via PlayerBoardController
     private CubeBoardPiece mActivePiece;       // the active player's piece
 
-    // used for animations
-    private int mTargetFace;
-    private float mElapsedRotationTime;
+    // what the render thread draws, published at the end of every update
+    private final TripleBuffer<CubeBoardFrame> mFrames;
 
     // effects for the board scene
     //private Line[] mBoardLines;
     private float[] mModelMatrix;
     private boolean mInitGL;
+    private Vertex mCubePosition;              // scratch space for placing cubes
 
     /**
      *
      * Creates an instance of a CubeBoard.
      *
+     * @param sideCount   the number of faces around the board, at least
+     *                    CubeBoardModel#MIN_SIDE_COUNT
      * @param sideWidth   the width of one side of the board. both the far left and far right space
      *                    on the board will be "shared" with it's adjacent side.
      * @param boardHeight the height of the board, and each side.
+     * @param streams     the game's random streams
      */
-    public CubeBoard(CubeBoardRenderer renderer, int sideWidth, int boardHeight) {
+    public CubeBoard(CubeBoardRenderer renderer, int sideCount, int sideWidth, int boardHeight,
+                     RandomStreams streams) {
         mModelMatrix = new float[16];
+        mCubePosition = new Vertex();
         mRenderer = renderer;
-        mListeners = new Vector<>();
+        mListeners = new ICubeBoardEventListener[0];
+        CubeBoardEvent[] events = new CubeBoardEvent[EVENT_CAPACITY];
+        for (int x = 0; x < events.length; x++) {
+            events[x] = new CubeBoardEvent();
+        }
+        mEvents = new RecordRing<>(events);
         mInitGL = false;
-        mWasBadMove = false;
+        mRandom = streams.get(RandomStreams.EFFECTS);
 
         mActivePiece = null;
+        mSideCount   = sideCount;
         mSideWidth   = sideWidth;
         mBoardHeight = boardHeight;
         // the sideWidth is multiplied by the number of sides, and we subtract
         // one "shared" board space for each side
-        mBoardWidth  = getBoardWidth(mSideWidth);
+        mBoardWidth  = getBoardWidth(mSideCount, mSideWidth);
 
         // generate the memory for the size of the board.
-        mBoard = new CubeInstance[mBoardWidth][mBoardHeight];
+        mBoard = new CubeInstance[mBoardHeight][mBoardWidth];
+        mRowRing = new CubeBoardRowRing(mBoardHeight);
         mExtraCubes = new Vector<>();
-        mCommitLocations = new Vector<>();
-        mPathLocations = new HashMap<>();
-        mActiveFace = 0;
-        mBoardModelRotation = 0;
-        mElapsedRotationTime = 0;
-        mLastMoveLineCompletionCount = 0;
+        mRewindFrom = new int[mBoardHeight];
+        mRewindCubes = new CubeInstance[mBoardHeight][];
+        mRewindKept = new boolean[mBoardHeight];
+
+        // the rules model drives everything else
+        mModel = new CubeBoardModel(mSideCount, mSideWidth, mBoardHeight, CubeLibrary.CUBE_COLORS.length,
+                streams);
+        mModel.setListener(this);
+        mGeometry = new CubeBoardGeometry(mSideCount, mSideWidth);
+
+        int maxCubeCount = getMaxCubeCount(mSideCount, mSideWidth, mBoardHeight);
+        mFrames = new TripleBuffer<>(new CubeBoardFrame(maxCubeCount), new CubeBoardFrame(maxCubeCount),
+                new CubeBoardFrame(maxCubeCount));
     }
 
-    public CubeInstance[][] getCubeInstances() {
-        return mBoard;
+    public CubeBoardModel getModel() {
+        return mModel;
+    }
+
+    /**
+     * The cubes don't move when rows are cleared or inserted, so a cube's height can be stale
+     * until it is placed on its row again with CubeInstance#setPositionY.
+     *
+     * @param boardY the board y position
+     * @return the cubes on that row, indexed by true board x, null where the slot is empty
+     */
+    public CubeInstance[] getCubeRow(int boardY) {
+        return mBoard[mRowRing.get(boardY)];
     }
     public Iterator<CubeInstance> getExtraCubes() {
         return mExtraCubes.iterator();
@@ -162,33 +150,77 @@ public class CubeBoard extends SceneObject {
     }
 
     public float getBoardRotation() {
-        return mBoardModelRotation;
+        return mModel.getBoardRotation();
     }
 
     public boolean isRotating() {
-        return mActiveFace != mTargetFace;
+        return mModel.isRotating();
     }
 
-    public void addBoardListener(ICubeBoardEventListener listener) {
-        mListeners.add(listener);
+    public synchronized void addBoardListener(ICubeBoardEventListener listener) {
+        ICubeBoardEventListener[] listeners = Arrays.copyOf(mListeners, mListeners.length + 1);
+        listeners[mListeners.length] = listener;
+        mListeners = listeners;
+    }
+
+    /**
+     * @return the events handed to the listeners by the last update
+     */
+    public int getLastEventCount() {
+        return mLastEventCount;
+    }
+
+    /**
+     * @return the nanoseconds the listeners spent on the last update's events
+     */
+    public long getLastListenerNanos() {
+        return mLastListenerNanos;
+    }
+
+    /**
+     * @return the events handed to the listeners since the board was made
+     */
+    public long getEventCount() {
+        return mEventCount;
+    }
+
+    /**
+     * @return the nanoseconds the listeners have spent on events since the board was made
+     */
+    public long getListenerNanos() {
+        return mListenerNanos;
+    }
+
+    /**
+     * @return the events lost because more came in between two updates than the board can hold
+     */
+    public long getDroppedEventCount() {
+        return mEvents.getDroppedCount();
     }
 
     private void initGL() {
-        float mult = (mSideWidth) / 2.0f;
-        addChild(new Line(new Vertex(-mult,-0.5f, mult), new Vertex( mult,-0.5f, mult), android.graphics.Color.WHITE));
-        addChild(new Line(new Vertex( mult,-0.5f, mult), new Vertex( mult,-0.5f,-mult), android.graphics.Color.WHITE));
-        addChild(new Line(new Vertex( mult,-0.5f,-mult), new Vertex(-mult,-0.5f,-mult), android.graphics.Color.WHITE));
-        addChild(new Line(new Vertex(-mult,-0.5f,-mult), new Vertex(-mult,-0.5f, mult), android.graphics.Color.WHITE));
+        // the renderer is shared between boards, make sure this one fits
+        mRenderer.ensureCapacity(getMaxCubeCount(mSideCount, mSideWidth, mBoardHeight));
+
+        // outline the base, half a cube out from the corner slots
+        float scale = (mSideWidth / 2.0f) / ((mSideWidth - 1) / 2.0f);
+        for (int face = 0; face < mSideCount; face++) {
+            int next = (face + 1) % mSideCount;
+            addChild(new Line(
+                    new Vertex(mGeometry.getCornerX(face) * scale, -0.5f, mGeometry.getCornerZ(face) * scale),
+                    new Vertex(mGeometry.getCornerX(next) * scale, -0.5f, mGeometry.getCornerZ(next) * scale),
+                    android.graphics.Color.WHITE));
+        }
         mInitGL = true;
     }
 
     /**
-     * This value is calculated in onPieceCommit, and can only be determined as "valid" in the case
-     * where we are calling this method within the onPieceCommit listening strategy.
+     * This value is calculated as a piece commits, and is only valid until the next piece does.
+     * Listeners should ask the PIECE_COMMIT event, which kept it.
      * @return
      */
     public boolean wasBadMove() {
-        return mWasBadMove;
+        return mModel.wasBadMove();
     }
 
     /**
@@ -197,43 +229,7 @@ public class CubeBoard extends SceneObject {
      * @param direction -1 for left, 1 for right.
      */
     public void rotate(int direction) {
-        // if we are already spinning, do nothing. or if the active piece is dropping
-        if (isRotating() ||
-                (mActivePiece != null && mActivePiece.isDropping())) {
-            return;
-        }
-
-        // ensure that each board piece block won't hit anything
-        // on its way to the new location.
-        if (null != mActivePiece) {
-            Point[] pieceBlocks = mActivePiece.getPieceFacePositions();
-            for(Point p : pieceBlocks) {
-                // test each block against a side's length of blocks in the direction
-                for(int diff = 0; diff < (mSideWidth); diff++) {
-                    // the trueX location of the piece, plus the scanning differential
-                    int trux = (mActiveFace * mSideWidth - mActiveFace + p.x) + (direction * diff);
-                    if (trux < 0) { trux = mBoardWidth + trux; }
-                    trux = trux % mBoardWidth;
-
-                    if (p.y < mBoardHeight && null != mBoard[trux][p.y] ||
-                            p.y == 0 ||
-                            (p.y < mBoardHeight && null != mBoard[trux][p.y - 1])) {
-                        fireBoardEvent(mRotateBlockStrategy);
-                        return; // party is over folks, no rotation will happen.
-                    }
-                }
-            }
-        }
-
-        // set the target face
-        if (mActiveFace == 0 && direction == -1) {
-            mTargetFace = mSideCount - 1;
-        } else {
-            mTargetFace = (mActiveFace + direction) % mSideCount;
-        }
-
-        // fire the event since we did do it
-        fireBoardEvent(mBoardRotateStrategy);
+        mModel.rotate(direction);
     }
 
     /**
@@ -241,12 +237,7 @@ public class CubeBoard extends SceneObject {
      * @param direction -1 for counter clockwise, 1 for clockwise
      */
     public void rotatePiece(int direction) {
-        // only allow a piece to rotate if we are not currently rotating
-        if(null != mActivePiece && (mActiveFace == mTargetFace)) {
-            if (mActivePiece.rotate(direction)) {
-                fireBoardEvent(mPieceRotateStrategy);
-            }
-        }
+        mModel.rotatePiece(direction);
     }
 
     /**
@@ -256,70 +247,52 @@ public class CubeBoard extends SceneObject {
      * @return a vertex in 3D space where that block would be
      */
     public Vertex calculateCubePosition(int boardX, int boardY) {
-        int cubeX;
-        int cubeZ;
-        int face  = boardX / (mSideWidth-1);
-        int sideMod = boardX % (mSideWidth-1);
-
-        // determine the position offset from center of mass of board
-        // for the new cube based on what face it is on
-        if (face == 0 || face == 2 ) {
-            int multiplyDirection = -(face - 1); // either 1, or -1
-            cubeX = (multiplyDirection) * -(mSideWidth/2) + ((multiplyDirection) * sideMod);
-            cubeZ = multiplyDirection * (mSideWidth/2);
-        } else { // face has to be 1 or 3
-            int multiplyDirection = -(2 - face); // either -1 or 1
-            cubeX = (multiplyDirection) * -(mSideWidth / 2);
-            cubeZ = -(mSideWidth / 2) * (multiplyDirection) + (sideMod * multiplyDirection);
-        }
-
-        return new Vertex(cubeX, boardY, cubeZ);
+        return calculateCubePosition(boardX, boardY, new Vertex());
     }
 
     /**
-     * Add a cube to a slot in the board, by specifying its board position
-     * and the cube colors.
-     *
-     * @param x the x board position of the cube to commit
-     * @param y the y board position
-     * @param cubeReference the cube reference you want to use for this slot, color essentially
+     * @param boardX the logical board x coordinate
+     * @param boardY the logical board y coordinate
+     * @param out    the vertex to write the position into
+     * @return out, holding the position in 3D space where that block would be
      */
-    private void commitCube(int x, int y, float[] cubeReference) {
-        Vertex v = calculateCubePosition(x, y);
-        mBoard[x][y] = new CubeInstance(cubeReference);
-        mBoard[x][y].setPosition(v.x, v.y, v.z);
-        addChild(mBoard[x][y].withParent(this));
+    public Vertex calculateCubePosition(int boardX, int boardY, Vertex out) {
+        return mGeometry.getSlotPosition(boardX, boardY, out);
+    }
+
+    public CubeBoardGeometry getGeometry() {
+        return mGeometry;
     }
 
     /**
-     * Commites a given cube to the board space. Takes ownership
-     * of the renderable cube. Assumes the cube has already been added to the scene.
+     * Places a cube into a slot in the board, taking ownership of it.
      *
-     * @param facex the final board space x offset
-     * @param facey the final board space y offset
+     * @param x the true board x position of the cube
+     * @param y the board y position
      * @param c the cube instance the board will assume responsiblity for
      */
-    public void commit(int facex, int facey, CubeInstance c) {
-        int trueX = trueX(facex);
-        Vertex v = calculateCubePosition(trueX, facey);
-
-        Log.d("CubeBoard", "commit (" + trueX + ", " + facey + ")");
-        mBoard[trueX][facey] = c;
-        mBoard[trueX][facey].setPosition(v.x, v.y, v.z);
+    private void placeCube(int x, int y, CubeInstance c) {
+        Vertex v = calculateCubePosition(x, y, mCubePosition);
+        mBoard[mRowRing.get(y)][x] = c;
+        c.setPosition(v.x, v.y, v.z);
         addChild(c.withParent(this));
-        mCommitLocations.add(new Point(trueX, facey));
     }
 
     @Override
     public boolean update(long msDelta) {
-        // update all of its children, which will include the active piece,
-        // and any extra cubes that are falling off, or particle system, and
-        // even the cube board elements themselves.
+        // update all of its children, which will include any extra cubes that are falling off,
+        // or particle system, and even the cube board elements themselves.
         updateChildren(msDelta);
 
+        // run the board rules. this is where pieces fall, commit, and lines clear
+        mModel.update(msDelta);
+
         // update the active piece, as it is not a child of the board, but captive/hostage
         if(null != mActivePiece) { mActivePiece.update(msDelta); }
 
+        // let everyone know what happened since the last update
+        dispatchEvents();
+
         // remove all the dead cubes from the render reference if they've died from child updates
         Iterator<CubeInstance> i = mExtraCubes.iterator();
         while(i.hasNext()) {
@@ -331,32 +304,48 @@ public class CubeBoard extends SceneObject {
             }
         }
 
-        // update the rotation of the board if we our target active face
-        // is not our active face
-        if (mTargetFace != mActiveFace) {
-            mElapsedRotationTime += msDelta / 1000.0f;
-            float angleDifference = mFaceRotations[mTargetFace] - mFaceRotations[mActiveFace];
-            if (angleDifference > 90.0f) {
-                angleDifference = -90.0f;
-            } else if (angleDifference < -90.0f ) {
-                angleDifference = 90.0f;
+        publishFrame();
+        return true;
+    }
+
+    /**
+     * Copies the cubes, the board's rotation and the lights out for the render thread.
+     */
+    private void publishFrame() {
+        CubeBoardFrame frame = mFrames.getWriteSlot();
+        frame.begin(getBoardRotation());
+
+        // the board doesn't move cubes when rows come and go, so settle each one onto its row
+        for (int y = 0; y < mBoardHeight; y++) {
+            CubeInstance[] row = mBoard[mRowRing.get(y)];
+            for (int x = 0; x < mBoardWidth; x++) {
+                if (null != row[x]) {
+                    row[x].setPositionY(y);
+                    frame.addBoardCube(row[x]);
+                }
             }
-            mBoardModelRotation = mFaceRotations[mActiveFace] +
-                    (mElapsedRotationTime / mBoardRotationSpeed) * angleDifference;
-
-            // if we've completed the rotation, clamp to the target face
-            if (mElapsedRotationTime > mBoardRotationSpeed) {
-                mActiveFace = mTargetFace;
-                mBoardModelRotation = mFaceRotations[mActiveFace];
-                mElapsedRotationTime = 0;
+        }
+
+        for (CubeInstance c : mExtraCubes) {
+            frame.addFallingCube(c);
+        }
+
+        // once committed, the active piece's cubes belong to the board
+        if (null != mActivePiece && !mActivePiece.isCommitted()) {
+            for (int x = 0; x < mActivePiece.getCubeCount(); x++) {
+                frame.addActiveCube(mActivePiece.getCube(x));
             }
         }
 
-        return true;
+        if (null != getScene()) {
+            frame.setLights(getScene());
+        }
+        mFrames.publish();
     }
 
     @Override
     public void cleanup() {
+        mModel.setListener(null);
         mBoard = null;
         super.cleanup();
     }
@@ -365,21 +354,17 @@ public class CubeBoard extends SceneObject {
     public void render(Camera camera) {
         if (!mInitGL) { initGL(); }
 
-        if(mActivePiece.isCommitted()) {
-            loadNextActivePiece();
-        }
-
+        // everything about the board comes from the last frame update published
+        CubeBoardFrame frame = mFrames.acquire();
         Matrix.setIdentityM(mModelMatrix, 0);
-        Matrix.rotateM(mModelMatrix, 0, -getBoardRotation(), 0, 1.0f, 0);
+        Matrix.rotateM(mModelMatrix, 0, -frame.getRotation(), 0, 1.0f, 0);
         camera.pushModelState(mModelMatrix);
 
         // render the line grid
-        mRenderer.renderLineGrid(camera, this);
+        mRenderer.renderLineGrid(camera);
 
         // render the board, we've already rotated it!
-        synchronized(mBoard) {
-            mRenderer.render(camera, this);
-        }
+        mRenderer.render(camera, frame);
 
         // hack: when we come back, the renderer has popped our rotation off the stack
         // to render the active piece by using the shader's configuration. i think im
@@ -391,26 +376,158 @@ public class CubeBoard extends SceneObject {
 
         camera.popModelState();
 
-        // the very lat thing to render is the active piece!
-        if (null != mActivePiece) { mActivePiece.render(camera); }
+        // the very last thing to render is whatever rides along on the active piece
+        CubeBoardPiece activePiece = mActivePiece;
+        if (null != activePiece) { activePiece.render(camera); }
     }
 
     public void testFill() {
-        Random r = new Random();
-
         // fill the board with random cubes for testing
-        for (int x = 0; x < mBoardWidth; x++) {
-            int randomHeight = r.nextInt(3);
+        mModel.testFill();
+    }
+
+    // starts the game based on the current board state
+    public void start() {
+        mModel.start();
+    }
+
+    /**
+     * Writes the board's game, see CubeBoardModel#saveState.
+     *
+     * @param out the buffer to write to, with at least getModel().getMaxStateSize() remaining
+     */
+    public void saveState(ByteBuffer out) {
+        mModel.saveState(out);
+    }
+
+    /**
+     * Replaces the board's game with one written by saveState, and puts a fresh cube in every
+     * filled slot. Cubes that were on their way off the board are dropped.
+     *
+     * @param in the buffer to read from
+     */
+    public void restoreState(ByteBuffer in) {
+        removeCubes();
+
+        // the model hands back a new active piece as it restores
+        mModel.restoreState(in);
+        placeCubes();
+    }
+
+    /**
+     * Rewinds the board's game, see CubeBoardModel#rewind. Only the rows the model put back
+     * get fresh cubes; the rest keep theirs and are moved to wherever their row is now. Cubes
+     * that were on their way off the board are dropped.
+     *
+     * @param pieces how many pieces back to go, 0 to start the active piece over
+     * @return false if the history doesn't go back that far
+     */
+    public boolean rewind(int pieces) {
+        if (!mModel.rewind(pieces, mRewindFrom)) {
+            return false;
+        }
+        for (CubeInstance c : mExtraCubes) {
+            removeChild(c.withParent(null));
+        }
+        mExtraCubes.clear();
+
+        // the rows as they sat before, and which of them are still on the board somewhere
+        for (int y = 0; y < mBoardHeight; y++) {
+            mRewindCubes[y] = mBoard[mRowRing.get(y)];
+            mRewindKept[y] = false;
+        }
+        for (int y = 0; y < mBoardHeight; y++) {
+            if (mRewindFrom[y] >= 0) {
+                mRewindKept[mRewindFrom[y]] = true;
+            }
+        }
 
-            for (int y = 0; y < randomHeight; y++) {
-                commitCube(x, y, CubeLibrary.getInstance().getRandomCubeBuffer());
+        // the rows that were put back empty out and are handed to the new rows in turn
+        int free = 0;
+        for (int y = 0; y < mBoardHeight; y++) {
+            if (mRewindKept[y]) {
+                continue;
+            }
+            CubeInstance[] row = mRewindCubes[y];
+            for (int x = 0; x < mBoardWidth; x++) {
+                if (null != row[x]) {
+                    removeChild(row[x].withParent(null));
+                    row[x] = null;
+                }
+            }
+            while (mRewindFrom[free] >= 0) {
+                free++;
             }
+            mBoard[free++] = row;
         }
+
+        // every other row moves to where it is now, then the board is stored by board y again
+        for (int y = 0; y < mBoardHeight; y++) {
+            int from = mRewindFrom[y];
+            if (from < 0) {
+                continue;
+            }
+            CubeInstance[] row = mRewindCubes[from];
+            mBoard[y] = row;
+            if (from != y) {
+                for (int x = 0; x < mBoardWidth; x++) {
+                    if (null != row[x]) {
+                        row[x].setPositionY(y);
+                    }
+                }
+            }
+        }
+        mRowRing.reset();
+
+        for (int y = 0; y < mBoardHeight; y++) {
+            if (mRewindFrom[y] >= 0) {
+                continue;
+            }
+            for (int x = 0; x < mBoardWidth; x++) {
+                int color = mModel.getCell(x, y);
+                if (CubeBoardModel.EMPTY != color) {
+                    placeCube(x, y, new CubeInstance(CubeLibrary.getInstance().getCubeBuffer(color)));
+                }
+            }
+        }
+        for (int y = 0; y < mBoardHeight; y++) {
+            mRewindCubes[y] = null;
+        }
+        return true;
     }
 
-    // starts the game based on the current board state
-    public void start() {
-        loadNextActivePiece();
+    /**
+     * Takes every cube off the board, along with any on their way off it.
+     */
+    private void removeCubes() {
+        for (int y = 0; y < mBoardHeight; y++) {
+            CubeInstance[] row = mBoard[y];
+            for (int x = 0; x < mBoardWidth; x++) {
+                if (null != row[x]) {
+                    removeChild(row[x].withParent(null));
+                    row[x] = null;
+                }
+            }
+        }
+        for (CubeInstance c : mExtraCubes) {
+            removeChild(c.withParent(null));
+        }
+        mExtraCubes.clear();
+        mRowRing.reset();
+    }
+
+    /**
+     * Puts a cube in every slot the model has filled.
+     */
+    private void placeCubes() {
+        for (int y = 0; y < mBoardHeight; y++) {
+            for (int x = 0; x < mBoardWidth; x++) {
+                int color = mModel.getCell(x, y);
+                if (CubeBoardModel.EMPTY != color) {
+                    placeCube(x, y, new CubeInstance(CubeLibrary.getInstance().getCubeBuffer(color)));
+                }
+            }
+        }
     }
 
     /**
@@ -421,16 +538,11 @@ public class CubeBoard extends SceneObject {
      * @return true if successful, false if it couldn't for some reason
      */
     public boolean movePiece(int xDiff, int yDiff) {
-        if (null == mActivePiece) {
-            return false;
-        }
-
-        if (mActivePiece.movePiece(xDiff, yDiff, true)) {
-            fireBoardEvent(mPieceMoveStrategy);
-            return true;
-        }
+        return mModel.movePiece(xDiff, yDiff);
+    }
 
-        return false;
+    public int getSideCount() {
+        return mSideCount;
     }
 
     public int getSideWidth() {
@@ -450,218 +562,263 @@ public class CubeBoard extends SceneObject {
      * @return true if the face space is occupied, or false otherwise
      */
     public boolean isFaceSpaceOccupied(int faceX, int faceY) {
-        // ignore anything out the top, for now
-        if (faceY >= mBoardHeight) {
-            return false;
-        }
-
-        // if we hit the floor, I'd say thats occupied.
-        if (faceY < 0) {
-            return true;
-        }
-
-        // its this position technically off the side of the face?
-        if (faceX < 0 || faceX > (mSideWidth-1)) {
-            return true;
-        }
-
-        // the maths happen
-        return (null != mBoard[(mActiveFace * mSideWidth - mActiveFace + faceX) % mBoardWidth][faceY]);
+        return mModel.isFaceSpaceOccupied(faceX, faceY);
     }
 
-    public Iterator<CubeInstance> getDropCollisionCubeInstances() {
-        return mActivePiece.getDropCollisionCubeInstances();
+    /**
+     * @param out receives the active piece's cubes that will hit something when it lands
+     * @return the number of cubes written
+     */
+    public int getDropCollisionCubeInstances(CubeInstance[] out) {
+        return mActivePiece.getDropCollisionCubeInstances(out);
     }
 
     /**
      * Will make the active piece move at twice its normal speed.
      */
     public void modulePieceSpeed(int speedFactor) {
-        if (null != mActivePiece) {
-            mActivePiece.modulateSpeed(speedFactor);
-            fireBoardEvent(mPieceHurryStrategy);
-        }
+        mModel.modulePieceSpeed(speedFactor);
     }
 
     /**
-     * Used by the CubeBoardPiece to communicate a successful slide
-     * to the board listeners.
+     * @return the number of empty spaces on the board that are sealed off from the top
      */
-    public void onPieceSlide() {
-        fireBoardEvent(mPieceSlideStrategy);
-    }
-
-    public void onPieceCommit() {
-        mWasBadMove = false;
-        // go through each commit location, and see if the space below it can reach its
-        // way to the top. we are looking for "traps"
-        for(Point p : mCommitLocations) {
-            if (!hasSafeLanding(p.x, p.y - 1)) {
-                mWasBadMove = true;
-                break;
-            }
-        }
+    public int getHoleCount() {
+        return mModel.getHoleCount();
+    }
 
-        fireBoardEvent(mPieceCommitStrategy);
-        mLastMoveLineCompletionCount = 0;
-        mCommitLocations.clear();
+    /**
+     * @return the column heights and other measures of the top of the stack
+     */
+    public CubeBoardSurface getSurface() {
+        return mModel.getSurface();
     }
 
     /**
-     * Will attempt to soak up all empty spaces and mark them as good if they can get to the top.
-     *
-     * @param boardX the x board position
-     * @param boardY the y board position
-     * @return true if this position is considered a safe landing, defined as either being immediately
-     *         occupied, or doesn't exist within a "cavern" in the board which means line completions
-     *         are blocked.
+     * @return the face y the active piece would land on if it fell straight down, or -1 if
+     * there is no active piece
      */
-    private boolean hasSafeLanding(int boardX, int boardY) {
-        // if we are on the bottom of the board, or its occupied that's cool
-        if (boardY < 0 || null != mBoard[boardX][boardY]) {
-            return true;
-        }
+    public int getLandingY() {
+        return mModel.getLandingY();
+    }
+
+    public void dropActivePiece() {
+        mModel.dropActivePiece();
+    }
 
-        // we know its not occupied, so lets see if we can reach the top
-        mPathLocations.clear();
-        return canFindTop(mPathLocations, boardX, boardY);
+    public void calculateActivePieceAverageModelPosition(Vertex v) {
+        if (mActivePiece != null) {
+            mActivePiece.calculateAverageModelPosition(v);
+        }
     }
 
-    private boolean canFindTop(HashMap<String,String> paths, int x, int y) {
-        String hashKey = "(" + x + "," + y + ")";
-        boolean foundTop = false;
+    /**
+     * Queues an event for the next update to hand out.
+     *
+     * @param type one of the CubeBoardEvent types
+     * @return the queued position, to fill in further and publish, or -1 if the queue is full
+     */
+    private long queueBoardEvent(int type) {
+        long position = mEvents.claim();
+        if (position >= 0) {
+            mEvents.get(position).reset(type);
+        } else {
+            Log.w("CubeBoard", "event queue full, dropping event " + type);
+        }
+        return position;
+    }
 
-        // do some simple bounds checking
-        if (x < 0 || x >= mBoardWidth || y < 0) {
-            return false;
+    private void fireBoardEvent(int type) {
+        long position = queueBoardEvent(type);
+        if (position >= 0) {
+            mEvents.publish(position);
         }
-        // if we have reached the top slot, then we have found the top!
-        if (y >= (mBoardHeight - 1)) {
-            return true;
+    }
+
+    /**
+     * Hands every queued event to every listener, oldest first.
+     */
+    private void dispatchEvents() {
+        CubeBoardEvent event = mEvents.peek();
+        if (null == event) {
+            mLastEventCount = 0;
+            mLastListenerNanos = 0;
+            return;
         }
 
-        // if the space is empty, add it to the hash and search its surroundings.
-        // if the space is already in the hash, ignore it.
-        if (null == mBoard[x][y] && !paths.containsKey(hashKey)) {
-            paths.put(hashKey, hashKey);
-            foundTop = foundTop || canFindTop(paths, x - 1, y) || canFindTop(paths, x + 1, y) ||
-                canFindTop(paths, x, y - 1) || canFindTop(paths, x, y + 1);
+        ICubeBoardEventListener[] listeners = mListeners;
+        int count = 0;
+        long before = System.nanoTime();
+        while (null != event) {
+            for (ICubeBoardEventListener l : listeners) {
+                event.dispatch(l, this);
+            }
+            mEvents.release();
+            count++;
+            event = mEvents.peek();
         }
 
-        return foundTop;
+        mLastEventCount = count;
+        mLastListenerNanos = System.nanoTime() - before;
+        mEventCount += count;
+        mListenerNanos += mLastListenerNanos;
     }
 
-    public void dropActivePiece() {
-        if (null != mActivePiece && !mActivePiece.isDropping()) {
-            mActivePiece.drop();
-            fireBoardEvent(mPieceDropStrategy);
-        }
+    public static int getBoardWidth(int sideCount, int sideWidth) {
+        return CubeBoardModel.getBoardWidth(sideCount, sideWidth);
     }
 
-    public void calculateActivePieceAverageModelPosition(Vertex v) {
-        if (mActivePiece != null) {
-            mActivePiece.calculateAverageModelPosition(v);
-        }
+    /**
+     * @return the most cubes a board of this size can hand the renderer at once
+     */
+    public static int getMaxCubeCount(int sideCount, int sideWidth, int boardHeight) {
+        return getBoardWidth(sideCount, sideWidth) * boardHeight  // the size of the board
+                + MAX_EXTRA_CUBES                                 // cubes for line completion
+                + CubeBoardPieceModel.MAX_CELLS;                  // the active piece
+    }
+
+    public int getLastMoveLineCompletionCount() {
+        return mModel.getLastMoveLineCompletionCount();
     }
 
     /**
-     * Used by BoardPieces when they are done committing themselves to the board. Runs all of
-     * the logic used to complete the line, including star rating heuristics, and removing cubes
-     * from the board.
+     * Unlinks the rows the model just cleared, they are already empty. The cubes above drop
+     * down the next time the renderer places them on their rows.
      */
-    public void testLineCompletion() {
-        Random r = new Random();
-        boolean didRowComplete = false;
-        synchronized(mBoard) {
-            // go through each row, and see if any of them are null or not. we start at the top to
-            // simplify the implications of a row completion, as everything above it has already
-            // been checked.
-            for (int y = mBoardHeight - 1; y >= 0; y--) {
-                boolean rowCompleted = true;
-
-                // stop when we find an empty slot
-                for (int x = 0; x < mBoardWidth; x++) {
-                    if (null == mBoard[x][y]) {
-                        rowCompleted = false;
-                        break;
-                    }
-                }
+    private void unlinkClearedRows() {
+        // top down, so the rows still to go keep their board y
+        for (int i = mModel.getLastMoveLineCompletionCount() - 1; i >= 0; i--) {
+            mRowRing.remove(mModel.getClearedRow(i));
+        }
+    }
 
-                // if the row is completed, then remove the cube references from the board,
-                // add them directly to the scene with a trajectory, and move everything above
-                // that slot down one row.
-                if (rowCompleted) {
-                    mLastMoveLineCompletionCount += 1;
-                    didRowComplete = true;
-                    for (int x = 0; x < mBoardWidth; x++) {
-                        if (mExtraCubes.size() < MAX_EXTRA_CUBES) {
-                            CubeInstance c = mBoard[x][y];
-
-                            // the reference will be removed from the board when everything
-                            // moves down, but eject this one off the board and keep a reference
-                            // so they are rendered outside of the rotation matrix
-                            int face = x / (mSideWidth - 1);
-                            c.flash(325);
-                            c.setTrajectory(mFaceNormals[face].x * 10 + r.nextFloat() * 4.0f,
-                                    mFaceNormals[face].y * 10 + r.nextFloat() * 4.0f,
-                                    mFaceNormals[face].z * 10 + r.nextFloat() * 4.0f,
-                                    0, -9.8f, 0);
-                            c.setRotation(mFaceNormals[face].z + r.nextFloat(),
-                                    mFaceNormals[face].y + r.nextFloat(),
-                                    mFaceNormals[face].x + r.nextFloat(),
-                                    (float)Math.PI * r.nextFloat());
-                            mExtraCubes.add(c);
-                        } else {
-                            // if we do not have enough, remove the child.
-                            removeChild(mBoard[x][y].withParent(null));
-                        }
-
-                        // move everything above this slot down one reference, and pull in
-                        // a null reference for the top.
-                        for (int moveY = y; moveY < mBoardHeight; moveY++) {
-                            if (moveY + 1 >= mBoardHeight) {
-                                mBoard[x][moveY] = null;
-                            } else {
-                                mBoard[x][moveY] = mBoard[x][moveY + 1];
-                                if (null != mBoard[x][moveY]) {
-                                    Vertex p = calculateCubePosition(x, moveY);
-                                    mBoard[x][moveY].setPosition(p.x, p.y, p.z);
-                                }
-                            }
-                        }
-                    }
-                }
+    // ICUBEBOARDMODELLISTENER ///////////////////////////////////////////////
+    @Override
+    public void onPieceSpawn(CubeBoardModel model) {
+        // generate the player's piece
+        CubeBoardPieceModel piece = model.getActivePiece();
+        mActivePiece = new CubeBoardPiece(this, piece,
+                CubeLibrary.getInstance().getCubeBuffer(piece.getColor()));
+    }
+
+    @Override
+    public void onPieceCellCommit(CubeBoardModel model, int cell, int boardX, int boardY) {
+        Log.d("CubeBoard", "commit (" + boardX + ", " + boardY + ")");
+
+        // the board now owns the cube, so commit it
+        CubeInstance c = mActivePiece.releaseCube(cell);
+        placeCube(boardX, boardY, c);
+
+        // animate the piece as we commit it with a flash.
+        c.flash(600);
+    }
+
+    @Override
+    public void onCellFill(CubeBoardModel model, int boardX, int boardY, int color) {
+        placeCube(boardX, boardY, new CubeInstance(CubeLibrary.getInstance().getCubeBuffer(color)));
+    }
+
+    @Override
+    public void onRowClear(CubeBoardModel model, int y) {
+        // remove the cube references from the board and add them directly to the scene with
+        // a trajectory. everything above is moved down once all the rows are cleared.
+        CubeInstance[] row = mBoard[mRowRing.get(y)];
+        for (int x = 0; x < mBoardWidth; x++) {
+            if (mExtraCubes.size() < MAX_EXTRA_CUBES) {
+                CubeInstance c = row[x];
+
+                // the reference will be removed from the board when everything
+                // moves down, but eject this one off the board and keep a reference
+                // so they are rendered outside of the rotation matrix
+                Vertex normal = mGeometry.getFaceNormal(x / (mSideWidth - 1));
+                c.flash(325);
+                c.setTrajectory(normal.x * 10 + mRandom.nextFloat() * 4.0f,
+                        normal.y * 10 + mRandom.nextFloat() * 4.0f,
+                        normal.z * 10 + mRandom.nextFloat() * 4.0f,
+                        0, -9.8f, 0);
+                c.setRotation(normal.z + mRandom.nextFloat(),
+                        normal.y + mRandom.nextFloat(),
+                        normal.x + mRandom.nextFloat(),
+                        (float)Math.PI * mRandom.nextFloat());
+                mExtraCubes.add(c);
+            } else {
+                // if we do not have enough, remove the child.
+                removeChild(row[x].withParent(null));
             }
+            row[x] = null;
         }
+    }
 
-        if (didRowComplete) {
-            fireBoardEvent(mLineCompleteStrategy);
+    @Override
+    public void onRowInsert(CubeBoardModel model) {
+        // whatever is on the top row is pushed off the board, and the row comes around to
+        // the bottom for the model to fill
+        CubeInstance[] row = mBoard[mRowRing.get(mBoardHeight - 1)];
+        for (int x = 0; x < mBoardWidth; x++) {
+            if (null != row[x]) {
+                removeChild(row[x].withParent(null));
+                row[x] = null;
+            }
         }
+        mRowRing.insertBottom();
     }
 
-    private void loadNextActivePiece() {
-        // generate the player's piece
-        mActivePiece = new CubeBoardPiece(this,
-                CubeBoardPiece.STYLES[(new Random()).nextInt(CubeBoardPiece.STYLES.length)],
-                CubeLibrary.getInstance().getRandomCubeBuffer());
+    @Override
+    public void onBoardRotate(CubeBoardModel model) {
+        fireBoardEvent(CubeBoardEvent.BOARD_ROTATE);
     }
 
-    private void fireBoardEvent(IListenerStrategy strategy) {
-        for(ICubeBoardEventListener l : mListeners) {
-            strategy.fire(l, this);
-        }
+    @Override
+    public void onBoardRotateBlock(CubeBoardModel model) {
+        fireBoardEvent(CubeBoardEvent.BOARD_ROTATE_BLOCK);
     }
 
-    public static int getBoardWidth(int sideWidth) {
-        return (sideWidth * mSideCount) - mSideCount;
+    @Override
+    public void onPieceDrop(CubeBoardModel model) {
+        fireBoardEvent(CubeBoardEvent.PIECE_DROP);
     }
 
-    public int getLastMoveLineCompletionCount() {
-        return mLastMoveLineCompletionCount;
+    @Override
+    public void onPieceSlide(CubeBoardModel model) {
+        fireBoardEvent(CubeBoardEvent.PIECE_SLIDE);
+    }
+
+    @Override
+    public void onPieceHurry(CubeBoardModel model) {
+        fireBoardEvent(CubeBoardEvent.PIECE_HURRY);
     }
 
-    private int trueX(int faceX) {
-        return (mActiveFace * mSideWidth - mActiveFace + faceX) % (mBoardWidth);
+    @Override
+    public void onPieceMove(CubeBoardModel model) {
+        fireBoardEvent(CubeBoardEvent.PIECE_MOVE);
+    }
+
+    @Override
+    public void onPieceRotate(CubeBoardModel model) {
+        fireBoardEvent(CubeBoardEvent.PIECE_ROTATE);
     }
 
+    @Override
+    public void onPieceCommit(CubeBoardModel model) {
+        // the model forgets all of this once the next piece comes along, so keep it with the event
+        long position = queueBoardEvent(CubeBoardEvent.PIECE_COMMIT);
+        if (position >= 0) {
+            CubeBoardEvent event = mEvents.get(position);
+            event.setBadMove(model.wasBadMove());
+            event.setLineCompletionCount(model.getLastMoveLineCompletionCount());
+            mActivePiece.calculateAverageModelFacePosition(event.getPiecePosition());
+            mEvents.publish(position);
+        }
+    }
+
+    @Override
+    public void onLineComplete(CubeBoardModel model) {
+        unlinkClearedRows();
+        long position = queueBoardEvent(CubeBoardEvent.LINE_COMPLETE);
+        if (position >= 0) {
+            mEvents.get(position).setLineCompletionCount(model.getLastMoveLineCompletionCount());
+            mEvents.publish(position);
+        }
+    }
+    // END ICUBEBOARDMODELLISTENER ///////////////////////////////////////////
 }
@@ -0,0 +1,255 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+/**
+ * CubeBoardCavityMap
+ *
+ * Tracks which empty board slots can still reach the top of the board, as a packed bitmask
+ * per row layered on top of a CubeBoardOccupancy. Empty slots that can't reach the top are
+ * "caverns", which block line completions and make for a bad move.
+ *
+ * The mask is only rebuilt when the occupancy has changed since the last query, and the
+ * rebuild is a word-parallel fill (a whole row of slots per operation) instead of a per-slot
+ * search, so it is non-recursive and never allocates. Rows above the highest covered empty
+ * slot see the top straight up, so the fill only runs below that. If slots have only been
+ * filled since the last query, nothing new can become reachable, so the fill also only runs
+ * from the highest changed row down, and only through slots that were reachable before.
+ * Anything that empties or moves slots, like a row clear, rebuilds every row.
+ *
+ * The rules match the original recursive search in CubeBoard: the board does not wrap for
+ * the purposes of the search, and reaching the top row counts as escaping regardless of
+ * whether the top row slot is filled.
+ *
+ * Created by scottc on 4/3/16.
+ */
+public class CubeBoardCavityMap {
+    private final CubeBoardOccupancy mOccupancy;
+    private final int mBoardWidth;
+    private final int mBoardHeight;
+    private final int mWords;        // words per row for the real board columns
+    private final long[] mFullRow;   // mask of the real board columns
+    private final long[] mReach;     // empty slots that can reach the top, row major
+    private final long[] mEmpty;     // scratch copy of the empty slots, row major
+    private final long[] mCovered;   // scratch mask of the columns filled somewhere above a row
+
+    private int mModificationCount;  // the occupancy modification count the mask was built from
+    private int mEmptyingCount;      // the occupancy emptying count the mask was built from
+    private int mHoleCount;
+
+    public CubeBoardCavityMap(CubeBoardOccupancy occupancy) {
+        mOccupancy = occupancy;
+        mBoardWidth = occupancy.getBoardWidth();
+        mBoardHeight = occupancy.getBoardHeight();
+        mWords = (mBoardWidth + 63) >>> 6;
+        mReach = new long[mWords * mBoardHeight];
+        mEmpty = new long[mWords * mBoardHeight];
+        mCovered = new long[mWords];
+
+        mFullRow = new long[mWords];
+        for (int x = 0; x < mBoardWidth; x++) {
+            mFullRow[x >>> 6] |= 1L << x;
+        }
+
+        // force a full build on first query
+        mModificationCount = occupancy.getModificationCount() - 1;
+        mEmptyingCount = occupancy.getEmptyingCount() - 1;
+    }
+
+    /**
+     * @param boardX the true board x position
+     * @param boardY the board y position
+     * @return true if this position is considered a safe landing, defined as either being
+     *         immediately occupied, or not existing within a "cavern" in the board which means
+     *         line completions are blocked.
+     */
+    public boolean hasSafeLanding(int boardX, int boardY) {
+        // the floor, the top row and above, or an occupied slot are all fine
+        if (boardY < 0 || boardY >= mBoardHeight - 1 || mOccupancy.isOccupied(boardX, boardY)) {
+            return true;
+        }
+
+        refresh();
+        return ((mReach[boardY * mWords + (boardX >>> 6)] >>> boardX) & 1L) != 0;
+    }
+
+    /**
+     * @return the number of empty slots on the board that can't reach the top
+     */
+    public int getHoleCount() {
+        refresh();
+        return mHoleCount;
+    }
+
+    /**
+     * Rebuilds the reach mask if the occupancy has changed.
+     */
+    private void refresh() {
+        int modificationCount = mOccupancy.getModificationCount();
+        if (modificationCount == mModificationCount) {
+            return;
+        }
+
+        // the top row is always an escape, so the search runs on the rows below it
+        int top = mBoardHeight - 2;
+        if (top < 0) {
+            mModificationCount = modificationCount;
+            mHoleCount = 0;
+            return;
+        }
+
+        boolean fillsOnly = mOccupancy.getEmptyingCount() == mEmptyingCount;
+        int changedTop = fillsOnly ? findChangedTop(top) : top;
+        mModificationCount = modificationCount;
+        mEmptyingCount = mOccupancy.getEmptyingCount();
+
+        // every row above the band can see the top straight up. when only filling, those rows
+        // didn't change and were already right
+        int bandTop = findCoveredTop(top);
+        if (fillsOnly) {
+            if (changedTop < 0) {
+                return;
+            }
+            bandTop = Math.max(bandTop, changedTop);
+        } else {
+            for (int y = bandTop + 1; y <= top; y++) {
+                for (int w = 0; w < mWords; w++) {
+                    mReach[y * mWords + w] = ~mOccupancy.getRowWord(y, w) & mFullRow[w];
+                }
+            }
+        }
+
+        // filling slots can only cut off what was reachable, so the fill runs through the
+        // slots that were reachable before and nothing else
+        for (int y = 0; y <= bandTop; y++) {
+            for (int w = 0; w < mWords; w++) {
+                long empty = ~mOccupancy.getRowWord(y, w) & mFullRow[w];
+                mEmpty[y * mWords + w] = fillsOnly ? empty & mReach[y * mWords + w] : empty;
+                mReach[y * mWords + w] = 0;
+            }
+        }
+
+        // seed the band from the row above it, or with the empty slots directly under the top row
+        if (bandTop == top) {
+            for (int w = 0; w < mWords; w++) {
+                mReach[top * mWords + w] = mEmpty[top * mWords + w];
+            }
+        } else if (bandTop >= 0) {
+            spread(bandTop, bandTop + 1);
+        }
+
+        // sweep down then up until nothing else can be reached. each sweep pulls
+        // reachability in from the neighbouring row and then fills it along the row.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int y = bandTop - 1; y >= 0; y--) {
+                changed |= spread(y, y + 1);
+            }
+            for (int y = 1; y <= bandTop; y++) {
+                changed |= spread(y, y - 1);
+            }
+        }
+
+        // whatever is empty but unreachable is a hole
+        int holes = 0;
+        for (int y = 0; y <= top; y++) {
+            for (int w = 0; w < mWords; w++) {
+                holes += Long.bitCount(~mOccupancy.getRowWord(y, w) & mFullRow[w] & ~mReach[y * mWords + w]);
+            }
+        }
+        mHoleCount = holes;
+    }
+
+    /**
+     * @return the highest row at or below top that had a slot filled since the mask was built,
+     *         or -1 if there isn't one
+     */
+    private int findChangedTop(int top) {
+        for (int y = top; y >= 0; y--) {
+            if (mOccupancy.getRowSetCount(y) - mModificationCount > 0) {
+                return y;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the highest row at or below top with an empty slot that has a filled slot above
+     *         it, or -1 if there isn't one
+     */
+    private int findCoveredTop(int top) {
+        for (int w = 0; w < mWords; w++) {
+            mCovered[w] = 0;
+        }
+
+        for (int y = top; y >= 0; y--) {
+            for (int w = 0; w < mWords; w++) {
+                long filled = mOccupancy.getRowWord(y, w);
+                if ((~filled & mFullRow[w] & mCovered[w]) != 0) {
+                    return y;
+                }
+                mCovered[w] |= filled;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Pulls reachable slots from a neighbouring row into a row, and fills them along the row.
+     *
+     * @param y    the row to update
+     * @param from the neighbouring row
+     * @return true if the row gained any reachable slots
+     */
+    private boolean spread(int y, int from) {
+        int row = y * mWords;
+        boolean grew = false;
+        for (int w = 0; w < mWords; w++) {
+            long seeded = mReach[row + w] | (mReach[from * mWords + w] & mEmpty[row + w]);
+            if (seeded != mReach[row + w]) {
+                mReach[row + w] = seeded;
+                grew = true;
+            }
+        }
+
+        if (grew) {
+            fillRow(row);
+        }
+        return grew;
+    }
+
+    /**
+     * Spreads the reachable slots of a row left and right through the empty slots of the row.
+     *
+     * @param row the index of the first word of the row
+     */
+    private void fillRow(int row) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int w = 0; w < mWords; w++) {
+                long empty = mEmpty[row + w];
+                long seeds = mReach[row + w];
+
+                // pull in the neighbouring words' edge slots
+                if (w > 0) {
+                    seeds |= (mReach[row + w - 1] >>> 63) & empty;
+                }
+                if (w < mWords - 1) {
+                    seeds |= (mReach[row + w + 1] << 63) & empty;
+                }
+
+                // adding the seeds into a run of empty bits carries up to the top of the run,
+                // the bit reversed version carries down to the bottom of the run.
+                long up = ((seeds + empty) ^ empty) & empty;
+                long down = Long.reverse(((Long.reverse(seeds) + Long.reverse(empty)) ^
+                        Long.reverse(empty))) & empty;
+                long filled = seeds | up | down;
+
+                if (filled != mReach[row + w]) {
+                    mReach[row + w] = filled;
+                    changed = true;
+                }
+            }
+        }
+    }
+}
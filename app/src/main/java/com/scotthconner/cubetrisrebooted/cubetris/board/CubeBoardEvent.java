@@ -0,0 +1,105 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.Vertex;
+
+/**
+ * CubeBoardEvent
+ *
+ * One thing that happened to a board, waiting to be handed to its listeners. The board queues
+ * these as they happen, on whichever thread made them happen, and hands them out together on
+ * the game thread. By then the board has moved on, so anything a listener wants to know about
+ * the moment is copied in here when the event is queued. Events are pooled by the board and
+ * reused, don't hold on to one past the listener call.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class CubeBoardEvent {
+    public static final int BOARD_ROTATE = 0;
+    public static final int BOARD_ROTATE_BLOCK = 1;
+    public static final int PIECE_DROP = 2;
+    public static final int PIECE_SLIDE = 3;
+    public static final int PIECE_HURRY = 4;
+    public static final int PIECE_MOVE = 5;
+    public static final int PIECE_ROTATE = 6;
+    public static final int PIECE_COMMIT = 7;
+    public static final int LINE_COMPLETE = 8;
+
+    private int mType;
+    private int mLineCompletionCount;
+    private boolean mBadMove;
+    private final Vertex mPiecePosition;
+
+    CubeBoardEvent() {
+        mPiecePosition = new Vertex();
+    }
+
+    /**
+     * Starts the event over as a new one.
+     */
+    void reset(int type) {
+        mType = type;
+        mLineCompletionCount = 0;
+        mBadMove = false;
+        mPiecePosition.set(0, 0, 0);
+    }
+
+    void setLineCompletionCount(int count) {
+        mLineCompletionCount = count;
+    }
+
+    void setBadMove(boolean badMove) {
+        mBadMove = badMove;
+    }
+
+    Vertex getPiecePosition() {
+        return mPiecePosition;
+    }
+
+    /**
+     * @return one of the type constants
+     */
+    public int getType() {
+        return mType;
+    }
+
+    /**
+     * @return the lines the piece completed, for PIECE_COMMIT and LINE_COMPLETE
+     */
+    public int getLineCompletionCount() {
+        return mLineCompletionCount;
+    }
+
+    /**
+     * @return true if the committed piece sealed off a hole, for PIECE_COMMIT
+     */
+    public boolean wasBadMove() {
+        return mBadMove;
+    }
+
+    /**
+     * @param out receives the committed piece's average face position in model space, for
+     *            PIECE_COMMIT
+     * @return out
+     */
+    public Vertex getPiecePosition(Vertex out) {
+        out.set(mPiecePosition.x, mPiecePosition.y, mPiecePosition.z);
+        return out;
+    }
+
+    /**
+     * Calls the listener method for this type of event.
+     */
+    void dispatch(ICubeBoardEventListener listener, CubeBoard cubeBoard) {
+        switch (mType) {
+            case BOARD_ROTATE: listener.onBoardRotate(cubeBoard, this); break;
+            case BOARD_ROTATE_BLOCK: listener.onBoardRotateBlock(cubeBoard, this); break;
+            case PIECE_DROP: listener.onPieceDrop(cubeBoard, this); break;
+            case PIECE_SLIDE: listener.onPieceSlide(cubeBoard, this); break;
+            case PIECE_HURRY: listener.onPieceHurry(cubeBoard, this); break;
+            case PIECE_MOVE: listener.onPieceMove(cubeBoard, this); break;
+            case PIECE_ROTATE: listener.onPieceRotate(cubeBoard, this); break;
+            case PIECE_COMMIT: listener.onPieceCommit(cubeBoard, this); break;
+            case LINE_COMPLETE: listener.onLineComplete(cubeBoard, this); break;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.render.core.Light;
+import com.scotthconner.cubetrisrebooted.lib.render.core.Scene;
+
+/**
+ * CubeBoardFrame
+ *
+ * Everything the CubeBoardRenderer needs to draw a board at one moment, copied out by the
+ * update thread so the render thread never touches the live cubes. Cubes are kept as a
+ * transform and a color each, board cubes first, then the ones falling off, then the active
+ * piece. Frames are reused through a TripleBuffer, so nothing here is allocated per frame.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class CubeBoardFrame {
+    // lights, in the order the renderer hands them to the shader
+    public static final int LIGHT_SUN = 0;
+    public static final int LIGHT_ACTIVE = 1;
+    public static final int LIGHT_PREVIOUS = 2;
+    static final int LIGHT_COUNT = 3;
+    static final int LIGHT_FLOATS = 5;   // x, y, z, attenuation, dimmer
+
+    private final float[] mTransforms;
+    private final float[][] mColors;
+    private int mBoardCubeCount;
+    private int mFallingCubeCount;
+    private int mActiveCubeCount;
+    private float mRotation;
+
+    private final float[] mLights;
+    private float mAmbientFactor;
+
+    /**
+     * @param maxCubeCount the most cubes the frame has to hold, see CubeBoard#getMaxCubeCount
+     */
+    public CubeBoardFrame(int maxCubeCount) {
+        mTransforms = new float[maxCubeCount * CubeInstance.TRANSFORM_FLOATS];
+        mColors = new float[maxCubeCount][];
+        mLights = new float[LIGHT_COUNT * LIGHT_FLOATS];
+    }
+
+    /**
+     * Empties the frame before it is filled back in.
+     *
+     * @param rotation the board's rotation in degrees
+     */
+    void begin(float rotation) {
+        mRotation = rotation;
+        mBoardCubeCount = 0;
+        mFallingCubeCount = 0;
+        mActiveCubeCount = 0;
+    }
+
+    void addBoardCube(CubeInstance cube) {
+        addCube(cube, mBoardCubeCount++);
+    }
+
+    void addFallingCube(CubeInstance cube) {
+        addCube(cube, mBoardCubeCount + mFallingCubeCount++);
+    }
+
+    void addActiveCube(CubeInstance cube) {
+        addCube(cube, mBoardCubeCount + mFallingCubeCount + mActiveCubeCount++);
+    }
+
+    /**
+     * Copies the lights the board shader uses out of the scene.
+     */
+    void setLights(Scene scene) {
+        setLight(LIGHT_SUN, scene.getSceneSun());
+        setLight(LIGHT_ACTIVE, scene.getLight("active1"));
+        setLight(LIGHT_PREVIOUS, scene.getLight("active2"));
+        mAmbientFactor = scene.getAmbientFactor();
+    }
+
+    public float getRotation() {
+        return mRotation;
+    }
+
+    public int getBoardCubeCount() {
+        return mBoardCubeCount;
+    }
+
+    public int getFallingCubeCount() {
+        return mFallingCubeCount;
+    }
+
+    public int getActiveCubeCount() {
+        return mActiveCubeCount;
+    }
+
+    /**
+     * @param cube a cube from 0 to the total of the three counts
+     * @return the cube's shared color buffer
+     */
+    public float[] getColor(int cube) {
+        return mColors[cube];
+    }
+
+    /**
+     * @return every cube's transform, TRANSFORM_FLOATS to a cube, see CubeInstance#expand
+     */
+    public float[] getTransforms() {
+        return mTransforms;
+    }
+
+    /**
+     * @param light    one of the LIGHT constants
+     * @param property 0 to 2 for the position, 3 for attenuation and 4 for the dimmer
+     */
+    public float getLight(int light, int property) {
+        return mLights[light * LIGHT_FLOATS + property];
+    }
+
+    public float getAmbientFactor() {
+        return mAmbientFactor;
+    }
+
+    private void addCube(CubeInstance cube, int index) {
+        cube.writeTransform(mTransforms, index * CubeInstance.TRANSFORM_FLOATS);
+        mColors[index] = cube.getReferenceBuffer();
+    }
+
+    private void setLight(int index, Light light) {
+        int offset = index * LIGHT_FLOATS;
+        if (null == light) {
+            // a missing light is left dark
+            mLights[offset + 4] = 0;
+            return;
+        }
+        mLights[offset] = light.position.x;
+        mLights[offset + 1] = light.position.y;
+        mLights[offset + 2] = light.position.z;
+        mLights[offset + 3] = light.attenuation;
+        mLights[offset + 4] = light.dimmer;
+    }
+}
@@ -0,0 +1,100 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.Vertex;
+
+/**
+ * CubeBoardGeometry
+ *
+ * Where a board's slots sit in model space. The faces lie on a regular polygon with an edge for
+ * each, one unit per slot along the edge, and the corner slots are shared by the two faces that
+ * meet there. Face f looks out along the board's rotation for that face, so it faces the player
+ * once the board has turned to it.
+ *
+ * Created by scottc on 4/16/16.
+ */
+public class CubeBoardGeometry {
+    private final int mSideCount;
+    private final int mSideWidth;
+    private final float mApothem;     // the distance from the center to the middle of each face
+    private final Vertex[] mNormals;  // [face] the way each face looks out
+    private final float[] mCornerX;   // [face] where each face starts, its left corner
+    private final float[] mCornerZ;
+
+    /**
+     * @param sideCount the number of faces around the board
+     * @param sideWidth the number of slots along each face, corners included
+     */
+    public CubeBoardGeometry(int sideCount, int sideWidth) {
+        mSideCount = sideCount;
+        mSideWidth = sideWidth;
+
+        float edge = sideWidth - 1;
+        double halfTurn = Math.PI / sideCount;
+        float radius = (float) (edge / (2.0 * Math.sin(halfTurn)));
+        mApothem = (float) (edge / (2.0 * Math.tan(halfTurn)));
+
+        mNormals = new Vertex[sideCount];
+        mCornerX = new float[sideCount];
+        mCornerZ = new float[sideCount];
+        for (int face = 0; face < sideCount; face++) {
+            double normal = Math.toRadians(CubeBoardModel.getFaceRotation(sideCount, face));
+            mNormals[face] = new Vertex((float) Math.sin(normal), 0, (float) Math.cos(normal));
+            mCornerX[face] = (float) (radius * Math.sin(normal - halfTurn));
+            mCornerZ[face] = (float) (radius * Math.cos(normal - halfTurn));
+        }
+    }
+
+    public int getSideCount() {
+        return mSideCount;
+    }
+
+    /**
+     * @return the distance from the center of the board to the middle of each face
+     */
+    public float getApothem() {
+        return mApothem;
+    }
+
+    /**
+     * @param face a face
+     * @return the unit vector the face looks out along, shared, so don't change it
+     */
+    public Vertex getFaceNormal(int face) {
+        return mNormals[face];
+    }
+
+    /**
+     * @param face a face
+     * @return the x position of the face's left corner slot
+     */
+    public float getCornerX(int face) {
+        return mCornerX[face];
+    }
+
+    /**
+     * @param face a face
+     * @return the z position of the face's left corner slot
+     */
+    public float getCornerZ(int face) {
+        return mCornerZ[face];
+    }
+
+    /**
+     * @param boardX the logical board x coordinate
+     * @param boardY the logical board y coordinate
+     * @param out    the vertex to write the position into
+     * @return out, holding the position in model space of the slot
+     */
+    public Vertex getSlotPosition(int boardX, int boardY, Vertex out) {
+        int face = boardX / (mSideWidth - 1);
+        int sideMod = boardX % (mSideWidth - 1);
+
+        // walk along the face's edge from its left corner, a unit per slot
+        int next = (face + 1) % mSideCount;
+        float along = sideMod / (float) (mSideWidth - 1);
+        out.set(mCornerX[face] + (mCornerX[next] - mCornerX[face]) * along,
+                boardY,
+                mCornerZ[face] + (mCornerZ[next] - mCornerZ[face]) * along);
+        return out;
+    }
+}
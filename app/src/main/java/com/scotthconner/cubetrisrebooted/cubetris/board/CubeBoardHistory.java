@@ -0,0 +1,185 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import java.util.ArrayDeque;
+
+/**
+ * CubeBoardHistory
+ *
+ * Snapshots of a board model's rows that can be rolled back to, sharing everything they can.
+ * Taking a snapshot copies nothing: every row array on the board simply becomes shared with
+ * it. The first time the board writes to a shared row after that, the row is copied and the
+ * snapshot keeps the original, so a snapshot only ever holds the rows that changed before the
+ * next one was taken, and rolling back only puts those rows back.
+ *
+ * The row ring is kept the same way, copied into a snapshot the first time it changes.
+ * Everything else about the game is small, and is handed in and out as bytes.
+ *
+ * Created by scottc on 4/15/16.
+ */
+class CubeBoardHistory {
+    private static final int INITIAL_ROWS = 4;
+
+    private static class Snapshot {
+        final byte[] state;        // the model's game state when the snapshot was taken
+        int[] ring;                // the row ring before it first changed, null if it hasn't
+        int rowCount;              // rows changed since, with what they held before
+        int[] rows = new int[INITIAL_ROWS];
+        byte[][] arrays = new byte[INITIAL_ROWS][];
+        int[] fills = new int[INITIAL_ROWS];
+
+        Snapshot(byte[] state) {
+            this.state = state;
+        }
+    }
+
+    // the model's storage, whose row arrays are swapped out from under it
+    private final byte[][] mRows;
+    private final int[] mRowFill;
+    private final CubeBoardRowRing mRowRing;
+
+    // a row is shared with the newest snapshot unless it was copied in the current generation
+    private final int[] mRowGeneration;
+    private int mRingGeneration;
+    private int mGeneration;
+
+    private final ArrayDeque<Snapshot> mSnapshots;
+    private final int mLimit;
+
+    /**
+     * @param rows    the model's rows, by physical row
+     * @param rowFill the model's fill count for each physical row
+     * @param ring    the model's row ring
+     * @param limit   the most snapshots to keep, the oldest are forgotten
+     */
+    CubeBoardHistory(byte[][] rows, int[] rowFill, CubeBoardRowRing ring, int limit) {
+        mRows = rows;
+        mRowFill = rowFill;
+        mRowRing = ring;
+        mRowGeneration = new int[rows.length];
+        mRingGeneration = 0;
+        mGeneration = 0;
+        mSnapshots = new ArrayDeque<Snapshot>(limit);
+        mLimit = limit;
+    }
+
+    int size() {
+        return mSnapshots.size();
+    }
+
+    /**
+     * @return the row arrays held by snapshots, on top of the board's own
+     */
+    int getRetainedRowCount() {
+        int count = 0;
+        for (Snapshot snapshot : mSnapshots) {
+            count += snapshot.rowCount;
+        }
+        return count;
+    }
+
+    /**
+     * Takes a snapshot of the board as it is now.
+     *
+     * @param state the rest of the game, to hand back on rollback
+     */
+    void take(byte[] state) {
+        if (mSnapshots.size() == mLimit) {
+            mSnapshots.pollFirst();
+        }
+        mSnapshots.addLast(new Snapshot(state));
+        mGeneration++;
+    }
+
+    /**
+     * Forgets every snapshot.
+     */
+    void clear() {
+        mSnapshots.clear();
+    }
+
+    /**
+     * Must be called before writing to a physical row. Copies the row if a snapshot shares it.
+     *
+     * @param row the physical row about to change
+     */
+    void claimRow(int row) {
+        if (mRowGeneration[row] == mGeneration || mSnapshots.isEmpty()) {
+            return;
+        }
+        mRowGeneration[row] = mGeneration;
+
+        Snapshot snapshot = mSnapshots.peekLast();
+        if (snapshot.rowCount == snapshot.rows.length) {
+            int size = snapshot.rowCount * 2;
+            int[] rows = new int[size];
+            byte[][] arrays = new byte[size][];
+            int[] fills = new int[size];
+            System.arraycopy(snapshot.rows, 0, rows, 0, snapshot.rowCount);
+            System.arraycopy(snapshot.arrays, 0, arrays, 0, snapshot.rowCount);
+            System.arraycopy(snapshot.fills, 0, fills, 0, snapshot.rowCount);
+            snapshot.rows = rows;
+            snapshot.arrays = arrays;
+            snapshot.fills = fills;
+        }
+        snapshot.rows[snapshot.rowCount] = row;
+        snapshot.arrays[snapshot.rowCount] = mRows[row];
+        snapshot.fills[snapshot.rowCount] = mRowFill[row];
+        snapshot.rowCount++;
+        mRows[row] = mRows[row].clone();
+    }
+
+    /**
+     * Must be called before changing the row ring.
+     */
+    void claimRing() {
+        if (mRingGeneration == mGeneration || mSnapshots.isEmpty()) {
+            return;
+        }
+        mRingGeneration = mGeneration;
+
+        Snapshot snapshot = mSnapshots.peekLast();
+        snapshot.ring = new int[mRowRing.getBoardHeight() + 1];
+        mRowRing.copyTo(snapshot.ring);
+    }
+
+    /**
+     * Puts the board's rows and row ring back the way they were when a snapshot was taken,
+     * forgetting every snapshot after it. The snapshot itself is kept, so it can be rolled
+     * back to again.
+     *
+     * @param count    how many snapshots back to go, 0 for the newest
+     * @param restored set for every physical row that was put back, left alone for the rest
+     * @return the game state handed to the snapshot, or null if there aren't enough snapshots
+     */
+    byte[] rollBack(int count, boolean[] restored) {
+        if (count < 0 || count >= mSnapshots.size()) {
+            return null;
+        }
+
+        // undo the newest first, so the oldest copy of each row is the one left on the board
+        Snapshot snapshot = mSnapshots.peekLast();
+        for (int i = 0; ; i++) {
+            for (int j = 0; j < snapshot.rowCount; j++) {
+                mRows[snapshot.rows[j]] = snapshot.arrays[j];
+                mRowFill[snapshot.rows[j]] = snapshot.fills[j];
+                restored[snapshot.rows[j]] = true;
+                snapshot.arrays[j] = null;
+            }
+            snapshot.rowCount = 0;
+            if (null != snapshot.ring) {
+                mRowRing.copyFrom(snapshot.ring);
+                snapshot.ring = null;
+            }
+
+            if (i == count) {
+                break;
+            }
+            mSnapshots.pollLast();
+            snapshot = mSnapshots.peekLast();
+        }
+
+        // the board now matches the snapshot again, so everything on it is shared
+        mGeneration++;
+        return snapshot.state;
+    }
+}
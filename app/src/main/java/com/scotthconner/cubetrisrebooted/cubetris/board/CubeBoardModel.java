@@ -0,0 +1,1003 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStream;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+import com.scotthconner.cubetrisrebooted.lib.core.VarInt;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * CubeBoardModel
+ *
+ * The rules of a player's board, with no rendering or android dependencies: which slots are
+ * filled and with what color, the active piece, face rotation, line completion and bad move
+ * detection. CubeBoard wraps a model and mirrors it with renderable cubes, and anything that
+ * wants to play the game without a GL context (tests, bots, benchmarks) can drive one directly.
+ *
+ * A model belongs to the thread that updates it, which is also the one input is handed to, so
+ * nothing in it locks. The renderer reads the frames CubeBoard publishes, the bot's solver
+ * plays on a copy restored from saveState, and a snapshot saved off the game thread is taken
+ * under the same lock as the update.
+ *
+ * Created by scottc on 4/5/16.
+ */
+public class CubeBoardModel {
+    // Constants
+    public static final int DEFAULT_SIDE_COUNT = 4;      // the number of "sides" a board has unless asked
+    public static final int MIN_SIDE_COUNT     = 3;
+    public static final int EMPTY              = -1;     // color code of an empty slot
+    public static final int PREVIEW_COUNT      = 3;      // upcoming pieces the player can see
+    private static final int ROTATION_SPEED    = 230;    // milliseconds to rotate the board one face
+    public static final byte STATE_VERSION     = 4;      // bumped whenever the saved state's layout changes
+
+    // board dimensions
+    private final int mSideCount;              // the number of faces around the board
+    private final int mSideWidth;              // the number of squares wide of each side
+    private final int mBoardHeight;            // the height of the board itself.
+    private final int mBoardWidth;             // each side shares slots with it's two adjacent sides
+    private final int mColorCount;             // the number of colors a piece can be
+    private final long mSeed;                  // the seed of the game's random streams
+
+    // board state
+    private final byte[][] mRows;              // [row][x] color code + 1 for each slot, 0 when empty
+    private final int[] mRowFill;              // filled slots on each row
+    private final CubeBoardRowRing mRowRing;   // which of mRows each board y is stored in
+    private final CubeBoardOccupancy mOccupancy;
+    private final CubeBoardCavityMap mCavities;
+    private final CubeBoardSurface mSurface;
+    private final CubeBoardZobrist mZobrist;
+    private final int[] mCommitX;              // the board positions the last piece committed to
+    private final int[] mCommitY;
+    private int mCommitCount;
+    private final int[] mClearedRows;          // rows the last piece completed, bottom up
+    private boolean mWasBadMove;               // used as a way to determine if the player boned themselves
+    private int mLastMoveLineCompletionCount;  // rather self explainatory
+    private boolean mGameOver;                 // a piece committed above the top of the board
+
+    // face rotation
+    private int mActiveFace;                   // which face is facing the player?
+    private int mTargetFace;
+    private int mElapsedRotationTime;          // milliseconds into the rotation
+    private float mBoardRotation;              // the board's y axis rotation in degrees
+
+    // the active piece, one piece object is reset for every spawn
+    private final CubeBoardPieceModel mPiece;
+    private CubeBoardPieceModel mActivePiece;  // mPiece once the game has started
+    private final CubeBagRandomizer mPieceBag;
+    private final RandomStream mColorRandom;
+    private int mPieceCount;                   // pieces spawned so far, the active one included
+    private int mFallSpeed;                    // milliseconds per row for the pieces that spawn
+
+    // snapshots to rewind to, one for each piece spawned
+    private CubeBoardHistory mHistory;
+    private ByteBuffer mHistoryState;
+    private int[] mRewindFrom;                 // the board y each physical row sat at before a rewind
+    private boolean[] mRestoredRows;           // the physical rows a rewind put back
+
+    private ICubeBoardModelListener mListener;
+    private ICubeBoardModelRecorder mRecorder;
+
+    /**
+     * @param sideWidth   the width of one side of the board. both the far left and far right space
+     *                    on the board will be "shared" with it's adjacent side.
+     * @param boardHeight the height of the board, and each side.
+     * @param colorCount  the number of piece colors to choose from
+     * @param streams     the game's random streams, pieces and colors are drawn from their own
+     */
+    public CubeBoardModel(int sideWidth, int boardHeight, int colorCount, RandomStreams streams) {
+        this(DEFAULT_SIDE_COUNT, sideWidth, boardHeight, colorCount, streams);
+    }
+
+    /**
+     * @param sideCount   the number of faces around the board, at least MIN_SIDE_COUNT
+     * @param sideWidth   the width of one side of the board. both the far left and far right space
+     *                    on the board will be "shared" with it's adjacent side.
+     * @param boardHeight the height of the board, and each side.
+     * @param colorCount  the number of piece colors to choose from
+     * @param streams     the game's random streams, pieces and colors are drawn from their own
+     */
+    public CubeBoardModel(int sideCount, int sideWidth, int boardHeight, int colorCount, RandomStreams streams) {
+        if (sideCount < MIN_SIDE_COUNT) {
+            throw new IllegalArgumentException("a board needs at least " + MIN_SIDE_COUNT + " sides");
+        }
+
+        mSideCount   = sideCount;
+        mSideWidth   = sideWidth;
+        mBoardHeight = boardHeight;
+        mBoardWidth  = getBoardWidth(sideCount, sideWidth);
+        mColorCount  = colorCount;
+        mSeed        = streams.getSeed();
+        mPieceBag    = new CubeBagRandomizer(CubeBoardPieceModel.STYLES.length, PREVIEW_COUNT,
+                streams.get(RandomStreams.PIECES));
+        mColorRandom = streams.get(RandomStreams.COLORS);
+
+        mRows = new byte[mBoardHeight][mBoardWidth];
+        mRowFill = new int[mBoardHeight];
+        mRowRing = new CubeBoardRowRing(mBoardHeight);
+        mOccupancy = new CubeBoardOccupancy(mSideCount, mSideWidth, mBoardHeight);
+        mCavities = new CubeBoardCavityMap(mOccupancy);
+        mSurface = new CubeBoardSurface(mBoardWidth, mBoardHeight);
+        mZobrist = new CubeBoardZobrist(mBoardHeight);
+        mCommitX = new int[CubeBoardPieceModel.MAX_CELLS];
+        mCommitY = new int[CubeBoardPieceModel.MAX_CELLS];
+        mCommitCount = 0;
+        mClearedRows = new int[CubeBoardPieceModel.MAX_CELLS];
+
+        mFallSpeed = CubeBoardPieceModel.DEFAULT_FALL_SPEED;
+        mPiece = new CubeBoardPieceModel(this, 0, 0);
+        mActivePiece = null;
+        mPieceCount = 0;
+        mActiveFace = 0;
+        mTargetFace = 0;
+        mElapsedRotationTime = 0;
+        mBoardRotation = 0;
+        mLastMoveLineCompletionCount = 0;
+        mWasBadMove = false;
+        mGameOver = false;
+    }
+
+    public static int getBoardWidth(int sideCount, int sideWidth) {
+        return (sideWidth * sideCount) - sideCount;
+    }
+
+    /**
+     * @param sideCount the number of faces around the board
+     * @param face      a face
+     * @return the board's y axis rotation in degrees when the face is facing the player
+     */
+    public static float getFaceRotation(int sideCount, int face) {
+        return face * 360.0f / sideCount;
+    }
+
+    public void setListener(ICubeBoardModelListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @param recorder the recorder to tell about every change, or null to stop recording. A
+     *                 recorder attached to a game in progress is told the game has started.
+     */
+    public void setRecorder(ICubeBoardModelRecorder recorder) {
+        mRecorder = recorder;
+        if (null != mRecorder && mPieceCount > 0) { mRecorder.onStart(this); }
+    }
+
+    /**
+     * Keeps a snapshot of the board every time a piece spawns, so the game can be rewound.
+     * Snapshots share every row that hasn't changed since the one before, so a long history
+     * costs little more than the board itself.
+     *
+     * @param limit the number of pieces to remember, or 0 to stop keeping a history
+     */
+    public void setHistoryLimit(int limit) {
+        if (limit <= 0) {
+            mHistory = null;
+            mHistoryState = null;
+            mRewindFrom = null;
+            mRestoredRows = null;
+            return;
+        }
+        mHistory = new CubeBoardHistory(mRows, mRowFill, mRowRing, limit);
+        mHistoryState = ByteBuffer.allocate(getMaxGameStateSize());
+        mRewindFrom = new int[mBoardHeight];
+        mRestoredRows = new boolean[mBoardHeight];
+    }
+
+    /**
+     * @return the number of pieces that can be rewound to, the active piece's spawn included
+     */
+    public int getHistorySize() {
+        return (null == mHistory) ? 0 : mHistory.size();
+    }
+
+    CubeBoardHistory getHistory() {
+        return mHistory;
+    }
+
+    public int getSideCount() {
+        return mSideCount;
+    }
+
+    public int getSideWidth() {
+        return mSideWidth;
+    }
+
+    public int getBoardHeight() {
+        return mBoardHeight;
+    }
+
+    public int getBoardWidth() {
+        return mBoardWidth;
+    }
+
+    public int getColorCount() {
+        return mColorCount;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public CubeBoardOccupancy getOccupancy() {
+        return mOccupancy;
+    }
+
+    /**
+     * @return the column heights and other measures of the top of the stack, kept up to date
+     * as the board changes
+     */
+    public CubeBoardSurface getSurface() {
+        return mSurface;
+    }
+
+    /**
+     * A 64 bit Zobrist hash of the game: every slot's color, the active face, and the active
+     * piece's style, rotation and position. Equal games always hash the same, on any thread or
+     * device, so replays and simulations can compare one number a tick to catch divergence.
+     *
+     * @return the hash of the game as it is now
+     */
+    public long getHash() {
+        long hash = mZobrist.getBoardHash() ^ CubeBoardZobrist.faceKey(mActiveFace);
+        if (null != mActivePiece && !mActivePiece.isCommitted()) {
+            hash ^= CubeBoardZobrist.pieceKey(mActivePiece.getPlacement());
+        }
+        return hash;
+    }
+
+    /**
+     * @return the hash of the slots alone, see getHash
+     */
+    public long getBoardHash() {
+        return mZobrist.getBoardHash();
+    }
+
+    public CubeBoardPieceModel getActivePiece() {
+        return mActivePiece;
+    }
+
+    public int getActiveFace() {
+        return mActiveFace;
+    }
+
+    public int getFallSpeed() {
+        return mFallSpeed;
+    }
+
+    /**
+     * Sets how fast pieces fall from the next one to spawn on. Falls are worked out a row at a
+     * time however long an update is, so any speed plays the same at any frame rate.
+     *
+     * @param msPerRow milliseconds for a piece to fall one row, down to
+     *                 CubeBoardPieceModel#INSTANT_FALL_SPEED
+     */
+    public void setFallSpeed(int msPerRow) {
+        mFallSpeed = Math.max(msPerRow, CubeBoardPieceModel.INSTANT_FALL_SPEED);
+    }
+
+    public boolean isRotating() {
+        return mActiveFace != mTargetFace;
+    }
+
+    /**
+     * @return the board's y axis rotation in degrees, animated between faces
+     */
+    public float getBoardRotation() {
+        return mBoardRotation;
+    }
+
+    public boolean isGameOver() {
+        return mGameOver;
+    }
+
+    public int getPieceCount() {
+        return mPieceCount;
+    }
+
+    /**
+     * @param index 0 for the piece that spawns next, up to PREVIEW_COUNT - 1
+     * @return the style of an upcoming piece
+     */
+    public int getPreviewStyle(int index) {
+        return mPieceBag.peek(index);
+    }
+
+    /**
+     * @param boardX the true board x position
+     * @param boardY the board y position
+     * @return the color code in the slot, or EMPTY
+     */
+    public int getCell(int boardX, int boardY) {
+        return mRows[mRowRing.get(boardY)][boardX] - 1;
+    }
+
+    /**
+     * This value is calculated in onPieceCommit, and can only be determined as "valid" in the case
+     * where we are calling this method within the onPieceCommit listening strategy.
+     * @return true if the last committed piece sealed off part of the board
+     */
+    public boolean wasBadMove() {
+        return mWasBadMove;
+    }
+
+    public int getLastMoveLineCompletionCount() {
+        return mLastMoveLineCompletionCount;
+    }
+
+    /**
+     * Like getLastMoveLineCompletionCount, only valid while onRowClear and onLineComplete are
+     * being broadcast.
+     *
+     * @param index from 0 to getLastMoveLineCompletionCount() - 1
+     * @return the board y of a row the last piece completed, in the order they were on the
+     * board before clearing, from the bottom up
+     */
+    public int getClearedRow(int index) {
+        return mClearedRows[index];
+    }
+
+    /**
+     * @return the number of empty spaces on the board that are sealed off from the top
+     */
+    public int getHoleCount() {
+        return mCavities.getHoleCount();
+    }
+
+    // starts the game based on the current board state
+    public void start() {
+        loadNextActivePiece();
+        if (null != mRecorder) { mRecorder.onStart(this); }
+    }
+
+    /**
+     * Fills the bottom of the board with a few random cubes.
+     */
+    public void testFill() {
+        for (int x = 0; x < mBoardWidth; x++) {
+            int randomHeight = mColorRandom.nextInt(3);
+            for (int y = 0; y < randomHeight; y++) {
+                fillCell(x, y, mColorRandom.nextInt(mColorCount));
+            }
+        }
+    }
+
+    /**
+     * Places a cube of the given color directly into a board slot. Rows completed this way
+     * aren't cleared, only rows a piece commits to are checked.
+     *
+     * @param boardX the true board x position
+     * @param boardY the board y position
+     * @param color  the color code
+     */
+    public void fillCell(int boardX, int boardY, int color) {
+        int row = mRowRing.get(boardY);
+        claimRow(row);
+        if (0 == mRows[row][boardX]) {
+            mRowFill[row]++;
+            mSurface.fill(boardX, boardY);
+        } else {
+            mZobrist.toggle(row, boardY, boardX, mRows[row][boardX]);
+        }
+        mRows[row][boardX] = (byte) (color + 1);
+        mZobrist.toggle(row, boardY, boardX, color + 1);
+        mOccupancy.set(boardX, boardY);
+        if (null != mListener) { mListener.onCellFill(this, boardX, boardY, color); }
+    }
+
+    /**
+     * Pushes a row of garbage in underneath the board, moving everything up by one. Anything on
+     * the top row is pushed off the board, which ends the game, and an active piece the new
+     * row runs into is carried up with it. Garbage isn't an input, so recorders don't see it.
+     *
+     * @param gapX  the true board x position left open in the new row
+     * @param color the color code of the garbage
+     */
+    public void insertGarbageRow(int gapX, int color) {
+        int top = mRowRing.get(mBoardHeight - 1);
+        if (mRowFill[top] > 0) {
+            mGameOver = true;
+        }
+        if (null != mListener) { mListener.onRowInsert(this); }
+
+        // the top row comes around to the bottom and is refilled
+        claimRing();
+        int row = mRowRing.insertBottom();
+        claimRow(row);
+        Arrays.fill(mRows[row], (byte) (color + 1));
+        mRows[row][gapX] = 0;
+        mRowFill[row] = mBoardWidth - 1;
+        mZobrist.setRow(row, mRows[row]);
+        mZobrist.relink(mRowRing);
+        mOccupancy.insertRows(1);
+        for (int x = 0; x < mBoardWidth; x++) {
+            if (x != gapX) {
+                mOccupancy.set(x, 0);
+            }
+        }
+        mSurface.rebuild(mOccupancy);
+
+        if (null != mActivePiece && !mActivePiece.isCommitted()) {
+            while (!mActivePiece.movePiece(0, 0, false)) {
+                mActivePiece.raise(1);
+            }
+        }
+
+        if (null != mListener) {
+            for (int x = 0; x < mBoardWidth; x++) {
+                if (x != gapX) {
+                    mListener.onCellFill(this, x, 0, color);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the active piece's gravity and animates face rotation. The update is split where a
+     * rotation finishes, so the piece falls on the face it would have at any frame rate.
+     *
+     * @param msDelta milliseconds since the last update
+     */
+    public void update(long msDelta) {
+        long remaining = msDelta;
+        do {
+            long step = remaining;
+            if (isRotating()) {
+                step = Math.min(step, Math.max(ROTATION_SPEED - mElapsedRotationTime, 0));
+            }
+            updatePieces(step);
+            updateRotation(step);
+            remaining -= step;
+        } while (remaining > 0);
+
+        if (null != mRecorder) { mRecorder.onUpdate(this, msDelta); }
+    }
+
+    /**
+     * Runs gravity, bringing in the next piece as each one is down and handing it whatever
+     * time the last one didn't need.
+     */
+    private void updatePieces(long msDelta) {
+        long remaining = msDelta;
+        while (null != mActivePiece) {
+            remaining = mActivePiece.update(remaining);
+            if (!mActivePiece.isCommitted() || mGameOver) {
+                return;
+            }
+
+            // the last piece is down, bring in the next one
+            loadNextActivePiece();
+            if (remaining == 0) {
+                return;
+            }
+        }
+    }
+
+    private void updateRotation(long msDelta) {
+        // update the rotation of the board if we our target active face
+        // is not our active face
+        if (mTargetFace != mActiveFace) {
+            mElapsedRotationTime += msDelta;
+            // the short way round, across the seam between the last face and the first
+            float activeRotation = getFaceRotation(mSideCount, mActiveFace);
+            float angleDifference = getFaceRotation(mSideCount, mTargetFace) - activeRotation;
+            if (angleDifference > 180.0f) {
+                angleDifference -= 360.0f;
+            } else if (angleDifference < -180.0f) {
+                angleDifference += 360.0f;
+            }
+            mBoardRotation = activeRotation +
+                    ((float) mElapsedRotationTime / ROTATION_SPEED) * angleDifference;
+
+            // if we've completed the rotation, clamp to the target face
+            if (mElapsedRotationTime >= ROTATION_SPEED) {
+                mActiveFace = mTargetFace;
+                mBoardRotation = getFaceRotation(mSideCount, mActiveFace);
+                mElapsedRotationTime = 0;
+            }
+        }
+    }
+
+    /**
+     * Attempts to rotate the board left or right.
+     *
+     * @param direction -1 for left, 1 for right.
+     */
+    public void rotate(int direction) {
+        if (null != mRecorder) { mRecorder.onRotate(direction); }
+
+        // if we are already spinning, do nothing. or if the active piece is dropping
+        if (isRotating() || (mActivePiece != null && mActivePiece.isDropping())) {
+            return;
+        }
+
+        // ensure that each board piece block won't hit anything
+        // on its way to the new location.
+        if (null != mActivePiece) {
+            for (int i = 0; i < mActivePiece.getCellCount(); i++) {
+                if (mOccupancy.isRotationSweepBlocked(mActiveFace,
+                        mActivePiece.getFaceX() + mActivePiece.getCellX(i),
+                        mActivePiece.getFaceY() + mActivePiece.getCellY(i), direction)) {
+                    if (null != mListener) { mListener.onBoardRotateBlock(this); }
+                    return; // party is over folks, no rotation will happen.
+                }
+            }
+        }
+
+        // set the target face
+        if (mActiveFace == 0 && direction == -1) {
+            mTargetFace = mSideCount - 1;
+        } else {
+            mTargetFace = (mActiveFace + direction) % mSideCount;
+        }
+
+        // fire the event since we did do it
+        if (null != mListener) { mListener.onBoardRotate(this); }
+    }
+
+    /**
+     * @param direction -1 for counter clockwise, 1 for clockwise
+     */
+    public void rotatePiece(int direction) {
+        if (null != mRecorder) { mRecorder.onRotatePiece(direction); }
+
+        // only allow a piece to rotate if we are not currently rotating
+        if (null != mActivePiece && (mActiveFace == mTargetFace)) {
+            if (mActivePiece.rotate(direction)) {
+                if (null != mListener) { mListener.onPieceRotate(this); }
+            }
+        }
+    }
+
+    /**
+     * Will attempt to move the active piece, if there is one, in
+     * the direction specified.
+     * @param xDiff x differential for piece movement
+     * @param yDiff y differential for piece movement
+     * @return true if successful, false if it couldn't for some reason
+     */
+    public boolean movePiece(int xDiff, int yDiff) {
+        if (null != mRecorder) { mRecorder.onMovePiece(xDiff, yDiff); }
+
+        if (null == mActivePiece) {
+            return false;
+        }
+
+        if (mActivePiece.movePiece(xDiff, yDiff, true)) {
+            if (null != mListener) { mListener.onPieceMove(this); }
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Will make the active piece move faster than its normal speed.
+     */
+    public void modulePieceSpeed(int speedFactor) {
+        if (null != mRecorder) { mRecorder.onModulePieceSpeed(speedFactor); }
+
+        if (null != mActivePiece) {
+            mActivePiece.modulateSpeed(speedFactor);
+            if (null != mListener) { mListener.onPieceHurry(this); }
+        }
+    }
+
+    public void dropActivePiece() {
+        if (null != mRecorder) { mRecorder.onDropActivePiece(); }
+
+        if (null != mActivePiece && !mActivePiece.isDropping()) {
+            mActivePiece.drop();
+            if (null != mListener) { mListener.onPieceDrop(this); }
+        }
+    }
+
+    /**
+     * Determines if the relative face for the active
+     * face is occupied or not.
+     *
+     * @param faceX the x offset from the left side of the active face
+     * @param faceY the y offset from the righ side of the active face
+     * @return true if the face space is occupied, or false otherwise
+     */
+    public boolean isFaceSpaceOccupied(int faceX, int faceY) {
+        return mOccupancy.isFaceSpaceOccupied(mActiveFace, faceX, faceY);
+    }
+
+    /**
+     * Where the active piece would come to rest if it fell straight down from where it is, for
+     * previewing the landing. When the piece is above everything in its columns that comes
+     * straight from the column heights, otherwise it has slid under something and the
+     * columns are walked down.
+     *
+     * @return the face y the piece would land on, or -1 if there is no active piece
+     */
+    public int getLandingY() {
+        if (null == mActivePiece) {
+            return -1;
+        }
+
+        int faceX = mActivePiece.getFaceX();
+        int faceY = mActivePiece.getFaceY();
+        int landing = 0;
+        boolean above = true;
+        for (int i = 0; i < mActivePiece.getCellCount() && above; i++) {
+            // a piece turned over the edge of the face above the board can't come down at all
+            int cellX = faceX + mActivePiece.getCellX(i);
+            if (cellX < 0 || cellX >= mSideWidth) {
+                above = false;
+                continue;
+            }
+
+            int height = mSurface.getColumnHeight(trueX(cellX));
+            above = faceY + mActivePiece.getCellY(i) >= height;
+            landing = Math.max(landing, height - mActivePiece.getCellY(i));
+        }
+        if (above) {
+            return landing;
+        }
+
+        for (;; faceY--) {
+            for (int i = 0; i < mActivePiece.getCellCount(); i++) {
+                if (isFaceSpaceOccupied(faceX + mActivePiece.getCellX(i), faceY - 1 + mActivePiece.getCellY(i))) {
+                    return faceY;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param faceX an x offset on the active face
+     * @return the true board x position
+     */
+    public int trueX(int faceX) {
+        return (mActiveFace * mSideWidth - mActiveFace + faceX) % (mBoardWidth);
+    }
+
+    /**
+     * @return enough bytes to hold saveState for any board of this size
+     */
+    public int getMaxStateSize() {
+        return getMaxGameStateSize() + mBoardWidth * mBoardHeight * 2;
+    }
+
+    /**
+     * @return saveState written into an array of its own, trimmed to fit
+     */
+    public byte[] saveState() {
+        ByteBuffer buffer = ByteBuffer.allocate(getMaxStateSize());
+        saveState(buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Writes everything needed to carry on exactly where the game is now: the slots, the active
+     * piece, the face rotation and the piece and color random streams. Runs of equal slots are
+     * collapsed, so mostly empty boards stay small.
+     *
+     * @param out the buffer to write to, with at least getMaxStateSize() remaining
+     */
+    public void saveState(ByteBuffer out) {
+        saveGameState(out);
+
+        // slots, row by row from the bottom, as (value, run length) pairs
+        byte run = mRows[mRowRing.get(0)][0];
+        int runLength = 0;
+        for (int y = 0; y < mBoardHeight; y++) {
+            byte[] row = mRows[mRowRing.get(y)];
+            for (int x = 0; x < mBoardWidth; x++) {
+                if (row[x] != run) {
+                    out.put(run);
+                    VarInt.put(out, runLength);
+                    run = row[x];
+                    runLength = 0;
+                }
+                runLength++;
+            }
+        }
+        out.put(run);
+        VarInt.put(out, runLength);
+    }
+
+    /**
+     * Replaces the game with one written by saveState. Listeners are only told about the new
+     * active piece; anything mirroring the slots needs to re-read them.
+     *
+     * @param in the buffer to read from
+     */
+    public void restoreState(ByteBuffer in) {
+        restoreGameState(in);
+
+        // the slots are written in place, so any history is lost
+        if (null != mHistory) { mHistory.clear(); }
+        mOccupancy.clearAll();
+        mRowRing.reset();
+        Arrays.fill(mRowFill, 0);
+        int x = 0, y = 0;
+        while (y < mBoardHeight) {
+            byte value = in.get();
+            for (int runLength = VarInt.get(in); runLength > 0; runLength--) {
+                mRows[y][x] = value;
+                if (0 != value) {
+                    mOccupancy.set(x, y);
+                    mRowFill[y]++;
+                }
+                if (++x == mBoardWidth) {
+                    x = 0;
+                    y++;
+                }
+            }
+        }
+        mSurface.rebuild(mOccupancy);
+        mZobrist.rebuild(mRows, mRowRing);
+
+        if (null != mActivePiece && null != mListener) { mListener.onPieceSpawn(this); }
+    }
+
+    /**
+     * Puts the game back the way it was when an earlier piece spawned. Only the rows the
+     * history puts back, or moves back into place, are read again into the occupancy, surface
+     * and hash; the rest of the board is left as it is. Listeners are told about the active
+     * piece, as with restoreState, and a recorder is told the game has started again.
+     *
+     * @param pieces how many pieces back to go, 0 to start the active piece over
+     * @return false if the history doesn't go back that far, and the game is left alone
+     */
+    public boolean rewind(int pieces) {
+        return rewind(pieces, null);
+    }
+
+    /**
+     * Rewinds the game, see rewind(int), and says where each row came from, so a view of the
+     * board only has to rebuild the rows that were put back.
+     *
+     * @param pieces how many pieces back to go, 0 to start the active piece over
+     * @param from   if not null, receives for each board y the board y its row sat at before
+     *               the rewind, or -1 if the row was put back and needs reading again
+     * @return false if the history doesn't go back that far, and the game is left alone
+     */
+    boolean rewind(int pieces, int[] from) {
+        if (null == mHistory) {
+            return false;
+        }
+        for (int y = 0; y < mBoardHeight; y++) {
+            mRewindFrom[mRowRing.get(y)] = y;
+        }
+        Arrays.fill(mRestoredRows, false);
+        byte[] state = mHistory.rollBack(pieces, mRestoredRows);
+        if (null == state) {
+            return false;
+        }
+        restoreGameState(ByteBuffer.wrap(state));
+
+        for (int row = 0; row < mBoardHeight; row++) {
+            if (mRestoredRows[row]) {
+                mZobrist.setRow(row, mRows[row]);
+            }
+        }
+        mZobrist.relink(mRowRing);
+
+        // a board row needs reading again if its row was put back, or if the row ring moved
+        // a different row under it
+        for (int y = 0; y < mBoardHeight; y++) {
+            int row = mRowRing.get(y);
+            if (null != from) {
+                from[y] = mRestoredRows[row] ? -1 : mRewindFrom[row];
+            }
+            if (mRewindFrom[row] == y && !mRestoredRows[row]) {
+                continue;
+            }
+            byte[] cells = mRows[row];
+            for (int x = 0; x < mBoardWidth; x++) {
+                boolean filled = 0 != cells[x];
+                if (filled == mOccupancy.isOccupied(x, y)) {
+                    continue;
+                }
+                if (filled) {
+                    mOccupancy.set(x, y);
+                    mSurface.fill(x, y);
+                } else {
+                    mOccupancy.clear(x, y);
+                    mSurface.empty(x, y, mOccupancy);
+                }
+            }
+        }
+
+        if (null != mActivePiece && null != mListener) { mListener.onPieceSpawn(this); }
+        if (null != mRecorder) { mRecorder.onStart(this); }
+        return true;
+    }
+
+    /**
+     * Used by the piece to communicate a successful slide.
+     */
+    void onPieceSlide() {
+        if (null != mListener) { mListener.onPieceSlide(this); }
+    }
+
+    /**
+     * Used by the piece when it can't fall any further. Pours the concrete, runs line
+     * completion and bad move detection, and lets everyone know.
+     *
+     * @param piece the piece being committed
+     */
+    void commitPiece(CubeBoardPieceModel piece) {
+        mCommitCount = 0;
+        for (int i = 0; i < piece.getCellCount(); i++) {
+            int x = trueX(piece.getFaceX() + piece.getCellX(i));
+            int y = piece.getFaceY() + piece.getCellY(i);
+
+            // anything that lands above the board has topped out
+            if (y >= mBoardHeight) {
+                mGameOver = true;
+                continue;
+            }
+
+            int row = mRowRing.get(y);
+            claimRow(row);
+            mRows[row][x] = (byte) (piece.getColor() + 1);
+            mRowFill[row]++;
+            mZobrist.toggle(row, y, x, piece.getColor() + 1);
+            mOccupancy.set(x, y);
+            mSurface.fill(x, y);
+            mCommitX[mCommitCount] = x;
+            mCommitY[mCommitCount] = y;
+            mCommitCount++;
+            if (null != mListener) { mListener.onPieceCellCommit(this, i, x, y); }
+        }
+
+        // test line completion now that the board holds these cubes
+        testLineCompletion();
+
+        // go through each commit location, and see if the space below it can reach its
+        // way to the top. we are looking for "traps"
+        mWasBadMove = false;
+        for (int i = 0; i < mCommitCount; i++) {
+            if (!mCavities.hasSafeLanding(mCommitX[i], mCommitY[i] - 1)) {
+                mWasBadMove = true;
+                break;
+            }
+        }
+
+        // broadcast that a full commit has been done.
+        if (null != mListener) { mListener.onPieceCommit(this); }
+        mLastMoveLineCompletionCount = 0;
+        mCommitCount = 0;
+    }
+
+    /**
+     * Finds the rows the last piece completed and removes them. Only the rows the piece
+     * committed to can have been completed, and the fill counts say which of those are full.
+     * Cleared rows are emptied and unlinked to the top of the row ring, the rows above them
+     * are never copied.
+     */
+    private void testLineCompletion() {
+        // collect the completed rows, bottom up, ignoring rows the piece touched twice
+        int clearedCount = 0;
+        for (int i = 0; i < mCommitCount; i++) {
+            int y = mCommitY[i];
+            if (mRowFill[mRowRing.get(y)] != mBoardWidth) {
+                continue;
+            }
+
+            int insert = clearedCount;
+            while (insert > 0 && mClearedRows[insert - 1] >= y) {
+                insert--;
+            }
+            if (insert < clearedCount && mClearedRows[insert] == y) {
+                continue;
+            }
+            System.arraycopy(mClearedRows, insert, mClearedRows, insert + 1, clearedCount - insert);
+            mClearedRows[insert] = y;
+            clearedCount++;
+        }
+
+        if (0 == clearedCount) {
+            return;
+        }
+        mLastMoveLineCompletionCount = clearedCount;
+
+        // let the listener take each row's cubes before it goes away, top row first
+        if (null != mListener) {
+            for (int i = clearedCount - 1; i >= 0; i--) {
+                mListener.onRowClear(this, mClearedRows[i]);
+            }
+        }
+
+        // empty the cleared rows where they are, then unlink them to the top
+        for (int i = 0; i < clearedCount; i++) {
+            int row = mRowRing.get(mClearedRows[i]);
+            claimRow(row);
+            Arrays.fill(mRows[row], (byte) 0);
+            mRowFill[row] = 0;
+            mZobrist.setRow(row, mRows[row]);
+        }
+        claimRing();
+        mRowRing.remove(mClearedRows, clearedCount);
+        mZobrist.relink(mRowRing);
+        mOccupancy.removeRows(mClearedRows, clearedCount);
+        mSurface.removeFullRows(mClearedRows[clearedCount - 1], clearedCount, mOccupancy);
+
+        if (null != mListener) { mListener.onLineComplete(this); }
+    }
+
+    private void loadNextActivePiece() {
+        // the committed piece is done with, so it becomes the next one
+        mPiece.reset(mPieceBag.next(), mColorRandom.nextInt(mColorCount));
+        mActivePiece = mPiece;
+        mPieceCount++;
+
+        if (null != mHistory) {
+            mHistoryState.clear();
+            saveGameState(mHistoryState);
+            mHistory.take(Arrays.copyOf(mHistoryState.array(), mHistoryState.position()));
+        }
+        if (null != mListener) { mListener.onPieceSpawn(this); }
+    }
+
+    /**
+     * Copies a physical row before it is written to, if the history shares it.
+     */
+    private void claimRow(int row) {
+        if (null != mHistory) { mHistory.claimRow(row); }
+    }
+
+    /**
+     * Copies the row ring before it changes, if the history needs it.
+     */
+    private void claimRing() {
+        if (null != mHistory) { mHistory.claimRing(); }
+    }
+
+    private int getMaxGameStateSize() {
+        return 256 + CubeBoardPieceModel.STYLES.length + PREVIEW_COUNT;
+    }
+
+    /**
+     * Writes everything saveState does apart from the slots.
+     */
+    private void saveGameState(ByteBuffer out) {
+        out.put(STATE_VERSION);
+        out.put((byte) mSideCount);
+        out.putShort((short) mSideWidth);
+        out.putShort((short) mBoardHeight);
+        out.putInt(mPieceCount);
+        out.putInt(mFallSpeed);
+        out.put((byte) ((mWasBadMove ? 1 : 0) | (mGameOver ? 2 : 0) | (null != mActivePiece ? 4 : 0)));
+        out.put((byte) mActiveFace);
+        out.put((byte) mTargetFace);
+        out.putInt(mElapsedRotationTime);
+        out.putFloat(mBoardRotation);
+        mPieceBag.saveState(out);
+        out.putLong(mColorRandom.getState());
+        if (null != mActivePiece) {
+            mActivePiece.saveState(out);
+        }
+    }
+
+    private void restoreGameState(ByteBuffer in) {
+        if (in.get() != STATE_VERSION || in.get() != mSideCount || in.getShort() != mSideWidth ||
+                in.getShort() != mBoardHeight) {
+            throw new IllegalArgumentException("state was saved from a different kind of board");
+        }
+
+        mPieceCount = in.getInt();
+        mFallSpeed = in.getInt();
+        int flags = in.get();
+        mWasBadMove = (flags & 1) != 0;
+        mGameOver = (flags & 2) != 0;
+        mActiveFace = in.get();
+        mTargetFace = in.get();
+        mElapsedRotationTime = in.getInt();
+        mBoardRotation = in.getFloat();
+        mPieceBag.restoreState(in);
+        mColorRandom.setSeed(in.getLong());
+        mActivePiece = null;
+        if ((flags & 4) != 0) {
+            mPiece.restoreState(in);
+            mActivePiece = mPiece;
+        }
+        mLastMoveLineCompletionCount = 0;
+        mCommitCount = 0;
+    }
+}
@@ -0,0 +1,346 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import java.util.Arrays;
+
+/**
+ * CubeBoardOccupancy
+ *
+ * A packed, bit-per-cell mirror of which board slots are filled. Each row is a small run of
+ * longs covering the whole wrapped board width, followed by a copy of the first (sideWidth - 1)
+ * columns so that any face (or any side-length sweep across a face seam) can be read out as a
+ * single contiguous bit range without modular arithmetic.
+ *
+ * Collision and line queries are shift-and-mask operations and never allocate. Has no
+ * dependencies on android, so it can be exercised on a plain JVM.
+ *
+ * Created by scottc on 4/2/16.
+ */
+public class CubeBoardOccupancy {
+    // board dimensions
+    private final int mSideCount;
+    private final int mSideWidth;
+    private final int mBoardWidth;
+    private final int mBoardHeight;
+
+    // packed storage, row major. every row has one extra padding word so reading
+    // a range that straddles the last word never needs a bounds check.
+    private final int mRowWords;
+    private final long[] mBits;
+    private final long[] mFullRow;  // mask of the real (non mirrored) columns of a row
+    private int mModificationCount; // bumped on every change so derived structures can go stale
+    private int mEmptyingCount;     // bumped on every change that can empty or move a slot
+    private final int[] mRowSetCounts;  // the modification count of the last slot set, per row
+
+    /**
+     * @param sideCount   the number of sides the board has
+     * @param sideWidth   the width of one side, including the two shared corner columns
+     * @param boardHeight the height of the board
+     */
+    public CubeBoardOccupancy(int sideCount, int sideWidth, int boardHeight) {
+        if (sideWidth > 64) {
+            throw new IllegalArgumentException("side width must fit into a single face word");
+        }
+
+        mSideCount   = sideCount;
+        mSideWidth   = sideWidth;
+        mBoardWidth  = sideCount * sideWidth - sideCount;
+        mBoardHeight = boardHeight;
+
+        // real columns, then the mirrored seam columns, then one padding word
+        mRowWords = ((mBoardWidth + mSideWidth - 1 + 63) >>> 6) + 1;
+        mBits = new long[mRowWords * mBoardHeight];
+        mRowSetCounts = new int[mBoardHeight];
+
+        mFullRow = new long[mRowWords];
+        for (int x = 0; x < mBoardWidth; x++) {
+            mFullRow[x >>> 6] |= 1L << x;
+        }
+    }
+
+    public int getSideCount() {
+        return mSideCount;
+    }
+
+    public int getSideWidth() {
+        return mSideWidth;
+    }
+
+    public int getBoardWidth() {
+        return mBoardWidth;
+    }
+
+    public int getBoardHeight() {
+        return mBoardHeight;
+    }
+
+    /**
+     * Marks a board slot as filled.
+     *
+     * @param x the true board x position
+     * @param y the board y position
+     */
+    public void set(int x, int y) {
+        int base = y * mRowWords;
+        mBits[base + (x >>> 6)] |= 1L << x;
+        if (x < mSideWidth - 1) {
+            int mirror = x + mBoardWidth;
+            mBits[base + (mirror >>> 6)] |= 1L << mirror;
+        }
+        mRowSetCounts[y] = ++mModificationCount;
+    }
+
+    /**
+     * Marks a board slot as empty.
+     *
+     * @param x the true board x position
+     * @param y the board y position
+     */
+    public void clear(int x, int y) {
+        int base = y * mRowWords;
+        mBits[base + (x >>> 6)] &= ~(1L << x);
+        if (x < mSideWidth - 1) {
+            int mirror = x + mBoardWidth;
+            mBits[base + (mirror >>> 6)] &= ~(1L << mirror);
+        }
+        mModificationCount++;
+        mEmptyingCount++;
+    }
+
+    /**
+     * Makes this board an exact copy of another board of the same size.
+     *
+     * @param other the board to copy
+     */
+    public void copyFrom(CubeBoardOccupancy other) {
+        if (other.mBits.length != mBits.length || other.mBoardWidth != mBoardWidth) {
+            throw new IllegalArgumentException("boards are not the same size");
+        }
+        System.arraycopy(other.mBits, 0, mBits, 0, mBits.length);
+        mModificationCount++;
+        mEmptyingCount++;
+    }
+
+    /**
+     * Empties the entire board.
+     */
+    public void clearAll() {
+        Arrays.fill(mBits, 0L);
+        mModificationCount++;
+        mEmptyingCount++;
+    }
+
+    /**
+     * @param x the true board x position
+     * @param y the board y position
+     * @return true if the slot is filled
+     */
+    public boolean isOccupied(int x, int y) {
+        return ((mBits[y * mRowWords + (x >>> 6)] >>> x) & 1L) != 0;
+    }
+
+    /**
+     * Determines if a space relative to a face is occupied. Mirrors the rules of
+     * CubeBoard#isFaceSpaceOccupied: anything above the board is open, anything below the
+     * floor or off the side of the face is blocked.
+     *
+     * @param face  the face the coordinates are relative to
+     * @param faceX the x offset from the left side of the face
+     * @param faceY the y offset from the bottom of the board
+     * @return true if the face space is occupied, or false otherwise
+     */
+    public boolean isFaceSpaceOccupied(int face, int faceX, int faceY) {
+        if (faceY >= mBoardHeight) {
+            return false;
+        }
+        if (faceY < 0 || faceX < 0 || faceX >= mSideWidth) {
+            return true;
+        }
+
+        // the seam mirror means the face never needs to wrap
+        int x = face * (mSideWidth - 1) + faceX;
+        return ((mBits[faceY * mRowWords + (x >>> 6)] >>> x) & 1L) != 0;
+    }
+
+    /**
+     * Provides a packed view of one row of a face. Bit n represents faceX = n.
+     *
+     * @param face the face to view
+     * @param y    the board row
+     * @return the face row bits, only the lowest sideWidth bits are meaningful
+     */
+    public long getFaceRow(int face, int y) {
+        return extract(y, face * (mSideWidth - 1), mSideWidth);
+    }
+
+    /**
+     * The board rotation sweep: a piece block is carried a full side length around the board
+     * when it rotates. Tests whether the block, or the space directly below it, hits anything
+     * along the way. Mirrors the array scan previously done in CubeBoard#rotate.
+     *
+     * @param face      the active face
+     * @param faceX     the block's x offset on the active face
+     * @param faceY     the block's y position
+     * @param direction -1 for left, 1 for right
+     * @return true if the sweep is blocked
+     */
+    public boolean isRotationSweepBlocked(int face, int faceX, int faceY, int direction) {
+        if (faceY >= mBoardHeight) {
+            return false;
+        }
+        if (faceY <= 0) {
+            return true;
+        }
+
+        // normalize the swept span to start somewhere within the real columns
+        int start = face * (mSideWidth - 1) + faceX;
+        if (direction < 0) {
+            start -= (mSideWidth - 1);
+        }
+        start %= mBoardWidth;
+        if (start < 0) {
+            start += mBoardWidth;
+        }
+
+        return (extract(faceY, start, mSideWidth) | extract(faceY - 1, start, mSideWidth)) != 0;
+    }
+
+    /**
+     * @param y the board row
+     * @return true if every column on the row is filled
+     */
+    public boolean isRowComplete(int y) {
+        int base = y * mRowWords;
+        for (int w = 0; w < mRowWords; w++) {
+            if ((mBits[base + w] & mFullRow[w]) != mFullRow[w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param y the board row
+     * @return true if nothing on the row is filled
+     */
+    public boolean isRowEmpty(int y) {
+        int base = y * mRowWords;
+        for (int w = 0; w < mRowWords; w++) {
+            if ((mBits[base + w] & mFullRow[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes a row, moving every row above it down by one and emptying the top row.
+     *
+     * @param y the row to remove
+     */
+    public void removeRow(int y) {
+        System.arraycopy(mBits, (y + 1) * mRowWords, mBits, y * mRowWords,
+                (mBoardHeight - y - 1) * mRowWords);
+        Arrays.fill(mBits, (mBoardHeight - 1) * mRowWords, mBoardHeight * mRowWords, 0L);
+        mModificationCount++;
+        mEmptyingCount++;
+    }
+
+    /**
+     * Removes several rows at once, moving every row that is left down past all of the removed
+     * rows below it in a single pass, and emptying the rows freed up at the top.
+     *
+     * @param rows  the rows to remove, in ascending order
+     * @param count how many of the rows to use
+     */
+    public void removeRows(int[] rows, int count) {
+        if (0 == count) {
+            return;
+        }
+
+        // copy each run of kept rows between two removed ones down in one go
+        int dest = rows[0];
+        for (int i = 0; i < count; i++) {
+            int runStart = rows[i] + 1;
+            int runEnd = (i + 1 < count) ? rows[i + 1] : mBoardHeight;
+            int runLength = runEnd - runStart;
+            if (runLength > 0) {
+                System.arraycopy(mBits, runStart * mRowWords, mBits, dest * mRowWords, runLength * mRowWords);
+                dest += runLength;
+            }
+        }
+        Arrays.fill(mBits, dest * mRowWords, mBoardHeight * mRowWords, 0L);
+        mModificationCount++;
+        mEmptyingCount++;
+    }
+
+    /**
+     * Inserts empty rows at the bottom, moving every row up and pushing the top rows off.
+     *
+     * @param count the number of rows to insert
+     */
+    public void insertRows(int count) {
+        System.arraycopy(mBits, 0, mBits, count * mRowWords, (mBoardHeight - count) * mRowWords);
+        Arrays.fill(mBits, 0, count * mRowWords, 0L);
+        mModificationCount++;
+        mEmptyingCount++;
+    }
+
+    /**
+     * @return a counter that changes every time a slot or row changes
+     */
+    public int getModificationCount() {
+        return mModificationCount;
+    }
+
+    /**
+     * @return a counter that changes every time a slot might have been emptied or moved. While
+     *         it stays the same, slots have only been filled.
+     */
+    public int getEmptyingCount() {
+        return mEmptyingCount;
+    }
+
+    /**
+     * @param y the board row
+     * @return the modification count as of the last time a slot on the row was filled
+     */
+    public int getRowSetCount(int y) {
+        return mRowSetCounts[y];
+    }
+
+    /**
+     * @return the number of longs used to store a single row
+     */
+    public int getRowWordCount() {
+        return mRowWords;
+    }
+
+    /**
+     * Raw access to the packed row words, for structures layered on top of the occupancy.
+     * Only the real columns [0, boardWidth) of the word are meaningful.
+     *
+     * @param y    the board row
+     * @param word the word within the row
+     * @return the packed bits
+     */
+    public long getRowWord(int y, int word) {
+        return mBits[y * mRowWords + word] & mFullRow[word];
+    }
+
+    /**
+     * Reads a contiguous run of up to 64 columns out of a row.
+     *
+     * @param y      the row
+     * @param start  the first column, may run into the mirrored seam columns
+     * @param length the number of columns
+     * @return bit n is set if column (start + n) is filled
+     */
+    private long extract(int y, int start, int length) {
+        int index = y * mRowWords + (start >>> 6);
+        int offset = start & 63;
+
+        // the double shift on the high word keeps an offset of zero from wrapping around
+        long bits = (mBits[index] >>> offset) | ((mBits[index + 1] << 1) << (63 - offset));
+        return (length == 64) ? bits : bits & ((1L << length) - 1);
+    }
+}
@@ -0,0 +1,523 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CubeBoardPieceModel
+ *
+ * The rules for the active piece: its blocks' offsets around the piece center, its position on
+ * the active face, gravity, the slide maneuver, hurrying and dropping. Has no rendering or
+ * android dependencies; CubeBoardPiece wraps it with the cubes that are drawn.
+ *
+ * This class is tightly coupled with CubeBoardModel, which controls the lifespan of the piece.
+ * Like the board, it is only changed on the thread that updates the board.
+ *
+ * The style, rotation and face position are kept together as one CubeBoardPiecePlacement, and
+ * that is the only part of the piece published to other threads: getPlacement() hands anyone a
+ * consistent copy of where the piece is. Everything else is plain fields for the update thread.
+ *
+ * Created by scottc on 4/5/16.
+ */
+public class CubeBoardPieceModel {
+    // piece definitions, pairs of (x, y) block offsets around the piece's center (0,0)
+    public static final int[] STYLE_SQUARE = { 0, 0,   1, 0,   1,-1,   0,-1 };
+    public static final int[] STYLE_Z      = { 0, 0,  -1, 0,   0,-1,   1,-1 };
+    public static final int[] STYLE_S      = { 0, 0,   1, 0,   0,-1,  -1,-1 };
+    public static final int[] STYLE_L      = { 0, 1,   0, 0,   0,-1,   1,-1 };
+    public static final int[] STYLE_R      = { 0, 1,   0, 0,   0,-1,  -1,-1 };
+    public static final int[] STYLE_T      = { 0, 0,  -1, 0,   1, 0,   0,-1 };
+    public static final int[] STYLE_I      = { 0, 1,   0, 0,   0,-1,   0,-2 };
+    public static final int[][] STYLES = {
+        STYLE_SQUARE,
+        STYLE_Z,
+        STYLE_S,
+        STYLE_L,
+        STYLE_R,
+        STYLE_T,
+        STYLE_I
+    };
+    public static final int MAX_CELLS = 4;
+
+    // constants
+    public static final int DEFAULT_FALL_SPEED  =             600;
+    public static final int INSTANT_FALL_SPEED  =               1; // the whole board in about a frame, 20G
+    private static final float SLIDE_SENSITIVIY =           0.60f;
+    private static final int DROP_SPEED         =              30;
+
+    // external references, coupled objects
+    private final CubeBoardModel mBoard;
+
+    // piece definition
+    private int mColor;              // the color code the piece commits with
+    private int mCellCount;
+
+    // piece movement
+    private int mRestingSpeed;       // unacellerated speed.
+    private int mFallSpeed;          // milliseconds for a piece drop
+    private int mFallTimeElapsed;    // number of elapsed milliseconds since last drop
+    private int mSlideDirection;     // -1 or 1 in the x direction usually
+    private boolean mSliding;        // toggle which will allow a drop-side
+    private boolean mDropping;       // perminent state of super fast fall speed
+
+    // style, rotation and face position, see CubeBoardPiecePlacement
+    private final AtomicLong mPlacement;
+
+    // has this piece been committed?
+    private boolean mCommitted;
+
+    /**
+     * Creates a new piece at the top middle of the board's active face.
+     *
+     * @param board the board the piece is interacting with
+     * @param style index into STYLES
+     * @param color the color code the piece will commit to the board with
+     */
+    public CubeBoardPieceModel(CubeBoardModel board, int style, int color) {
+        mBoard = board;
+        mPlacement = new AtomicLong();
+        reset(style, color);
+    }
+
+    /**
+     * Turns this into a brand new piece at the top middle of the board's active face, so the
+     * board can keep reusing one piece object.
+     *
+     * @param style index into STYLES
+     * @param color the color code the piece will commit to the board with
+     */
+    void reset(int style, int color) {
+        mColor = color;
+        mCellCount = STYLES[style].length / 2;
+
+        mSliding = false;
+        mCommitted = false;
+        mDropping = false;
+
+        // set intial state
+        mRestingSpeed = mBoard.getFallSpeed();
+        mFallSpeed = mRestingSpeed;
+        mFallTimeElapsed = 0;
+
+        // start in the top middle of the face
+        mPlacement.set(CubeBoardPiecePlacement.pack(style, 0, mBoard.getSideWidth() / 2, mBoard.getBoardHeight()));
+    }
+
+    /**
+     * @return the style, rotation and face position as they are now, all from the same moment
+     */
+    public long getPlacement() {
+        return mPlacement.get();
+    }
+
+    public int getStyle() {
+        return CubeBoardPiecePlacement.getStyle(mPlacement.get());
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    public int getCellCount() {
+        return mCellCount;
+    }
+
+    /**
+     * @return clockwise quarter turns from the style definition
+     */
+    public int getRotation() {
+        return CubeBoardPiecePlacement.getRotation(mPlacement.get());
+    }
+
+    /**
+     * @param cell the block index within the piece
+     * @return the block's x offset around the piece center
+     */
+    public int getCellX(int cell) {
+        long placement = mPlacement.get();
+        return CubeBoardPieceShapes.CELL_X[CubeBoardPiecePlacement.getStyle(placement)]
+                [CubeBoardPiecePlacement.getRotation(placement)][cell];
+    }
+
+    /**
+     * @param cell the block index within the piece
+     * @return the block's y offset around the piece center
+     */
+    public int getCellY(int cell) {
+        long placement = mPlacement.get();
+        return CubeBoardPieceShapes.CELL_Y[CubeBoardPiecePlacement.getStyle(placement)]
+                [CubeBoardPiecePlacement.getRotation(placement)][cell];
+    }
+
+    /**
+     * @param cell the block index within the piece
+     * @return true if no block of this piece sits directly below the cell
+     */
+    public boolean isBottomContact(int cell) {
+        return isBottomContact(mPlacement.get(), cell);
+    }
+
+    /**
+     * @param placement a placement of this piece
+     * @param cell      the block index within the piece
+     * @return true if no block of this piece sits directly below the cell
+     */
+    public static boolean isBottomContact(long placement, int cell) {
+        return (CubeBoardPieceShapes.BOTTOM_CONTACT[CubeBoardPiecePlacement.getStyle(placement)]
+                [CubeBoardPiecePlacement.getRotation(placement)] & (1 << cell)) != 0;
+    }
+
+    /**
+     * @param cell      the block index within the piece
+     * @param direction -1 for left, 1 for right
+     * @return true if no block of this piece sits directly beside the cell in that direction
+     */
+    public boolean isSideContact(int cell, int direction) {
+        return isSideContact(mPlacement.get(), cell, direction);
+    }
+
+    /**
+     * @param placement a placement of this piece
+     * @param cell      the block index within the piece
+     * @param direction -1 for left, 1 for right
+     * @return true if no block of this piece sits directly beside the cell in that direction
+     */
+    public static boolean isSideContact(long placement, int cell, int direction) {
+        int[][] contact = (direction < 0) ? CubeBoardPieceShapes.LEFT_CONTACT : CubeBoardPieceShapes.RIGHT_CONTACT;
+        return (contact[CubeBoardPiecePlacement.getStyle(placement)]
+                [CubeBoardPiecePlacement.getRotation(placement)] & (1 << cell)) != 0;
+    }
+
+    public int getFaceX() {
+        return CubeBoardPiecePlacement.getFaceX(mPlacement.get());
+    }
+
+    public int getFaceY() {
+        return CubeBoardPiecePlacement.getFaceY(mPlacement.get());
+    }
+
+    public boolean isCommitted() {
+        return mCommitted;
+    }
+
+    public boolean isDropping() {
+        return mDropping;
+    }
+
+    public boolean isSliding() {
+        return mSliding;
+    }
+
+    /**
+     * @return how far along the piece is towards falling the next row, from 0 to 1
+     */
+    public float getFallRatio() {
+        if (mFallTimeElapsed >= mFallSpeed) {
+            return 0.0f;
+        }
+        return (float) mFallTimeElapsed / (float) mFallSpeed;
+    }
+
+    /**
+     * @return how far along the piece is towards falling the next row, 1 once it is due
+     */
+    private float getFallProgress() {
+        if (mFallTimeElapsed >= mFallSpeed) {
+            return 1.0f;
+        }
+        return (float) mFallTimeElapsed / (float) mFallSpeed;
+    }
+
+    /**
+     * Runs gravity for the piece, a row at a time, until the time is used up or the piece
+     * commits. Each row falls on the millisecond it is due, so the piece ends up in the same
+     * place however the time is split into updates.
+     *
+     * @param msDelta milliseconds since the last update
+     * @return the milliseconds left over once the piece committed, 0 if it hasn't
+     */
+    public long update(long msDelta) {
+        long remaining = msDelta;
+        while (!mCommitted) {
+            // always keep track of the fall time elapsed, as the piece
+            // is continually 'falling' down the board
+            long untilFall = mFallSpeed - mFallTimeElapsed;
+            if (remaining < untilFall) {
+                mFallTimeElapsed += remaining;
+                return 0;
+            }
+
+            // step to the moment the row is due, and fall it
+            remaining -= Math.max(untilFall, 0);
+            mFallTimeElapsed = mFallSpeed;
+            fall();
+        }
+        return remaining;
+    }
+
+    /**
+     * Moves the piece down a row, sliding or committing it if it can't.
+     */
+    private void fall() {
+        // move the piece down vertically on the board, but if we can't, we need
+        // to commit all of the pieces into place.
+        if (!movePiece(0, -1, true)) {
+            // so we've moved down now did the player activate the slide
+            // technique to potentially move in their previous requested x direction?!?!
+            if (mSliding) {
+                // try to commit in the previous slide direction ......
+                if (movePiece(mSlideDirection, 0, true)) {
+                    // wow, congrats dude. a hard slide!
+                    mBoard.onPieceSlide();
+                } else {
+                    // slide fail, committing...
+                    commitToBoard();
+                    resetFallCycle();
+                    return;
+                }
+            } else {
+                commitToBoard();
+                resetFallCycle();
+                return;
+            }
+        } else {
+            // so we've moved down now did the player activate the slide
+            // technique to potentially move in their previous requested x direction?!?!
+            if (mSliding) {
+                // try to commit in the previous slide direction ......
+                if (movePiece(mSlideDirection, 0, true)) {
+                    // wow, congrats dude. a scoop slide!
+                    mBoard.onPieceSlide();
+                }
+            }
+
+            // once our piece has settled, if we could move down,
+            // did we just move down onto a piece below us that we can't "fall into?"
+            if (!movePiece(0, -1, false)) {
+                //no ? ah, I guess that's where it goes then.
+                commitToBoard();
+                resetFallCycle();
+                return;
+            }
+        }
+
+        resetFallCycle();
+    }
+
+    /**
+     * Will move the piece along the face grid by using the x and y
+     * differentials. Returns true if it was sucessful, or false if it wasn't.
+     *
+     * @param xDiff x grid differential
+     * @param yDiff y grid differential
+     * @param commit true if you want to commit the move, false if you want to test it
+     * @return true if the piece moved, false if it couldn't
+     */
+    public boolean movePiece(int xDiff, int yDiff, boolean commit) {
+        if (mCommitted) {
+            return false;
+        }
+
+        long placement = mPlacement.get();
+        int style = CubeBoardPiecePlacement.getStyle(placement);
+        int rotation = CubeBoardPiecePlacement.getRotation(placement);
+        int targetFaceX = CubeBoardPiecePlacement.getFaceX(placement) + xDiff;
+        int targetFaceY = CubeBoardPiecePlacement.getFaceY(placement) + yDiff;
+
+        boolean collisionDetected = false;
+        boolean slideCollisionDetected = false;
+
+        // are we too far left or right based on the size of the face? deal breaker
+        if (((targetFaceX + CubeBoardPieceShapes.MIN_X[style][rotation]) < 0) ||
+                ((targetFaceX + CubeBoardPieceShapes.MAX_X[style][rotation]) >= mBoard.getSideWidth())) {
+            return false;
+        }
+
+        int[] cellX = CubeBoardPieceShapes.CELL_X[style][rotation];
+        int[] cellY = CubeBoardPieceShapes.CELL_Y[style][rotation];
+
+        // would we go through the floor of the board?
+        if (targetFaceY < 0) {
+            collisionDetected = true;
+        }
+
+        // if there is any collision for any piece in their target spaces,
+        // we need to return false so it doesn't happen
+        for (int i = 0; i < mCellCount; i++) {
+            if (mBoard.isFaceSpaceOccupied(targetFaceX + cellX[i], targetFaceY + cellY[i])) {
+                if (xDiff != 0) {
+                    slideCollisionDetected = true;
+                }
+                collisionDetected = true;
+            }
+
+            // also, if there is an x differential also see if
+            // the x-neighbor below will have any problems visually. we do
+            // this because the block animates "into" the space its going to be soon
+            // occupying
+            if (xDiff != 0 && mFallTimeElapsed != 0) {
+                if (mBoard.isFaceSpaceOccupied(targetFaceX + cellX[i], targetFaceY + cellY[i] - 1)) {
+                    collisionDetected = true;
+                }
+            }
+        }
+
+        // are we potentially trying to toggle a slide maneuver?
+        if (slideCollisionDetected &&
+                getFallProgress() >= SLIDE_SENSITIVIY) {
+            // store the intent to slide for when the next drop happens
+            mSliding = true;
+            mSlideDirection = xDiff;
+        }
+
+        // if there was a collision, party is over
+        if (collisionDetected) {
+            return false;
+        }
+
+        if (commit) {
+            // we've eliminated all collision possibilities, so
+            // change the face position logically
+            mPlacement.set(CubeBoardPiecePlacement.move(placement, xDiff, yDiff));
+
+            // if we are falling, reset the time elapsed
+            if (yDiff < 0) {
+                mFallTimeElapsed = 0;
+            }
+        }
+
+        // we were able to move the piece
+        return true;
+    }
+
+    /**
+     * Makes the piece fall faster than its resting speed.
+     *
+     * @param speedFactor how many times faster you want the piece to fall.
+     */
+    public void modulateSpeed(int speedFactor) {
+        if (mDropping) {
+            // you'd like that huh?
+            return;
+        }
+
+        // we also want to module the elapsed fall time so there is no jitter, so
+        // hold onto the current Y offset
+        float currentYOffset = getFallProgress() * 1.0f; // 1.0f cube size
+
+        // module the current fall speed
+        mFallSpeed = mRestingSpeed / speedFactor;
+
+        // calculate what fall elapsed time should be with the new speed to reach the same offset
+        // to keep the jitter from happening when the fall ratio is calculated
+        mFallTimeElapsed = (int) (currentYOffset * (mFallSpeed * 1.0f)); // 1.0f cube size
+    }
+
+    /**
+     * rotate the piece either clockwise (1) or counterclockwise (-1)
+     * @param direction -1 or 1.
+     * @return true if the piece rotated
+     */
+    public boolean rotate(int direction) {
+        long placement = mPlacement.get();
+        int style = CubeBoardPiecePlacement.getStyle(placement);
+        if (!CubeBoardPieceShapes.CAN_ROTATE[style] || mDropping) {
+            return false;
+        }
+
+        // see if the rotation would cause a collision on the board
+        int rotation = CubeBoardPieceShapes.turn(CubeBoardPiecePlacement.getRotation(placement), direction);
+        int[] cellX = CubeBoardPieceShapes.CELL_X[style][rotation];
+        int[] cellY = CubeBoardPieceShapes.CELL_Y[style][rotation];
+        int faceX = CubeBoardPiecePlacement.getFaceX(placement);
+        int faceY = CubeBoardPiecePlacement.getFaceY(placement);
+        for (int i = 0; i < mCellCount; i++) {
+            if (mBoard.isFaceSpaceOccupied(faceX + cellX[i], faceY + cellY[i])) {
+                return false; // there is a collision, don't do anything.
+            }
+        }
+
+        // then actually do it
+        mPlacement.set(CubeBoardPiecePlacement.rotate(placement, rotation));
+        return true;
+    }
+
+    /**
+     * Moves the piece straight up without checking for collisions, used when the board is
+     * pushed up underneath it.
+     *
+     * @param rows how far to move
+     */
+    void raise(int rows) {
+        mPlacement.set(CubeBoardPiecePlacement.move(mPlacement.get(), 0, rows));
+    }
+
+    /**
+     * Sets a permenant state of a very fast fall speed,
+     * its essentially committing the block
+     */
+    public void drop() {
+        mDropping = true;
+        mFallSpeed = Math.min(DROP_SPEED, mRestingSpeed);
+    }
+
+    /**
+     * Writes the piece's full movement state.
+     *
+     * @param out the buffer to write to
+     */
+    void saveState(ByteBuffer out) {
+        long placement = mPlacement.get();
+        out.put((byte) CubeBoardPiecePlacement.getStyle(placement));
+        out.put((byte) mColor);
+        out.put((byte) CubeBoardPiecePlacement.getRotation(placement));
+        out.putShort((short) CubeBoardPiecePlacement.getFaceX(placement));
+        out.putShort((short) CubeBoardPiecePlacement.getFaceY(placement));
+        out.putInt(mRestingSpeed);
+        out.putInt(mFallSpeed);
+        out.putInt(mFallTimeElapsed);
+        out.put((byte) mSlideDirection);
+        out.put((byte) ((mSliding ? 1 : 0) | (mDropping ? 2 : 0) | (mCommitted ? 4 : 0)));
+    }
+
+    /**
+     * Reads back a piece written by saveState into this one.
+     *
+     * @param in the buffer to read from
+     */
+    void restoreState(ByteBuffer in) {
+        int style = in.get();
+        reset(style, in.get());
+        int rotation = in.get();
+        int faceX = in.getShort();
+        int faceY = in.getShort();
+        if (rotation < 0 || rotation >= CubeBoardPieceShapes.ROTATIONS) {
+            throw new IllegalArgumentException("state holds a piece rotation that doesn't exist");
+        }
+        mPlacement.set(CubeBoardPiecePlacement.pack(style, rotation, faceX, faceY));
+
+        mRestingSpeed = in.getInt();
+        mFallSpeed = in.getInt();
+        mFallTimeElapsed = in.getInt();
+        mSlideDirection = in.get();
+        int flags = in.get();
+        mSliding = (flags & 1) != 0;
+        mDropping = (flags & 2) != 0;
+        mCommitted = (flags & 4) != 0;
+    }
+
+    /**
+     * Do this when we are ready to pour concrete on the piece.
+     */
+    private void commitToBoard() {
+        // kill this piece, the board takes it from here
+        mCommitted = true;
+        mBoard.commitPiece(this);
+    }
+
+    private void resetFallCycle() {
+        // reset all of the fall logic after the piece moved
+        mFallTimeElapsed = 0;
+        mSliding = false;
+    }
+}
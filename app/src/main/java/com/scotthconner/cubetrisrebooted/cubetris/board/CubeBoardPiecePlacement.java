@@ -0,0 +1,70 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+/**
+ * CubeBoardPiecePlacement
+ *
+ * A piece's style, rotation and face position packed into one long. A placement is a plain
+ * value, so a reader that takes one from the piece sees all four parts from the same moment,
+ * without holding the board's lock, and a move is a single swap of one value for another.
+ *
+ * The style and rotation take a byte each, and the face position a signed short each, since
+ * pieces spawn above the board and can be turned off the edge of the face.
+ *
+ * Created by scottc on 4/16/16.
+ */
+public final class CubeBoardPiecePlacement {
+    private CubeBoardPiecePlacement() {
+    }
+
+    public static long pack(int style, int rotation, int faceX, int faceY) {
+        return ((long) (style & 0xFF) << 40) | ((long) (rotation & 0xFF) << 32) |
+                ((long) (faceX & 0xFFFF) << 16) | (faceY & 0xFFFF);
+    }
+
+    public static int getStyle(long placement) {
+        return (int) (placement >>> 40) & 0xFF;
+    }
+
+    public static int getRotation(long placement) {
+        return (int) (placement >>> 32) & 0xFF;
+    }
+
+    public static int getFaceX(long placement) {
+        return (short) (placement >>> 16);
+    }
+
+    public static int getFaceY(long placement) {
+        return (short) placement;
+    }
+
+    /**
+     * @param cell the block index within the piece
+     * @return the block's x position on the face
+     */
+    public static int getCellFaceX(long placement, int cell) {
+        return getFaceX(placement) + CubeBoardPieceShapes.CELL_X[getStyle(placement)][getRotation(placement)][cell];
+    }
+
+    /**
+     * @param cell the block index within the piece
+     * @return the block's y position on the face
+     */
+    public static int getCellFaceY(long placement, int cell) {
+        return getFaceY(placement) + CubeBoardPieceShapes.CELL_Y[getStyle(placement)][getRotation(placement)][cell];
+    }
+
+    /**
+     * @return the placement moved along the face
+     */
+    public static long move(long placement, int xDiff, int yDiff) {
+        return pack(getStyle(placement), getRotation(placement),
+                getFaceX(placement) + xDiff, getFaceY(placement) + yDiff);
+    }
+
+    /**
+     * @return the placement turned to a new rotation where it is
+     */
+    public static long rotate(long placement, int rotation) {
+        return pack(getStyle(placement), rotation, getFaceX(placement), getFaceY(placement));
+    }
+}
@@ -0,0 +1,135 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+/**
+ * CubeBoardPieceShapes
+ *
+ * Every rotation of every piece style in CubeBoardPieceModel.STYLES, worked out once. A piece
+ * only needs its style and rotation index to answer where its blocks are, how far it reaches
+ * and which of its blocks touch whatever is below or beside it.
+ *
+ * Tables are indexed [style][rotation], rotation counts clockwise quarter turns from the style
+ * definition, and cells keep the order of the definition through every turn.
+ *
+ * Created by scottc on 4/13/16.
+ */
+public final class CubeBoardPieceShapes {
+    public static final int ROTATIONS = 4;
+
+    // block offsets around the piece center, [style][rotation][cell]
+    public static final int[][][] CELL_X;
+    public static final int[][][] CELL_Y;
+
+    // how far the blocks reach from the piece center, [style][rotation]
+    public static final int[][] MIN_X;
+    public static final int[][] MAX_X;
+    public static final int[][] MIN_Y;
+    public static final int[][] MAX_Y;
+
+    // bit masks of the cells with no block of their own piece below, left or right of them
+    public static final int[][] BOTTOM_CONTACT;
+    public static final int[][] LEFT_CONTACT;
+    public static final int[][] RIGHT_CONTACT;
+
+    // the square looks the same every way round, so it doesn't turn
+    public static final boolean[] CAN_ROTATE;
+
+    static {
+        int styleCount = CubeBoardPieceModel.STYLES.length;
+        CELL_X = new int[styleCount][ROTATIONS][];
+        CELL_Y = new int[styleCount][ROTATIONS][];
+        MIN_X = new int[styleCount][ROTATIONS];
+        MAX_X = new int[styleCount][ROTATIONS];
+        MIN_Y = new int[styleCount][ROTATIONS];
+        MAX_Y = new int[styleCount][ROTATIONS];
+        BOTTOM_CONTACT = new int[styleCount][ROTATIONS];
+        LEFT_CONTACT = new int[styleCount][ROTATIONS];
+        RIGHT_CONTACT = new int[styleCount][ROTATIONS];
+        CAN_ROTATE = new boolean[styleCount];
+
+        for (int style = 0; style < styleCount; style++) {
+            int[] definition = CubeBoardPieceModel.STYLES[style];
+            int cells = definition.length / 2;
+            CAN_ROTATE[style] = (definition != CubeBoardPieceModel.STYLE_SQUARE);
+
+            for (int rotation = 0; rotation < ROTATIONS; rotation++) {
+                int[] cellX = new int[cells];
+                int[] cellY = new int[cells];
+                for (int i = 0; i < cells; i++) {
+                    int x = definition[i * 2];
+                    int y = definition[i * 2 + 1];
+                    // a clockwise turn, (x, y) -> (y, -x)
+                    for (int turn = 0; turn < rotation; turn++) {
+                        int turned = y;
+                        y = -x;
+                        x = turned;
+                    }
+                    cellX[i] = x;
+                    cellY[i] = y;
+                }
+                CELL_X[style][rotation] = cellX;
+                CELL_Y[style][rotation] = cellY;
+
+                // every style has a block on its center, so the extents always include 0
+                int minX = 0, maxX = 0, minY = 0, maxY = 0;
+                int bottom = 0, left = 0, right = 0;
+                for (int i = 0; i < cells; i++) {
+                    minX = Math.min(minX, cellX[i]);
+                    maxX = Math.max(maxX, cellX[i]);
+                    minY = Math.min(minY, cellY[i]);
+                    maxY = Math.max(maxY, cellY[i]);
+
+                    if (!hasCell(cellX, cellY, cellX[i], cellY[i] - 1)) { bottom |= 1 << i; }
+                    if (!hasCell(cellX, cellY, cellX[i] - 1, cellY[i])) { left |= 1 << i; }
+                    if (!hasCell(cellX, cellY, cellX[i] + 1, cellY[i])) { right |= 1 << i; }
+                }
+                MIN_X[style][rotation] = minX;
+                MAX_X[style][rotation] = maxX;
+                MIN_Y[style][rotation] = minY;
+                MAX_Y[style][rotation] = maxY;
+                BOTTOM_CONTACT[style][rotation] = bottom;
+                LEFT_CONTACT[style][rotation] = left;
+                RIGHT_CONTACT[style][rotation] = right;
+            }
+        }
+    }
+
+    private CubeBoardPieceShapes() {
+    }
+
+    /**
+     * @param rotation  the current rotation
+     * @param direction -1 for counter clockwise, 1 for clockwise
+     * @return the rotation after turning
+     */
+    public static int turn(int rotation, int direction) {
+        return (rotation + direction) & (ROTATIONS - 1);
+    }
+
+    /**
+     * @param style the piece style
+     * @param cellX block offsets to match
+     * @param cellY
+     * @return the rotation with those offsets, or -1 if they aren't a rotation of the style
+     */
+    public static int findRotation(int style, int[] cellX, int[] cellY) {
+        for (int rotation = 0; rotation < ROTATIONS; rotation++) {
+            boolean match = true;
+            for (int i = 0; i < cellX.length && match; i++) {
+                match = CELL_X[style][rotation][i] == cellX[i] && CELL_Y[style][rotation][i] == cellY[i];
+            }
+            if (match) {
+                return rotation;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasCell(int[] cellX, int[] cellY, int x, int y) {
+        for (int i = 0; i < cellX.length; i++) {
+            if (cellX[i] == x && cellY[i] == y) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,17 +5,14 @@ import android.opengl.Matrix;
 
 import com.scotthconner.cubetrisrebooted.cubetris.geometry.CubeLibrary;
 import com.scotthconner.cubetrisrebooted.cubetris.geometry.ExperienceSkyBox;
-import com.scotthconner.cubetrisrebooted.lib.core.Vertex;
+import com.scotthconner.cubetrisrebooted.lib.core.WorkerPool;
 import com.scotthconner.cubetrisrebooted.lib.render.core.Camera;
-import com.scotthconner.cubetrisrebooted.lib.render.core.Light;
-import com.scotthconner.cubetrisrebooted.lib.render.core.Scene;
 import com.scotthconner.cubetrisrebooted.lib.render.shader.ShaderHelper;
 import com.scotthconner.cubetrisrebooted.lib.render.shader.ShaderProgramLibrary;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.Iterator;
 
 /**
  * Contains the vertex buffer object for the cube board.
@@ -23,12 +20,31 @@ import java.util.Iterator;
  * Created by scottc on 3/12/16.
  */
 public class CubeBoardRenderer {
+    // cubes per packing job, fewer than two jobs' worth are packed on the GL thread alone
+    private static final int PACK_CHUNK_CUBES = 128;
+
     private int mMaxCubeCount;
     private FloatBuffer mVertexBuffer;
     private FloatBuffer mLineBuffer;
     private int mVBOID[];
     private float[] mvm;
     private float[] mModelMatrix;
+    private float[] mCubeScratch;   // one cube's vertices, expanded from a frame
+    private float[] mLightWorld;
+    private float[] mLightEye;
+
+    // the frame being packed, and a view of the vertex buffer and a cube's room per job
+    private CubeBoardFrame mPackFrame;
+    private int mPackCubeCount;
+    private FloatBuffer[] mPackBuffers;
+    private float[][] mPackScratch;
+    private final WorkerPool.IJob mPackTask = new WorkerPool.IJob() {
+        public void run(int index) {
+            int first = index * PACK_CHUNK_CUBES;
+            putCubeRange(mPackBuffers[index], mPackFrame, first,
+                    Math.min(mPackCubeCount, first + PACK_CHUNK_CUBES), mPackScratch[index]);
+        }
+    };
 
     // program and shader handles for cubes and walls
     private int renderProgram;
@@ -58,23 +74,22 @@ public class CubeBoardRenderer {
     private int lineMVPHandle;
     private int lineModelMatrixHandle;
 
+    /**
+     * @param maxCubeCount the most cubes a board will hand over at once, see
+     *                     CubeBoard#getMaxCubeCount. grows if a bigger board comes along.
+     */
     public CubeBoardRenderer(int maxCubeCount) {
-        mMaxCubeCount = maxCubeCount;
-        mVBOID = new int[1];
         mvm = new float[16];
         mModelMatrix = new float[16];
-
-        // vertex buffer for walls
-        ByteBuffer bb = ByteBuffer.allocateDirect(
-                mMaxCubeCount * (CubeLibrary.getInstance().getRandomCubeBuffer().length) * ShaderHelper.BYTES_PER_FLOAT);
-        bb.order(ByteOrder.nativeOrder());
-        mVertexBuffer = bb.asFloatBuffer();
+        mCubeScratch = new float[CubeLibrary.getInstance().getRandomCubeBuffer().length];
+        mLightWorld = new float[4];
+        mLightEye = new float[4];
 
         // vertex buffer for lines
         float[] lineBuffer = ExperienceSkyBox.getInstance().calculateLineBuffer();
         ByteBuffer lb = ByteBuffer.allocateDirect(lineBuffer.length * ShaderHelper.BYTES_PER_FLOAT);
         lb.order(ByteOrder.nativeOrder());
-        mLineBuffer = bb.asFloatBuffer();
+        mLineBuffer = lb.asFloatBuffer();
         mLineBuffer.position(0);
         mLineBuffer.put(lineBuffer);
         mLineBuffer.position(0);
@@ -82,9 +97,8 @@ public class CubeBoardRenderer {
         // create the VBO for the wall
         mVBOID = new int[2];
         GLES20.glGenBuffers(2, mVBOID, 0);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOID[0]);
-        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertexBuffer.capacity() * 4,
-                               mVertexBuffer, GLES20.GL_DYNAMIC_DRAW);
+        mMaxCubeCount = 0;
+        ensureCapacity(maxCubeCount);
 
         // create the VBO for the lines
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOID[1]);
@@ -126,47 +140,115 @@ public class CubeBoardRenderer {
         lineModelMatrixHandle = GLES20.glGetUniformLocation(lineRenderProgram, "uModelMatrix");
     }
 
-    public void render(Camera camera, CubeBoard cb) {
-        Scene scene = cb.getScene();
-        CubeInstance[][] cubeBoard = cb.getCubeInstances();
-        Iterator<CubeInstance> extras = cb.getExtraCubes();
-        CubeBoardPiece activePiece = cb.getActivePiece();
-        mVertexBuffer.position(0);
-
-        // pull all of the vertex data into the buffer for board
-        int boardTriangleCount = 0;
-        int fallingTriangleCount = 0;
-        int activePieceTriangleCount = 0;
-        for(int x = 0; x < cubeBoard.length; x++) {
-            for(int y = 0; y < cubeBoard[x].length; y++) {
-                if (null != cubeBoard[x][y]) {
-                    mVertexBuffer.put(cubeBoard[x][y].getVertexBuffer());
-                    boardTriangleCount += 24; // 24 triangles per cube
-                }
-            }
+    /**
+     * Makes sure a board's cubes, the walls, and everything falling off will fit in the vertex
+     * buffer, reallocating it and its VBO if not. Must be called on the GL thread.
+     *
+     * @param maxCubeCount the most cubes that will be handed over at once
+     */
+    public void ensureCapacity(int maxCubeCount) {
+        if (maxCubeCount <= mMaxCubeCount) {
+            return;
         }
+        mMaxCubeCount = maxCubeCount;
+        mVertexBuffer = allocateVertexBuffer(maxCubeCount);
+
+        // every packing job writes through its own view of the buffer
+        int chunks = (maxCubeCount + PACK_CHUNK_CUBES - 1) / PACK_CHUNK_CUBES;
+        mPackBuffers = new FloatBuffer[chunks];
+        mPackScratch = new float[chunks][];
+        for (int x = 0; x < chunks; x++) {
+            mPackBuffers[x] = mVertexBuffer.duplicate();
+            mPackScratch[x] = new float[mCubeScratch.length];
+        }
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOID[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertexBuffer.capacity() * 4,
+                               mVertexBuffer, GLES20.GL_DYNAMIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * @return a native buffer big enough for the cubes and the experience walls
+     */
+    static FloatBuffer allocateVertexBuffer(int maxCubeCount) {
+        int floats = maxCubeCount * CubeLibrary.getInstance().getRandomCubeBuffer().length +
+                ExperienceSkyBox.getInstance().getWallBuffer().length;
+        ByteBuffer bb = ByteBuffer.allocateDirect(floats * ShaderHelper.BYTES_PER_FLOAT);
+        bb.order(ByteOrder.nativeOrder());
+        return bb.asFloatBuffer();
+    }
 
-        // also go ahead and add the experience walls to the board triangle count
-        float[] wallBuffer = ExperienceSkyBox.getInstance().getWallBuffer();
-        mVertexBuffer.put(wallBuffer);
-        boardTriangleCount += 10;
+    /**
+     * Expands a run of a frame's cubes into vertices.
+     *
+     * @param out     the buffer to append to
+     * @param frame   the frame holding the cubes
+     * @param first   the first cube to write
+     * @param count   the number of cubes to write
+     * @param scratch room for one cube's vertices
+     * @return the number of triangles written
+     */
+    static int putCubes(FloatBuffer out, CubeBoardFrame frame, int first, int count, float[] scratch) {
+        float[] transforms = frame.getTransforms();
+        for (int x = first; x < first + count; x++) {
+            CubeInstance.expand(frame.getColor(x), transforms, x * CubeInstance.TRANSFORM_FLOATS, scratch);
+            out.put(scratch);
+        }
+        return count * 24; // 24 triangles per cube
+    }
 
-        // pull in the extra cubes too
-        while(extras.hasNext()) {
-            mVertexBuffer.put(extras.next().getVertexBuffer());
-            fallingTriangleCount += 24; // 24 triangles per cube
+    /**
+     * Expands a run of a frame's cubes into their place in the vertex buffer, which has the
+     * walls between the board's cubes and the rest.
+     *
+     * @param out     a view of the vertex buffer
+     * @param frame   the frame holding the cubes
+     * @param first   the first cube to write
+     * @param last    one past the last cube to write
+     * @param scratch room for one cube's vertices
+     */
+    static void putCubeRange(FloatBuffer out, CubeBoardFrame frame, int first, int last, float[] scratch) {
+        int boardCount = frame.getBoardCubeCount();
+        int boardLast = Math.min(last, boardCount);
+        if (first < boardLast) {
+            out.position(first * scratch.length);
+            putCubes(out, frame, first, boardLast - first, scratch);
         }
+        int rest = Math.max(first, boardCount);
+        if (rest < last) {
+            out.position(rest * scratch.length + ExperienceSkyBox.getInstance().getWallBuffer().length);
+            putCubes(out, frame, rest, last - rest, scratch);
+        }
+    }
 
-        // determine if there is an active piece and add those triangles
-        if (null != activePiece) {
-            float[][] activeCubes = activePiece.getVertexBuffers();
-            for(int x = 0; x < activeCubes.length; x++) {
-                mVertexBuffer.put(activeCubes[x]);
-                activePieceTriangleCount += 24;
-            }
+    /**
+     * Draws a board as it was when the frame was published. Expects the board's rotation to
+     * have been pushed onto the camera, which this pops before drawing the active piece.
+     */
+    public void render(Camera camera, CubeBoardFrame frame) {
+        // pull all of the vertex data into the buffer: the board, the walls, the extra cubes,
+        // and then the active piece if there is one. big boards are packed in chunks on the
+        // worker pool, each chunk into its own part of the buffer
+        int cubeCount = frame.getBoardCubeCount() + frame.getFallingCubeCount() + frame.getActiveCubeCount();
+        if (cubeCount < PACK_CHUNK_CUBES * 2) {
+            putCubeRange(mVertexBuffer, frame, 0, cubeCount, mCubeScratch);
+        } else {
+            mPackFrame = frame;
+            mPackCubeCount = cubeCount;
+            WorkerPool.getInstance().run("cube-pack", mPackTask,
+                    (cubeCount + PACK_CHUNK_CUBES - 1) / PACK_CHUNK_CUBES);
+            mPackFrame = null;
         }
+        mVertexBuffer.position(frame.getBoardCubeCount() * mCubeScratch.length);
+        mVertexBuffer.put(ExperienceSkyBox.getInstance().getWallBuffer());
         mVertexBuffer.position(0);
 
+        // the walls count towards the board's triangles
+        int boardTriangleCount = frame.getBoardCubeCount() * 24 + 10;
+        int fallingTriangleCount = frame.getFallingCubeCount() * 24;
+        int activePieceTriangleCount = frame.getActiveCubeCount() * 24;
+
         // load the program, and the vertex buffer object
         GLES20.glUseProgram(renderProgram);
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOID[0]);
@@ -206,35 +288,14 @@ public class CubeBoardRenderer {
         GLES20.glUniformMatrix4fv(mvmHandle, 1, false, mvm, 0);
         GLES20.glUniformMatrix4fv(modelMatrixHandle, 1, false, camera.getCurrentModelMatrix(), 0);
 
-        // set the light position based on eye space for the sun
-        Vertex slp = scene.getSceneSun().position;
-        float[] lpes = {0f,0f,0f,1.0f};
-        float[] lightPositionWorldSpace = {slp.x, slp.y, slp.z, 1.0f};
-        Matrix.multiplyMV(lpes, 0, camera.getViewMatrix(), 0, lightPositionWorldSpace, 0);
-        GLES20.glUniform3f(lightHandle, lpes[0], lpes[1], lpes[2]);
-        GLES20.glUniform1f(attenuationHandle, scene.getSceneSun().attenuation);
-        GLES20.glUniform1f(lightDimmerHandle, scene.getSceneSun().dimmer);
-
-        // set the light position of the active piece, translated to the board space
-        Light activePieceLight = scene.getLight("active1");
-        slp = activePieceLight.position;
-        float[] lightPositionWorldSpace2 = {slp.x, slp.y, slp.z, 1.0f};
-        Matrix.multiplyMV(lpes, 0, camera.getViewMatrix(), 0, lightPositionWorldSpace2, 0);
-        GLES20.glUniform3f(lightHandle2, lpes[0], lpes[1], lpes[2]);
-        GLES20.glUniform1f(attenuationHandle2, activePieceLight.attenuation);
-        GLES20.glUniform1f(lightDimmerHandle2, activePieceLight.dimmer);
-
-        // set the light position of the active piece, do the same for the previous
-        activePieceLight = scene.getLight("active2");
-        slp = activePieceLight.position;
-        float[] lightPositionWorldSpace3 = {slp.x, slp.y, slp.z, 1.0f};
-        Matrix.multiplyMV(lpes, 0, camera.getViewMatrix(), 0, lightPositionWorldSpace3, 0);
-        GLES20.glUniform3f(lightHandle3, lpes[0], lpes[1], lpes[2]);
-        GLES20.glUniform1f(attenuationHandle3, activePieceLight.attenuation);
-        GLES20.glUniform1f(lightDimmerHandle3, activePieceLight.dimmer);
+        // set the light positions based on eye space: the sun, the active piece, and the
+        // previous piece as it dims
+        setLight(camera, frame, CubeBoardFrame.LIGHT_SUN, lightHandle, attenuationHandle, lightDimmerHandle);
+        setLight(camera, frame, CubeBoardFrame.LIGHT_ACTIVE, lightHandle2, attenuationHandle2, lightDimmerHandle2);
+        setLight(camera, frame, CubeBoardFrame.LIGHT_PREVIOUS, lightHandle3, attenuationHandle3, lightDimmerHandle3);
 
         // set the scene's ambient factor
-        GLES20.glUniform1f(ambientHandle, scene.getAmbientFactor());
+        GLES20.glUniform1f(ambientHandle, frame.getAmbientFactor());
 
         // set the model view projection matrix for final rendering
         GLES20.glUniformMatrix4fv(mvpHandle, 1, false, camera.calculateMVP(), 0);
@@ -270,7 +331,19 @@ public class CubeBoardRenderer {
         GLES20.glDisableVertexAttribArray(rotationHandle);
     }
 
-    public void renderLineGrid(Camera camera, CubeBoard cb) {
+    private void setLight(Camera camera, CubeBoardFrame frame, int light, int positionHandle,
+                          int attenuation, int dimmer) {
+        mLightWorld[0] = frame.getLight(light, 0);
+        mLightWorld[1] = frame.getLight(light, 1);
+        mLightWorld[2] = frame.getLight(light, 2);
+        mLightWorld[3] = 1.0f;
+        Matrix.multiplyMV(mLightEye, 0, camera.getViewMatrix(), 0, mLightWorld, 0);
+        GLES20.glUniform3f(positionHandle, mLightEye[0], mLightEye[1], mLightEye[2]);
+        GLES20.glUniform1f(attenuation, frame.getLight(light, 3));
+        GLES20.glUniform1f(dimmer, frame.getLight(light, 4));
+    }
+
+    public void renderLineGrid(Camera camera) {
         // load the program, and the vertex buffer object
         GLES20.glUseProgram(lineRenderProgram);
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOID[1]);
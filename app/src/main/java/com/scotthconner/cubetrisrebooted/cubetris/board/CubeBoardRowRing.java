@@ -0,0 +1,121 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+/**
+ * CubeBoardRowRing
+ *
+ * Maps logical board rows (0 at the bottom) onto the physical rows of whatever is holding the
+ * slots. The physical rows never move; clearing a row unlinks it and re-links it as the empty
+ * top row, and inserting a row at the bottom re-links the top row underneath everything else.
+ * Whatever sits in a row is never copied, only the small map is touched.
+ *
+ * The map is a ring, so the rows can slide up or down as a whole by moving where the ring
+ * starts. Unlinking a row only shifts the map entries on the shorter side of it.
+ *
+ * Created by scottc on 4/14/16.
+ */
+public class CubeBoardRowRing {
+    private final int[] mRing;  // physical rows, logical row y lives at mRing[(mStart + y) % height]
+    private int mStart;
+
+    /**
+     * @param boardHeight the number of rows
+     */
+    public CubeBoardRowRing(int boardHeight) {
+        mRing = new int[boardHeight];
+        reset();
+    }
+
+    public int getBoardHeight() {
+        return mRing.length;
+    }
+
+    /**
+     * Puts every row back on the physical row of the same index.
+     */
+    public void reset() {
+        for (int i = 0; i < mRing.length; i++) {
+            mRing[i] = i;
+        }
+        mStart = 0;
+    }
+
+    /**
+     * @param y the logical board row
+     * @return the physical row it is stored in
+     */
+    public int get(int y) {
+        return mRing[slot(y)];
+    }
+
+    /**
+     * Unlinks a row from the board. Everything above it moves down by one, and its physical row
+     * becomes the top row, so the caller needs to empty it.
+     *
+     * @param y the logical board row to remove
+     * @return the physical row that is now on top
+     */
+    public int remove(int y) {
+        int height = mRing.length;
+        int removed = mRing[slot(y)];
+        if (y < height / 2) {
+            // bring the rows below up over it, then let the ring start one later. the old first
+            // slot becomes the last, which is where the removed row belongs
+            for (int i = y; i > 0; i--) {
+                mRing[slot(i)] = mRing[slot(i - 1)];
+            }
+            mRing[mStart] = removed;
+            mStart = slot(1);
+        } else {
+            for (int i = y; i < height - 1; i++) {
+                mRing[slot(i)] = mRing[slot(i + 1)];
+            }
+            mRing[slot(height - 1)] = removed;
+        }
+        return removed;
+    }
+
+    /**
+     * Unlinks several rows from the board at once.
+     *
+     * @param rows  the logical rows to remove, in ascending order
+     * @param count how many of the rows to use
+     */
+    public void remove(int[] rows, int count) {
+        // top down, so the rows still to go keep their logical index
+        for (int i = count - 1; i >= 0; i--) {
+            remove(rows[i]);
+        }
+    }
+
+    /**
+     * Links a row in underneath the bottom of the board. Everything moves up by one, and the top
+     * row's physical row becomes the new bottom row, so the caller needs to refill it.
+     *
+     * @return the physical row that is now on the bottom
+     */
+    public int insertBottom() {
+        mStart = slot(mRing.length - 1);
+        return mRing[mStart];
+    }
+
+    /**
+     * @param out somewhere to keep the map, at least getBoardHeight() + 1 long
+     */
+    public void copyTo(int[] out) {
+        System.arraycopy(mRing, 0, out, 0, mRing.length);
+        out[mRing.length] = mStart;
+    }
+
+    /**
+     * @param in a map written by copyTo
+     */
+    public void copyFrom(int[] in) {
+        System.arraycopy(in, 0, mRing, 0, mRing.length);
+        mStart = in[mRing.length];
+    }
+
+    private int slot(int y) {
+        int slot = mStart + y;
+        return (slot >= mRing.length) ? slot - mRing.length : slot;
+    }
+}
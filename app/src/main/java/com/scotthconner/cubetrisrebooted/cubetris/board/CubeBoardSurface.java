@@ -0,0 +1,242 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+/**
+ * CubeBoardSurface
+ *
+ * The shape of the top of the stack: how tall each column is, how many empty slots are
+ * buried under them, how deep the wells between them are and how bumpy the whole thing is,
+ * all the way around the wrapped board. CubeBoardModel keeps it up to date as slots fill and
+ * rows clear, so scoring, previews and bots can ask about the board without scanning it.
+ *
+ * Filling a slot only touches its column and the two next to it. Clearing full rows lowers
+ * every column by the number of rows, except for columns whose top slot was cleared, which
+ * are the only ones that need to look down for their new top.
+ *
+ * Created by scottc on 4/14/16.
+ */
+public class CubeBoardSurface {
+    private final int mBoardWidth;
+    private final int mBoardHeight;
+
+    // column heights and filled slot counts
+    private final int[] mHeights;
+    private final int[] mFills;
+
+    // running totals
+    private int mAggregateHeight;
+    private int mFillCount;
+    private int mBumpiness;
+    private int mWellDepthSum;
+
+    /**
+     * @param boardWidth  the number of columns, wrapping around from the last to the first
+     * @param boardHeight the height of the board
+     */
+    public CubeBoardSurface(int boardWidth, int boardHeight) {
+        mBoardWidth = boardWidth;
+        mBoardHeight = boardHeight;
+        mHeights = new int[boardWidth];
+        mFills = new int[boardWidth];
+    }
+
+    public int getBoardWidth() {
+        return mBoardWidth;
+    }
+
+    /**
+     * @param x the true board x position
+     * @return one more than the highest filled slot in the column, 0 if it is empty
+     */
+    public int getColumnHeight(int x) {
+        return mHeights[x];
+    }
+
+    /**
+     * @return the tallest column's height
+     */
+    public int getMaxHeight() {
+        int max = 0;
+        for (int x = 0; x < mBoardWidth; x++) {
+            max = Math.max(max, mHeights[x]);
+        }
+        return max;
+    }
+
+    /**
+     * @return the heights of every column added up
+     */
+    public int getAggregateHeight() {
+        return mAggregateHeight;
+    }
+
+    /**
+     * Unlike CubeBoardCavityMap#getHoleCount, a slot that can still be reached from the side
+     * counts, since a piece can't be dropped into it.
+     *
+     * @return the number of empty slots with a filled slot somewhere above them
+     */
+    public int getHoleCount() {
+        return mAggregateHeight - mFillCount;
+    }
+
+    /**
+     * @return the height differences between every pair of neighbouring columns added up
+     */
+    public int getBumpiness() {
+        return mBumpiness;
+    }
+
+    /**
+     * @param x the true board x position
+     * @return how far the column sits below the lower of its two neighbours, 0 if it doesn't
+     */
+    public int getWellDepth(int x) {
+        return wellDepth(x);
+    }
+
+    /**
+     * @return the well depths of every column added up
+     */
+    public int getWellDepthSum() {
+        return mWellDepthSum;
+    }
+
+    /**
+     * @return the deepest well on the board
+     */
+    public int getDeepestWell() {
+        int deepest = 0;
+        for (int x = 0; x < mBoardWidth; x++) {
+            deepest = Math.max(deepest, wellDepth(x));
+        }
+        return deepest;
+    }
+
+    /**
+     * Records a slot that was empty being filled.
+     *
+     * @param x the true board x position
+     * @param y the board y position
+     */
+    void fill(int x, int y) {
+        mFills[x]++;
+        mFillCount++;
+        if (y + 1 > mHeights[x]) {
+            setColumnHeight(x, y + 1);
+        }
+    }
+
+    /**
+     * Records a slot that was filled being emptied. If it was the column's top slot, the column
+     * looks down for its new top.
+     *
+     * @param x         the true board x position
+     * @param y         the board y position
+     * @param occupancy the board after the slot was emptied
+     */
+    void empty(int x, int y, CubeBoardOccupancy occupancy) {
+        mFills[x]--;
+        mFillCount--;
+        if (y + 1 == mHeights[x]) {
+            while (y >= 0 && !occupancy.isOccupied(x, y)) {
+                y--;
+            }
+            setColumnHeight(x, y + 1);
+        }
+    }
+
+    /**
+     * Records full rows being cleared. Every column reached the highest of them, and loses a
+     * filled slot per row.
+     *
+     * @param highest   the highest of the cleared rows
+     * @param count     the number of rows cleared
+     * @param occupancy the board after the rows were removed
+     */
+    void removeFullRows(int highest, int count, CubeBoardOccupancy occupancy) {
+        mAggregateHeight = 0;
+        mFillCount -= count * mBoardWidth;
+        for (int x = 0; x < mBoardWidth; x++) {
+            mFills[x] -= count;
+            if (mHeights[x] > highest + 1) {
+                mHeights[x] -= count;
+            } else {
+                // the top slot went with the rows, so find whatever is left underneath
+                int y = highest - count;
+                while (y >= 0 && !occupancy.isOccupied(x, y)) {
+                    y--;
+                }
+                mHeights[x] = y + 1;
+            }
+            mAggregateHeight += mHeights[x];
+        }
+        sumNeighbours();
+    }
+
+    /**
+     * Works everything out again from scratch, for when the board changes wholesale.
+     *
+     * @param occupancy the board to read
+     */
+    void rebuild(CubeBoardOccupancy occupancy) {
+        mAggregateHeight = 0;
+        mFillCount = 0;
+        for (int x = 0; x < mBoardWidth; x++) {
+            mHeights[x] = 0;
+            mFills[x] = 0;
+            for (int y = 0; y < mBoardHeight; y++) {
+                if (occupancy.isOccupied(x, y)) {
+                    mHeights[x] = y + 1;
+                    mFills[x]++;
+                }
+            }
+            mAggregateHeight += mHeights[x];
+            mFillCount += mFills[x];
+        }
+        sumNeighbours();
+    }
+
+    /**
+     * Works out the totals that compare neighbouring columns from the heights.
+     */
+    private void sumNeighbours() {
+        mBumpiness = 0;
+        mWellDepthSum = 0;
+        for (int x = 0; x < mBoardWidth; x++) {
+            mBumpiness += step(x);
+            mWellDepthSum += wellDepth(x);
+        }
+    }
+
+    /**
+     * Changes a column's height, taking back and re-adding what it and its neighbours put into
+     * the running totals.
+     */
+    private void setColumnHeight(int x, int height) {
+        int left = (x == 0) ? mBoardWidth - 1 : x - 1;
+        int right = (x == mBoardWidth - 1) ? 0 : x + 1;
+
+        mBumpiness -= step(left) + step(x);
+        mWellDepthSum -= wellDepth(left) + wellDepth(x) + wellDepth(right);
+
+        mAggregateHeight += height - mHeights[x];
+        mHeights[x] = height;
+
+        mBumpiness += step(left) + step(x);
+        mWellDepthSum += wellDepth(left) + wellDepth(x) + wellDepth(right);
+    }
+
+    /**
+     * @return the height difference between a column and the one to its right
+     */
+    private int step(int x) {
+        int right = (x == mBoardWidth - 1) ? 0 : x + 1;
+        return Math.abs(mHeights[x] - mHeights[right]);
+    }
+
+    private int wellDepth(int x) {
+        int left = (x == 0) ? mBoardWidth - 1 : x - 1;
+        int right = (x == mBoardWidth - 1) ? 0 : x + 1;
+        return Math.max(0, Math.min(mHeights[left], mHeights[right]) - mHeights[x]);
+    }
+}
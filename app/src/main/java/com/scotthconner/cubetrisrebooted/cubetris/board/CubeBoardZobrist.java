@@ -0,0 +1,147 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStream;
+
+/**
+ * CubeBoardZobrist
+ *
+ * A 64 bit Zobrist hash of a board's slots, kept up to date as they change, so positions can
+ * be told apart without comparing every slot. Solvers use it to spot boards they have seen
+ * before, and replays and simulations compare it each tick to catch a game drifting.
+ *
+ * Every (column, color) has a key, and a row's hash is the keys of its filled slots xor'ed
+ * together. Rows live in physical storage that never moves, so their hashes never need
+ * redoing when rows clear; the board hash mixes each row's hash with a key for where the row
+ * currently sits, which is cheap to redo for the whole board when the row ring changes.
+ *
+ * Keys come from fixed constants rather than the game's seed, so hashes can be compared
+ * across games, threads and runs.
+ *
+ * Created by scottc on 4/16/16.
+ */
+public final class CubeBoardZobrist {
+    private static final long CELL_SEED  = 0x3C6EF372FE94F82BL;
+    private static final long ROW_SEED   = 0xA54FF53A5F1D36F1L;
+    private static final long FACE_SEED  = 0x510E527FADE682D1L;
+    private static final long PIECE_SEED = 0x9B05688C2B3E6C1FL;
+    private static final long WORD_SEED  = 0x1F83D9ABFB41BD6BL;
+    private static final long GAMMA     = 0x9E3779B97F4A7C15L;
+
+    private final long[] mRowHashes;  // by physical row
+    private long mBoardHash;
+
+    /**
+     * @param boardHeight the number of rows
+     */
+    public CubeBoardZobrist(int boardHeight) {
+        mRowHashes = new long[boardHeight];
+        mBoardHash = 0;
+    }
+
+    /**
+     * @return the hash of every slot on the board, 0 when it is empty
+     */
+    public long getBoardHash() {
+        return mBoardHash;
+    }
+
+    /**
+     * @param face the active face
+     * @return the key to xor in for the face
+     */
+    public static long faceKey(int face) {
+        return key(FACE_SEED, face);
+    }
+
+    /**
+     * @param placement the piece's CubeBoardPiecePlacement
+     * @return the key to xor in for a piece in play
+     */
+    public static long pieceKey(long placement) {
+        return key(PIECE_SEED, placement);
+    }
+
+    /**
+     * Hashes which slots of a bitboard are filled, for searches that only keep occupancy.
+     * It isn't comparable with getBoardHash, which knows about colors.
+     *
+     * @param occupancy the board to hash
+     * @return the hash, 0 when the board is empty
+     */
+    public static long hash(CubeBoardOccupancy occupancy) {
+        long hash = 0;
+        int words = occupancy.getRowWordCount();
+        for (int y = 0; y < occupancy.getBoardHeight(); y++) {
+            for (int w = 0; w < words; w++) {
+                long word = occupancy.getRowWord(y, w);
+                if (0 != word) {
+                    hash ^= RandomStream.mix(word ^ key(WORD_SEED, y * words + w));
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Fills or empties a slot.
+     *
+     * @param row   the physical row
+     * @param y     the board row it is at
+     * @param x     the true board x position
+     * @param value the slot's color code + 1
+     */
+    void toggle(int row, int y, int x, int value) {
+        mBoardHash ^= rowTerm(mRowHashes[row], y);
+        mRowHashes[row] ^= key(CELL_SEED, (x << 8) | (value & 0xFF));
+        mBoardHash ^= rowTerm(mRowHashes[row], y);
+    }
+
+    /**
+     * Works a row's hash out again from its slots. The board hash needs a relink afterwards.
+     *
+     * @param row   the physical row
+     * @param cells the row's color codes + 1, 0 when empty
+     */
+    void setRow(int row, byte[] cells) {
+        long hash = 0;
+        for (int x = 0; x < cells.length; x++) {
+            if (0 != cells[x]) {
+                hash ^= key(CELL_SEED, (x << 8) | (cells[x] & 0xFF));
+            }
+        }
+        mRowHashes[row] = hash;
+    }
+
+    /**
+     * Works the board hash out again from the row hashes, after rows have moved.
+     *
+     * @param ring where each row is now
+     */
+    void relink(CubeBoardRowRing ring) {
+        mBoardHash = 0;
+        for (int y = 0; y < mRowHashes.length; y++) {
+            mBoardHash ^= rowTerm(mRowHashes[ring.get(y)], y);
+        }
+    }
+
+    /**
+     * Works everything out again from scratch.
+     *
+     * @param rows the physical rows
+     * @param ring where each row is
+     */
+    void rebuild(byte[][] rows, CubeBoardRowRing ring) {
+        for (int row = 0; row < rows.length; row++) {
+            setRow(row, rows[row]);
+        }
+        relink(ring);
+    }
+
+    private static long rowTerm(long rowHash, int y) {
+        return (0 == rowHash) ? 0 : RandomStream.mix(rowHash ^ key(ROW_SEED, y));
+    }
+
+    private static long key(long seed, long index) {
+        return RandomStream.mix(seed + index * GAMMA);
+    }
+}
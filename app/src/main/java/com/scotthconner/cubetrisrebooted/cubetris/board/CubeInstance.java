@@ -5,9 +5,10 @@ import com.scotthconner.cubetrisrebooted.lib.render.core.Camera;
 import com.scotthconner.cubetrisrebooted.lib.render.core.SceneObject;
 
 /**
- * This class represents the cube, and will manage its own vertex buffer for use
- * by the CubeBoardRenderer. It does not have the capability to be rendered on its own.
- * Calling #render will render the cube's children.
+ * This class represents the cube. The update thread writes out its transform and color with
+ * writeTransform, and the CubeBoardRenderer expands that into vertices on the render thread.
+ * It does not have the capability to be rendered on its own. Calling #render will render the
+ * cube's children.
  *
  * Created by scottc on 3/10/16.
  */
@@ -15,11 +16,14 @@ public class CubeInstance extends SceneObject {
     // (x, y, z), (nx, ny, nz), (r, g, b, a), (offset-x, offset-y, offset-z), (rx,ry,rz,a)
     public static int VERTEX_STRIDE = (3 + 3 + 4 + 3 + 4) * 4;
 
+    // the transform written by writeTransform: position, rotation axis and angle, flash
+    public static final int TRANSFORM_FLOATS = 8;
+    private static final int T_X = 0, T_Y = 1, T_Z = 2;
+    private static final int T_AXIS_X = 3, T_AXIS_Y = 4, T_AXIS_Z = 5, T_ANGLE = 6;
+    private static final int T_FLASH = 7;
+
     // the float array that contains the vertex, normal, and color information
-    private float[] mVertexBuffer;
     private float[] mReferenceBuffer;
-    private int mVertexCount;
-    private boolean mDirty;
 
     // movement
     private Vertex mVelocity;
@@ -47,11 +51,8 @@ public class CubeInstance extends SceneObject {
         mDimElapsed = 0.0f;
         mDimSpeed = 0.0f;
 
-        // generate the vertex buffer and copy in the origin buffer
+        // the origin buffer holds the cube's color, it is shared and never changed
         mReferenceBuffer = referenceBuffer;
-        mVertexBuffer =  mReferenceBuffer.clone();
-        mDirty = false;
-        mVertexCount = mVertexBuffer.length / (VERTEX_STRIDE/4);
 
         // default the mPosition to the origin
         mPosition = new Vertex();
@@ -96,7 +97,15 @@ public class CubeInstance extends SceneObject {
      */
     public void setPosition(float x, float y, float z) {
         mPosition.set(x, y, z);
-        mDirty = true;
+    }
+
+    /**
+     * Moves the cube to a new height.
+     *
+     * @param y y mPosition
+     */
+    public void setPositionY(float y) {
+        mPosition.y = y;
     }
 
     public void setDimTarget(float d, float dimSpeed) {
@@ -117,16 +126,6 @@ public class CubeInstance extends SceneObject {
         mRotationAxis.x = x;
         mRotationAxis.y = y;
         mRotationAxis.z = z;
-
-        // dirty the buffer by setting the rotation axis
-        for(int i = 0; i < mVertexCount; i++) {
-            mVertexBuffer[VERTEX_STRIDE / 4 * i + 13] = mRotationAxis.x;
-            mVertexBuffer[VERTEX_STRIDE / 4 * i + 14] = mRotationAxis.y;
-            mVertexBuffer[VERTEX_STRIDE / 4 * i + 15] = mRotationAxis.z;
-            mVertexBuffer[VERTEX_STRIDE / 4 * i + 16] = 0;
-        }
-
-        mDirty = true;
         mRotationSpeed = degrees;
     }
 
@@ -137,7 +136,6 @@ public class CubeInstance extends SceneObject {
         // move the cube based on its velocity
         if (mVelocity.x != 0 || mVelocity.y != 0 || mVelocity.z != 0) {
             mPosition.add(mVelocity.x * secondsDelta, mVelocity.y * secondsDelta, mVelocity.z * secondsDelta);
-            mDirty = true;
         }
 
         // accelerate the velocity
@@ -148,7 +146,6 @@ public class CubeInstance extends SceneObject {
         // rotate the cube based on speed
         if (mRotationSpeed != 0) {
             mRotation += mRotationSpeed * msDelta / 1000.0f;
-            mDirty = true;
         }
 
         // this means we are in flashing mode
@@ -160,8 +157,6 @@ public class CubeInstance extends SceneObject {
                 mFlashElapsedMs = 0;
                 mFlashDurationMs = 0;
             }
-
-            mDirty = true;
         }
 
         // update the dim
@@ -172,8 +167,6 @@ public class CubeInstance extends SceneObject {
                 mDimElapsed = 0;
                 mDimSpeed = 0;
             }
-
-            mDirty = true;
         }
 
         // update the children of the cube like a good scene object would
@@ -201,38 +194,61 @@ public class CubeInstance extends SceneObject {
         mFlashElapsedMs = 0;
     }
 
-    public float[] getVertexBuffer() {
-        calculateVertexBuffer();
-        return mVertexBuffer;
+    /**
+     * @return the shared vertex buffer for the cube's color
+     */
+    public float[] getReferenceBuffer() {
+        return mReferenceBuffer;
     }
 
-    private void calculateVertexBuffer() {
-        if (mDirty) {
-            float[] rotationBuffer = {0.0f, 0.0f, 0.0f, 1.0f};
-            float[] vertexHolder   = {0.0f, 0.0f, 0.0f, 1.0f};
-
-            float flashPercent = (mFlashDurationMs != mFlashElapsedMs) ?
-                    (float)Math.sin((Math.PI - (Math.PI * ((float)mFlashElapsedMs/(float)mFlashDurationMs)))) : 0.0f;
-
-            for(int x = 0; x < mVertexCount; x++) {
-                // set the model offset
-                mVertexBuffer[VERTEX_STRIDE / 4 * x + 10] = mPosition.x;
-                mVertexBuffer[VERTEX_STRIDE / 4 * x + 11] = mPosition.y;
-                mVertexBuffer[VERTEX_STRIDE / 4 * x + 12] = mPosition.z;
-
-                // set the model rotation angle
-                mVertexBuffer[VERTEX_STRIDE / 4 * x + 16] = mRotation;
-
-                // update the color based on the flash percentage.. red, green, and blue
-                mVertexBuffer[VERTEX_STRIDE/4 * x + 6] = mReferenceBuffer[VERTEX_STRIDE/4 * x + 6] +
-                        (1.0f - mReferenceBuffer[VERTEX_STRIDE/4 * x + 6]) * flashPercent;
-                mVertexBuffer[VERTEX_STRIDE/4 * x + 7] = mReferenceBuffer[VERTEX_STRIDE/4 * x + 7] +
-                        (1.0f - mReferenceBuffer[VERTEX_STRIDE/4 * x + 7]) * flashPercent;
-                mVertexBuffer[VERTEX_STRIDE/4 * x + 8] = mReferenceBuffer[VERTEX_STRIDE/4 * x + 8] +
-                        (1.0f - mReferenceBuffer[VERTEX_STRIDE/4 * x + 8]) * flashPercent;
-            }
+    /**
+     * Writes where the cube is, how it's turned and how far through a flash it is, everything
+     * the renderer needs besides its color.
+     *
+     * @param out    the array to write into
+     * @param offset where to write the TRANSFORM_FLOATS floats
+     */
+    public void writeTransform(float[] out, int offset) {
+        out[offset + T_X] = mPosition.x;
+        out[offset + T_Y] = mPosition.y;
+        out[offset + T_Z] = mPosition.z;
+        out[offset + T_AXIS_X] = mRotationAxis.x;
+        out[offset + T_AXIS_Y] = mRotationAxis.y;
+        out[offset + T_AXIS_Z] = mRotationAxis.z;
+        out[offset + T_ANGLE] = mRotation;
+        out[offset + T_FLASH] = (mFlashDurationMs != mFlashElapsedMs) ?
+                (float)Math.sin((Math.PI - (Math.PI * ((float)mFlashElapsedMs/(float)mFlashDurationMs)))) : 0.0f;
+    }
 
-            mDirty = false;
+    /**
+     * Builds a cube's vertices from its color and a transform written by writeTransform.
+     *
+     * @param referenceBuffer the cube's color, see getReferenceBuffer
+     * @param transforms      the array holding the transform
+     * @param offset          where the transform starts
+     * @param out             receives the vertices, at least as long as the reference buffer
+     */
+    public static void expand(float[] referenceBuffer, float[] transforms, int offset, float[] out) {
+        System.arraycopy(referenceBuffer, 0, out, 0, referenceBuffer.length);
+
+        int stride = VERTEX_STRIDE / 4;
+        float flashPercent = transforms[offset + T_FLASH];
+        for (int v = 0; v < referenceBuffer.length; v += stride) {
+            // set the model offset, rotation axis and angle
+            out[v + 10] = transforms[offset + T_X];
+            out[v + 11] = transforms[offset + T_Y];
+            out[v + 12] = transforms[offset + T_Z];
+            out[v + 13] = transforms[offset + T_AXIS_X];
+            out[v + 14] = transforms[offset + T_AXIS_Y];
+            out[v + 15] = transforms[offset + T_AXIS_Z];
+            out[v + 16] = transforms[offset + T_ANGLE];
+
+            // update the color based on the flash percentage.. red, green, and blue
+            if (flashPercent != 0) {
+                out[v + 6] += (1.0f - out[v + 6]) * flashPercent;
+                out[v + 7] += (1.0f - out[v + 7]) * flashPercent;
+                out[v + 8] += (1.0f - out[v + 8]) * flashPercent;
+            }
         }
     }
 
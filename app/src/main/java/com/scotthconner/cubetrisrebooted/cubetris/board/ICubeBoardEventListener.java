@@ -7,18 +7,21 @@ package com.scotthconner.cubetrisrebooted.cubetris.board;
  * experiences. An abstracted way of processing board messages to reduce coupling
  * between board logic and gameplay experience.
  *
+ * Events are handed out once per update, on the game thread, in the order they happened. The
+ * event carries what the board looked like at the time, the board itself may have moved on.
+ *
  * Created by scottc on 2/11/16.
  */
 public interface ICubeBoardEventListener {
-    public void onBoardRotate(CubeBoard cubeBoard);
-    public void onBoardRotateBlock(CubeBoard cubeBoard);
+    public void onBoardRotate(CubeBoard cubeBoard, CubeBoardEvent event);
+    public void onBoardRotateBlock(CubeBoard cubeBoard, CubeBoardEvent event);
 
-    public void onPieceDrop(CubeBoard cubeBoard);
-    public void onPieceSlide(CubeBoard cubeBoard);
-    public void onPieceHurry(CubeBoard cubeBoard);
-    public void onPieceMove(CubeBoard cubeBoard);
-    public void onPieceRotate(CubeBoard cubeBoard);
-    public void onPieceCommit(CubeBoard cubeBoard);
+    public void onPieceDrop(CubeBoard cubeBoard, CubeBoardEvent event);
+    public void onPieceSlide(CubeBoard cubeBoard, CubeBoardEvent event);
+    public void onPieceHurry(CubeBoard cubeBoard, CubeBoardEvent event);
+    public void onPieceMove(CubeBoard cubeBoard, CubeBoardEvent event);
+    public void onPieceRotate(CubeBoard cubeBoard, CubeBoardEvent event);
+    public void onPieceCommit(CubeBoard cubeBoard, CubeBoardEvent event);
 
-    public void onLineComplete(CubeBoard cubeBoard);
+    public void onLineComplete(CubeBoard cubeBoard, CubeBoardEvent event);
 }
@@ -0,0 +1,31 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+/**
+ *
+ * Allows an object to follow everything that happens to a CubeBoardModel. CubeBoard uses this to
+ * keep its renderable cubes in step with the rules model, and to forward the gameplay events on
+ * to its ICubeBoardEventListeners. Headless users (tests, bots) can listen directly.
+ *
+ * Created by scottc on 4/5/16.
+ */
+public interface ICubeBoardModelListener {
+    // board structure
+    public void onPieceSpawn(CubeBoardModel model);
+    public void onPieceCellCommit(CubeBoardModel model, int cell, int boardX, int boardY);
+    public void onCellFill(CubeBoardModel model, int boardX, int boardY, int color);
+    public void onRowClear(CubeBoardModel model, int boardY);
+    public void onRowInsert(CubeBoardModel model);
+
+    // gameplay, the same moments ICubeBoardEventListener describes
+    public void onBoardRotate(CubeBoardModel model);
+    public void onBoardRotateBlock(CubeBoardModel model);
+
+    public void onPieceDrop(CubeBoardModel model);
+    public void onPieceSlide(CubeBoardModel model);
+    public void onPieceHurry(CubeBoardModel model);
+    public void onPieceMove(CubeBoardModel model);
+    public void onPieceRotate(CubeBoardModel model);
+    public void onPieceCommit(CubeBoardModel model);
+
+    public void onLineComplete(CubeBoardModel model);
+}
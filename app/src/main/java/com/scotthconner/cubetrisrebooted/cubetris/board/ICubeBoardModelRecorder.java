@@ -0,0 +1,22 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+/**
+ *
+ * Sees every call that can change a CubeBoardModel, in the order the model applied them, so
+ * they can be played back later. Each call is made while the model is locked. Inputs are
+ * reported whether or not they succeeded, since failed inputs still change piece state.
+ *
+ * Created by scottc on 4/7/16.
+ */
+public interface ICubeBoardModelRecorder {
+    // lifecycle
+    public void onStart(CubeBoardModel model);
+    public void onUpdate(CubeBoardModel model, long msDelta);
+
+    // inputs
+    public void onRotate(int direction);
+    public void onRotatePiece(int direction);
+    public void onMovePiece(int xDiff, int yDiff);
+    public void onModulePieceSpeed(int speedFactor);
+    public void onDropActivePiece();
+}
@@ -0,0 +1,252 @@
+package com.scotthconner.cubetrisrebooted.cubetris.controllers;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardPieceModel;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubePlacement;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeSolver;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeWeightedHeuristic;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.ICubePlacementHeuristic;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+import com.scotthconner.cubetrisrebooted.lib.gamestate.IPlayerController;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * CubeBotController
+ *
+ * A player controller that plays the board by itself. When a piece spawns the game is copied
+ * and handed to a background thread, which runs the solver with deeper and deeper lookahead
+ * until the think budget runs out. The chosen moves are then fed to the board one at a time
+ * from update(), the same way a player's button presses would be.
+ *
+ * update() never waits on the thinking thread, and the thinking thread never touches the live
+ * board, so the model stays with the game thread that updates it.
+ *
+ * Created by scottc on 4/12/16.
+ */
+public class CubeBotController implements IPlayerController {
+    public static final long DEFAULT_THINK_BUDGET_MS = 150;
+    public static final long DEFAULT_MOVE_DELAY_MS = 60;
+    public static final int DEFAULT_BEAM_WIDTH = 8;
+
+    private final CubeBoardModel mModel;
+    private final long mThinkBudgetMs;
+    private final long mMoveDelayMs;
+    private final int mBeamWidth;
+
+    // thinking happens on its own thread, on its own copy of the game
+    private final ExecutorService mExecutor;
+    private final CubeSolver mSolver;
+    private final CubeBoardModel mSnapshot;
+    private final ByteBuffer mSnapshotBuffer;
+    private Future<CubePlacement> mThinking;
+    private int mThinkingPiece;
+
+    // the plan being played out
+    private CubePlacement mPlan;
+    private int mPlanPiece;
+    private int mPlanMove;
+    private long mMoveTimer;
+
+    // how deep the last think got
+    private volatile int mLastLookahead;
+
+    public CubeBotController(CubeBoardModel model) {
+        this(model, new CubeWeightedHeuristic(), DEFAULT_THINK_BUDGET_MS, DEFAULT_MOVE_DELAY_MS, DEFAULT_BEAM_WIDTH);
+    }
+
+    /**
+     * @param model         the board to play
+     * @param heuristic     how the solver scores boards
+     * @param thinkBudgetMs roughly how long to think about each piece
+     * @param moveDelayMs   how long to wait between inputs
+     * @param beamWidth     boards kept at each depth of the search
+     */
+    public CubeBotController(CubeBoardModel model, ICubePlacementHeuristic heuristic,
+                             long thinkBudgetMs, long moveDelayMs, int beamWidth) {
+        mModel = model;
+        mThinkBudgetMs = thinkBudgetMs;
+        mMoveDelayMs = moveDelayMs;
+        mBeamWidth = beamWidth;
+
+        mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CubeBotController");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mSolver = new CubeSolver(model.getSideCount(), model.getSideWidth(), model.getBoardHeight(), heuristic, 1);
+        mSnapshot = new CubeBoardModel(model.getSideCount(), model.getSideWidth(), model.getBoardHeight(),
+                model.getColorCount(), new RandomStreams(0));
+        mSnapshotBuffer = ByteBuffer.allocate(model.getMaxStateSize());
+    }
+
+    /**
+     * @return the lookahead the last finished think reached, -1 if it ran out of time before
+     * finding anything
+     */
+    public int getLastLookahead() {
+        return mLastLookahead;
+    }
+
+    /**
+     * @return true while the background thread is working on a piece
+     */
+    public boolean isThinking() {
+        return null != mThinking;
+    }
+
+    /**
+     * Plays the board. Call this from the thread that updates the board, every frame.
+     *
+     * @param msDelta change since last update
+     */
+    public void update(long msDelta) {
+        if (mModel.isGameOver()) {
+            return;
+        }
+
+        CubeBoardPieceModel piece = mModel.getActivePiece();
+        if (null == piece || piece.isCommitted() || piece.isDropping()) {
+            return;
+        }
+        int pieceCount = mModel.getPieceCount();
+
+        // pick up the answer if it is ready, but never wait for it
+        if (null != mThinking) {
+            if (!mThinking.isDone()) {
+                return;
+            }
+
+            CubePlacement placement = collect(mThinking);
+            mThinking = null;
+            if (mThinkingPiece == pieceCount && null != placement) {
+                mPlan = placement;
+                mPlanPiece = pieceCount;
+                mPlanMove = 0;
+                mMoveTimer = 0;
+            }
+        }
+
+        // a new piece, or a plan the game got in the way of, means thinking again
+        if (null == mPlan || mPlanPiece != pieceCount) {
+            mPlan = null;
+            think(pieceCount);
+            return;
+        }
+
+        // wait out board rotations and the delay between inputs
+        mMoveTimer += msDelta;
+        if (mModel.isRotating() || mMoveTimer < mMoveDelayMs) {
+            return;
+        }
+        mMoveTimer = 0;
+
+        if (mPlanMove < mPlan.getMoveCount()) {
+            if (!CubePlacement.applyMove(mModel, mPlan.getMove(mPlanMove++))) {
+                mPlan = null;
+            }
+        } else if (isInPlace(piece)) {
+            mModel.dropActivePiece();
+            mPlan = null;
+        } else {
+            // gravity or a blocked rotation threw us off, look again from here
+            mPlan = null;
+        }
+    }
+
+    /**
+     * Stops the thinking thread, the controller can't be used afterwards.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+        mSolver.shutdown();
+    }
+
+    /**
+     * Copies the game on this thread and hands the copy to the thinking thread.
+     */
+    private void think(int pieceCount) {
+        mSnapshotBuffer.clear();
+        mModel.saveState(mSnapshotBuffer);
+        mSnapshotBuffer.flip();
+
+        mThinkingPiece = pieceCount;
+        mThinking = mExecutor.submit(new Callable<CubePlacement>() {
+            @Override
+            public CubePlacement call() {
+                mSnapshot.restoreState(mSnapshotBuffer);
+                return search(System.nanoTime() + mThinkBudgetMs * 1000000L);
+            }
+        });
+    }
+
+    /**
+     * Iterative deepening: each extra preview piece costs roughly another beam width of root
+     * searches, so stop once the next depth looks like it would blow the deadline.
+     */
+    private CubePlacement search(long deadline) {
+        long start = System.nanoTime();
+        CubePlacement best = mSolver.solve(mSnapshot, 0, mBeamWidth);
+        long rootNanos = System.nanoTime() - start;
+        int lookahead = 0;
+
+        while (null != best && lookahead < CubeBoardModel.PREVIEW_COUNT && !Thread.interrupted()) {
+            long estimate = rootNanos * (1 + mBeamWidth * (long) (lookahead + 1));
+            if (System.nanoTime() + estimate > deadline) {
+                break;
+            }
+            best = mSolver.solve(mSnapshot, ++lookahead, mBeamWidth);
+        }
+
+        mLastLookahead = (null == best) ? -1 : lookahead;
+        return best;
+    }
+
+    private static CubePlacement collect(Future<CubePlacement> thinking) {
+        try {
+            return thinking.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return true if the piece is on the face, column and rotation the plan was aiming for
+     */
+    private boolean isInPlace(CubeBoardPieceModel piece) {
+        return mModel.getActiveFace() == mPlan.getFace() &&
+                piece.getFaceX() == mPlan.getFaceX() &&
+                piece.getRotation() == mPlan.getRotation();
+    }
+
+    // IPLAYER CONTROLLER INTERFACE ////////////////////////////////////////
+    // the bot has no buttons to press
+    @Override
+    public boolean processAxis(int axis, float value, long eventTime) {
+        return false;
+    }
+
+    @Override
+    public boolean processKeyDown(int keyCode, long eventTime) {
+        return false;
+    }
+
+    @Override
+    public boolean processKeyUp(int keyCode, long eventTime) {
+        return false;
+    }
+    // END IPLAYER CONTROLLER INTERFACE ////////////////////////////////////
+}
@@ -17,6 +17,9 @@ public class PlayerBoardController implements IPlayerController {
     boolean mGasToggle;
     boolean mBrakeToggle;
 
+    // axes come in one at a time, the gas is kept so it can win over the brake
+    float mGas;
+
     public PlayerBoardController(CubeBoard cubeBoard){
         mCubeBoard = cubeBoard;
         mGasToggle = false;
@@ -24,9 +27,14 @@ public class PlayerBoardController implements IPlayerController {
     }
 
     @Override
-    public boolean processGenericMotionEvent(MotionEvent motionEvent) {
-        float gas = motionEvent.getAxisValue(MotionEvent.AXIS_GAS);
-        float brake = motionEvent.getAxisValue(MotionEvent.AXIS_BRAKE);
+    public boolean processAxis(int axis, float value, long eventTime) {
+        float gas = 0.0f;
+        float brake = 0.0f;
+        if (axis == MotionEvent.AXIS_GAS) {
+            gas = mGas = value;
+        } else if (axis == MotionEvent.AXIS_BRAKE && mGas <= 0.0f) {
+            brake = value;
+        }
 
         if (gas > 0.0f) {
             if (gas == 1.0f && !mGasToggle) {
@@ -49,7 +57,7 @@ public class PlayerBoardController implements IPlayerController {
     }
 
     @Override
-    public boolean processKeyDown(int keyCode, KeyEvent event) {
+    public boolean processKeyDown(int keyCode, long eventTime) {
         if (keyCode == KeyEvent.KEYCODE_BUTTON_R1) {
             mCubeBoard.rotate(1);
             return true;
@@ -76,7 +84,7 @@ public class PlayerBoardController implements IPlayerController {
     }
 
     @Override
-    public boolean processKeyUp(int keyCode, KeyEvent event) {
+    public boolean processKeyUp(int keyCode, long eventTime) {
         if (keyCode == KeyEvent.KEYCODE_DPAD_DOWN) {
             mCubeBoard.modulePieceSpeed(1);
         }
@@ -18,6 +18,9 @@ public class SceneLightController implements IPlayerController {
     boolean mGasToggle;
     boolean mBrakeToggle;
 
+    // axes come in one at a time, the gas is kept so it can win over the brake
+    float mGas;
+
     public SceneLightController(Scene scene){
         mScene = scene;
         mGasToggle = false;
@@ -25,9 +28,14 @@ public class SceneLightController implements IPlayerController {
     }
 
     @Override
-    public boolean processGenericMotionEvent(MotionEvent motionEvent) {
-        float gas = motionEvent.getAxisValue(MotionEvent.AXIS_GAS);
-        float brake = motionEvent.getAxisValue(MotionEvent.AXIS_BRAKE);
+    public boolean processAxis(int axis, float value, long eventTime) {
+        float gas = 0.0f;
+        float brake = 0.0f;
+        if (axis == MotionEvent.AXIS_GAS) {
+            gas = mGas = value;
+        } else if (axis == MotionEvent.AXIS_BRAKE && mGas <= 0.0f) {
+            brake = value;
+        }
 
         if (gas > 0.0f) {
             if (!mGasToggle) {
@@ -53,7 +61,7 @@ public class SceneLightController implements IPlayerController {
     }
 
     @Override
-    public boolean processKeyDown(int keyCode, KeyEvent event) {
+    public boolean processKeyDown(int keyCode, long eventTime) {
         if (keyCode == KeyEvent.KEYCODE_BUTTON_R1) {
             mScene.getSceneSun().attenuation += 0.0001f;
             Log.d("LightSceneController", "attenuation: " + mScene.getSceneSun().attenuation);
@@ -68,7 +76,7 @@ public class SceneLightController implements IPlayerController {
     }
 
     @Override
-    public boolean processKeyUp(int keyCode, KeyEvent event) {
+    public boolean processKeyUp(int keyCode, long eventTime) {
         Vertex lightPos = mScene.getSceneSun().position;
         if (keyCode == KeyEvent.KEYCODE_DPAD_DOWN) {
             lightPos.y -= 0.5f;
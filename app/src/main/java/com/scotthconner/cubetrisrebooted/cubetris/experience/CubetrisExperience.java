@@ -4,16 +4,22 @@ import android.graphics.Point;
 import android.opengl.GLES20;
 import android.util.Log;
 import android.view.KeyEvent;
-import android.view.MotionEvent;
 
 import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoard;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardEvent;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardPieceModel;
 import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardRenderer;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardSurface;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeInstance;
 import com.scotthconner.cubetrisrebooted.cubetris.board.ICubeBoardEventListener;
+import com.scotthconner.cubetrisrebooted.cubetris.controllers.CubeBotController;
 import com.scotthconner.cubetrisrebooted.cubetris.controllers.PlayerBoardController;
 import com.scotthconner.cubetrisrebooted.cubetris.controllers.SceneLightController;
 import com.scotthconner.cubetrisrebooted.cubetris.particle.drop.PieceDropEffect;
 import com.scotthconner.cubetrisrebooted.cubetris.particle.stars.MoveStarsEffect;
 import com.scotthconner.cubetrisrebooted.lib.core.LabeledSoundPool;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+import com.scotthconner.cubetrisrebooted.lib.core.TripleBuffer;
 import com.scotthconner.cubetrisrebooted.lib.core.Vertex;
 import com.scotthconner.cubetrisrebooted.lib.gamestate.IPlayerController;
 import com.scotthconner.cubetrisrebooted.lib.object.text.FontText;
@@ -23,6 +29,7 @@ import com.scotthconner.cubetrisrebooted.lib.render.core.Scene;
 import com.scotthconner.cubetrisrebooted.lib.render.sprite.AlphaTransparencyBlendFunction;
 import com.scotthconner.cubetrisrebooted.lib.render.sprite.Font;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 /**
@@ -35,6 +42,7 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
     // Master Configuration ///////////////////////////////////
     public static class Config {
         // board size definition
+        public int mSideCount;
         public int mSideWidth;
         public int mBoardHeight;
 
@@ -45,8 +53,15 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
         public int mPlayerId;
         public Point mScreenSize;
 
+        // every random gameplay decision derives from this, so a game can be replayed
+        public long mSeed;
+
+        // when set, the board plays itself instead of listening to a controller
+        public boolean mBot;
+
         public Config() {
             mScreenSize = new Point();
+            mSeed = System.nanoTime();
         }
     }
     ////////////////////////////////////////////////////////////
@@ -59,6 +74,8 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
         public boolean wasOnFire;
         public boolean wasCollision;
         public int lineCompleteCount;
+        public int holesBefore;       // the surface before the move, to judge it against
+        public int bumpinessBefore;
 
         public MoveScoreCard() {
             reset();
@@ -71,6 +88,10 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
             wasSlide = false;
             lineCompleteCount = 0;
             wasCollision = false;
+
+            CubeBoardSurface surface = mCubeBoard.getSurface();
+            holesBefore = surface.getHoleCount();
+            bumpinessBefore = surface.getBumpiness();
         }
 
         public int calculateScore() {
@@ -97,8 +118,17 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
             return (int) ((score + bonus) * multiplier);
         }
 
+        /**
+         * @return true if the move cleared a line, or buried nothing and left the surface no
+         * bumpier than it found it
+         */
         public boolean wasEfficient() {
-            return true;
+            if (lineCompleteCount > 0) {
+                return true;
+            }
+
+            CubeBoardSurface surface = mCubeBoard.getSurface();
+            return surface.getHoleCount() <= holesBefore && surface.getBumpiness() <= bumpinessBefore;
         }
     }
     ////////////////////////////////////////////////////////////
@@ -112,6 +142,7 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
     private Scene     mScene;          // this is the scene with the game board
     private Camera    mCamera;         // 3D camera used for game objects
     private Vertex mCameraPosition; // used for shaking 3D camera
+    private TripleBuffer<Vertex> mCameraFrames;  // the shaken camera position as of each update
 
     // 2d rendering scene and objects
     private Scene     mHUDScene;       // this holds all of the 2D sprites for the HUD
@@ -128,7 +159,8 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
     private float mShakeTimeMs;
     private float mShakeElapsedMs;
     private float mShakeIntensity;
-    private Random mRandom;
+    private Random mRandom;          // camera shake stream, only drawn from in update
+    private RandomStreams mRandomStreams;
 
     // special effects
     private Light[] mActivePieceLights;             // the reference to the light we attach to the active piece.
@@ -139,6 +171,7 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
     private int mDropEffectIndex;                   // which is the next one we are going grab for a drop?
     private MoveStarsEffect mMoveStarsEffect;       // contains all of the logic for firing move star animations
     private Vertex mActivePiecePosition;   // used as a buffer for many special effects on the active piece
+    private CubeInstance[] mCollisionCubes;         // buffer for the active piece's collision cubes
     private static float DEFAULT_PIECE_ATTENUATION = 0.01f;
     private static float FLAME_PIECE_ATTENUATION = 0.0f;
 
@@ -148,6 +181,7 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
     private IPlayerController mActiveController;
     private PlayerBoardController mPlayerBoardController;
     private SceneLightController mSceneLightController;
+    private CubeBotController mBotController;
 
     /**
      * @param config a configuration object necessary to determine the environment of the player's
@@ -159,7 +193,8 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
         mConfig = config;
         mInitializedGL = false;
         mPlayerCount = mConfig.mPlayerId + 1; // off by one error, yay!
-        mRandom = new Random();
+        mRandomStreams = new RandomStreams(mConfig.mSeed);
+        mRandom = mRandomStreams.get(RandomStreams.CAMERA_SHAKE);
 
         // initialize the camera shaker, and other timers
         mShakeTimeMs    = 0;
@@ -169,7 +204,8 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
         mPieceCount     = 0;
 
         // create tne player's cube board
-        mCubeBoard = new CubeBoard(mConfig.mRenderer, mConfig.mSideWidth, mConfig.mBoardHeight);
+        mCubeBoard = new CubeBoard(mConfig.mRenderer, mConfig.mSideCount, mConfig.mSideWidth,
+                mConfig.mBoardHeight, mRandomStreams);
 
         // set up the scoring structure
         mMoveScoreCard = new MoveScoreCard();
@@ -182,6 +218,9 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
         mCameraPosition = new Vertex(0, 16.0f, 26.0f);
         mCamera.setPosition(mCameraPosition.x, mCameraPosition.y, mCameraPosition.z);
         mCamera.lookAt(0.0f, 7.0f, 0.0f);
+        mCameraFrames = new TripleBuffer<>(new Vertex(mCameraPosition.x, mCameraPosition.y, mCameraPosition.z),
+                new Vertex(mCameraPosition.x, mCameraPosition.y, mCameraPosition.z),
+                new Vertex(mCameraPosition.x, mCameraPosition.y, mCameraPosition.z));
         mScene.setSunPosition(0.0f, 20.5f, 25.0f);
         mScene.setAmbientFactor(0.22f);
         mScene.getSceneSun().attenuation = 0.0003999999f;
@@ -201,11 +240,18 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
         mSceneLightController = new SceneLightController(mScene);
         mActiveController = mPlayerBoardController;
 
+        // a bot seat plays the model directly and ignores input
+        if (mConfig.mBot) {
+            mBotController = new CubeBotController(mCubeBoard.getModel());
+            mActiveController = mBotController;
+        }
+
         // prime the special effects
         mDropEffects = null;
         mMoveStarsEffect = null;
         mDropEffectIndex = 0;
         mActivePiecePosition = new Vertex();
+        mCollisionCubes = new CubeInstance[CubeBoardPieceModel.MAX_CELLS];
 
         // set up the HUD
         mScoreText = (FontText)(new FontText(Font.getFont("blocks")))
@@ -220,9 +266,90 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
         mScene.addRenderable(mCubeBoard);
         mCubeBoard.addBoardListener(this);
         mCubeBoard.testFill();
+        mMoveScoreCard.reset();
         mCubeBoard.start();
     }
 
+    /**
+     * Used in place of initialize() to carry on a game written by saveState. The experience
+     * needs to have been configured with the same seed and board size it was saved with.
+     * Effects aren't saved, they are built on the GL thread as usual.
+     *
+     * @param in the buffer to read from
+     */
+    public void resume(ByteBuffer in) {
+        mScene.addRenderable(mCubeBoard);
+        mCubeBoard.addBoardListener(this);
+
+        mScore = in.getInt();
+        mPieceCount = in.getInt();
+        mDropTimer = in.getFloat();
+        mShakeTimeMs = in.getFloat();
+        mShakeElapsedMs = in.getFloat();
+        mShakeIntensity = in.getFloat();
+        mRandomStreams.get(RandomStreams.EFFECTS).setSeed(in.getLong());
+        mRandomStreams.get(RandomStreams.CAMERA_SHAKE).setSeed(in.getLong());
+
+        int flags = in.get();
+        mMoveScoreCard.wasDrop = (flags & 1) != 0;
+        mMoveScoreCard.wasBrave = (flags & 2) != 0;
+        mMoveScoreCard.wasSlide = (flags & 4) != 0;
+        mMoveScoreCard.wasCollision = (flags & 8) != 0;
+        mMoveScoreCard.wasOnFire = mMoveScoreCard.wasDrop; // the flames went with the old process
+        mMoveScoreCard.lineCompleteCount = in.get();
+        mMoveScoreCard.holesBefore = in.getShort();
+        mMoveScoreCard.bumpinessBefore = in.getShort();
+
+        mCubeBoard.restoreState(in);
+        mScoreText.setText("" + mScore);
+    }
+
+    /**
+     * @return enough bytes to hold saveState
+     */
+    public int getMaxStateSize() {
+        return 64 + mCubeBoard.getModel().getMaxStateSize();
+    }
+
+    /**
+     * Writes everything resume() needs to carry on this game: the score, the timers, the
+     * random streams and the board.
+     *
+     * @param out the buffer to write to, with at least getMaxStateSize() remaining
+     */
+    public void saveState(ByteBuffer out) {
+        out.putInt(mScore);
+        out.putInt(mPieceCount);
+        out.putFloat(mDropTimer);
+        out.putFloat(mShakeTimeMs);
+        out.putFloat(mShakeElapsedMs);
+        out.putFloat(mShakeIntensity);
+        out.putLong(mRandomStreams.get(RandomStreams.EFFECTS).getState());
+        out.putLong(mRandomStreams.get(RandomStreams.CAMERA_SHAKE).getState());
+
+        out.put((byte) ((mMoveScoreCard.wasDrop ? 1 : 0) | (mMoveScoreCard.wasBrave ? 2 : 0) |
+                (mMoveScoreCard.wasSlide ? 4 : 0) | (mMoveScoreCard.wasCollision ? 8 : 0)));
+        out.put((byte) mMoveScoreCard.lineCompleteCount);
+        out.putShort((short) mMoveScoreCard.holesBefore);
+        out.putShort((short) mMoveScoreCard.bumpinessBefore);
+
+        mCubeBoard.saveState(out);
+    }
+
+    /**
+     * @return the seed the experience's game was started from
+     */
+    public long getSeed() {
+        return mConfig.mSeed;
+    }
+
+    /**
+     * @return true if the board is playing itself
+     */
+    public boolean isBot() {
+        return mConfig.mBot;
+    }
+
     public void initializeGLThread() {
         // generate the drop effect array
         mDropEffects = new PieceDropEffect[] {
@@ -243,11 +370,24 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
     }
 
     /**
-     * Will update everything related to this player's experience.
+     * Will update everything related to this player's experience. Experiences don't share
+     * anything they change, so each can be updated on its own thread.
      *
      * @param msDelta change since last update
      */
     public void update(long msDelta) {
+        // effects draw from this game's streams, whatever thread it's updated on. a thread
+        // waiting on jobs can end up updating another game in the middle of this one, so
+        // whatever was bound before goes back afterwards
+        RandomStreams previous = RandomStreams.setCurrent(mRandomStreams);
+        try {
+            updateExperience(msDelta);
+        } finally {
+            RandomStreams.setCurrent(previous);
+        }
+    }
+
+    private void updateExperience(long msDelta) {
         // shake the camera if thats what we need to do
         if (mShakeTimeMs != 0) {
             mShakeElapsedMs += msDelta;
@@ -284,12 +424,38 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
                 // grab the next drop effect
                 mActiveDropEffect = mDropEffects[(mDropEffectIndex++) % mDropEffects.length];
                 mActiveDropEffect.reset();
-                mActiveDropEffect.startFlames(mCubeBoard.getDropCollisionCubeInstances());
+                mActiveDropEffect.startFlames(mCollisionCubes,
+                        mCubeBoard.getDropCollisionCubeInstances(mCollisionCubes));
             }
         }
 
+        // let the bot press its buttons before the board moves
+        if (null != mBotController) {
+            mBotController.update(msDelta);
+        }
+
         // update the scene, and all of its children
         mScene.update(msDelta);
+
+        // hand the camera to the render thread, shaken once per tick so the shake stream moves
+        // with the game and not the frame rate
+        Vertex camera = mCameraFrames.getWriteSlot();
+        camera.set(mCameraPosition.x, mCameraPosition.y, mCameraPosition.z);
+        if (mShakeTimeMs != 0) {
+            camera.x += mRandom.nextFloat() * mShakeIntensity;
+            camera.y += mRandom.nextFloat() * mShakeIntensity;
+            camera.z += mRandom.nextFloat() * mShakeIntensity;
+        }
+        mCameraFrames.publish();
+    }
+
+    /**
+     * Releases anything the experience holds outside of GL, like the bot's thinking thread.
+     */
+    public void cleanUp() {
+        if (null != mBotController) {
+            mBotController.shutdown();
+        }
     }
 
     /**
@@ -306,13 +472,9 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
             mInitializedGL = true;
         }
 
-        if (mShakeTimeMs != 0) {
-            mCamera.setPosition(mCameraPosition.x + mRandom.nextFloat() * mShakeIntensity,
-                    mCameraPosition.y + mRandom.nextFloat() * mShakeIntensity,
-                    mCameraPosition.z + mRandom.nextFloat() * mShakeIntensity);
-        } else {
-            mCamera.setPosition(mCameraPosition.x, mCameraPosition.y, mCameraPosition.z);
-        }
+        // the camera where the last update left it
+        Vertex camera = mCameraFrames.acquire();
+        mCamera.setPosition(camera.x, camera.y, camera.z);
 
         // render the 3d game experience
         mScene.render(mCamera);
@@ -358,12 +520,12 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
 
     // IPLAYER CONTROLLER INTERFACE ////////////////////////////////////////
     @Override
-    public boolean processGenericMotionEvent(MotionEvent motionEvent) {
-        return mActiveController.processGenericMotionEvent(motionEvent);
+    public boolean processAxis(int axis, float value, long eventTime) {
+        return mActiveController.processAxis(axis, value, eventTime);
     }
 
     @Override
-    public boolean processKeyDown(int keyCode, KeyEvent event) {
+    public boolean processKeyDown(int keyCode, long eventTime) {
         // this will toggle between controller modes between play and pause
         if(keyCode == KeyEvent.KEYCODE_MENU) {
             if (mActiveController == mPlayerBoardController) {
@@ -373,27 +535,27 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
             }
         }
 
-        return mActiveController.processKeyDown(keyCode, event);
+        return mActiveController.processKeyDown(keyCode, eventTime);
     }
 
     @Override
-    public boolean processKeyUp(int keyCode, KeyEvent event) {
-        return mActiveController.processKeyUp(keyCode, event);
+    public boolean processKeyUp(int keyCode, long eventTime) {
+        return mActiveController.processKeyUp(keyCode, eventTime);
     }
     // END IPLAYER CONTROLLER INTERFACE ////////////////////////////////////
 
     // ICUBEBOARDLISTENER //////////////////////////////////////////////////
     @Override
-    public void onBoardRotate(CubeBoard cubeBoard) {
+    public void onBoardRotate(CubeBoard cubeBoard, CubeBoardEvent event) {
         LabeledSoundPool.getInstance().playSound("rotate", 0.40f);
     }
 
     @Override
-    public void onPieceCommit(CubeBoard cubeBoard) {
+    public void onPieceCommit(CubeBoard cubeBoard, CubeBoardEvent event) {
         LabeledSoundPool.getInstance().playSound("piece", 0.45f);
 
-        // determine if we were dropping and show the smoke
-        if (mMoveScoreCard.wasDrop) {
+        // determine if we were dropping and show the smoke. a resumed drop has no flames going
+        if (mMoveScoreCard.wasDrop && null != mActiveDropEffect) {
             // pause drop flame special effects
             mActiveDropEffect.pauseFlames();
 
@@ -406,10 +568,10 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
         mScore += mMoveScoreCard.calculateScore();
 
         // fire off the star animation, by calculating where the stars should be
-        cubeBoard.getActivePiece().calculateAverageModelFacePosition(mActivePiecePosition);
+        event.getPiecePosition(mActivePiecePosition);
 
         // if it was a bad move, you get zero stars.
-        if ( cubeBoard.wasBadMove() ) {
+        if ( event.wasBadMove() ) {
 
         } else if ( mMoveScoreCard.wasEfficient()) {
             // if the move was efficient they get two stars
@@ -436,41 +598,41 @@ public class CubetrisExperience implements IPlayerController, ICubeBoardEventLis
     }
 
     @Override
-    public void onLineComplete(CubeBoard cubeBoard) {
+    public void onLineComplete(CubeBoard cubeBoard, CubeBoardEvent event) {
         LabeledSoundPool.getInstance().playSound("line", 0.75f);
-        mMoveScoreCard.lineCompleteCount = mCubeBoard.getLastMoveLineCompletionCount();
+        mMoveScoreCard.lineCompleteCount = event.getLineCompletionCount();
     }
 
     @Override
-    public void onPieceDrop(CubeBoard cubeBoard) {
+    public void onPieceDrop(CubeBoard cubeBoard, CubeBoardEvent event) {
         LabeledSoundPool.getInstance().playSound("flame", 0.6f);
         mMoveScoreCard.wasDrop = true;
     }
 
     @Override
-    public void onPieceSlide(CubeBoard cubeBoard) {
+    public void onPieceSlide(CubeBoard cubeBoard, CubeBoardEvent event) {
         mMoveScoreCard.wasSlide = true;
     }
 
     @Override
-    public void onPieceHurry(CubeBoard cubeBoard) {
+    public void onPieceHurry(CubeBoard cubeBoard, CubeBoardEvent event) {
 
     }
 
     @Override
-    public void onPieceMove(CubeBoard cubeBoard) {
+    public void onPieceMove(CubeBoard cubeBoard, CubeBoardEvent event) {
         if(mMoveScoreCard.wasDrop) {
             mMoveScoreCard.wasBrave = true;
         }
     }
 
     @Override
-    public void onPieceRotate(CubeBoard cubeBoard) {
+    public void onPieceRotate(CubeBoard cubeBoard, CubeBoardEvent event) {
         LabeledSoundPool.getInstance().playSound("spin", 0.30f);
     }
 
     @Override
-    public void onBoardRotateBlock(CubeBoard cubeBoard) {
+    public void onBoardRotateBlock(CubeBoard cubeBoard, CubeBoardEvent event) {
         mMoveScoreCard.wasCollision = true;
         LabeledSoundPool.getInstance().playSound("block", 0.40f);
         shakeScreen(3.0f);
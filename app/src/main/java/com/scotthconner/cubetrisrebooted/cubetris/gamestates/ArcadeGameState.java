@@ -8,12 +8,16 @@ import android.view.MotionEvent;
 
 import com.scotthconner.cubetrisrebooted.R;
 import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoard;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
 import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardRenderer;
 import com.scotthconner.cubetrisrebooted.cubetris.experience.CubetrisExperience;
 import com.scotthconner.cubetrisrebooted.cubetris.geometry.CubeLibrary;
 import com.scotthconner.cubetrisrebooted.cubetris.geometry.ExperienceSkyBox;
+import com.scotthconner.cubetrisrebooted.lib.core.InputRing;
 import com.scotthconner.cubetrisrebooted.lib.core.LabeledSoundPool;
+import com.scotthconner.cubetrisrebooted.lib.core.SnapshotFile;
 import com.scotthconner.cubetrisrebooted.lib.core.TextureManager;
+import com.scotthconner.cubetrisrebooted.lib.core.WorkerPool;
 import com.scotthconner.cubetrisrebooted.lib.gamestate.IGameState;
 import com.scotthconner.cubetrisrebooted.lib.gamestate.IPlayerController;
 import com.scotthconner.cubetrisrebooted.lib.gamestate.IPlayerControllerGenerator;
@@ -24,6 +28,11 @@ import com.scotthconner.cubetrisrebooted.lib.render.core.Scene;
 import com.scotthconner.cubetrisrebooted.lib.render.sprite.AlphaTransparencyBlendFunction;
 import com.scotthconner.cubetrisrebooted.lib.render.sprite.Font;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -35,16 +44,49 @@ import javax.microedition.khronos.opengles.GL10;
 public class ArcadeGameState implements IGameState {
     private static final int MAX_PLAYERS = 4;
 
+    private static final int SIDE_COUNT = CubeBoardModel.DEFAULT_SIDE_COUNT;
     private static final int SIDE_WIDTH = 7;
     private static final int BOARD_HEIGHT = 18;
 
+    // bumped whenever the snapshot's layout, or a game's saved state, changes
+    private static final byte SNAPSHOT_VERSION = 2;
+
+    // bots sit in the pool under device IDs no real input device will have
+    private static final int BOT_DEVICE_ID = -1000;
+
+    // input waiting for the next tick, plenty for the few events a frame brings
+    private static final int INPUT_RING_SIZE = 256;
+
     private boolean mDebug;
     private boolean mPaused;
     private Point mScreenSize;
+    private int mBotCount;
+    private int mBotsSeated;
+
+    // games saved when the app was last stopped, handed out as seats fill back up
+    private File mSnapshotFile;
+    private ArrayDeque<ByteBuffer> mSavedPlayers;
+    private ArrayDeque<ByteBuffer> mSavedBots;
 
     // the player controllers and their experiences
     private PlayerControllerPool mPlayerControllerPool;
 
+    // input copied off the UI thread, handed to the controllers at the start of each tick
+    private final InputRing mInput;
+    private final InputRing.Record mInputRecord;
+
+    // the experiences as of the last change to the pool, so rendering never waits on it
+    private volatile CubetrisExperience[] mExperiences;
+
+    // players share nothing they change, so they're updated side by side
+    private CubetrisExperience[] mUpdating;
+    private long mUpdateDelta;
+    private final WorkerPool.IJob mUpdateJob = new WorkerPool.IJob() {
+        public void run(int index) {
+            mUpdating[index].update(mUpdateDelta);
+        }
+    };
+
     // the scene that encompasses all player experiences, and common renderables
     Scene mScene;
     Camera mCamera;
@@ -57,8 +99,26 @@ public class ArcadeGameState implements IGameState {
     // Constructor
     //////////////////////////////////////////////////////
     public ArcadeGameState(boolean debug) {
+        this(debug, 0, null);
+    }
+
+    /**
+     * @param debug        show debug overlays
+     * @param botCount     seats filled by bots as soon as the surface is ready, the rest are left
+     *                     for controllers to claim
+     * @param snapshotFile where games are saved when the app is stopped and picked back up
+     *                     from, or null to always start fresh
+     */
+    public ArcadeGameState(boolean debug, int botCount, File snapshotFile) {
+        mBotCount = Math.min(botCount, MAX_PLAYERS);
+        mBotsSeated = 0;
         mScreenSize = new Point();
 
+        mSnapshotFile = snapshotFile;
+        mSavedPlayers = new ArrayDeque<>();
+        mSavedBots = new ArrayDeque<>();
+        readSnapshot();
+
         mScene = new Scene();
         mCamera = new Camera();
 
@@ -77,47 +137,201 @@ public class ArcadeGameState implements IGameState {
 
         mPlayerControllerPool = new PlayerControllerPool( new IPlayerControllerGenerator() {
             public IPlayerController spawnPlayerController() {
-                if (mPlayerControllerPool.getControllerCount() < MAX_PLAYERS) {
-                    if (mPlayerControllerPool.getControllerCount() == 0 ) {
-                        // start the show TODO: music
-                        // LabeledSoundPool.getInstance().startMusic("alpha", false, true);
-                    }
-                    Log.d("ArcadeGameState", "player controller bound");
-
-                    // configure this player's experience
-                    CubetrisExperience.Config expConfig = new CubetrisExperience.Config();
-                    expConfig.mSideWidth = SIDE_WIDTH;
-                    expConfig.mBoardHeight = BOARD_HEIGHT;
-                    expConfig.mPlayerId = mPlayerControllerPool.getControllerCount();
-                    expConfig.mScreenSize.x = mScreenSize.x;
-                    expConfig.mScreenSize.y = mScreenSize.y;
-                    expConfig.mRenderer = mCubeBoardRenderer;
-
-                    // go through existing player experience and let them know
-                    // another player has joined.
-                    Iterator<IPlayerController> experiences = mPlayerControllerPool.iterator();
-                    while (experiences.hasNext()) {
-                        ((CubetrisExperience) experiences.next()).incrementTotalPlayers();
-                    }
-
-                    CubetrisExperience ce = new CubetrisExperience(expConfig);
-                    ce.initialize();
+                return spawnExperience(false);
+            }
+        });
+        mExperiences = new CubetrisExperience[0];
+        mInput = new InputRing(INPUT_RING_SIZE);
+        mInputRecord = new InputRing.Record();
+    }
+
+    /**
+     * Takes a fresh copy of the experiences in the pool. Call it holding the pool's lock after
+     * anything that could have seated a player.
+     */
+    private void refreshExperiences() {
+        if (mExperiences.length == mPlayerControllerPool.getControllerCount()) {
+            return;
+        }
+
+        CubetrisExperience[] experiences = new CubetrisExperience[mPlayerControllerPool.getControllerCount()];
+        int count = 0;
+        Iterator<IPlayerController> controllers = mPlayerControllerPool.iterator();
+        while (controllers.hasNext()) {
+            IPlayerController controller = controllers.next();
+            if (null != controller) {
+                experiences[count++] = (CubetrisExperience) controller;
+            }
+        }
+        mExperiences = Arrays.copyOf(experiences, count);
+    }
+
+    /**
+     * Splits a saved snapshot up into the games that were in progress. The games themselves
+     * are only rebuilt as their seats are filled. A snapshot is only good for one launch, and
+     * one saved by a build with a different layout is dropped.
+     */
+    private void readSnapshot() {
+        if (null == mSnapshotFile) {
+            return;
+        }
+
+        try {
+            ByteBuffer snapshot = SnapshotFile.read(mSnapshotFile);
+            mSnapshotFile.delete();
+            if (null == snapshot || snapshot.get() != SNAPSHOT_VERSION ||
+                    snapshot.get() != CubeBoardModel.STATE_VERSION || snapshot.get() != SIDE_COUNT ||
+                    snapshot.getShort() != SIDE_WIDTH || snapshot.getShort() != BOARD_HEIGHT) {
+                return;
+            }
+
+            for (int count = snapshot.get(); count > 0; count--) {
+                boolean bot = snapshot.get() != 0;
+                int length = snapshot.getInt();
+                ByteBuffer game = snapshot.slice();
+                game.limit(length);
+                snapshot.position(snapshot.position() + length);
+                (bot ? mSavedBots : mSavedPlayers).add(game);
+            }
+            mBotCount = Math.min(Math.max(mBotCount, mSavedBots.size()), MAX_PLAYERS);
+        } catch (IOException e) {
+            Log.w("ArcadeGameState", "couldn't read the snapshot, starting fresh", e);
+        } catch (RuntimeException e) {
+            Log.w("ArcadeGameState", "snapshot didn't make sense, starting fresh", e);
+            mSavedPlayers.clear();
+            mSavedBots.clear();
+        }
+    }
+
+    @Override
+    public void saveSnapshot() {
+        if (null == mSnapshotFile) {
+            return;
+        }
+
+        synchronized (mPlayerControllerPool) {
+            // size the buffer for every seat before writing any of them
+            int size = 1 + 1 + 1 + 2 + 2 + 1;
+            Iterator<IPlayerController> experiences = mPlayerControllerPool.iterator();
+            while (experiences.hasNext()) {
+                size += 1 + 4 + 8 + ((CubetrisExperience) experiences.next()).getMaxStateSize();
+            }
+            for (ByteBuffer saved : mSavedPlayers) {
+                size += 1 + 4 + saved.remaining();
+            }
+            for (ByteBuffer saved : mSavedBots) {
+                size += 1 + 4 + saved.remaining();
+            }
+
+            ByteBuffer snapshot = ByteBuffer.allocate(size);
+            snapshot.put(SNAPSHOT_VERSION);
+            snapshot.put(CubeBoardModel.STATE_VERSION);
+            snapshot.put((byte) SIDE_COUNT);
+            snapshot.putShort((short) SIDE_WIDTH);
+            snapshot.putShort((short) BOARD_HEIGHT);
+            snapshot.put((byte) (mPlayerControllerPool.getControllerCount() + mSavedPlayers.size() + mSavedBots.size()));
+            experiences = mPlayerControllerPool.iterator();
+            while (experiences.hasNext()) {
+                CubetrisExperience ce = (CubetrisExperience) experiences.next();
+                snapshot.put((byte) (ce.isBot() ? 1 : 0));
+                int lengthAt = snapshot.position();
+                snapshot.putInt(0);
+                snapshot.putLong(ce.getSeed());
+                ce.saveState(snapshot);
+                snapshot.putInt(lengthAt, snapshot.position() - lengthAt - 4);
+            }
+
+            // games nobody came back for yet are kept for next time
+            for (ByteBuffer saved : mSavedPlayers) {
+                snapshot.put((byte) 0);
+                snapshot.putInt(saved.remaining());
+                snapshot.put(saved.duplicate());
+            }
+            for (ByteBuffer saved : mSavedBots) {
+                snapshot.put((byte) 1);
+                snapshot.putInt(saved.remaining());
+                snapshot.put(saved.duplicate());
+            }
+            snapshot.flip();
+
+            try {
+                SnapshotFile.write(mSnapshotFile, snapshot);
+            } catch (IOException e) {
+                Log.w("ArcadeGameState", "couldn't save the snapshot", e);
+            }
+        }
+    }
+
+    /**
+     * Builds the next player's experience, if there is a seat left for it. A game saved for
+     * this kind of seat is carried on instead of starting a new one.
+     *
+     * @param bot true if the board should play itself
+     * @return the new experience, or null if every seat is taken
+     */
+    private CubetrisExperience spawnExperience(boolean bot) {
+        if (mPlayerControllerPool.getControllerCount() < MAX_PLAYERS) {
+            if (mPlayerControllerPool.getControllerCount() == 0 ) {
+                // start the show TODO: music
+                // LabeledSoundPool.getInstance().startMusic("alpha", false, true);
+            }
+            Log.d("ArcadeGameState", bot ? "bot controller bound" : "player controller bound");
+
+            // configure this player's experience
+            CubetrisExperience.Config expConfig = new CubetrisExperience.Config();
+            expConfig.mSideCount = SIDE_COUNT;
+            expConfig.mSideWidth = SIDE_WIDTH;
+            expConfig.mBoardHeight = BOARD_HEIGHT;
+            expConfig.mPlayerId = mPlayerControllerPool.getControllerCount();
+            expConfig.mScreenSize.x = mScreenSize.x;
+            expConfig.mScreenSize.y = mScreenSize.y;
+            expConfig.mRenderer = mCubeBoardRenderer;
+            expConfig.mBot = bot;
+
+            // go through existing player experience and let them know
+            // another player has joined.
+            Iterator<IPlayerController> experiences = mPlayerControllerPool.iterator();
+            while (experiences.hasNext()) {
+                ((CubetrisExperience) experiences.next()).incrementTotalPlayers();
+            }
+
+            ByteBuffer saved = (bot ? mSavedBots : mSavedPlayers).poll();
+            if (null != saved) {
+                expConfig.mSeed = saved.getLong();
+            }
+
+            CubetrisExperience ce = new CubetrisExperience(expConfig);
+            if (null != saved) {
+                try {
+                    ce.resume(saved);
                     return ce;
+                } catch (RuntimeException e) {
+                    // the half resumed game is thrown away for a fresh one
+                    Log.w("ArcadeGameState", "saved game didn't make sense, starting fresh", e);
+                    ce.cleanUp();
+                    expConfig.mSeed = System.nanoTime();
+                    ce = new CubetrisExperience(expConfig);
                 }
-
-                return null;
             }
-        });
+            ce.initialize();
+            return ce;
+        }
+
+        return null;
     }
 
     @Override
     public boolean update(long timeDelta) {
+        // whatever came in since the last tick goes first, so the boards only ever change here
+        processInput();
+
         if (!mPaused) {
             synchronized (mPlayerControllerPool) {
-                Iterator<IPlayerController> experiences = mPlayerControllerPool.iterator();
-                while (experiences.hasNext()) {
-                    ((CubetrisExperience) experiences.next()).update(timeDelta);
-                }
+                // returns once every player is updated, so render never sees a tick half done
+                mUpdating = mExperiences;
+                mUpdateDelta = timeDelta;
+                WorkerPool.getInstance().run("player-update", mUpdateJob, mUpdating.length);
+                mUpdating = null;
             }
         }
 
@@ -131,14 +345,12 @@ public class ArcadeGameState implements IGameState {
 
     @Override
     public void onDrawFrame(GL10 gl) {
-        synchronized(mPlayerControllerPool) {
-            GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
-            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
-            Iterator<IPlayerController> experiences = mPlayerControllerPool.iterator();
-            while (experiences.hasNext()) {
-                ((CubetrisExperience) experiences.next()).render();
-            }
+        // each experience draws the last frame its update published, no locks needed
+        for (CubetrisExperience experience : mExperiences) {
+            experience.render();
         }
 
         // render the shared scene
@@ -150,42 +362,79 @@ public class ArcadeGameState implements IGameState {
 
     @Override
     public void cleanUp() {
+        synchronized (mPlayerControllerPool) {
+            Iterator<IPlayerController> experiences = mPlayerControllerPool.iterator();
+            while (experiences.hasNext()) {
+                ((CubetrisExperience) experiences.next()).cleanUp();
+            }
+        }
+
         LabeledSoundPool.getInstance().release();
     }
 
-    @Override
-    public boolean processGenericMotionEvent(MotionEvent motionEvent) {
+    /**
+     * Hands the input queued since the last tick to the controllers, seating a player for
+     * any device that hasn't been seen before. Runs on the game thread.
+     */
+    private void processInput() {
         synchronized (mPlayerControllerPool) {
-            return mPlayerControllerPool.processGenericMotionEvent(motionEvent);
+            while (mInput.poll(mInputRecord)) {
+                // see if this is a pause event
+                if (mInputRecord.getType() == InputRing.KEY_DOWN &&
+                        mInputRecord.getCode() == KeyEvent.KEYCODE_MENU) {
+                    LabeledSoundPool.getInstance().playSound("line", 0.65f);
+                    mPaused = !mPaused;
+                }
+                mPlayerControllerPool.processInput(mInputRecord);
+            }
+            refreshExperiences();
         }
     }
 
-    @Override
-    public boolean processKeyDown(int keyCode, KeyEvent event) {
-        // see if this is a pause event
-        if (keyCode == KeyEvent.KEYCODE_MENU) {
-            LabeledSoundPool.getInstance().playSound("line", 0.65f);
-
-            // process the keydown for menu
-            synchronized (mPlayerControllerPool) {
-                mPlayerControllerPool.processKeyDown(keyCode, event);
-            }
+    // INPUT ///////////////////////////////////////////////////////////////
+    // called on the UI thread, which only queues the input for the game thread. what's handled
+    // has to be decided up front, by whether the game has a use for the key at all
 
-            mPaused = !mPaused;
-            return true;
-        }
+    @Override
+    public boolean processGenericMotionEvent(MotionEvent motionEvent) {
+        int deviceId = motionEvent.getDeviceId();
+        long eventTime = motionEvent.getEventTime();
+        mInput.offer(deviceId, InputRing.AXIS, MotionEvent.AXIS_GAS,
+                motionEvent.getAxisValue(MotionEvent.AXIS_GAS), eventTime);
+        mInput.offer(deviceId, InputRing.AXIS, MotionEvent.AXIS_BRAKE,
+                motionEvent.getAxisValue(MotionEvent.AXIS_BRAKE), eventTime);
+        return false;
+    }
 
-        synchronized (mPlayerControllerPool) {
-            return mPlayerControllerPool.processKeyDown(keyCode, event);
-        }
+    @Override
+    public boolean processKeyDown(int keyCode, KeyEvent event) {
+        mInput.offer(event.getDeviceId(), InputRing.KEY_DOWN, keyCode, 0.0f, event.getEventTime());
+        return isGameKey(keyCode);
     }
 
     @Override
     public boolean processKeyUp(int keyCode, KeyEvent event) {
-        synchronized (mPlayerControllerPool) {
-            return mPlayerControllerPool.processKeyUp(keyCode, event);
+        mInput.offer(event.getDeviceId(), InputRing.KEY_UP, keyCode, 0.0f, event.getEventTime());
+        return false;
+    }
+
+    /**
+     * @return true for the keys a player uses to play, and the pause key
+     */
+    private static boolean isGameKey(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_MENU:
+            case KeyEvent.KEYCODE_BUTTON_R1:
+            case KeyEvent.KEYCODE_BUTTON_L1:
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+            case KeyEvent.KEYCODE_DPAD_DOWN:
+            case KeyEvent.KEYCODE_BUTTON_A:
+                return true;
         }
+        return false;
     }
+    // END INPUT ///////////////////////////////////////////////////////////
 
     @Override
     public void onSurfaceCreated(GL10 gl10, EGLConfig eglConfig) {
@@ -206,10 +455,7 @@ public class ArcadeGameState implements IGameState {
         ExperienceSkyBox.getInstance().init();
 
         // after init of cube library: create the universal cube board renderer
-        mCubeBoardRenderer = new CubeBoardRenderer(
-                CubeBoard.getBoardWidth(SIDE_WIDTH) * BOARD_HEIGHT  // the size of the board
-                        + CubeBoard.MAX_EXTRA_CUBES                 // cubes for line completion
-                        + 4);                                       // the active piece
+        mCubeBoardRenderer = new CubeBoardRenderer(CubeBoard.getMaxCubeCount(SIDE_COUNT, SIDE_WIDTH, BOARD_HEIGHT));
     }
 
     @Override
@@ -228,6 +474,16 @@ public class ArcadeGameState implements IGameState {
             while (experiences.hasNext()) {
                 ((CubetrisExperience) experiences.next()).establishScreenSize(i, i1);
             }
+
+            // now that there is a renderer and a screen, fill the bot seats
+            while (mBotsSeated < mBotCount) {
+                CubetrisExperience bot = spawnExperience(true);
+                if (null == bot) {
+                    break;
+                }
+                mPlayerControllerPool.addPlayerController(BOT_DEVICE_ID - mBotsSeated++, bot);
+            }
+            refreshExperiences();
         }
     }
 }
@@ -3,6 +3,8 @@ package com.scotthconner.cubetrisrebooted.cubetris.geometry;
 import android.graphics.Color;
 import android.graphics.Point;
 
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
 import java.util.Random;
 
 /**
@@ -24,10 +26,10 @@ public class CubeLibrary {
     // singleton instance /////////////////////////////////////////////
     private static CubeLibrary mInstance = null;
 
-    private float[][] mCubes;
-    private Random mRandom;
+    // swapped in whole by init, so every player's update thread sees the finished buffers
+    private volatile float[][] mCubes;
 
-    public static CubeLibrary getInstance() {
+    public static synchronized CubeLibrary getInstance() {
         if (null == mInstance) {
             mInstance = new CubeLibrary();
         }
@@ -40,10 +42,12 @@ public class CubeLibrary {
      * the vertex buffer objects for them.
      */
     public void init() {
+        float[][] cubes = new float[CUBE_COLORS.length][];
         for(int x = 0; x < CUBE_COLORS.length; x++) {
             Point cubeColor = CUBE_COLORS[x];
-            mCubes[x] = allocateOriginBuffer(cubeColor.x, cubeColor.y);
+            cubes[x] = allocateOriginBuffer(cubeColor.x, cubeColor.y);
         }
+        mCubes = cubes;
     }
 
     /**
@@ -51,12 +55,21 @@ public class CubeLibrary {
      * @return a reference to a cube vertex buffer object
      */
     public float[] getRandomCubeBuffer() {
-        return mCubes[mRandom.nextInt(CUBE_COLORS.length)];
+        Random random = RandomStreams.getCurrent().get(RandomStreams.EFFECTS);
+        return mCubes[random.nextInt(CUBE_COLORS.length)];
+    }
+
+    /**
+     * Returns the cube vertex buffer for a color code
+     * @param color index into CUBE_COLORS
+     * @return a reference to a cube vertex buffer object
+     */
+    public float[] getCubeBuffer(int color) {
+        return mCubes[color];
     }
 
     private CubeLibrary() {
         mCubes  = new float[CUBE_COLORS.length][];
-        mRandom = new Random();
     }
 
     private float[] allocateOriginBuffer(int color, int mColor) {
@@ -10,8 +10,6 @@ import com.scotthconner.cubetrisrebooted.lib.object.particle.ParticleSystem;
 import com.scotthconner.cubetrisrebooted.lib.object.particle.TexturedPointSpriteDefinition;
 import com.scotthconner.cubetrisrebooted.lib.render.sprite.AdditiveTransparencyBlendFunction;
 
-import java.util.Iterator;
-
 /**
  *
  *
@@ -55,11 +53,12 @@ public class PieceDropEffect extends ParticleSystem {
     /**
      * Starts the flames on the given cubes.
      * @param cubes the cubes that are exposed downward from the board.
+     * @param cubeCount how many of the cubes to use
      */
-    public void startFlames(Iterator<CubeInstance> cubes) {
+    public void startFlames(CubeInstance[] cubes, int cubeCount) {
         int flameCount = 0;
-        while(cubes.hasNext()) {
-            CubeInstance c = cubes.next();
+        for (int x = 0; x < cubeCount; x++) {
+            CubeInstance c = cubes[x];
 
             // see if this flame was actually attached to something,
             // and then attempt to remove it.
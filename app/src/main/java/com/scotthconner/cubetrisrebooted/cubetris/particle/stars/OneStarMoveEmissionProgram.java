@@ -15,9 +15,6 @@ import com.scotthconner.cubetrisrebooted.lib.object.particle.modifier.ParticleLi
  */
 public class OneStarMoveEmissionProgram implements IParticleEmissionProgram {
     // one star modifiers
-    private static IParticleModifier ONE_STAR_ROTATION = new ParticleInstanceTextureRotationModifier(0.0f, (float)Math.PI * 0.0f);
-    private static IParticleModifier ONE_STAR_VELOCITY = new ParticleInstanceVelocityModifier(0, 3, 0, 0, 0, 0)
-        .withAcceleration(0, 1.0f, 0);
     private static IParticleModifier ONE_STAR_COLOR    = new ParticleLinearColorModifier(
         Color.argb(255, 255, 0, 255),
         Color.argb(255, 255, 0, 0)
@@ -26,9 +23,16 @@ public class OneStarMoveEmissionProgram implements IParticleEmissionProgram {
     // instance variables
     private IParticleModifier mLifeSpan;       // we will eventually want to reap the stars for re-use
 
+    // these keep state as they go, so each player's stars get their own
+    private IParticleModifier mRotation;
+    private IParticleModifier mVelocity;
+
     // constructor
     public OneStarMoveEmissionProgram() {
         mLifeSpan  = new ParticleLifeSpanModifier(3000);
+        mRotation  = new ParticleInstanceTextureRotationModifier(0.0f, (float)Math.PI * 0.0f);
+        mVelocity  = new ParticleInstanceVelocityModifier(0, 3, 0, 0, 0, 0)
+                .withAcceleration(0, 1.0f, 0);
     }
     //////////////////////////////////////////////////////////////////
 
@@ -45,8 +49,8 @@ public class OneStarMoveEmissionProgram implements IParticleEmissionProgram {
                    .withUVCoords(0.25f, 0.25f)
                    .withModifier(mLifeSpan)
                    .withModifier(ONE_STAR_COLOR)
-                   .withModifier(ONE_STAR_ROTATION)
-                   .withModifier(ONE_STAR_VELOCITY);
+                   .withModifier(mRotation)
+                   .withModifier(mVelocity);
         p.setPointSize(80);
         return p;
     }
@@ -15,10 +15,6 @@ import com.scotthconner.cubetrisrebooted.lib.object.particle.modifier.ParticleLi
  */
 public class ThreeStarMoveEmissionProgram implements IParticleEmissionProgram {
     // two star modifiers
-    private static IParticleModifier THREE_STAR_ROTATION   = new ParticleInstanceTextureRotationModifier(0.0f, (float)Math.PI * 1.0f);
-    private static IParticleModifier THREE_STAR_VELOCITY_1 = new ParticleInstanceVelocityModifier(-1.0f, 3, 0, 0, 0, 0);
-    private static IParticleModifier THREE_STAR_VELOCITY_2 = new ParticleInstanceVelocityModifier(0.0f, 3, 0, 0, 0, 0);
-    private static IParticleModifier THREE_STAR_VELOCITY_3 = new ParticleInstanceVelocityModifier(1.0f, 3, 0, 0, 0, 0);
     private static IParticleModifier THREE_STAR_COLOR      = new ParticleLinearColorModifier(Color.argb(255, 255, 50, 0),
                                                                                               Color.argb(255, 255, 120, 255));
 
@@ -26,10 +22,20 @@ public class ThreeStarMoveEmissionProgram implements IParticleEmissionProgram {
     private IParticleModifier mLifeSpan;       // we will eventually want to reap the stars for re-use
     private int mCreateCount;
 
+    // these keep state as they go, so each player's stars get their own
+    private IParticleModifier mRotation;
+    private IParticleModifier mVelocity1;
+    private IParticleModifier mVelocity2;
+    private IParticleModifier mVelocity3;
+
     // constructor
     public ThreeStarMoveEmissionProgram() {
         mLifeSpan  = new ParticleLifeSpanModifier(3000);
         mCreateCount = 0;
+        mRotation  = new ParticleInstanceTextureRotationModifier(0.0f, (float)Math.PI * 1.0f);
+        mVelocity1 = new ParticleInstanceVelocityModifier(-1.0f, 3, 0, 0, 0, 0);
+        mVelocity2 = new ParticleInstanceVelocityModifier(0.0f, 3, 0, 0, 0, 0);
+        mVelocity3 = new ParticleInstanceVelocityModifier(1.0f, 3, 0, 0, 0, 0);
     }
 
 
@@ -47,9 +53,9 @@ public class ThreeStarMoveEmissionProgram implements IParticleEmissionProgram {
                    .withUVCoords(0.25f, 0.25f)
                    .withModifier(mLifeSpan)
                    .withModifier(THREE_STAR_COLOR)
-                   .withModifier(THREE_STAR_ROTATION)
-                   .withModifier(mCreateCount == 1 ? THREE_STAR_VELOCITY_1 :
-                                     mCreateCount == 2 ? THREE_STAR_VELOCITY_2 : THREE_STAR_VELOCITY_3);
+                   .withModifier(mRotation)
+                   .withModifier(mCreateCount == 1 ? mVelocity1 :
+                                     mCreateCount == 2 ? mVelocity2 : mVelocity3);
         p.setPointSize(80);
         return p;
     }
@@ -0,0 +1,247 @@
+package com.scotthconner.cubetrisrebooted.cubetris.replay;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+import com.scotthconner.cubetrisrebooted.lib.core.VarInt;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * CubeReplay
+ *
+ * A recorded game, memory mapped for playback. The file is laid out as:
+ *
+ *   header    magic, version, side count, board size, color count, seed, keyframe interval
+ *   records   an op byte followed by its arguments. runs of identical update ticks are
+ *             collapsed into one record, and every keyframe interval pieces a keyframe record
+ *             holds a full CubeBoardModel state
+ *   index     (piece number, file offset) for every keyframe, followed by the index offset
+ *             and a trailing magic
+ *
+ * A recording that was never closed has no index, in which case the records are scanned for
+ * keyframes when the replay is opened.
+ *
+ * Created by scottc on 4/7/16.
+ */
+public class CubeReplay implements Closeable {
+    // file format
+    static final int MAGIC         = 0x43425250; // CBRP
+    static final int INDEX_MAGIC   = 0x43425249; // CBRI
+    static final byte VERSION      = 3;
+    static final int HEADER_SIZE   = 4 + 1 + 1 + 2 + 2 + 1 + 8 + 2;
+    static final int FOOTER_SIZE   = 8 + 4;
+
+    // record ops
+    static final byte OP_TICKS        = 0;  // varint count, varint milliseconds
+    static final byte OP_MOVE         = 1;  // signed varint x, signed varint y
+    static final byte OP_ROTATE       = 2;  // signed varint direction
+    static final byte OP_ROTATE_PIECE = 3;  // signed varint direction
+    static final byte OP_SPEED        = 4;  // varint speed factor
+    static final byte OP_DROP         = 5;
+    static final byte OP_KEYFRAME     = 6;  // varint piece number, varint length, model state
+    static final byte OP_END          = 7;
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mRecordsEnd;
+
+    // header
+    private final int mSideCount;
+    private final int mSideWidth;
+    private final int mBoardHeight;
+    private final int mColorCount;
+    private final long mSeed;
+    private final int mKeyframeInterval;
+
+    // seek index, sorted by piece number
+    private int[] mKeyframePieces;
+    private int[] mKeyframeOffsets;
+    private int mKeyframeCount;
+
+    /**
+     * Maps a replay file for reading.
+     *
+     * @param file a file written by CubeReplayRecorder
+     * @throws IOException if the file can't be read or isn't a replay
+     */
+    public CubeReplay(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = mFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("replay is too large to map");
+            }
+            mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mBuffer.order(ByteOrder.BIG_ENDIAN);
+
+            if (mBuffer.limit() < HEADER_SIZE || mBuffer.getInt(0) != MAGIC || mBuffer.get(4) != VERSION) {
+                throw new IOException("not a replay file");
+            }
+            mBuffer.position(5);
+            mSideCount = mBuffer.get();
+            mSideWidth = mBuffer.getShort();
+            mBoardHeight = mBuffer.getShort();
+            mColorCount = mBuffer.get();
+            mSeed = mBuffer.getLong();
+            mKeyframeInterval = mBuffer.getShort();
+
+            mKeyframePieces = new int[16];
+            mKeyframeOffsets = new int[16];
+            mKeyframeCount = 0;
+            mRecordsEnd = hasIndex() ? readIndex() : scanIndex();
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    public int getSideCount() {
+        return mSideCount;
+    }
+
+    public int getSideWidth() {
+        return mSideWidth;
+    }
+
+    public int getBoardHeight() {
+        return mBoardHeight;
+    }
+
+    public int getColorCount() {
+        return mColorCount;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public int getKeyframeInterval() {
+        return mKeyframeInterval;
+    }
+
+    public int getKeyframeCount() {
+        return mKeyframeCount;
+    }
+
+    /**
+     * @return a fresh model matching the recorded board, ready to be handed to a player
+     */
+    public CubeBoardModel createModel() {
+        return new CubeBoardModel(mSideCount, mSideWidth, mBoardHeight, mColorCount,
+                new RandomStreams(mSeed));
+    }
+
+    /**
+     * @param model the model to drive, usually from createModel
+     * @return a player positioned at the start of the recording
+     */
+    public CubeReplayPlayer createPlayer(CubeBoardModel model) {
+        return new CubeReplayPlayer(this, model);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * @param pieceNumber a piece number, 1 for the first piece of the game
+     * @return the index of the last keyframe at or before the piece, or -1 if there is none
+     */
+    int findKeyframe(int pieceNumber) {
+        int found = Arrays.binarySearch(mKeyframePieces, 0, mKeyframeCount, pieceNumber);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    int getKeyframePiece(int keyframe) {
+        return mKeyframePieces[keyframe];
+    }
+
+    int getKeyframeOffset(int keyframe) {
+        return mKeyframeOffsets[keyframe];
+    }
+
+    int getRecordsEnd() {
+        return mRecordsEnd;
+    }
+
+    /**
+     * @return an independent view of the mapped file, so players don't share a position
+     */
+    ByteBuffer duplicateBuffer() {
+        return mBuffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private boolean hasIndex() {
+        int limit = mBuffer.limit();
+        return limit >= HEADER_SIZE + FOOTER_SIZE && mBuffer.getInt(limit - 4) == INDEX_MAGIC;
+    }
+
+    private int readIndex() throws IOException {
+        int limit = mBuffer.limit();
+        long indexOffset = mBuffer.getLong(limit - FOOTER_SIZE);
+        if (indexOffset < HEADER_SIZE || indexOffset > limit - FOOTER_SIZE) {
+            throw new IOException("replay index is corrupt");
+        }
+
+        mBuffer.position((int) indexOffset);
+        int count = mBuffer.getInt();
+        for (int x = 0; x < count; x++) {
+            addKeyframe(mBuffer.getInt(), mBuffer.getInt());
+        }
+        return (int) indexOffset;
+    }
+
+    private int scanIndex() {
+        ByteBuffer in = duplicateBuffer();
+        in.position(HEADER_SIZE);
+        int recordStart = HEADER_SIZE;
+        try {
+            while (in.hasRemaining()) {
+                recordStart = in.position();
+                byte op = in.get();
+                switch (op) {
+                    case OP_TICKS: VarInt.get(in); VarInt.get(in); break;
+                    case OP_MOVE: VarInt.getSigned(in); VarInt.getSigned(in); break;
+                    case OP_ROTATE:
+                    case OP_ROTATE_PIECE: VarInt.getSigned(in); break;
+                    case OP_SPEED: VarInt.get(in); break;
+                    case OP_DROP: break;
+                    case OP_KEYFRAME:
+                        int piece = VarInt.get(in);
+                        int length = VarInt.get(in);
+                        if (length > in.remaining()) {
+                            return recordStart; // cut off mid keyframe
+                        }
+                        in.position(in.position() + length);
+                        addKeyframe(piece, recordStart);
+                        break;
+                    default:
+                        return recordStart;
+                }
+            }
+            return in.position();
+        } catch (RuntimeException e) {
+            // the recording stopped mid record, everything before it is still good
+            return recordStart;
+        }
+    }
+
+    private void addKeyframe(int piece, int offset) {
+        if (mKeyframeCount == mKeyframePieces.length) {
+            mKeyframePieces = Arrays.copyOf(mKeyframePieces, mKeyframeCount * 2);
+            mKeyframeOffsets = Arrays.copyOf(mKeyframeOffsets, mKeyframeCount * 2);
+        }
+        mKeyframePieces[mKeyframeCount] = piece;
+        mKeyframeOffsets[mKeyframeCount] = offset;
+        mKeyframeCount++;
+    }
+}
@@ -0,0 +1,138 @@
+package com.scotthconner.cubetrisrebooted.cubetris.replay;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.lib.core.VarInt;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CubeReplayPlayer
+ *
+ * Drives a CubeBoardModel through a recorded game. Seeking restores the nearest keyframe at or
+ * before the requested piece and plays forward from there, so at most a keyframe interval of
+ * pieces is ever simulated. Seek before stepping, since the model's state at the start of the
+ * game only exists in the first keyframe.
+ *
+ * Created by scottc on 4/7/16.
+ */
+public class CubeReplayPlayer {
+    private final CubeReplay mReplay;
+    private final CubeBoardModel mModel;
+    private final ByteBuffer mIn;
+
+    // the update run currently being played
+    private int mTicksRemaining;
+    private int mTickMs;
+    private long mTick;
+
+    CubeReplayPlayer(CubeReplay replay, CubeBoardModel model) {
+        mReplay = replay;
+        mModel = model;
+        mIn = replay.duplicateBuffer();
+        mIn.position(CubeReplay.HEADER_SIZE);
+        mIn.limit(replay.getRecordsEnd());
+        mTicksRemaining = 0;
+        mTick = 0;
+    }
+
+    public CubeBoardModel getModel() {
+        return mModel;
+    }
+
+    /**
+     * @return the number of updates played since the last seek
+     */
+    public long getTick() {
+        return mTick;
+    }
+
+    public boolean isFinished() {
+        return mTicksRemaining == 0 && !mIn.hasRemaining();
+    }
+
+    /**
+     * Puts the model at the moment the given piece spawned.
+     *
+     * @param pieceNumber 1 for the first piece of the game
+     * @return false if the recording ends before that piece
+     */
+    public boolean seekToPiece(int pieceNumber) {
+        int keyframe = mReplay.findKeyframe(pieceNumber);
+        if (keyframe < 0) {
+            return false;
+        }
+
+        // restore the keyframe, and carry on right after it
+        mIn.position(mReplay.getKeyframeOffset(keyframe));
+        mIn.get(); // OP_KEYFRAME
+        VarInt.get(mIn);
+        mModel.restoreState(readKeyframeState());
+        mTicksRemaining = 0;
+        mTick = 0;
+
+        while (mModel.getPieceCount() < pieceNumber) {
+            if (!step()) {
+                return false;
+            }
+        }
+        return mModel.getPieceCount() == pieceNumber;
+    }
+
+    /**
+     * Plays the next input, or the next update tick.
+     *
+     * @return false once the recording is over
+     */
+    public boolean step() {
+        if (mTicksRemaining > 0) {
+            mTicksRemaining--;
+            mTick++;
+            mModel.update(mTickMs);
+            return true;
+        }
+
+        if (!mIn.hasRemaining()) {
+            return false;
+        }
+
+        byte op = mIn.get();
+        switch (op) {
+            case CubeReplay.OP_TICKS:
+                mTicksRemaining = VarInt.get(mIn);
+                mTickMs = VarInt.get(mIn);
+                return step();
+            case CubeReplay.OP_MOVE:
+                int xDiff = VarInt.getSigned(mIn);
+                mModel.movePiece(xDiff, VarInt.getSigned(mIn));
+                return true;
+            case CubeReplay.OP_ROTATE:
+                mModel.rotate(VarInt.getSigned(mIn));
+                return true;
+            case CubeReplay.OP_ROTATE_PIECE:
+                mModel.rotatePiece(VarInt.getSigned(mIn));
+                return true;
+            case CubeReplay.OP_SPEED:
+                mModel.modulePieceSpeed(VarInt.get(mIn));
+                return true;
+            case CubeReplay.OP_DROP:
+                mModel.dropActivePiece();
+                return true;
+            case CubeReplay.OP_KEYFRAME:
+                // the model is already in this state when playing through
+                VarInt.get(mIn);
+                readKeyframeState();
+                return step();
+            default:
+                mIn.position(mIn.limit());
+                return false;
+        }
+    }
+
+    private ByteBuffer readKeyframeState() {
+        int length = VarInt.get(mIn);
+        ByteBuffer state = mIn.slice();
+        state.limit(length);
+        mIn.position(mIn.position() + length);
+        return state;
+    }
+}
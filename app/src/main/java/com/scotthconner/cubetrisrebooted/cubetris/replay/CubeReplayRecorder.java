@@ -0,0 +1,290 @@
+package com.scotthconner.cubetrisrebooted.cubetris.replay;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.ICubeBoardModelRecorder;
+import com.scotthconner.cubetrisrebooted.lib.core.VarInt;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * CubeReplayRecorder
+ *
+ * Records everything that happens to a CubeBoardModel into the CubeReplay format. Records are
+ * gathered in a direct buffer and written to the channel whenever it fills up, so the game
+ * thread only touches the channel once every few thousand inputs.
+ *
+ * Recording errors can't be thrown from the model's callbacks, so the first one stops the
+ * recording and is thrown from close().
+ *
+ * Created by scottc on 4/7/16.
+ */
+public class CubeReplayRecorder implements ICubeBoardModelRecorder, Closeable {
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 25;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RECORD_SIZE = 1 + VarInt.MAX_BYTES * 2;
+
+    private final CubeBoardModel mModel;
+    private final WritableByteChannel mChannel;
+    private final int mKeyframeInterval;
+    private final ByteBuffer mBuffer;
+    private final ByteBuffer mState;      // scratch space for keyframe model states
+    private long mWritten;                // bytes already handed to the channel
+    private IOException mFailure;
+    private boolean mClosed;
+
+    // the run of identical update ticks not yet written
+    private int mRunCount;
+    private int mRunMs;
+
+    // piece the last keyframe check saw
+    private int mLastPieceCount;
+
+    // seek index
+    private int[] mKeyframePieces;
+    private int[] mKeyframeOffsets;
+    private int mKeyframeCount;
+
+    /**
+     * Starts recording the model to a new file.
+     *
+     * @param model            the model to record
+     * @param file             the file to write, replaced if it exists
+     * @param keyframeInterval pieces between keyframes
+     * @throws IOException if the file can't be created
+     */
+    public CubeReplayRecorder(CubeBoardModel model, File file, int keyframeInterval) throws IOException {
+        this(model, new FileOutputStream(file).getChannel(), keyframeInterval);
+    }
+
+    /**
+     * Starts recording the model. The recorder owns the channel from here on.
+     *
+     * @param model            the model to record
+     * @param channel          where the replay is written
+     * @param keyframeInterval pieces between keyframes
+     * @throws IOException if the header can't be written
+     */
+    public CubeReplayRecorder(CubeBoardModel model, WritableByteChannel channel, int keyframeInterval) throws IOException {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframe interval must be positive");
+        }
+
+        mModel = model;
+        mChannel = channel;
+        mKeyframeInterval = keyframeInterval;
+        mState = ByteBuffer.allocate(model.getMaxStateSize()).order(ByteOrder.BIG_ENDIAN);
+        mBuffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, mState.capacity() + MAX_RECORD_SIZE * 2))
+                .order(ByteOrder.BIG_ENDIAN);
+        mWritten = 0;
+        mRunCount = 0;
+        mKeyframePieces = new int[16];
+        mKeyframeOffsets = new int[16];
+        mKeyframeCount = 0;
+
+        mBuffer.putInt(CubeReplay.MAGIC);
+        mBuffer.put(CubeReplay.VERSION);
+        mBuffer.put((byte) model.getSideCount());
+        mBuffer.putShort((short) model.getSideWidth());
+        mBuffer.putShort((short) model.getBoardHeight());
+        mBuffer.put((byte) model.getColorCount());
+        mBuffer.putLong(model.getSeed());
+        mBuffer.putShort((short) keyframeInterval);
+        flushBuffer();
+
+        mLastPieceCount = 0;
+        model.setRecorder(this);
+    }
+
+    @Override
+    public synchronized void onStart(CubeBoardModel model) {
+        // a game already in progress needs a starting point too
+        mLastPieceCount = model.getPieceCount();
+        if (mKeyframeCount == 0 || (mLastPieceCount - 1) % mKeyframeInterval == 0) {
+            writeKeyframe(mLastPieceCount);
+        }
+    }
+
+    @Override
+    public synchronized void onUpdate(CubeBoardModel model, long msDelta) {
+        int ms = (int) msDelta;
+        if (mRunCount > 0 && ms != mRunMs) {
+            flushRun();
+        }
+        mRunMs = ms;
+        mRunCount++;
+        checkKeyframe(model);
+    }
+
+    @Override
+    public synchronized void onRotate(int direction) {
+        if (beginRecord()) {
+            mBuffer.put(CubeReplay.OP_ROTATE);
+            VarInt.putSigned(mBuffer, direction);
+        }
+    }
+
+    @Override
+    public synchronized void onRotatePiece(int direction) {
+        if (beginRecord()) {
+            mBuffer.put(CubeReplay.OP_ROTATE_PIECE);
+            VarInt.putSigned(mBuffer, direction);
+        }
+    }
+
+    @Override
+    public synchronized void onMovePiece(int xDiff, int yDiff) {
+        if (beginRecord()) {
+            mBuffer.put(CubeReplay.OP_MOVE);
+            VarInt.putSigned(mBuffer, xDiff);
+            VarInt.putSigned(mBuffer, yDiff);
+        }
+    }
+
+    @Override
+    public synchronized void onModulePieceSpeed(int speedFactor) {
+        if (beginRecord()) {
+            mBuffer.put(CubeReplay.OP_SPEED);
+            VarInt.put(mBuffer, speedFactor);
+        }
+    }
+
+    @Override
+    public synchronized void onDropActivePiece() {
+        if (beginRecord()) {
+            mBuffer.put(CubeReplay.OP_DROP);
+        }
+    }
+
+    /**
+     * Stops recording, writes the seek index and closes the channel. Like everything else
+     * done to the model, it has to be called on the model's update thread.
+     *
+     * @throws IOException if anything went wrong while recording
+     */
+    @Override
+    public void close() throws IOException {
+        // detach first, no callback can be running since the model is only updated on this thread
+        mModel.setRecorder(null);
+
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+
+            if (beginRecord()) {
+                mBuffer.put(CubeReplay.OP_END);
+                long indexOffset = getOffset();
+                ensureRemaining(4);
+                mBuffer.putInt(mKeyframeCount);
+                for (int x = 0; x < mKeyframeCount; x++) {
+                    ensureRemaining(8);
+                    mBuffer.putInt(mKeyframePieces[x]);
+                    mBuffer.putInt(mKeyframeOffsets[x]);
+                }
+                ensureRemaining(CubeReplay.FOOTER_SIZE);
+                mBuffer.putLong(indexOffset);
+                mBuffer.putInt(CubeReplay.INDEX_MAGIC);
+                flushBuffer();
+            }
+
+            mClosed = true;
+            mChannel.close();
+            if (null != mFailure) {
+                throw mFailure;
+            }
+        }
+    }
+
+    private void checkKeyframe(CubeBoardModel model) {
+        int pieceCount = model.getPieceCount();
+        if (pieceCount != mLastPieceCount) {
+            mLastPieceCount = pieceCount;
+            if ((pieceCount - 1) % mKeyframeInterval == 0) {
+                writeKeyframe(pieceCount);
+            }
+        }
+    }
+
+    private void writeKeyframe(int pieceCount) {
+        if (!beginRecord()) {
+            return;
+        }
+
+        mState.clear();
+        mModel.saveState(mState);
+        mState.flip();
+        ensureRemaining(MAX_RECORD_SIZE + mState.remaining());
+        if (null != mFailure) {
+            return;
+        }
+
+        if (mKeyframeCount == mKeyframePieces.length) {
+            mKeyframePieces = Arrays.copyOf(mKeyframePieces, mKeyframeCount * 2);
+            mKeyframeOffsets = Arrays.copyOf(mKeyframeOffsets, mKeyframeCount * 2);
+        }
+        mKeyframePieces[mKeyframeCount] = pieceCount;
+        mKeyframeOffsets[mKeyframeCount] = (int) getOffset();
+        mKeyframeCount++;
+
+        mBuffer.put(CubeReplay.OP_KEYFRAME);
+        VarInt.put(mBuffer, pieceCount);
+        VarInt.put(mBuffer, mState.remaining());
+        mBuffer.put(mState);
+    }
+
+    /**
+     * Writes out any pending update run and makes room for one more record.
+     *
+     * @return false if the recording has failed
+     */
+    private boolean beginRecord() {
+        if (mClosed || null != mFailure) {
+            return false;
+        }
+        flushRun();
+        ensureRemaining(MAX_RECORD_SIZE);
+        return null == mFailure;
+    }
+
+    private void flushRun() {
+        if (mRunCount == 0) {
+            return;
+        }
+        ensureRemaining(MAX_RECORD_SIZE);
+        if (null == mFailure) {
+            mBuffer.put(CubeReplay.OP_TICKS);
+            VarInt.put(mBuffer, mRunCount);
+            VarInt.put(mBuffer, mRunMs);
+        }
+        mRunCount = 0;
+    }
+
+    private long getOffset() {
+        return mWritten + mBuffer.position();
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (mBuffer.remaining() < bytes) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() {
+        mBuffer.flip();
+        try {
+            while (mBuffer.hasRemaining()) {
+                mWritten += mChannel.write(mBuffer);
+            }
+        } catch (IOException e) {
+            mFailure = e;
+        }
+        mBuffer.clear();
+    }
+}
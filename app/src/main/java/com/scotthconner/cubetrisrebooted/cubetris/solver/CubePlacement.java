@@ -0,0 +1,144 @@
+package com.scotthconner.cubetrisrebooted.cubetris.solver;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+
+/**
+ * CubePlacement
+ *
+ * Where a piece can come to rest, and the inputs that get it there from where it was when the
+ * search started.
+ *
+ * Created by scottc on 4/8/16.
+ */
+public class CubePlacement {
+    // inputs, in terms of CubeBoardModel calls
+    public static final byte MOVE_LEFT          = 0;  // movePiece(-1, 0)
+    public static final byte MOVE_RIGHT         = 1;  // movePiece(1, 0)
+    public static final byte MOVE_DOWN          = 2;  // movePiece(0, -1)
+    public static final byte ROTATE_PIECE_CW    = 3;  // rotatePiece(1)
+    public static final byte ROTATE_PIECE_CCW   = 4;  // rotatePiece(-1)
+    public static final byte ROTATE_BOARD_LEFT  = 5;  // rotate(-1), wait for it to finish
+    public static final byte ROTATE_BOARD_RIGHT = 6;  // rotate(1), wait for it to finish
+    public static final byte SLIDE_LEFT         = 7;  // fall a row and slide left under an overhang
+    public static final byte SLIDE_RIGHT        = 8;  // fall a row and slide right under an overhang
+
+    private final int mFace;
+    private final int mRotation;
+    private final int mFaceX;
+    private final int mFaceY;
+    private final byte[] mMoves;
+    private final int mLinesCleared;
+    private final float mScore;
+
+    CubePlacement(int face, int rotation, int faceX, int faceY, byte[] moves, int linesCleared, float score) {
+        mFace = face;
+        mRotation = rotation;
+        mFaceX = faceX;
+        mFaceY = faceY;
+        mMoves = moves;
+        mLinesCleared = linesCleared;
+        mScore = score;
+    }
+
+    /**
+     * @return the face the piece rests on
+     */
+    public int getFace() {
+        return mFace;
+    }
+
+    /**
+     * @return quarter turns clockwise from the style's spawn orientation
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    public int getFaceX() {
+        return mFaceX;
+    }
+
+    public int getFaceY() {
+        return mFaceY;
+    }
+
+    public int getMoveCount() {
+        return mMoves.length;
+    }
+
+    public byte getMove(int index) {
+        return mMoves[index];
+    }
+
+    /**
+     * @return rows this piece clears by itself
+     */
+    public int getLinesCleared() {
+        return mLinesCleared;
+    }
+
+    /**
+     * @return the score of the best line of play starting with this placement
+     */
+    public float getScore() {
+        return mScore;
+    }
+
+    /**
+     * Plays every move on a board as fast as it takes them, running the clock while the board
+     * turns, then drops the piece and runs the clock until the next one spawns. Stops early if
+     * gravity commits the piece first.
+     *
+     * @param tickMs the clock step
+     */
+    public void applyTo(CubeBoardModel model, long tickMs) {
+        int piece = model.getPieceCount();
+        for (int i = 0; i < mMoves.length && model.getPieceCount() == piece; i++) {
+            applyMove(model, mMoves[i]);
+            while (model.isRotating()) {
+                model.update(tickMs);
+            }
+        }
+
+        if (model.getPieceCount() == piece) {
+            model.dropActivePiece();
+        }
+        while (model.getPieceCount() == piece && !model.isGameOver()) {
+            model.update(tickMs);
+        }
+    }
+
+    /**
+     * Feeds one input to a board. Board rotations are only started, the board has to be
+     * updated until it's done turning.
+     *
+     * @return false if the board refused the move
+     */
+    public static boolean applyMove(CubeBoardModel model, byte move) {
+        switch (move) {
+            case MOVE_LEFT:
+                return model.movePiece(-1, 0);
+            case MOVE_RIGHT:
+                return model.movePiece(1, 0);
+            case MOVE_DOWN:
+                return model.movePiece(0, -1);
+            case ROTATE_PIECE_CW:
+                model.rotatePiece(1);
+                return true;
+            case ROTATE_PIECE_CCW:
+                model.rotatePiece(-1);
+                return true;
+            case ROTATE_BOARD_LEFT:
+                model.rotate(-1);
+                return true;
+            case ROTATE_BOARD_RIGHT:
+                model.rotate(1);
+                return true;
+            case SLIDE_LEFT:
+                return model.movePiece(0, -1) && model.movePiece(-1, 0);
+            case SLIDE_RIGHT:
+                return model.movePiece(0, -1) && model.movePiece(1, 0);
+        }
+        return false;
+    }
+}
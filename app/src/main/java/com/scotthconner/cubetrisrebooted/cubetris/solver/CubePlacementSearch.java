@@ -0,0 +1,320 @@
+package com.scotthconner.cubetrisrebooted.cubetris.solver;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardOccupancy;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardPieceShapes;
+
+import java.util.Arrays;
+
+/**
+ * CubePlacementSearch
+ *
+ * Finds every placement a piece can reach from where it is, following the same rules the board
+ * enforces on CubeBoardPieceModel: moving left, right and down on the active face, rotating the
+ * piece, rotating the board (when the sweep is clear) and the slide maneuver. Gravity timing is
+ * not modelled, a placement is any position the piece can get to where it can't fall further.
+ *
+ * The search is a breadth first walk over (face, rotation, x, y), so the moves handed back for a
+ * placement are as short as they can be. All of the working storage is allocated up front;
+ * an instance is meant to be reused by one thread for many searches.
+ *
+ * Created by scottc on 4/8/16.
+ */
+public class CubePlacementSearch {
+    private static final int ROTATIONS = CubeBoardPieceShapes.ROTATIONS;
+
+    // no piece offset reaches further than this from its center
+    private static final int MARGIN = 3;
+
+    private final int mSideWidth;
+    private final int mBoardHeight;
+    private final int mBoardWidth;
+    private final int mSideCount;
+
+    // state space, indexed ((face * ROTATIONS + rotation) * mXRange + x + MARGIN) * mYRange + y + MARGIN
+    private final int mXRange;
+    private final int mYRange;
+    private final int[] mVisited;       // holds the search generation that reached the state
+    private final int[] mParent;
+    private final byte[] mParentMove;
+    private final int[] mQueue;
+    private int mGeneration;
+
+    // the current search
+    private CubeBoardOccupancy mBoard;
+    private int mStyle;
+    private boolean mCanRotate;
+    private int mRoot;
+
+    // placements found by the current search
+    private final int[] mPlacements;
+    private final long[] mPlacementKeys;
+    private int mPlacementCount;
+
+    public CubePlacementSearch(int sideWidth, int boardHeight) {
+        this(CubeBoardModel.DEFAULT_SIDE_COUNT, sideWidth, boardHeight);
+    }
+
+    public CubePlacementSearch(int sideCount, int sideWidth, int boardHeight) {
+        mSideWidth = sideWidth;
+        mBoardHeight = boardHeight;
+        mBoardWidth = CubeBoardModel.getBoardWidth(sideCount, sideWidth);
+        mSideCount = sideCount;
+
+        mXRange = sideWidth + MARGIN * 2;
+        mYRange = boardHeight + 1 + MARGIN * 2;
+        int states = mSideCount * ROTATIONS * mXRange * mYRange;
+        mVisited = new int[states];
+        mParent = new int[states];
+        mParentMove = new byte[states];
+        mQueue = new int[states];
+        mGeneration = 0;
+
+        mPlacements = new int[states];
+        mPlacementKeys = new long[states];
+    }
+
+    /**
+     * Finds every placement of a piece. Placements that would stick out of the top of the
+     * board are left out, as they end the game.
+     *
+     * @param board    the board to place the piece on, must not change until the search is done with
+     * @param style    the piece style
+     * @param rotation the piece's current rotation
+     * @param face     the active face
+     * @param faceX    the piece's position on the face
+     * @param faceY
+     * @return the number of distinct placements found
+     */
+    public int search(CubeBoardOccupancy board, int style, int rotation, int face, int faceX, int faceY) {
+        mBoard = board;
+        mStyle = style;
+        mCanRotate = CubeBoardPieceShapes.CAN_ROTATE[style];
+        mPlacementCount = 0;
+        if (++mGeneration == 0) {
+            Arrays.fill(mVisited, 0);
+            mGeneration = 1;
+        }
+
+        if (!isValid(face, rotation, faceX, faceY)) {
+            return 0;
+        }
+
+        mRoot = stateIndex(face, rotation, faceX, faceY);
+        mVisited[mRoot] = mGeneration;
+        int head = 0;
+        int tail = 0;
+        mQueue[tail++] = mRoot;
+
+        while (head < tail) {
+            int state = mQueue[head++];
+            int y = state % mYRange - MARGIN;
+            int rest = state / mYRange;
+            int x = rest % mXRange - MARGIN;
+            rest /= mXRange;
+            int r = rest % ROTATIONS;
+            int f = rest / ROTATIONS;
+
+            // resting, the piece commits here
+            if (!isValid(f, r, x, y - 1)) {
+                addPlacement(state, f, r, x, y);
+                continue;
+            }
+
+            tail = visit(tail, state, CubePlacement.MOVE_DOWN, f, r, x, y - 1);
+            tail = visit(tail, state, CubePlacement.MOVE_LEFT, f, r, x - 1, y);
+            tail = visit(tail, state, CubePlacement.MOVE_RIGHT, f, r, x + 1, y);
+
+            // falling a row and sliding under an overhang in the same step, which reaches spots
+            // the piece would have committed on its way to
+            tail = visit(tail, state, CubePlacement.SLIDE_LEFT, f, r, x - 1, y - 1);
+            tail = visit(tail, state, CubePlacement.SLIDE_RIGHT, f, r, x + 1, y - 1);
+
+            if (mCanRotate) {
+                tail = visit(tail, state, CubePlacement.ROTATE_PIECE_CW, f, (r + 1) % ROTATIONS, x, y);
+                tail = visit(tail, state, CubePlacement.ROTATE_PIECE_CCW, f, (r + ROTATIONS - 1) % ROTATIONS, x, y);
+            }
+
+            if (!isSweepBlocked(f, r, x, y, -1)) {
+                tail = visit(tail, state, CubePlacement.ROTATE_BOARD_LEFT, (f + mSideCount - 1) % mSideCount, r, x, y);
+            }
+            if (!isSweepBlocked(f, r, x, y, 1)) {
+                tail = visit(tail, state, CubePlacement.ROTATE_BOARD_RIGHT, (f + 1) % mSideCount, r, x, y);
+            }
+        }
+
+        return mPlacementCount;
+    }
+
+    public int getPlacementCount() {
+        return mPlacementCount;
+    }
+
+    public int getPlacementFace(int placement) {
+        return mPlacements[placement] / mYRange / mXRange / ROTATIONS;
+    }
+
+    public int getPlacementRotation(int placement) {
+        return mPlacements[placement] / mYRange / mXRange % ROTATIONS;
+    }
+
+    public int getPlacementX(int placement) {
+        return mPlacements[placement] / mYRange % mXRange - MARGIN;
+    }
+
+    public int getPlacementY(int placement) {
+        return mPlacements[placement] % mYRange - MARGIN;
+    }
+
+    /**
+     * Commits a placement onto a board and removes any rows it completes.
+     *
+     * @param placement the placement index
+     * @param dest      the board to write, it is overwritten with the searched board first
+     * @return the number of rows cleared
+     */
+    public int apply(int placement, CubeBoardOccupancy dest) {
+        return apply(mBoard, mStyle, getPlacementFace(placement), getPlacementRotation(placement),
+                getPlacementX(placement), getPlacementY(placement), dest);
+    }
+
+    /**
+     * Commits a piece onto a copy of a board and removes any rows it completes.
+     *
+     * @param source   the board the piece is placed on
+     * @param style    the piece style
+     * @param face     the face the piece rests on
+     * @param rotation the piece rotation
+     * @param faceX    the piece position on the face
+     * @param faceY
+     * @param dest     the board to write, it is overwritten with the source first
+     * @return the number of rows cleared
+     */
+    public static int apply(CubeBoardOccupancy source, int style, int face, int rotation, int faceX, int faceY,
+                            CubeBoardOccupancy dest) {
+        dest.copyFrom(source);
+        int sideWidth = source.getSideWidth();
+        int boardWidth = source.getBoardWidth();
+        int[] shapeX = CubeBoardPieceShapes.CELL_X[style][rotation];
+        int[] shapeY = CubeBoardPieceShapes.CELL_Y[style][rotation];
+        int top = 0;
+        int bottom = source.getBoardHeight();
+        for (int i = 0; i < shapeX.length; i++) {
+            int y = faceY + shapeY[i];
+            dest.set((face * (sideWidth - 1) + faceX + shapeX[i]) % boardWidth, y);
+            top = Math.max(top, y);
+            bottom = Math.min(bottom, y);
+        }
+
+        // from the top down, so removing a row doesn't move the rows still to check
+        int cleared = 0;
+        for (int y = top; y >= bottom; y--) {
+            if (dest.isRowComplete(y)) {
+                dest.removeRow(y);
+                cleared++;
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * @param placement the placement index
+     * @return the inputs that take the piece from where the search started to the placement
+     */
+    public byte[] getMoves(int placement) {
+        int length = 0;
+        for (int state = mPlacements[placement]; state != mRoot; state = mParent[state]) {
+            length++;
+        }
+
+        byte[] moves = new byte[length];
+        for (int state = mPlacements[placement]; state != mRoot; state = mParent[state]) {
+            moves[--length] = mParentMove[state];
+        }
+        return moves;
+    }
+
+    private int visit(int tail, int from, byte move, int face, int rotation, int faceX, int faceY) {
+        if (faceX < -MARGIN || faceX >= mSideWidth + MARGIN || faceY < -MARGIN) {
+            return tail;
+        }
+
+        int state = stateIndex(face, rotation, faceX, faceY);
+        if (mVisited[state] == mGeneration || !isValid(face, rotation, faceX, faceY)) {
+            return tail;
+        }
+
+        mVisited[state] = mGeneration;
+        mParent[state] = from;
+        mParentMove[state] = move;
+        mQueue[tail] = state;
+        return tail + 1;
+    }
+
+    private void addPlacement(int state, int face, int rotation, int faceX, int faceY) {
+        int[] shapeX = CubeBoardPieceShapes.CELL_X[mStyle][rotation];
+        int[] shapeY = CubeBoardPieceShapes.CELL_Y[mStyle][rotation];
+
+        // the same cells can be reached in different ways, e.g. from either side of a seam.
+        // the key is the sorted list of 16 bit slot numbers.
+        long key = 0;
+        int previous = -1;
+        for (int i = 0; i < shapeX.length; i++) {
+            int y = faceY + shapeY[i];
+            if (y >= mBoardHeight) {
+                return; // tops out
+            }
+
+            // pick the smallest slot still above the previous one
+            int next = Integer.MAX_VALUE;
+            for (int j = 0; j < shapeX.length; j++) {
+                int slot = trueX(face, faceX + shapeX[j]) * mBoardHeight + faceY + shapeY[j];
+                if (slot > previous && slot < next) {
+                    next = slot;
+                }
+            }
+            previous = next;
+            key = (key << 16) | next;
+        }
+
+        for (int i = 0; i < mPlacementCount; i++) {
+            if (mPlacementKeys[i] == key) {
+                return;
+            }
+        }
+        mPlacementKeys[mPlacementCount] = key;
+        mPlacements[mPlacementCount] = state;
+        mPlacementCount++;
+    }
+
+    private boolean isValid(int face, int rotation, int faceX, int faceY) {
+        int[] shapeX = CubeBoardPieceShapes.CELL_X[mStyle][rotation];
+        int[] shapeY = CubeBoardPieceShapes.CELL_Y[mStyle][rotation];
+        for (int i = 0; i < shapeX.length; i++) {
+            int x = faceX + shapeX[i];
+            if (x < 0 || x >= mSideWidth || mBoard.isFaceSpaceOccupied(face, x, faceY + shapeY[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isSweepBlocked(int face, int rotation, int faceX, int faceY, int direction) {
+        int[] shapeX = CubeBoardPieceShapes.CELL_X[mStyle][rotation];
+        int[] shapeY = CubeBoardPieceShapes.CELL_Y[mStyle][rotation];
+        for (int i = 0; i < shapeX.length; i++) {
+            if (mBoard.isRotationSweepBlocked(face, faceX + shapeX[i], faceY + shapeY[i], direction)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int stateIndex(int face, int rotation, int faceX, int faceY) {
+        return ((face * ROTATIONS + rotation) * mXRange + faceX + MARGIN) * mYRange + faceY + MARGIN;
+    }
+
+    private int trueX(int face, int faceX) {
+        return (face * (mSideWidth - 1) + faceX) % mBoardWidth;
+    }
+}
@@ -0,0 +1,387 @@
+package com.scotthconner.cubetrisrebooted.cubetris.solver;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardCavityMap;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardOccupancy;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardPieceModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardZobrist;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * CubeSolver
+ *
+ * Picks where the active piece of a CubeBoardModel should go. Every placement of the active
+ * piece is scored, and then a beam search runs over the preview queue: at each depth the best
+ * boards so far are expanded with every placement of the next previewed piece, and only the
+ * best beam width of those carry on. The active piece placement leading to the best board at
+ * the deepest level wins.
+ *
+ * Different orders of placements often reach the same board, so boards are hashed and only
+ * the best way of reaching each one takes a place in the beam.
+ *
+ * The boards at each depth are spread over a fixed pool of worker threads, each with its own
+ * search and scratch storage.
+ *
+ * Created by scottc on 4/8/16.
+ */
+public class CubeSolver {
+    private final int mSideCount;
+    private final int mSideWidth;
+    private final int mBoardHeight;
+    private final ICubePlacementHeuristic mHeuristic;
+
+    // workers, one per thread
+    private final Worker[] mWorkers;
+    private final ExecutorService mExecutor;
+
+    // capturing the model
+    private final CubeBoardModel mSnapshot;
+    private final ByteBuffer mSnapshotBuffer;
+
+    // throughput
+    private long mLastPlacementsEvaluated;
+    private long mLastElapsedNanos;
+    private long mTotalPlacementsEvaluated;
+    private long mTotalElapsedNanos;
+
+    /**
+     * @param sideWidth   the board's side width
+     * @param boardHeight the board's height
+     * @param heuristic   scores boards, shared by every worker
+     * @param threadCount worker threads, 1 searches on the calling thread
+     */
+    public CubeSolver(int sideWidth, int boardHeight, ICubePlacementHeuristic heuristic, int threadCount) {
+        this(CubeBoardModel.DEFAULT_SIDE_COUNT, sideWidth, boardHeight, heuristic, threadCount);
+    }
+
+    /**
+     * @param sideCount   the board's number of faces
+     * @param sideWidth   the board's side width
+     * @param boardHeight the board's height
+     * @param heuristic   scores boards, shared by every worker
+     * @param threadCount worker threads, 1 searches on the calling thread
+     */
+    public CubeSolver(int sideCount, int sideWidth, int boardHeight, ICubePlacementHeuristic heuristic,
+                      int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("need at least one thread");
+        }
+
+        mSideCount = sideCount;
+        mSideWidth = sideWidth;
+        mBoardHeight = boardHeight;
+        mHeuristic = heuristic;
+
+        mWorkers = new Worker[threadCount];
+        for (int x = 0; x < threadCount; x++) {
+            mWorkers[x] = new Worker();
+        }
+        mExecutor = (threadCount == 1) ? null : Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CubeSolver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        mSnapshot = new CubeBoardModel(sideCount, sideWidth, boardHeight, 1, new RandomStreams(0));
+        mSnapshotBuffer = ByteBuffer.allocate(mSnapshot.getMaxStateSize());
+    }
+
+    /**
+     * @return placements scored by the last solve
+     */
+    public long getLastPlacementsEvaluated() {
+        return mLastPlacementsEvaluated;
+    }
+
+    /**
+     * @return placements scored per second by the last solve
+     */
+    public double getLastPlacementsPerSecond() {
+        return mLastElapsedNanos == 0 ? 0 : mLastPlacementsEvaluated * 1e9 / mLastElapsedNanos;
+    }
+
+    /**
+     * @return placements scored per second over every solve so far
+     */
+    public double getPlacementsPerSecond() {
+        return mTotalElapsedNanos == 0 ? 0 : mTotalPlacementsEvaluated * 1e9 / mTotalElapsedNanos;
+    }
+
+    /**
+     * Finds the best placement for the model's active piece. The model belongs to its update
+     * thread, so this has to be called there, or on a copy made there with saveState. The
+     * model is copied up front, and the search never touches it again.
+     *
+     * @param model     the game to solve, it must be the size the solver was made for
+     * @param lookahead how many preview pieces to search through, up to PREVIEW_COUNT
+     * @param beamWidth how many boards to keep at each depth
+     * @return the best placement, or null if there is no active piece or nowhere to put it
+     */
+    public synchronized CubePlacement solve(CubeBoardModel model, int lookahead, int beamWidth) {
+        long start = System.nanoTime();
+        long evaluated = 0;
+
+        // copy the model so the search sees one consistent moment of the game
+        mSnapshotBuffer.clear();
+        model.saveState(mSnapshotBuffer);
+        mSnapshotBuffer.flip();
+        mSnapshot.restoreState(mSnapshotBuffer);
+
+        CubeBoardPieceModel piece = mSnapshot.getActivePiece();
+        if (null == piece || piece.isCommitted()) {
+            return null;
+        }
+
+        // every placement of the active piece is a root of the search
+        Worker first = mWorkers[0];
+        CubePlacementSearch search = first.mSearch;
+        int rootCount = search.search(mSnapshot.getOccupancy(), piece.getStyle(), piece.getRotation(),
+                mSnapshot.getActiveFace(), piece.getFaceX(), piece.getFaceY());
+        if (rootCount == 0) {
+            return null;
+        }
+
+        List<Node> level = new ArrayList<>(rootCount);
+        byte[][] rootMoves = new byte[rootCount][];
+        int[] rootLines = new int[rootCount];
+        float[] rootScores = new float[rootCount];
+        for (int i = 0; i < rootCount; i++) {
+            Node node = new Node(mSideCount, mSideWidth, mBoardHeight);
+            node.mLines = search.apply(i, node.mBoard);
+            node.mFace = search.getPlacementFace(i);
+            node.mRoot = i;
+            node.mOrder = i;
+            first.mScratch.copyFrom(node.mBoard);
+            node.mScore = mHeuristic.score(first.mScratch, first.mCavities, node.mLines);
+            level.add(node);
+
+            rootMoves[i] = search.getMoves(i);
+            rootLines[i] = node.mLines;
+            rootScores[i] = node.mScore;
+        }
+        evaluated += rootCount;
+
+        // beam search over the preview queue
+        lookahead = Math.min(lookahead, CubeBoardModel.PREVIEW_COUNT);
+        for (int depth = 0; depth < lookahead; depth++) {
+            Collections.sort(level, BEST_FIRST);
+            if (level.size() > beamWidth) {
+                level = new ArrayList<>(level.subList(0, beamWidth));
+            }
+
+            List<Candidate> candidates = expand(level, mSnapshot.getPreviewStyle(depth));
+            if (candidates.isEmpty()) {
+                break; // every line of play tops out, go with what we have
+            }
+            evaluated += candidates.size();
+
+            // only the boards that make the beam are worth building, once each
+            Collections.sort(candidates, BEST_FIRST);
+            List<Node> next = new ArrayList<>(beamWidth);
+            long[] kept = new long[beamWidth];
+            for (int i = 0; i < candidates.size() && next.size() < beamWidth; i++) {
+                Candidate candidate = candidates.get(i);
+                if (contains(kept, next.size(), candidate.mHash)) {
+                    continue;
+                }
+                kept[next.size()] = candidate.mHash;
+                Node node = candidate.build(mSideCount, mSideWidth, mBoardHeight);
+                node.mOrder = next.size();
+                next.add(node);
+            }
+            level = next;
+
+            // a root's score is the best board its line of play reaches
+            for (int i = 0; i < rootCount; i++) {
+                rootScores[i] = Float.NEGATIVE_INFINITY;
+            }
+            for (Candidate candidate : candidates) {
+                int root = candidate.mParent.mRoot;
+                rootScores[root] = Math.max(rootScores[root], candidate.mScore);
+            }
+        }
+
+        int best = 0;
+        for (int i = 1; i < rootCount; i++) {
+            if (rootScores[i] > rootScores[best]) {
+                best = i;
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        mLastPlacementsEvaluated = evaluated;
+        mLastElapsedNanos = elapsed;
+        mTotalPlacementsEvaluated += evaluated;
+        mTotalElapsedNanos += elapsed;
+
+        return new CubePlacement(search.getPlacementFace(best), search.getPlacementRotation(best),
+                search.getPlacementX(best), search.getPlacementY(best), rootMoves[best],
+                rootLines[best], rootScores[best]);
+    }
+
+    /**
+     * Stops the worker threads, the solver can't be used afterwards.
+     */
+    public void shutdown() {
+        if (null != mExecutor) {
+            mExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Scores every placement of a piece on every board in the level, spreading the boards over
+     * the workers.
+     */
+    private List<Candidate> expand(final List<Node> level, final int style) {
+        if (null == mExecutor) {
+            return mWorkers[0].expand(level, 0, 1, style);
+        }
+
+        List<Callable<List<Candidate>>> tasks = new ArrayList<>(mWorkers.length);
+        for (int x = 0; x < mWorkers.length; x++) {
+            final Worker worker = mWorkers[x];
+            final int offset = x;
+            tasks.add(new Callable<List<Candidate>>() {
+                @Override
+                public List<Candidate> call() {
+                    return worker.expand(level, offset, mWorkers.length, style);
+                }
+            });
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        try {
+            for (Future<List<Candidate>> result : mExecutor.invokeAll(tasks)) {
+                candidates.addAll(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return candidates;
+    }
+
+    private static boolean contains(long[] hashes, int count, long hash) {
+        for (int i = 0; i < count; i++) {
+            if (hashes[i] == hash) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ties are broken by where a board came from, so the result doesn't depend on which
+    // worker found it first
+    private static final Comparator<Scored> BEST_FIRST = new Comparator<Scored>() {
+        @Override
+        public int compare(Scored a, Scored b) {
+            int byScore = Float.compare(b.mScore, a.mScore);
+            return byScore != 0 ? byScore : (a.mOrder < b.mOrder ? -1 : (a.mOrder == b.mOrder ? 0 : 1));
+        }
+    };
+
+    private static class Scored {
+        float mScore;
+        long mOrder;
+    }
+
+    /**
+     * A board in the beam, and the active piece placement it descends from.
+     */
+    private static class Node extends Scored {
+        final CubeBoardOccupancy mBoard;
+        int mFace;
+        int mLines;
+        int mRoot;
+
+        Node(int sideCount, int sideWidth, int boardHeight) {
+            mBoard = new CubeBoardOccupancy(sideCount, sideWidth, boardHeight);
+        }
+    }
+
+    /**
+     * A scored placement on a node's board, only built into a node if it makes the beam.
+     */
+    private static class Candidate extends Scored {
+        Node mParent;
+        int mStyle;
+        int mFace;
+        int mRotation;
+        int mFaceX;
+        int mFaceY;
+        int mLines;
+        long mHash;     // the board it leads to, and the face the next piece spawns on
+
+        Node build(int sideCount, int sideWidth, int boardHeight) {
+            Node node = new Node(sideCount, sideWidth, boardHeight);
+            CubePlacementSearch.apply(mParent.mBoard, mStyle, mFace, mRotation, mFaceX, mFaceY, node.mBoard);
+            node.mFace = mFace;
+            node.mLines = mLines;
+            node.mRoot = mParent.mRoot;
+            node.mScore = mScore;
+            return node;
+        }
+    }
+
+    /**
+     * The storage one thread needs to search.
+     */
+    private class Worker {
+        final CubePlacementSearch mSearch;
+        final CubeBoardOccupancy mScratch;
+        final CubeBoardCavityMap mCavities;
+
+        Worker() {
+            mSearch = new CubePlacementSearch(mSideCount, mSideWidth, mBoardHeight);
+            mScratch = new CubeBoardOccupancy(mSideCount, mSideWidth, mBoardHeight);
+            mCavities = new CubeBoardCavityMap(mScratch);
+        }
+
+        /**
+         * @param level  the boards to expand
+         * @param offset the first board this worker takes
+         * @param stride the number of workers sharing the level
+         * @param style  the piece to place on each board
+         */
+        List<Candidate> expand(List<Node> level, int offset, int stride, int style) {
+            List<Candidate> candidates = new ArrayList<>();
+            for (int n = offset; n < level.size(); n += stride) {
+                Node node = level.get(n);
+
+                // the next piece spawns on the face the last one was placed from
+                int count = mSearch.search(node.mBoard, style, 0, node.mFace, mSideWidth / 2, mBoardHeight);
+                for (int i = 0; i < count; i++) {
+                    Candidate candidate = new Candidate();
+                    candidate.mParent = node;
+                    candidate.mStyle = style;
+                    candidate.mFace = mSearch.getPlacementFace(i);
+                    candidate.mRotation = mSearch.getPlacementRotation(i);
+                    candidate.mFaceX = mSearch.getPlacementX(i);
+                    candidate.mFaceY = mSearch.getPlacementY(i);
+                    candidate.mLines = node.mLines + mSearch.apply(i, mScratch);
+                    candidate.mScore = mHeuristic.score(mScratch, mCavities, candidate.mLines);
+                    candidate.mHash = CubeBoardZobrist.hash(mScratch) ^ CubeBoardZobrist.faceKey(candidate.mFace);
+                    candidate.mOrder = (node.mOrder << 32) | i;
+                    candidates.add(candidate);
+                }
+            }
+            return candidates;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.scotthconner.cubetrisrebooted.cubetris.solver;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardCavityMap;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardOccupancy;
+
+/**
+ * CubeWeightedHeuristic
+ *
+ * The classic linear board evaluation: cleared lines are good, and total column height, holes
+ * and bumpiness (height differences between neighbouring columns, all the way around the
+ * board) are bad.
+ *
+ * Created by scottc on 4/8/16.
+ */
+public class CubeWeightedHeuristic implements ICubePlacementHeuristic {
+    private final float mLineWeight;
+    private final float mHeightWeight;
+    private final float mHoleWeight;
+    private final float mBumpinessWeight;
+
+    /**
+     * Weights that play a reasonable game out of the box.
+     */
+    public CubeWeightedHeuristic() {
+        this(0.76f, -0.51f, -0.36f, -0.18f);
+    }
+
+    public CubeWeightedHeuristic(float lineWeight, float heightWeight, float holeWeight, float bumpinessWeight) {
+        mLineWeight = lineWeight;
+        mHeightWeight = heightWeight;
+        mHoleWeight = holeWeight;
+        mBumpinessWeight = bumpinessWeight;
+    }
+
+    @Override
+    public float score(CubeBoardOccupancy board, CubeBoardCavityMap cavities, int linesCleared) {
+        int width = board.getBoardWidth();
+        int aggregateHeight = 0;
+        int bumpiness = 0;
+        int firstHeight = 0;
+        int previousHeight = 0;
+        for (int x = 0; x < width; x++) {
+            int height = columnHeight(board, x);
+            aggregateHeight += height;
+            if (x == 0) {
+                firstHeight = height;
+            } else {
+                bumpiness += Math.abs(height - previousHeight);
+            }
+            previousHeight = height;
+        }
+        bumpiness += Math.abs(firstHeight - previousHeight);
+
+        return mLineWeight * linesCleared +
+                mHeightWeight * aggregateHeight +
+                mHoleWeight * cavities.getHoleCount() +
+                mBumpinessWeight * bumpiness;
+    }
+
+    private static int columnHeight(CubeBoardOccupancy board, int x) {
+        for (int y = board.getBoardHeight() - 1; y >= 0; y--) {
+            if (board.isOccupied(x, y)) {
+                return y + 1;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,21 @@
+package com.scotthconner.cubetrisrebooted.cubetris.solver;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardCavityMap;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardOccupancy;
+
+/**
+ *
+ * Scores a board after one or more pieces have been placed on it, higher is better. Called
+ * from several solver threads at once, so implementations must not keep per-call state.
+ *
+ * Created by scottc on 4/8/16.
+ */
+public interface ICubePlacementHeuristic {
+    /**
+     * @param board        the board with the placed pieces committed and full rows removed
+     * @param cavities     the cavity map over board
+     * @param linesCleared rows cleared by the placed pieces, all together
+     * @return the board's score
+     */
+    public float score(CubeBoardOccupancy board, CubeBoardCavityMap cavities, int linesCleared);
+}
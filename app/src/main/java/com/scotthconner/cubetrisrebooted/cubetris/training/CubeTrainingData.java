@@ -0,0 +1,227 @@
+package com.scotthconner.cubetrisrebooted.cubetris.training;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * CubeTrainingData
+ *
+ * A file of (board, piece, placement, outcome) records exported from headless games, memory
+ * mapped for reading. The file is laid out as:
+ *
+ *   header    magic, version, side count, side width, board height, records per block
+ *   blocks    a record count, then each column of the block's records one after the other:
+ *             occupancy, style, next style, active face, placement face, rotation, face x,
+ *             face y, lines cleared, holes, max height, flags
+ *   index     the file offset of every block, followed by the index offset and a trailing
+ *             magic
+ *
+ * Occupancy is a bit per slot, row by row from the bottom, ROW_BYTES(width) bytes a row with
+ * column x in bit (x % 8) of byte (x / 8). Every block but the last holds exactly records per
+ * block records. Blocks are mapped one at a time, so files can grow past what a single mapping
+ * can hold. A file that was never closed has no index, in which case the blocks are walked
+ * when it is opened.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class CubeTrainingData implements Closeable {
+    // file format
+    static final int MAGIC         = 0x43425444; // CBTD
+    static final int INDEX_MAGIC   = 0x43425449; // CBTI
+    static final byte VERSION      = 1;
+    static final int HEADER_SIZE   = 4 + 1 + 1 + 2 + 2 + 4;
+    static final int FOOTER_SIZE   = 8 + 4;
+
+    // bytes per record of everything but the occupancy
+    static final int FIELD_BYTES   = 1 + 1 + 1 + 1 + 1 + 1 + 2 + 1 + 2 + 2 + 1;
+
+    // record flags
+    public static final int FLAG_TOPPED_OUT = 1;  // the placement ended the game
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+
+    // header
+    private final int mSideCount;
+    private final int mSideWidth;
+    private final int mBoardHeight;
+    private final int mBlockSize;
+    private final int mRowBytes;
+
+    // block index
+    private long[] mBlockOffsets;
+    private int mBlockCount;
+    private long mRecordCount;
+
+    /**
+     * Opens a training data file for reading.
+     *
+     * @param file a file written by CubeTrainingWriter
+     * @throws IOException if the file can't be read or isn't training data
+     */
+    public CubeTrainingData(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            mChannel = mFile.getChannel();
+            long size = mChannel.size();
+            ByteBuffer header = map(0, Math.min(size, HEADER_SIZE));
+            if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC || header.get(4) != VERSION) {
+                throw new IOException("not a training data file");
+            }
+            header.position(5);
+            mSideCount = header.get();
+            mSideWidth = header.getShort();
+            mBoardHeight = header.getShort();
+            mBlockSize = header.getInt();
+            mRowBytes = getRowBytes(mSideCount * mSideWidth - mSideCount);
+
+            mBlockOffsets = new long[16];
+            mBlockCount = 0;
+            if (!readIndex(size)) {
+                scanIndex(size);
+            }
+            mRecordCount = (mBlockCount == 0) ? 0 :
+                    (long) (mBlockCount - 1) * mBlockSize + readBlockCount(mBlockCount - 1);
+        } catch (IOException | RuntimeException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param boardWidth the full width of a board
+     * @return the bytes one bit packed row takes up
+     */
+    public static int getRowBytes(int boardWidth) {
+        return (boardWidth + 7) >>> 3;
+    }
+
+    /**
+     * @param recordCount the number of records in a block
+     * @param boardHeight the height of the board
+     * @param rowBytes    the bytes in one packed row
+     * @return the size of the block, count included
+     */
+    static long getBlockLength(int recordCount, int boardHeight, int rowBytes) {
+        return 4 + (long) recordCount * (boardHeight * rowBytes + FIELD_BYTES);
+    }
+
+    public int getSideCount() {
+        return mSideCount;
+    }
+
+    public int getSideWidth() {
+        return mSideWidth;
+    }
+
+    public int getBoardWidth() {
+        return mSideCount * mSideWidth - mSideCount;
+    }
+
+    public int getBoardHeight() {
+        return mBoardHeight;
+    }
+
+    public int getRowBytes() {
+        return mRowBytes;
+    }
+
+    public int getBlockSize() {
+        return mBlockSize;
+    }
+
+    public int getBlockCount() {
+        return mBlockCount;
+    }
+
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * @return a cursor sitting before the first record
+     */
+    public CubeTrainingRecord createCursor() {
+        return new CubeTrainingRecord(this);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * Maps one whole block.
+     *
+     * @param block the block number
+     * @return the block, positioned at its start
+     */
+    ByteBuffer mapBlock(int block) throws IOException {
+        long offset = mBlockOffsets[block];
+        return map(offset, getBlockLength(readBlockCount(block), mBoardHeight, mRowBytes));
+    }
+
+    private int readBlockCount(int block) throws IOException {
+        return map(mBlockOffsets[block], 4).getInt(0);
+    }
+
+    private MappedByteBuffer map(long offset, long length) throws IOException {
+        MappedByteBuffer buffer = mChannel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * @return false if the file has no index
+     */
+    private boolean readIndex(long size) throws IOException {
+        if (size < HEADER_SIZE + FOOTER_SIZE) {
+            return false;
+        }
+        ByteBuffer footer = map(size - FOOTER_SIZE, FOOTER_SIZE);
+        if (footer.getInt(8) != INDEX_MAGIC) {
+            return false;
+        }
+
+        long indexOffset = footer.getLong(0);
+        if (indexOffset < HEADER_SIZE || indexOffset > size - FOOTER_SIZE - 4) {
+            throw new IOException("training data index is corrupt");
+        }
+        ByteBuffer index = map(indexOffset, size - FOOTER_SIZE - indexOffset);
+        int count = index.getInt();
+        if (count < 0 || index.remaining() < count * 8L) {
+            throw new IOException("training data index is corrupt");
+        }
+        for (int x = 0; x < count; x++) {
+            addBlock(index.getLong());
+        }
+        return true;
+    }
+
+    private void scanIndex(long size) throws IOException {
+        long offset = HEADER_SIZE;
+        while (offset + 4 <= size) {
+            int count = map(offset, 4).getInt(0);
+            long length = getBlockLength(count, mBoardHeight, mRowBytes);
+            if (count <= 0 || count > mBlockSize || offset + length > size) {
+                return; // cut off mid block
+            }
+            addBlock(offset);
+            offset += length;
+        }
+    }
+
+    private void addBlock(long offset) {
+        if (mBlockCount == mBlockOffsets.length) {
+            mBlockOffsets = Arrays.copyOf(mBlockOffsets, mBlockCount * 2);
+        }
+        mBlockOffsets[mBlockCount++] = offset;
+    }
+}
@@ -0,0 +1,65 @@
+package com.scotthconner.cubetrisrebooted.cubetris.training;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubePlacement;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeSolver;
+
+import java.io.IOException;
+
+/**
+ * CubeTrainingExporter
+ *
+ * Plays headless games with a CubeSolver choosing every placement, and writes a training
+ * record for each piece. Moves are fed to the model as fast as it takes them, and the clock
+ * only runs while the board turns and once the piece is dropped, so a game costs little more
+ * than the solving.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class CubeTrainingExporter {
+    private static final long TICK_MS = 16;
+
+    private final CubeSolver mSolver;
+    private final int mLookahead;
+    private final int mBeamWidth;
+
+    /**
+     * @param solver    picks the placements, sized for the games being played
+     * @param lookahead preview pieces the solver searches through
+     * @param beamWidth boards the solver keeps at each depth
+     */
+    public CubeTrainingExporter(CubeSolver solver, int lookahead, int beamWidth) {
+        mSolver = solver;
+        mLookahead = lookahead;
+        mBeamWidth = beamWidth;
+    }
+
+    /**
+     * Plays a game until it ends or enough pieces have been placed, starting it if need be.
+     *
+     * @param model     the game to play
+     * @param writer    where the records go
+     * @param maxPieces the most pieces to play
+     * @return the number of records written
+     * @throws IOException if the writer fails
+     */
+    public int export(CubeBoardModel model, CubeTrainingWriter writer, int maxPieces) throws IOException {
+        if (model.getPieceCount() == 0) {
+            model.start();
+        }
+
+        int records = 0;
+        while (records < maxPieces && !model.isGameOver()) {
+            CubePlacement placement = mSolver.solve(model, mLookahead, mBeamWidth);
+            if (null == placement) {
+                break;
+            }
+
+            writer.beginRecord(model);
+            placement.applyTo(model, TICK_MS);
+            writer.endRecord(placement, model);
+            records++;
+        }
+        return records;
+    }
+}
@@ -0,0 +1,218 @@
+package com.scotthconner.cubetrisrebooted.cubetris.training;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardOccupancy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * CubeTrainingRecord
+ *
+ * A cursor over the records of a CubeTrainingData file. Every getter reads straight out of the
+ * mapped block, so walking millions of records only maps a new block now and then and never
+ * allocates per record. Each cursor keeps its own position, so a file can be read by several
+ * threads with a cursor each.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class CubeTrainingRecord {
+    private final CubeTrainingData mData;
+    private final int mRecordBytes;   // occupancy bytes per record
+
+    // the mapped block and where each of its columns starts
+    private ByteBuffer mBlock;
+    private int mBlockNumber;
+    private int mBlockCount;          // records in the mapped block
+    private int mStyleColumn;
+    private int mNextColumn;
+    private int mActiveFaceColumn;
+    private int mFaceColumn;
+    private int mRotationColumn;
+    private int mFaceXColumn;
+    private int mFaceYColumn;
+    private int mLinesColumn;
+    private int mHolesColumn;
+    private int mMaxHeightColumn;
+    private int mFlagsColumn;
+
+    private int mIndex;               // the record within the mapped block
+    private long mRecord;             // the record within the file
+
+    CubeTrainingRecord(CubeTrainingData data) {
+        mData = data;
+        mRecordBytes = data.getBoardHeight() * data.getRowBytes();
+        mBlockNumber = -1;
+        mRecord = -1;
+    }
+
+    /**
+     * Moves on to the next record.
+     *
+     * @return false if there are no more records
+     * @throws IOException if the next block can't be mapped
+     */
+    public boolean next() throws IOException {
+        if (mRecord + 1 >= mData.getRecordCount()) {
+            mRecord = mData.getRecordCount();
+            return false;
+        }
+        mRecord++;
+        if (mIndex + 1 < mBlockCount && mBlockNumber >= 0) {
+            mIndex++;
+        } else {
+            mapBlock(mBlockNumber + 1);
+            mIndex = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Jumps straight to a record, next() carries on from there.
+     *
+     * @param record the record number, from 0
+     * @throws IOException if its block can't be mapped
+     */
+    public void seek(long record) throws IOException {
+        if (record < 0 || record >= mData.getRecordCount()) {
+            throw new IndexOutOfBoundsException("no record " + record);
+        }
+        int block = (int) (record / mData.getBlockSize());
+        if (block != mBlockNumber) {
+            mapBlock(block);
+        }
+        mIndex = (int) (record % mData.getBlockSize());
+        mRecord = record;
+    }
+
+    /**
+     * @return the record the cursor is on, from 0
+     */
+    public long getRecordNumber() {
+        return mRecord;
+    }
+
+    // BOARD ///////////////////////////////////////////////////////////////
+    /**
+     * @param x the true board x position
+     * @param y the board y position
+     * @return true if the slot was filled before the piece was placed
+     */
+    public boolean isOccupied(int x, int y) {
+        return (getRowByte(y, x >>> 3) & (1 << (x & 7))) != 0;
+    }
+
+    /**
+     * @param y     the board y position
+     * @param index the byte within the packed row
+     * @return eight columns of the row, column (index * 8) in the low bit
+     */
+    public int getRowByte(int y, int index) {
+        return mBlock.get(4 + mIndex * mRecordBytes + y * mData.getRowBytes() + index) & 0xFF;
+    }
+
+    /**
+     * Fills a board in with the record's occupancy.
+     *
+     * @param out a board the same size as the file's
+     */
+    public void copyOccupancy(CubeBoardOccupancy out) {
+        out.clearAll();
+        int rowBytes = mData.getRowBytes();
+        for (int y = 0; y < mData.getBoardHeight(); y++) {
+            for (int index = 0; index < rowBytes; index++) {
+                int bits = getRowByte(y, index);
+                while (bits != 0) {
+                    int bit = Integer.numberOfTrailingZeros(bits);
+                    out.set(index * 8 + bit, y);
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+    // END BOARD ///////////////////////////////////////////////////////////
+
+    // PIECE ///////////////////////////////////////////////////////////////
+    /**
+     * @return the style of the piece being placed
+     */
+    public int getStyle() {
+        return mBlock.get(mStyleColumn + mIndex);
+    }
+
+    /**
+     * @return the style of the piece after it
+     */
+    public int getNextStyle() {
+        return mBlock.get(mNextColumn + mIndex);
+    }
+
+    /**
+     * @return the face the board was turned to when the piece spawned
+     */
+    public int getActiveFace() {
+        return mBlock.get(mActiveFaceColumn + mIndex);
+    }
+    // END PIECE ///////////////////////////////////////////////////////////
+
+    // PLACEMENT ///////////////////////////////////////////////////////////
+    public int getFace() {
+        return mBlock.get(mFaceColumn + mIndex);
+    }
+
+    public int getRotation() {
+        return mBlock.get(mRotationColumn + mIndex);
+    }
+
+    public int getFaceX() {
+        return mBlock.get(mFaceXColumn + mIndex);
+    }
+
+    public int getFaceY() {
+        return mBlock.getShort(mFaceYColumn + mIndex * 2);
+    }
+    // END PLACEMENT ///////////////////////////////////////////////////////
+
+    // OUTCOME /////////////////////////////////////////////////////////////
+    public int getLinesCleared() {
+        return mBlock.get(mLinesColumn + mIndex);
+    }
+
+    /**
+     * @return the holes on the board once the piece was placed
+     */
+    public int getHoleCount() {
+        return mBlock.getShort(mHolesColumn + mIndex * 2);
+    }
+
+    /**
+     * @return the height of the tallest column once the piece was placed
+     */
+    public int getMaxHeight() {
+        return mBlock.getShort(mMaxHeightColumn + mIndex * 2);
+    }
+
+    public boolean isToppedOut() {
+        return (mBlock.get(mFlagsColumn + mIndex) & CubeTrainingData.FLAG_TOPPED_OUT) != 0;
+    }
+    // END OUTCOME /////////////////////////////////////////////////////////
+
+    private void mapBlock(int block) throws IOException {
+        mBlock = mData.mapBlock(block);
+        mBlockNumber = block;
+        mBlockCount = mBlock.getInt(0);
+
+        // the columns follow the occupancy in the order CubeTrainingWriter writes them
+        int count = mBlockCount;
+        mStyleColumn = 4 + count * mRecordBytes;
+        mNextColumn = mStyleColumn + count;
+        mActiveFaceColumn = mNextColumn + count;
+        mFaceColumn = mActiveFaceColumn + count;
+        mRotationColumn = mFaceColumn + count;
+        mFaceXColumn = mRotationColumn + count;
+        mFaceYColumn = mFaceXColumn + count;
+        mLinesColumn = mFaceYColumn + count * 2;
+        mHolesColumn = mLinesColumn + count;
+        mMaxHeightColumn = mHolesColumn + count * 2;
+        mFlagsColumn = mMaxHeightColumn + count * 2;
+    }
+}
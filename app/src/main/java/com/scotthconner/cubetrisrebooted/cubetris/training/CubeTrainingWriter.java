@@ -0,0 +1,270 @@
+package com.scotthconner.cubetrisrebooted.cubetris.training;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardOccupancy;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubePlacement;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * CubeTrainingWriter
+ *
+ * Writes records in the CubeTrainingData format. A record is taken in two steps: beginRecord
+ * grabs the board and piece before the piece is played, and endRecord adds where it went and
+ * how that turned out. Records are held a block at a time in per column arrays and written
+ * out column by column once the block fills, so memory stays at one block no matter how long
+ * the export runs.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class CubeTrainingWriter implements Closeable {
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel mChannel;
+    private final int mBoardWidth;
+    private final int mBoardHeight;
+    private final int mRowBytes;
+    private final int mRecordBytes;       // occupancy bytes per record
+    private final int mBlockSize;
+    private final ByteBuffer mBuffer;
+    private long mWritten;                // bytes already handed to the channel
+    private boolean mClosed;
+
+    // the block being gathered, a column each
+    private final byte[] mOccupancy;
+    private final byte[] mStyle;
+    private final byte[] mNext;
+    private final byte[] mActiveFace;
+    private final byte[] mFace;
+    private final byte[] mRotation;
+    private final byte[] mFaceX;
+    private final short[] mFaceY;
+    private final byte[] mLines;
+    private final short[] mHoles;
+    private final short[] mMaxHeight;
+    private final byte[] mFlags;
+    private int mCount;                   // finished records in the block
+    private boolean mBegun;               // a record's board has been taken but not its outcome
+    private long mRecordCount;
+
+    // block index
+    private long[] mBlockOffsets;
+    private int mBlockCount;
+
+    /**
+     * Starts a new training data file.
+     *
+     * @param file        the file to write, replaced if it exists
+     * @param sideCount   the number of sides of the boards being recorded
+     * @param sideWidth   the width of each side
+     * @param boardHeight the height of the boards
+     * @param blockSize   records gathered in memory before they are written
+     * @throws IOException if the file can't be created
+     */
+    public CubeTrainingWriter(File file, int sideCount, int sideWidth, int boardHeight, int blockSize) throws IOException {
+        this(new FileOutputStream(file).getChannel(), sideCount, sideWidth, boardHeight, blockSize);
+    }
+
+    /**
+     * Starts writing training data. The writer owns the channel from here on.
+     *
+     * @param channel     where the records are written
+     * @param sideCount   the number of sides of the boards being recorded
+     * @param sideWidth   the width of each side
+     * @param boardHeight the height of the boards
+     * @param blockSize   records gathered in memory before they are written
+     * @throws IOException if the header can't be written
+     */
+    public CubeTrainingWriter(WritableByteChannel channel, int sideCount, int sideWidth, int boardHeight,
+                              int blockSize) throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive");
+        }
+
+        mChannel = channel;
+        mBoardWidth = CubeBoardModel.getBoardWidth(sideCount, sideWidth);
+        mBoardHeight = boardHeight;
+        mRowBytes = CubeTrainingData.getRowBytes(mBoardWidth);
+        mRecordBytes = boardHeight * mRowBytes;
+        mBlockSize = blockSize;
+        mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+
+        mOccupancy = new byte[blockSize * mRecordBytes];
+        mStyle = new byte[blockSize];
+        mNext = new byte[blockSize];
+        mActiveFace = new byte[blockSize];
+        mFace = new byte[blockSize];
+        mRotation = new byte[blockSize];
+        mFaceX = new byte[blockSize];
+        mFaceY = new short[blockSize];
+        mLines = new byte[blockSize];
+        mHoles = new short[blockSize];
+        mMaxHeight = new short[blockSize];
+        mFlags = new byte[blockSize];
+        mBlockOffsets = new long[16];
+
+        mBuffer.putInt(CubeTrainingData.MAGIC);
+        mBuffer.put(CubeTrainingData.VERSION);
+        mBuffer.put((byte) sideCount);
+        mBuffer.putShort((short) sideWidth);
+        mBuffer.putShort((short) boardHeight);
+        mBuffer.putInt(blockSize);
+        flushBuffer();
+    }
+
+    public long getRecordCount() {
+        return mRecordCount;
+    }
+
+    /**
+     * Takes the board and the piece about to be played. Call it between pieces, before any of
+     * the moves are made.
+     *
+     * @param model a game the size the writer was made for
+     */
+    public void beginRecord(CubeBoardModel model) {
+        if (model.getBoardWidth() != mBoardWidth || model.getBoardHeight() != mBoardHeight) {
+            throw new IllegalArgumentException("board is not the size being recorded");
+        }
+
+        // bit pack each row out of the occupancy's words, eight columns to a byte
+        CubeBoardOccupancy occupancy = model.getOccupancy();
+        int out = mCount * mRecordBytes;
+        for (int y = 0; y < mBoardHeight; y++) {
+            for (int index = 0; index < mRowBytes; index++) {
+                long word = occupancy.getRowWord(y, index >>> 3);
+                mOccupancy[out++] = (byte) (word >>> ((index & 7) << 3));
+            }
+        }
+
+        mStyle[mCount] = (byte) model.getActivePiece().getStyle();
+        mNext[mCount] = (byte) model.getPreviewStyle(0);
+        mActiveFace[mCount] = (byte) model.getActiveFace();
+        mBegun = true;
+    }
+
+    /**
+     * Finishes the record begun last, once the piece has been committed and the next one has
+     * spawned.
+     *
+     * @param placement where the piece was sent
+     * @param model     the game after the piece landed
+     * @throws IOException if a full block couldn't be written
+     */
+    public void endRecord(CubePlacement placement, CubeBoardModel model) throws IOException {
+        if (!mBegun) {
+            throw new IllegalStateException("no record has been begun");
+        }
+        mBegun = false;
+
+        mFace[mCount] = (byte) placement.getFace();
+        mRotation[mCount] = (byte) placement.getRotation();
+        mFaceX[mCount] = (byte) placement.getFaceX();
+        mFaceY[mCount] = (short) placement.getFaceY();
+        mLines[mCount] = (byte) model.getLastMoveLineCompletionCount();
+        mHoles[mCount] = (short) model.getHoleCount();
+        mMaxHeight[mCount] = (short) model.getSurface().getMaxHeight();
+        mFlags[mCount] = (byte) (model.isGameOver() ? CubeTrainingData.FLAG_TOPPED_OUT : 0);
+        mCount++;
+        mRecordCount++;
+
+        if (mCount == mBlockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes out what's left of the block, then the block index, and closes the channel.
+     * A record begun but never ended is dropped.
+     *
+     * @throws IOException if the rest of the file couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+
+        try {
+            if (mCount > 0) {
+                writeBlock();
+            }
+            long indexOffset = mWritten + mBuffer.position();
+            ensureRemaining(4);
+            mBuffer.putInt(mBlockCount);
+            for (int x = 0; x < mBlockCount; x++) {
+                ensureRemaining(8);
+                mBuffer.putLong(mBlockOffsets[x]);
+            }
+            ensureRemaining(CubeTrainingData.FOOTER_SIZE);
+            mBuffer.putLong(indexOffset);
+            mBuffer.putInt(CubeTrainingData.INDEX_MAGIC);
+            flushBuffer();
+        } finally {
+            mChannel.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (mBlockCount == mBlockOffsets.length) {
+            mBlockOffsets = Arrays.copyOf(mBlockOffsets, mBlockCount * 2);
+        }
+        mBlockOffsets[mBlockCount++] = mWritten + mBuffer.position();
+
+        ensureRemaining(4);
+        mBuffer.putInt(mCount);
+        putBytes(mOccupancy, mCount * mRecordBytes);
+        putBytes(mStyle, mCount);
+        putBytes(mNext, mCount);
+        putBytes(mActiveFace, mCount);
+        putBytes(mFace, mCount);
+        putBytes(mRotation, mCount);
+        putBytes(mFaceX, mCount);
+        putShorts(mFaceY, mCount);
+        putBytes(mLines, mCount);
+        putShorts(mHoles, mCount);
+        putShorts(mMaxHeight, mCount);
+        putBytes(mFlags, mCount);
+        mCount = 0;
+    }
+
+    private void putBytes(byte[] column, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            ensureRemaining(1);
+            int chunk = Math.min(length - offset, mBuffer.remaining());
+            mBuffer.put(column, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    private void putShorts(short[] column, int length) throws IOException {
+        for (int x = 0; x < length; x++) {
+            ensureRemaining(2);
+            mBuffer.putShort(column[x]);
+        }
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (mBuffer.remaining() < bytes) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mWritten += mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+}
@@ -0,0 +1,104 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+/**
+ * FixedTimestep
+ *
+ * Cuts the passing of time into ticks of a fixed length, so game logic always sees the same
+ * msDelta however fast or unevenly frames arrive. Time that doesn't make up a whole tick is
+ * carried into the next poll. After a long stall only a capped number of ticks are handed out
+ * and the rest are skipped, so a slow device falls behind instead of spiralling.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class FixedTimestep {
+    public static final long DEFAULT_TICK_MS = 8;        // 125 Hz
+    public static final int DEFAULT_MAX_CATCH_UP = 12;   // ~100 ms of game time per poll
+
+    private final IGameClock mClock;
+    private final long mTickMs;
+    private final long mTickNanos;
+    private final int mMaxCatchUp;
+
+    private boolean mStarted;
+    private long mNextTick;          // the clock reading the next tick falls due at
+    private long mTickCount;
+    private long mSkippedTickCount;
+
+    public FixedTimestep() {
+        this(new SystemGameClock(), DEFAULT_TICK_MS, DEFAULT_MAX_CATCH_UP);
+    }
+
+    /**
+     * @param clock      where time comes from
+     * @param tickMs     the length of a tick in milliseconds
+     * @param maxCatchUp the most ticks a single poll hands out
+     */
+    public FixedTimestep(IGameClock clock, long tickMs, int maxCatchUp) {
+        if (tickMs < 1 || maxCatchUp < 1) {
+            throw new IllegalArgumentException("tick length and catch up must be positive");
+        }
+        mClock = clock;
+        mTickMs = tickMs;
+        mTickNanos = tickMs * 1000000L;
+        mMaxCatchUp = maxCatchUp;
+    }
+
+    public long getTickMs() {
+        return mTickMs;
+    }
+
+    /**
+     * @return the ticks handed out so far
+     */
+    public long getTickCount() {
+        return mTickCount;
+    }
+
+    /**
+     * @return the ticks dropped because the caller fell too far behind
+     */
+    public long getSkippedTickCount() {
+        return mSkippedTickCount;
+    }
+
+    /**
+     * Works out how many ticks have come due since the last poll. The first poll only starts
+     * the clock.
+     *
+     * @return the number of ticks to run now, up to the catch up limit
+     */
+    public int poll() {
+        long now = mClock.nanoTime();
+        if (!mStarted) {
+            mStarted = true;
+            mNextTick = now + mTickNanos;
+            return 0;
+        }
+
+        long behind = now - mNextTick;
+        if (behind < 0) {
+            return 0;
+        }
+
+        // step the deadline past now either way, skipping whatever is over the cap
+        long due = behind / mTickNanos + 1;
+        mNextTick += due * mTickNanos;
+        if (due > mMaxCatchUp) {
+            mSkippedTickCount += due - mMaxCatchUp;
+            due = mMaxCatchUp;
+        }
+        mTickCount += due;
+        return (int) due;
+    }
+
+    /**
+     * Blocks until the next tick is due.
+     *
+     * @throws InterruptedException if the thread is interrupted while it waits
+     */
+    public void waitForNextTick() throws InterruptedException {
+        if (mStarted) {
+            mClock.sleepUntil(mNextTick);
+        }
+    }
+}
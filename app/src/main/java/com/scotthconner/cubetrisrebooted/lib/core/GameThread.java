@@ -3,43 +3,62 @@ package com.scotthconner.cubetrisrebooted.lib.core;
 import com.scotthconner.cubetrisrebooted.lib.gamestate.IGameStateManager;
 
 /**
+ * Runs the active game state at a fixed tick, and asks for a frame whenever a tick has changed
+ * something. The thread parks between ticks rather than spinning.
+ *
  * Created by scottc on 12/24/15.
  */
 public class GameThread extends Thread {
     private static final String TAG = GameThread.class.getSimpleName();
 
-    private boolean running;
+    private volatile boolean running;
     private GameSurfaceView gameSurfaceView;
     private IGameStateManager gameStateManager;
+    private FixedTimestep timestep;
 
     public GameThread(GameSurfaceView gameSurfaceView, IGameStateManager gameStateManager) {
+        this(gameSurfaceView, gameStateManager, new FixedTimestep());
+    }
+
+    /**
+     * @param timestep decides when ticks run, give it another clock to drive the thread by hand
+     */
+    public GameThread(GameSurfaceView gameSurfaceView, IGameStateManager gameStateManager, FixedTimestep timestep) {
         super();
         this.gameSurfaceView = gameSurfaceView;
         this.gameStateManager = gameStateManager;
+        this.timestep = timestep;
     }
 
     public void setRunning(boolean running) {
         this.running = running;
     }
 
+    public FixedTimestep getTimestep() {
+        return timestep;
+    }
+
     @Override
     public void run() {
-        long lastFrameTime = System.currentTimeMillis();
-        long elapsedFrameTime = 0;
-
         while (running) {
-            // run the update function in the active game state, and notify
+            // run the update function in the active game state once per tick due, and notify
             // the manager if it is done.
-            if(!gameStateManager.getActiveState().update(elapsedFrameTime)) {
-                gameStateManager.terminateActiveState();
+            int ticks = timestep.poll();
+            for (int x = 0; x < ticks && running; x++) {
+                if (!gameStateManager.getActiveState().update(timestep.getTickMs())) {
+                    gameStateManager.terminateActiveState();
+                }
             }
 
-            gameSurfaceView.requestRender();
+            if (ticks > 0) {
+                gameSurfaceView.requestRender();
+            }
 
-            // calculate how long the frame took and store it for
-            // the next frame's time differential
-            elapsedFrameTime = System.currentTimeMillis() - lastFrameTime;
-            lastFrameTime = System.currentTimeMillis();
+            try {
+                timestep.waitForNextTick();
+            } catch (InterruptedException e) {
+                return;
+            }
         }
     }
 }
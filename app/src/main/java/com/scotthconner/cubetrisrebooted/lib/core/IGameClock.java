@@ -0,0 +1,23 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+/**
+ * Where the game thread gets its time from, and how it waits for more of it to pass. The real
+ * game uses SystemGameClock, tests can swap in a clock they move forward by hand.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public interface IGameClock {
+    /**
+     * @return a monotonic time in nanoseconds, only meaningful compared to other readings
+     */
+    public long nanoTime();
+
+    /**
+     * Blocks until nanoTime() reaches the deadline. May return early, callers check the time
+     * again.
+     *
+     * @param deadline a nanoTime() reading to wait for
+     * @throws InterruptedException if the thread is interrupted while it waits
+     */
+    public void sleepUntil(long deadline) throws InterruptedException;
+}
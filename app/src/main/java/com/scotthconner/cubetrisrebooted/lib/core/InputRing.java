@@ -0,0 +1,145 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InputRing
+ *
+ * Carries input from the UI thread, where Android hands it over, to the game thread, which
+ * acts on it at the start of a tick. Exactly one thread may offer and one may poll. Each input
+ * is copied into plain arrays as it's offered, since Android reuses its event objects once the
+ * callback returns, so nothing is allocated and nothing locks.
+ *
+ * The producer only moves the write position and the consumer only moves the read position,
+ * and each position is published after the record it covers, so a record is always whole by
+ * the time the other side sees it. A full ring turns input away rather than wait on the game.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class InputRing {
+    // record types
+    public static final int KEY_DOWN = 0;
+    public static final int KEY_UP   = 1;
+    public static final int AXIS     = 2;
+
+    private final int[] mDeviceIds;
+    private final int[] mTypes;
+    private final int[] mCodes;
+    private final float[] mValues;
+    private final long[] mEventTimes;
+    private final int mMask;
+
+    private final AtomicLong mWritten;       // records offered, only moved by the producer
+    private final AtomicLong mRead;          // records polled, only moved by the consumer
+    private long mDroppedCount;              // only touched by the producer
+
+    /**
+     * One input, copied out of the ring by poll.
+     */
+    public static class Record {
+        private int mDeviceId;
+        private int mType;
+        private int mCode;
+        private float mValue;
+        private long mEventTime;
+
+        public int getDeviceId() { return mDeviceId; }
+
+        /**
+         * @return KEY_DOWN, KEY_UP or AXIS
+         */
+        public int getType() { return mType; }
+
+        /**
+         * @return the key code for keys, the axis for axes
+         */
+        public int getCode() { return mCode; }
+
+        /**
+         * @return where the axis is, 0 for keys
+         */
+        public float getValue() { return mValue; }
+
+        /**
+         * @return when the input happened, in the uptime milliseconds Android stamps events with
+         */
+        public long getEventTime() { return mEventTime; }
+    }
+
+    /**
+     * @param capacity the records it can hold, a power of two
+     */
+    public InputRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("ring size must be a power of two");
+        }
+
+        mDeviceIds = new int[capacity];
+        mTypes = new int[capacity];
+        mCodes = new int[capacity];
+        mValues = new float[capacity];
+        mEventTimes = new long[capacity];
+        mMask = capacity - 1;
+        mWritten = new AtomicLong();
+        mRead = new AtomicLong();
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    // PRODUCER ////////////////////////////////////////////////////////////
+    /**
+     * Copies an input into the ring.
+     *
+     * @return false if the ring was full and the input was dropped
+     */
+    public boolean offer(int deviceId, int type, int code, float value, long eventTime) {
+        long position = mWritten.get();
+        if (position - mRead.get() > mMask) {
+            mDroppedCount++;
+            return false;
+        }
+
+        int slot = (int) position & mMask;
+        mDeviceIds[slot] = deviceId;
+        mTypes[slot] = type;
+        mCodes[slot] = code;
+        mValues[slot] = value;
+        mEventTimes[slot] = eventTime;
+        mWritten.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * @return the inputs turned away because the ring was full, read it from the producer
+     */
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+    // END PRODUCER ////////////////////////////////////////////////////////
+
+    // CONSUMER ////////////////////////////////////////////////////////////
+    /**
+     * Copies the oldest input out of the ring and frees its slot.
+     *
+     * @param out receives the input
+     * @return false if there was nothing to poll
+     */
+    public boolean poll(Record out) {
+        long position = mRead.get();
+        if (position == mWritten.get()) {
+            return false;
+        }
+
+        int slot = (int) position & mMask;
+        out.mDeviceId = mDeviceIds[slot];
+        out.mType = mTypes[slot];
+        out.mCode = mCodes[slot];
+        out.mValue = mValues[slot];
+        out.mEventTime = mEventTimes[slot];
+        mRead.lazySet(position + 1);
+        return true;
+    }
+    // END CONSUMER ////////////////////////////////////////////////////////
+}
@@ -0,0 +1,82 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.util.Arrays;
+
+/**
+ * IntMap
+ *
+ * Maps ints to objects without boxing the keys. The keys are kept sorted in a plain array and
+ * found by binary search, which beats hashing for the handful of entries this is meant for,
+ * like input devices. Entries can be walked in key order with keyAt and valueAt. Entries are
+ * never taken out.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class IntMap<V> {
+    private int[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+
+    public IntMap() {
+        this(8);
+    }
+
+    /**
+     * @param capacity the entries to make room for up front
+     */
+    public IntMap(int capacity) {
+        mKeys = new int[Math.max(1, capacity)];
+        mValues = new Object[mKeys.length];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the entry's position for keyAt and valueAt, or a negative number if there isn't one
+     */
+    public int indexOfKey(int key) {
+        return Arrays.binarySearch(mKeys, 0, mSize, key);
+    }
+
+    /**
+     * @return the value for the key, or null if there isn't one
+     */
+    public V get(int key) {
+        int index = indexOfKey(key);
+        return index >= 0 ? valueAt(index) : null;
+    }
+
+    /**
+     * Maps the key to the value, replacing whatever it was mapped to.
+     */
+    public void put(int key, V value) {
+        int index = indexOfKey(key);
+        if (index >= 0) {
+            mValues[index] = value;
+            return;
+        }
+
+        // make a gap where the key belongs
+        index = -(index + 1);
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize * 2);
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+        System.arraycopy(mKeys, index, mKeys, index + 1, mSize - index);
+        System.arraycopy(mValues, index, mValues, index + 1, mSize - index);
+        mKeys[index] = key;
+        mValues[index] = value;
+        mSize++;
+    }
+
+    public int keyAt(int index) {
+        return mKeys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        return (V) mValues[index];
+    }
+}
@@ -0,0 +1,193 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Job
+ *
+ * One piece of work for a WorkerPool: a task, the index to hand it, and the jobs that can't
+ * start until this one is done. Jobs are made up front by the pool and handed out again
+ * once the pool comes back around to them, so a job is only good until it has been waited on.
+ * Don't hold on to one past the frame it was made in.
+ *
+ * If a job throws, the jobs waiting on it still run, but they carry its failure on to whoever
+ * waits on them.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class Job {
+    public static final int MAX_CONTINUATIONS = 8;
+
+    private WorkerPool.IJob mTask;
+    private int mIndex;
+    private String mName;
+    private boolean mSubmitted;
+
+    // one for every dependency left, plus one until the job is submitted
+    private final AtomicInteger mUnfinished;
+
+    // the jobs waiting on this one, guarded by this
+    private final Job[] mContinuations;
+    private int mContinuationCount;
+
+    private volatile boolean mDone;
+    private volatile Thread mWaiter;
+    private Throwable mFailure;             // guarded by this
+
+    // timing, written before mDone
+    private long mSubmitNanos;
+    private long mStartNanos;
+    private long mEndNanos;
+
+    Job() {
+        mUnfinished = new AtomicInteger();
+        mContinuations = new Job[MAX_CONTINUATIONS];
+        mDone = true;
+    }
+
+    /**
+     * Starts the job over as a new one.
+     */
+    void reset(String name, WorkerPool.IJob task, int index) {
+        mName = name;
+        mTask = task;
+        mIndex = index;
+        mSubmitted = false;
+        mUnfinished.set(1);
+        synchronized (this) {
+            mContinuationCount = 0;
+        }
+        mWaiter = null;
+        mFailure = null;
+        mSubmitNanos = 0;
+        mStartNanos = 0;
+        mEndNanos = 0;
+        mDone = false;
+    }
+
+    /**
+     * Keeps this job from starting until dependency is done. Only allowed before the job is
+     * submitted.
+     *
+     * @param dependency a job from the same pool
+     * @throws IllegalStateException if this job was already submitted, or dependency already
+     *                               has MAX_CONTINUATIONS jobs waiting on it
+     */
+    public void dependsOn(Job dependency) {
+        if (mSubmitted) {
+            throw new IllegalStateException("job " + mName + " was already submitted");
+        }
+        mUnfinished.incrementAndGet();
+        if (!dependency.addContinuation(this)) {
+            mUnfinished.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return false if this job is already done, and next can go ahead
+     */
+    private synchronized boolean addContinuation(Job next) {
+        if (mDone) {
+            return false;
+        }
+        if (mContinuationCount == MAX_CONTINUATIONS) {
+            throw new IllegalStateException("job " + mName + " has too many jobs waiting on it");
+        }
+        mContinuations[mContinuationCount++] = next;
+        return true;
+    }
+
+    /**
+     * Marks the job submitted.
+     *
+     * @return true if it has no dependencies left and is ready to run
+     */
+    boolean submit() {
+        if (mSubmitted) {
+            throw new IllegalStateException("job " + mName + " was already submitted");
+        }
+        mSubmitted = true;
+        mSubmitNanos = System.nanoTime();
+        return mUnfinished.decrementAndGet() == 0;
+    }
+
+    /**
+     * Runs the task, holding on to anything it throws for whoever waits on the job.
+     */
+    void execute() {
+        mStartNanos = System.nanoTime();
+        try {
+            mTask.run(mIndex);
+        } catch (Throwable t) {
+            passFailure(t);
+        }
+        mEndNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the job done.
+     *
+     * @return the number of continuations, which can be read with getContinuation
+     */
+    synchronized int finish() {
+        mTask = null;
+        mDone = true;
+        return mContinuationCount;
+    }
+
+    Job getContinuation(int index) {
+        Job next = mContinuations[index];
+        mContinuations[index] = null;
+        return next;
+    }
+
+    /**
+     * @return true if the continuation has no dependencies left and is ready to run
+     */
+    boolean release() {
+        return mUnfinished.decrementAndGet() == 0;
+    }
+
+    Thread getWaiter() {
+        return mWaiter;
+    }
+
+    void setWaiter(Thread waiter) {
+        mWaiter = waiter;
+    }
+
+    /**
+     * Holds on to a failure, unless the job already has one.
+     */
+    synchronized void passFailure(Throwable failure) {
+        if (null == mFailure) {
+            mFailure = failure;
+        }
+    }
+
+    synchronized Throwable getFailure() {
+        return mFailure;
+    }
+
+    public boolean isDone() {
+        return mDone;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return how long the job sat ready or waiting on its dependencies before it started
+     */
+    public long getQueuedNanos() {
+        return mDone ? mStartNanos - mSubmitNanos : 0;
+    }
+
+    /**
+     * @return how long the task took to run
+     */
+    public long getRunNanos() {
+        return mDone ? mEndNanos - mStartNanos : 0;
+    }
+}
@@ -13,6 +13,9 @@ import java.util.HashMap;
  * access instead of manually keeping track of each loaded sound within the gamestate. also allows
  * decoupling between loading resources and playing them within sub-experiences.
  *
+ * Players are updated side by side, so every method locks the pool. Sounds are fire and forget,
+ * so the lock is never held for long.
+ *
  * Created by scottc on 2/11/16.
  */
 public class LabeledSoundPool {
@@ -30,7 +33,7 @@ public class LabeledSoundPool {
     private HashMap<String, MediaPlayer> mSongs          = null;
     private MediaPlayer mActiveSong = null;
 
-    public static LabeledSoundPool getInstance() {
+    public static synchronized LabeledSoundPool getInstance() {
         if (null == mPoolInstance) {
             mPoolInstance = new LabeledSoundPool();
         }
@@ -49,17 +52,17 @@ public class LabeledSoundPool {
         mApplicationContext = cxt;
     }
 
-    public boolean loadSound(String label, int resourceId) {
+    public synchronized boolean loadSound(String label, int resourceId) {
         mSoundIds.put(label, mSoundPool.load(mApplicationContext, resourceId, DEFAULT_PRIORITY));
         return true;
     }
 
-    public void playSound(String label, float volume) {
+    public synchronized void playSound(String label, float volume) {
         Log.d("LabeledSoundPool", "playing sound " + label);
         mSoundPool.play(mSoundIds.get(label).intValue(), volume, volume, DEFAULT_PRIORITY, 0, 1.0f);
     }
 
-    public void release() {
+    public synchronized void release() {
         mSoundPool.release();
         mSoundIds.clear();
         for(MediaPlayer song : mSongs.values()) {
@@ -70,12 +73,12 @@ public class LabeledSoundPool {
         }
     }
 
-    public void loadMusic(String label, int res, float volume) {
+    public synchronized void loadMusic(String label, int res, float volume) {
         mSongs.put(label, MediaPlayer.create(mApplicationContext, res));
         mSongs.get(label).setVolume(volume, volume);
     }
 
-    public void startMusic(String label, boolean restart, boolean loop) {
+    public synchronized void startMusic(String label, boolean restart, boolean loop) {
         if (null != mActiveSong && mActiveSong.isPlaying()) {
             mActiveSong.stop();
         }
@@ -87,7 +90,7 @@ public class LabeledSoundPool {
         mActiveSong.setLooping(loop);
     }
 
-    public void unloadMusic(String label) {
+    public synchronized void unloadMusic(String label) {
         mSongs.get(label).release();
     }
 }
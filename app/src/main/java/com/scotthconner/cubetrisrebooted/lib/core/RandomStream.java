@@ -0,0 +1,96 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.util.Random;
+
+/**
+ * A fast, seedable random number stream (SplitMix64). Extends java.util.Random so it can be
+ * handed to anything that already takes one, but skips Random's atomic seed updates, so a
+ * stream must only be used from one thread.
+ *
+ * Created by scottc on 4/6/16.
+ */
+public class RandomStream extends Random {
+    private static final long serialVersionUID = 1L;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long mState;
+
+    public RandomStream(long seed) {
+        super(0);
+        mState = seed;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        // Random's constructor calls this before our state exists, which is harmless
+        mState = seed;
+    }
+
+    /**
+     * @return the full state of the stream, setSeed(getState()) resumes it exactly
+     */
+    public long getState() {
+        return mState;
+    }
+
+    @Override
+    public long nextLong() {
+        return mix(mState += GOLDEN_GAMMA);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * @param bound the exclusive upper bound, must be positive
+     * @return a uniform value in [0, bound)
+     */
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+
+        // multiply-shift with a rejection step to stay unbiased
+        long m = (nextLong() >>> 32) * bound;
+        if ((m & 0xFFFFFFFFL) < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while ((m & 0xFFFFFFFFL) < threshold) {
+                m = (nextLong() >>> 32) * bound;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    @Override
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    /**
+     * Finalizes a SplitMix64 state into a well distributed value. Also used to derive
+     * independent stream seeds.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,78 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+/**
+ * Hands out independent RandomStreams derived from a single seed, one per purpose, so that a
+ * game can be replayed from its seed no matter how much randomness the effects burn through.
+ *
+ * Gameplay streams should come from a per-game instance. Purely visual effects that have no
+ * game to hang off of (particle modifiers) use getCurrent, which is the streams of whichever game
+ * is updating on the calling thread, or the shared instance outside of a game's update. That way
+ * games updating side by side never share a stream.
+ *
+ * Created by scottc on 4/6/16.
+ */
+public class RandomStreams {
+    // stream identifiers
+    public static final int PIECES       = 0;
+    public static final int COLORS       = 1;
+    public static final int EFFECTS      = 2;
+    public static final int CAMERA_SHAKE = 3;
+    private static final int STREAM_COUNT = 4;
+
+    private static RandomStreams mInstance;
+    private static final ThreadLocal<RandomStreams> mCurrent = new ThreadLocal<>();
+
+    private final long mSeed;
+    private final RandomStream[] mStreams;
+
+    public static synchronized RandomStreams getInstance() {
+        if (null == mInstance) {
+            mInstance = new RandomStreams(System.nanoTime());
+        }
+        return mInstance;
+    }
+
+    /**
+     * @return the streams bound to this thread by setCurrent, or the shared instance
+     */
+    public static RandomStreams getCurrent() {
+        RandomStreams current = mCurrent.get();
+        return null != current ? current : getInstance();
+    }
+
+    /**
+     * Binds a game's streams to this thread for the length of its update.
+     *
+     * @param streams the game's streams, or null to go back to the shared instance
+     * @return the streams bound before, or null, to put back once the update is over
+     */
+    public static RandomStreams setCurrent(RandomStreams streams) {
+        RandomStreams previous = mCurrent.get();
+        if (null == streams) {
+            mCurrent.remove();
+        } else {
+            mCurrent.set(streams);
+        }
+        return previous;
+    }
+
+    public RandomStreams(long seed) {
+        mSeed = seed;
+        mStreams = new RandomStream[STREAM_COUNT];
+        for (int x = 0; x < STREAM_COUNT; x++) {
+            mStreams[x] = new RandomStream(RandomStream.mix(seed + x * 0x632BE59BD9B4E019L));
+        }
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    /**
+     * @param stream one of the stream identifiers
+     * @return the stream, shared by everyone asking for the same identifier
+     */
+    public RandomStream get(int stream) {
+        return mStreams[stream];
+    }
+}
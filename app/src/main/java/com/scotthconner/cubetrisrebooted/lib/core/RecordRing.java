@@ -0,0 +1,122 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * RecordRing
+ *
+ * A bounded queue of reusable records, filled in by any number of threads and emptied by one.
+ * The records are made up front and never change hands, a producer claims the next free slot,
+ * writes its record in place and publishes it, and the consumer reads it there and releases
+ * the slot back to the producers. Nothing locks and nothing is allocated once the ring is made.
+ *
+ * Every slot carries a sequence number saying whose turn it is: the producer that may claim it,
+ * the consumer once it is published, or the producer a lap later once it is released. When the
+ * ring is full a claim fails instead of waiting, since the consumer may be the thread asking.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class RecordRing<T> {
+    private final Object[] mRecords;
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+    private final AtomicLong mTail;          // the next position a producer will claim
+    private final AtomicLong mDroppedCount;
+    private long mHead;                      // the next position to read, only touched by the consumer
+
+    /**
+     * @param records the records to reuse, a power of two of them
+     */
+    public RecordRing(T[] records) {
+        if (records.length == 0 || Integer.bitCount(records.length) != 1) {
+            throw new IllegalArgumentException("ring size must be a power of two");
+        }
+
+        mRecords = records.clone();
+        mSequences = new AtomicLongArray(records.length);
+        for (int x = 0; x < records.length; x++) {
+            mSequences.set(x, x);
+        }
+        mMask = records.length - 1;
+        mTail = new AtomicLong();
+        mDroppedCount = new AtomicLong();
+    }
+
+    public int getCapacity() {
+        return mRecords.length;
+    }
+
+    // PRODUCER ////////////////////////////////////////////////////////////
+    /**
+     * Claims the next free record. It has to be published once it's filled in, or the
+     * consumer will stall on it.
+     *
+     * @return the claimed position, or -1 if the ring is full
+     */
+    public long claim() {
+        while (true) {
+            long position = mTail.get();
+            long turn = mSequences.get((int) position & mMask) - position;
+            if (turn == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+            } else if (turn < 0) {
+                // the slot still holds a record from a lap ago
+                mDroppedCount.incrementAndGet();
+                return -1;
+            }
+            // otherwise another producer beat us to it, try the next one
+        }
+    }
+
+    /**
+     * @param position a position returned by claim
+     * @return the record to fill in
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long position) {
+        return (T) mRecords[(int) position & mMask];
+    }
+
+    /**
+     * Hands a filled in record over to the consumer.
+     *
+     * @param position a position returned by claim
+     */
+    public void publish(long position) {
+        mSequences.lazySet((int) position & mMask, position + 1);
+    }
+
+    /**
+     * @return the claims turned away because the ring was full
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+    // END PRODUCER ////////////////////////////////////////////////////////
+
+    // CONSUMER ////////////////////////////////////////////////////////////
+    /**
+     * @return the oldest published record, or null if there isn't one. It stays put until
+     * release is called.
+     */
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        int slot = (int) mHead & mMask;
+        if (mSequences.get(slot) != mHead + 1) {
+            return null;
+        }
+        return (T) mRecords[slot];
+    }
+
+    /**
+     * Gives the record returned by the last peek back to the producers.
+     */
+    public void release() {
+        mSequences.lazySet((int) mHead & mMask, mHead + mRecords.length);
+        mHead++;
+    }
+    // END CONSUMER ////////////////////////////////////////////////////////
+}
@@ -0,0 +1,115 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * SnapshotFile
+ *
+ * Keeps a single blob of saved state on disk, so a game can pick up where it left off after
+ * the app is stopped. The blob is written next to the file and renamed over it once it is
+ * safely on disk, so a crash part way through leaves the previous snapshot (or none) rather
+ * than half of one. A checksum catches anything else, and a snapshot that fails it is treated
+ * as missing.
+ *
+ * The file is laid out as magic, version, payload length, CRC32 of the payload, payload.
+ *
+ * Created by scottc on 4/15/16.
+ */
+public final class SnapshotFile {
+    private static final int MAGIC       = 0x43425353; // CBSS
+    private static final byte VERSION    = 1;
+    private static final int HEADER_SIZE = 4 + 1 + 4 + 8;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Replaces the snapshot with the remaining bytes of a buffer, in one write to the file.
+     *
+     * @param file    where the snapshot lives
+     * @param payload a heap buffer holding the state between its position and limit
+     * @throws IOException if the snapshot couldn't be written, the old one is left alone
+     */
+    public static void write(File file, ByteBuffer payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC);
+        header.put(VERSION);
+        header.putInt(payload.remaining());
+        header.putLong(crc.getValue());
+        header.flip();
+
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            // header and payload go down together in a gathering write
+            FileChannel channel = out.getChannel();
+            ByteBuffer[] buffers = { header, payload };
+            while (header.hasRemaining() || payload.hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("couldn't move the snapshot into " + file);
+        }
+    }
+
+    /**
+     * @param file where the snapshot lives
+     * @return the saved state, or null if there is no snapshot or it is damaged
+     * @throws IOException if the snapshot is there but couldn't be read
+     */
+    public static ByteBuffer read(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        ByteBuffer buffer;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            buffer = ByteBuffer.allocate((int) size).order(ByteOrder.BIG_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the whole file is in
+            }
+            buffer.flip();
+        } finally {
+            in.close();
+        }
+
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            return null;
+        }
+        int length = buffer.getInt();
+        long checksum = buffer.getLong();
+        if (length != buffer.remaining()) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        if (crc.getValue() != checksum) {
+            return null;
+        }
+        return buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+}
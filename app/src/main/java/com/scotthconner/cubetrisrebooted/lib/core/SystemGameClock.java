@@ -0,0 +1,28 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SystemGameClock
+ *
+ * System.nanoTime, and parking the thread until the deadline.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class SystemGameClock implements IGameClock {
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
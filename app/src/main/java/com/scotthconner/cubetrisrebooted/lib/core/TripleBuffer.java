@@ -0,0 +1,83 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TripleBuffer
+ *
+ * Hands whole frames from one writer thread to one reader thread without either ever waiting
+ * on the other. The writer fills its slot and publishes it, swapping it with the spare slot in
+ * the middle. The reader swaps the middle slot for its own whenever something new has been
+ * published, and otherwise keeps reading the frame it already has. A frame the reader never
+ * got to is simply written over.
+ *
+ * The writer must fill in the whole slot every time, it gets back whatever the reader (or an
+ * older publish) left in it.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;      // the middle slot holds a frame the reader hasn't seen
+
+    private final Object[] mSlots;
+    private final AtomicInteger mMiddle;     // the middle slot's index, plus FRESH
+    private int mWrite;                      // only touched by the writer
+    private int mRead;                       // only touched by the reader
+    private long mPublishCount;
+    private long mAcquireCount;
+
+    /**
+     * @param first  the slot the writer starts with
+     * @param second the starting spare slot
+     * @param third  the slot the reader starts with, what it sees until the first publish
+     */
+    public TripleBuffer(T first, T second, T third) {
+        mSlots = new Object[] { first, second, third };
+        mWrite = 0;
+        mMiddle = new AtomicInteger(1);
+        mRead = 2;
+    }
+
+    /**
+     * @return the writer's slot, to fill in before publish
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteSlot() {
+        return (T) mSlots[mWrite];
+    }
+
+    /**
+     * Makes the writer's slot the newest frame, and hands the writer another slot to fill.
+     */
+    public void publish() {
+        mWrite = mMiddle.getAndSet(mWrite | FRESH) & INDEX_MASK;
+        mPublishCount++;
+    }
+
+    /**
+     * @return the newest published frame, which stays the reader's until the next acquire
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((mMiddle.get() & FRESH) != 0) {
+            mRead = mMiddle.getAndSet(mRead) & INDEX_MASK;
+            mAcquireCount++;
+        }
+        return (T) mSlots[mRead];
+    }
+
+    /**
+     * @return the frames published, only meaningful on the writer's thread
+     */
+    public long getPublishCount() {
+        return mPublishCount;
+    }
+
+    /**
+     * @return the fresh frames the reader picked up, only meaningful on the reader's thread
+     */
+    public long getAcquireCount() {
+        return mAcquireCount;
+    }
+}
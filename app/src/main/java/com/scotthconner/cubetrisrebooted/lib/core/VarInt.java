@@ -0,0 +1,51 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Little-endian base 128 integers, small values take a single byte. Used by the binary
+ * formats that are mostly made of small counts and deltas.
+ *
+ * Created by scottc on 4/7/16.
+ */
+public class VarInt {
+    public static final int MAX_BYTES = 5;
+
+    /**
+     * @param out   the buffer to write to
+     * @param value a non-negative value
+     */
+    public static void put(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    public static int get(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("malformed varint");
+    }
+
+    /**
+     * Zig-zag encoding, so small negative values stay small too.
+     */
+    public static void putSigned(ByteBuffer out, int value) {
+        put(out, (value << 1) ^ (value >> 31));
+    }
+
+    public static int getSigned(ByteBuffer in) {
+        int value = get(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private VarInt() {}
+}
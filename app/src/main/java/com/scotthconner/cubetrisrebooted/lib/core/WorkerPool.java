@@ -0,0 +1,406 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * WorkerPool
+ *
+ * A fixed set of threads that share out the small, mostly independent pieces of a frame. The
+ * simplest use is run, which splits a batch of jobs with the thread that hands it over and
+ * returns once every one of them is done, so it doubles as the barrier between updating and
+ * rendering. For more than that, work is handed over as Jobs, which can be made to wait on
+ * others before they start. Jobs come from a pool made up front, so a frame's worth of work
+ * allocates nothing, and whoever waits on a job gets its failure, if it had one.
+ *
+ * Every pool thread has its own lane of ready jobs. It takes the newest job off its own lane
+ * first, and when that runs dry it steals the oldest job off someone else's. Threads outside
+ * the pool, like the game and GL threads, get a lane of their own the first time they submit.
+ * When they wait they only ever run jobs off their own lane, so the GL thread never ends up
+ * running a piece of the game. Pool threads that wait help out with anything.
+ *
+ * Which thread runs a job is left to chance, so jobs that run side by side must not share
+ * anything they change.
+ *
+ * Created by scottc on 4/17/16.
+ */
+public class WorkerPool {
+    /**
+     * The work a job does, called with the job's index. A batch calls it once for every index.
+     */
+    public interface IJob {
+        void run(int index);
+    }
+
+    public static final int POOL_SIZE = 4096;            // jobs handed out before one is reused
+    public static final int LANE_SIZE = 1024;            // ready jobs a lane can hold
+    public static final int MAX_OUTSIDE_THREADS = 8;     // threads outside the pool that submit
+    private static final int WAIT_SPINS = 64;
+    private static final long WAIT_PARK_NANOS = 100000;
+    private static final long IDLE_PARK_NANOS = 10000000;
+
+    private static final IJob NOTHING = new IJob() {
+        public void run(int index) {
+        }
+    };
+
+    private static WorkerPool mInstance;
+
+    private final Job[] mJobs;
+    private final AtomicLong mNextJob;
+    private final Lane[] mLanes;             // the pool's lanes, then outside threads' lanes
+    private final int mThreadCount;
+    private final ThreadLocal<Lane> mLane;
+    private volatile boolean mRunning;
+
+    private final AtomicLong mRunCount;
+    private final AtomicLong mStealCount;
+    private final AtomicLong mBatchCount;
+
+    /**
+     * @return the pool shared by the whole game, with a thread for every core but the
+     *         one submitting
+     */
+    public static synchronized WorkerPool getInstance() {
+        if (null == mInstance) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            mInstance = new WorkerPool(Math.max(0, cores - 1), "worker");
+        }
+        return mInstance;
+    }
+
+    /**
+     * @param threadCount the threads to make, on top of the ones waiting on jobs. 0 runs every
+     *                    job on the thread that waits on it.
+     * @param name        what to call the threads
+     */
+    public WorkerPool(int threadCount, String name) {
+        mJobs = new Job[POOL_SIZE];
+        for (int x = 0; x < POOL_SIZE; x++) {
+            mJobs[x] = new Job();
+        }
+        mNextJob = new AtomicLong();
+        mLane = new ThreadLocal<>();
+        mRunCount = new AtomicLong();
+        mStealCount = new AtomicLong();
+        mBatchCount = new AtomicLong();
+        mRunning = true;
+
+        mThreadCount = threadCount;
+        mLanes = new Lane[threadCount + MAX_OUTSIDE_THREADS];
+        for (int x = 0; x < mLanes.length; x++) {
+            mLanes[x] = new Lane(x < threadCount);
+        }
+        for (int x = 0; x < threadCount; x++) {
+            final Lane lane = mLanes[x];
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    workLoop(lane);
+                }
+            }, name + "-" + x);
+            lane.mOwner = thread;
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return the threads in the pool, not counting the ones waiting on jobs
+     */
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    /**
+     * @return the batches run so far
+     */
+    public long getBatchCount() {
+        return mBatchCount.get();
+    }
+
+    /**
+     * @return the jobs run so far
+     */
+    public long getRunCount() {
+        return mRunCount.get();
+    }
+
+    /**
+     * @return the jobs taken off another thread's lane so far
+     */
+    public long getStealCount() {
+        return mStealCount.get();
+    }
+
+    // JOBS //////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Hands out a job from the pool. It doesn't run until it's submitted.
+     *
+     * @param name  what to call the job when timing it
+     * @param task  the work
+     * @param index what to hand the task
+     * @throws IllegalStateException if the pool came back around to a job that isn't done
+     */
+    public Job create(String name, IJob task, int index) {
+        Job job = mJobs[(int) (mNextJob.getAndIncrement() & (POOL_SIZE - 1))];
+        if (!job.isDone()) {
+            throw new IllegalStateException("out of jobs, " + POOL_SIZE + " are still in flight");
+        }
+        job.reset(name, task, index);
+        return job;
+    }
+
+    /**
+     * Lets a job run once its dependencies are done.
+     */
+    public void submit(Job job) {
+        if (job.submit()) {
+            push(job);
+        }
+    }
+
+    /**
+     * Waits for a job to finish, running other jobs in the meantime. Only one thread should
+     * wait on a job.
+     *
+     * @throws RuntimeException if the job threw
+     */
+    public void waitFor(Job job) {
+        Lane lane = mLane.get();
+        boolean helpAnyone = (null != lane && lane.mWorker) || !mRunning;
+        int spins = 0;
+        while (!job.isDone()) {
+            Job next = null != lane ? lane.pop() : null;
+            if (null == next && helpAnyone) {
+                next = steal(lane);
+            }
+            if (null != next) {
+                run(next);
+                spins = 0;
+            } else if (++spins < WAIT_SPINS) {
+                Thread.yield();
+            } else {
+                job.setWaiter(Thread.currentThread());
+                if (!job.isDone()) {
+                    LockSupport.parkNanos(this, WAIT_PARK_NANOS);
+                }
+                job.setWaiter(null);
+            }
+        }
+
+        Throwable failure = job.getFailure();
+        if (null != failure) {
+            throw new RuntimeException("job " + job.getName() + " failed", failure);
+        }
+    }
+
+    /**
+     * Runs job for every index from 0 to count - 1, spread over the pool and the calling
+     * thread, and waits for all of them to finish.
+     *
+     * @param job   the work
+     * @param count the number of indices
+     * @throws RuntimeException if any of the jobs threw, once the rest of them are done
+     */
+    public void run(IJob job, int count) {
+        run("batch", job, count);
+    }
+
+    /**
+     * Runs a batch like run(job, count), naming its jobs for timing.
+     */
+    public void run(String name, IJob job, int count) {
+        mBatchCount.incrementAndGet();
+        if (count <= 1 || mThreadCount == 0) {
+            for (int x = 0; x < count; x++) {
+                job.run(x);
+            }
+            return;
+        }
+
+        // one empty job that waits on all the others
+        Job join = create(name, NOTHING, 0);
+        for (int x = 0; x < count; x++) {
+            Job next = create(name, job, x);
+            join.dependsOn(next);
+            submit(next);
+        }
+        submit(join);
+        waitFor(join);
+    }
+
+    /**
+     * Stops the pool threads once they finish what they're doing. Jobs after this run on the
+     * threads that wait on them.
+     */
+    public void shutdown() {
+        mRunning = false;
+        for (int x = 0; x < mThreadCount; x++) {
+            LockSupport.unpark(mLanes[x].mOwner);
+        }
+    }
+
+    // WORKING ///////////////////////////////////////////////////////////////////////////////////
+
+    private void workLoop(Lane lane) {
+        mLane.set(lane);
+        while (mRunning) {
+            Job job = lane.pop();
+            if (null == job) {
+                job = steal(lane);
+            }
+            if (null != job) {
+                run(job);
+                continue;
+            }
+
+            // nothing to do, sleep until a job is pushed
+            lane.mParked = true;
+            if (!hasWork()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            lane.mParked = false;
+        }
+    }
+
+    private void run(Job job) {
+        job.execute();
+        mRunCount.incrementAndGet();
+
+        int continuations = job.finish();
+        for (int x = 0; x < continuations; x++) {
+            Job next = job.getContinuation(x);
+            if (null != job.getFailure()) {
+                next.passFailure(job.getFailure());
+            }
+            if (next.release()) {
+                push(next);
+            }
+        }
+
+        Thread waiter = job.getWaiter();
+        if (null != waiter) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Puts a ready job on the calling thread's lane and wakes a sleeping pool thread for it.
+     * A job that doesn't fit is run on the spot.
+     */
+    private void push(Job job) {
+        if (!laneFor(Thread.currentThread()).push(job)) {
+            run(job);
+            return;
+        }
+        for (int x = 0; x < mThreadCount; x++) {
+            if (mLanes[x].mParked) {
+                LockSupport.unpark(mLanes[x].mOwner);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest job off some other lane, going around from where the thief last left off.
+     */
+    private Job steal(Lane thief) {
+        int start = null != thief ? thief.mVictim++ : 0;
+        for (int x = 0; x < mLanes.length; x++) {
+            Lane lane = mLanes[(start + x) % mLanes.length];
+            if (lane == thief) {
+                continue;
+            }
+            Job job = lane.steal();
+            if (null != job) {
+                mStealCount.incrementAndGet();
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasWork() {
+        for (Lane lane : mLanes) {
+            if (!lane.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the thread's lane, claiming an outside lane for it if it doesn't have one yet
+     */
+    private Lane laneFor(Thread thread) {
+        Lane lane = mLane.get();
+        if (null != lane) {
+            return lane;
+        }
+
+        // take a lane nobody has, or one whose thread has come and gone
+        synchronized (mLanes) {
+            for (int x = mThreadCount; x < mLanes.length; x++) {
+                Lane outside = mLanes[x];
+                if (null == outside.mOwner || (!outside.mOwner.isAlive() && outside.isEmpty())) {
+                    outside.mOwner = thread;
+                    mLane.set(outside);
+                    return outside;
+                }
+            }
+        }
+        throw new IllegalStateException("more than " + MAX_OUTSIDE_THREADS + " threads are submitting jobs");
+    }
+
+    /**
+     * The ready jobs of one thread. The owner pushes and pops the newest, thieves take the
+     * oldest.
+     */
+    private static class Lane {
+        final boolean mWorker;
+        private final Job[] mReady;
+        private long mTop;                  // the oldest job, where thieves take from
+        private long mBottom;               // one past the newest job, where the owner works
+        volatile Thread mOwner;
+        volatile boolean mParked;
+        int mVictim;                        // where the owner starts looking to steal
+
+        Lane(boolean worker) {
+            mWorker = worker;
+            mReady = new Job[LANE_SIZE];
+        }
+
+        synchronized boolean push(Job job) {
+            if (mBottom - mTop == LANE_SIZE) {
+                return false;
+            }
+            mReady[(int) (mBottom++ & (LANE_SIZE - 1))] = job;
+            return true;
+        }
+
+        synchronized Job pop() {
+            if (mBottom == mTop) {
+                return null;
+            }
+            int slot = (int) (--mBottom & (LANE_SIZE - 1));
+            Job job = mReady[slot];
+            mReady[slot] = null;
+            return job;
+        }
+
+        synchronized Job steal() {
+            if (mBottom == mTop) {
+                return null;
+            }
+            int slot = (int) (mTop++ & (LANE_SIZE - 1));
+            Job job = mReady[slot];
+            mReady[slot] = null;
+            return job;
+        }
+
+        synchronized boolean isEmpty() {
+            return mBottom == mTop;
+        }
+    }
+}
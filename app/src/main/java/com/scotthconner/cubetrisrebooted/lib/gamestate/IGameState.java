@@ -28,6 +28,14 @@ public interface IGameState extends GLSurfaceView.Renderer {
      */
     public void cleanUp();
 
+    /**
+     * saveSnapshot
+     *
+     * Called when the app leaves the foreground, before the state is cleaned up, so the
+     * state can write down whatever it needs to carry on from the next launch.
+     */
+    public void saveSnapshot();
+
     /**
      * processGenericMotionEvent
      *
@@ -1,41 +1,43 @@
 package com.scotthconner.cubetrisrebooted.lib.gamestate;
 
-import android.view.KeyEvent;
-import android.view.MotionEvent;
-
 /**
+ * Input reaches controllers on the game thread, at the start of a tick, as the plain values
+ * the UI thread copied out of Android's events.
+ *
  * Created by scottc on 1/23/16.
  */
 public interface IPlayerController {
     /**
-     * processGenericMotionEvent
+     * processAxis
      *
-     * Callback used for game controller analog stick input.
+     * Callback used for game controller analog input, once per axis.
      *
-     * @param motionEvent motion event coming in from controller.
+     * @param axis      the MotionEvent axis that moved
+     * @param value     where the axis is now
+     * @param eventTime when it moved, in uptime milliseconds
      * @return true if it was handled
      */
-    public boolean processGenericMotionEvent(MotionEvent motionEvent);
+    public boolean processAxis(int axis, float value, long eventTime);
 
     /**
      * processKeyDown
      *
      * Callback used for game controller key input
      *
-     * @param keyCode the keycode of the event
-     * @param event   the event structure
+     * @param keyCode   the keycode of the event
+     * @param eventTime when the key went down, in uptime milliseconds
      * @return true if it was handled
      */
-    public boolean processKeyDown(int keyCode, KeyEvent event);
+    public boolean processKeyDown(int keyCode, long eventTime);
 
     /**
      * processKeyUp
      *
      * Callback used for game controller key input
      *
-     * @param keyCode the keycode of the event
-     * @param event   the event structure
+     * @param keyCode   the keycode of the event
+     * @param eventTime when the key came up, in uptime milliseconds
      * @return true if it was handled
      */
-    public boolean processKeyUp(int keyCode, KeyEvent event);
+    public boolean processKeyUp(int keyCode, long eventTime);
 }
@@ -1,23 +1,23 @@
 package com.scotthconner.cubetrisrebooted.lib.gamestate;
 
-import android.view.KeyEvent;
-import android.view.MotionEvent;
+import com.scotthconner.cubetrisrebooted.lib.core.InputRing;
+import com.scotthconner.cubetrisrebooted.lib.core.IntMap;
 
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Created by scottc on 1/23/16.
  */
-public class PlayerControllerPool implements IPlayerController {
+public class PlayerControllerPool {
     // holds the object that spawns new player controllers
     IPlayerControllerGenerator mPlayerControllerGenerator;
 
     // holds device IDs and the player controllers
-    private HashMap<Integer, IPlayerController> mPlayerControllers;
+    private IntMap<IPlayerController> mPlayerControllers;
 
     public PlayerControllerPool(IPlayerControllerGenerator generator) {
-        mPlayerControllers = new HashMap();
+        mPlayerControllers = new IntMap<>();
         mPlayerControllerGenerator = generator;
     }
 
@@ -26,49 +26,52 @@ public class PlayerControllerPool implements IPlayerController {
     }
 
     public Iterator<IPlayerController> iterator() {
-        return mPlayerControllers.values().iterator();
+        return new Iterator<IPlayerController>() {
+            private int mNext = 0;
+
+            public boolean hasNext() {
+                return mNext < mPlayerControllers.size();
+            }
+
+            public IPlayerController next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return mPlayerControllers.valueAt(mNext++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("controllers stay seated");
+            }
+        };
     }
 
     /**
-     * processGenericMotionEvent
-     *
-     * Callback used for game controller analog stick input.
+     * Seats a controller that doesn't come from an input device, like a bot.
      *
-     * @param motionEvent motion event coming in from controller.
-     * @return true if it was handled
+     * @param deviceId   an ID no real input device will use
+     * @param controller the controller to seat
      */
-    public boolean processGenericMotionEvent(MotionEvent motionEvent) {
-        IPlayerController controller = getPlayerController(motionEvent.getDeviceId());
-        if (controller != null) {
-            return controller.processGenericMotionEvent(motionEvent);
-        }
-
-        return false;
+    public void addPlayerController(int deviceId, IPlayerController controller) {
+        mPlayerControllers.put(deviceId, controller);
     }
 
     /**
-     * processKeyDown
+     * processInput
      *
-     * Callback used for game controller key input
+     * Hands an input to the controller for its device.
      *
-     * @param keyCode the keycode of the event
-     * @param event   the event structure
+     * @param input an input taken off an InputRing
      * @return true if it was handled
      */
-    public boolean processKeyDown(int keyCode, KeyEvent event) {
-        IPlayerController controller = getPlayerController(event.getDeviceId());
-        if (controller != null) {
-            return controller.processKeyDown(keyCode, event);
-        }
-
-        return false;
-    }
-
-    @Override
-    public boolean processKeyUp(int keyCode, KeyEvent event) {
-        IPlayerController controller = getPlayerController(event.getDeviceId());
+    public boolean processInput(InputRing.Record input) {
+        IPlayerController controller = getPlayerController(input.getDeviceId());
         if (controller != null) {
-            return controller.processKeyUp(keyCode, event);
+            switch (input.getType()) {
+                case InputRing.KEY_DOWN: return controller.processKeyDown(input.getCode(), input.getEventTime());
+                case InputRing.KEY_UP: return controller.processKeyUp(input.getCode(), input.getEventTime());
+                case InputRing.AXIS: return controller.processAxis(input.getCode(), input.getValue(), input.getEventTime());
+            }
         }
 
         return false;
@@ -84,8 +87,9 @@ public class PlayerControllerPool implements IPlayerController {
      */
     private IPlayerController getPlayerController(int deviceId) {
         // if it is already here, just return it.
-        if (mPlayerControllers.containsKey(deviceId)) {
-            return mPlayerControllers.get(deviceId);
+        int index = mPlayerControllers.indexOfKey(deviceId);
+        if (index >= 0) {
+            return mPlayerControllers.valueAt(index);
         }
 
         // call out to the generator to get a new one, and then put it in the map
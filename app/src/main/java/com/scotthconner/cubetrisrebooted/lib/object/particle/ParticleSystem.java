@@ -2,6 +2,8 @@ package com.scotthconner.cubetrisrebooted.lib.object.particle;
 
 import android.opengl.GLES20;
 
+import com.scotthconner.cubetrisrebooted.lib.core.TripleBuffer;
+import com.scotthconner.cubetrisrebooted.lib.core.WorkerPool;
 import com.scotthconner.cubetrisrebooted.lib.render.core.Camera;
 import com.scotthconner.cubetrisrebooted.lib.render.core.SceneObject;
 import com.scotthconner.cubetrisrebooted.lib.render.shader.ShaderProgramLibrary;
@@ -9,8 +11,7 @@ import com.scotthconner.cubetrisrebooted.lib.render.shader.ShaderProgramLibrary;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -19,9 +20,13 @@ import java.util.Vector;
  * integrates to the scene as a renderable. Takes in an emission program that generates and manages
  * the configuration of the active particles themselves.
  *
+ * Every update copies the live particles into a frame for the render thread, which sorts and
+ * draws the newest frame without touching the particles themselves. Big systems advance their
+ * particles in chunks on the WorkerPool, since each particle only changes itself.
+ *
  * Created by scottc on 3/2/16.
  */
-public class ParticleSystem extends SceneObject implements Comparator<ParticleInstance>  {
+public class ParticleSystem extends SceneObject {
     // internal properties and state for this system
     private Vector<ParticleEmitter>        mEmitters;
     private final Vector<ParticleInstance> mActiveParticles;
@@ -29,8 +34,23 @@ public class ParticleSystem extends SceneObject implements Comparator<ParticleIn
     private boolean                        mRequiresSorting;
     private TexturedPointSpriteDefinition  mPointSpriteDefinition;
 
-    // internal reference for the camera to sort the particles, used as part of the comparator
-    private Camera mRenderCamera;
+    // the particles being advanced, handed to the jobs so they never touch the locked list
+    private static final int ADVANCE_CHUNK = 256;
+    private ParticleInstance[] mAdvancing;
+    private int mAdvanceCount;
+    private long mAdvanceDelta;
+    private final WorkerPool.IJob mAdvanceTask = new WorkerPool.IJob() {
+        public void run(int index) {
+            int last = Math.min(mAdvanceCount, (index + 1) * ADVANCE_CHUNK);
+            for (int x = index * ADVANCE_CHUNK; x < last; x++) {
+                mAdvancing[x].update(mAdvanceDelta);
+            }
+        }
+    };
+
+    // the particles as of the last update, and scratch space for sorting them back to front
+    private final TripleBuffer<ParticleFrame> mFrames;
+    private final long[] mSortKeys;
 
     // position buffer information
     private FloatBuffer mParticleBuffer;
@@ -66,6 +86,10 @@ public class ParticleSystem extends SceneObject implements Comparator<ParticleIn
 
         // create the particle pools and initialize the counters
         mActiveParticles = new Vector<>(mMaxParticles);
+        mAdvancing = new ParticleInstance[mMaxParticles];
+        mFrames = new TripleBuffer<>(new ParticleFrame(maxParticles), new ParticleFrame(maxParticles),
+                new ParticleFrame(maxParticles));
+        mSortKeys = new long[maxParticles];
 
         // positions of the point sprites
         ByteBuffer bb = ByteBuffer.allocateDirect(maxParticles * ParticleInstance.PARTICLE_BUFFER_SIZE * 4);
@@ -107,17 +131,34 @@ public class ParticleSystem extends SceneObject implements Comparator<ParticleIn
         }
 
         synchronized(mActiveParticles) {
-            // update each of the active particles, sending each dead one
-            // back to their owner emitter
+            // update each of the active particles
+            mAdvanceCount = mActiveParticles.size();
+            if (mAdvancing.length < mAdvanceCount) {
+                mAdvancing = new ParticleInstance[mAdvanceCount];
+            }
+            mActiveParticles.copyInto(mAdvancing);
+            mAdvanceDelta = msDelta;
+            WorkerPool.getInstance().run("particles", mAdvanceTask,
+                    (mAdvanceCount + ADVANCE_CHUNK - 1) / ADVANCE_CHUNK);
+
+            // then send each dead one back to their owner emitter, in order
             Iterator<ParticleInstance> i = mActiveParticles.iterator();
             while(i.hasNext()) {
                 ParticleInstance p = i.next();
-                p.update(msDelta);
                 if (p.isDead()) {
                     p.reap();   // send the particle back to its emitter's free pool
                     i.remove(); // remove the particle reference from the active pool
                 }
             }
+
+            // hand what's left to the render thread
+            ParticleFrame frame = mFrames.getWriteSlot();
+            frame.mCount = Math.min(mActiveParticles.size(), mMaxParticles);
+            for (int x = 0; x < frame.mCount; x++) {
+                System.arraycopy(mActiveParticles.get(x).getVertexBuffer(), 0, frame.mData,
+                        x * ParticleInstance.PARTICLE_BUFFER_SIZE, ParticleInstance.PARTICLE_BUFFER_SIZE);
+            }
+            mFrames.publish();
         }
 
         // the particle system is never invalid.
@@ -127,20 +168,35 @@ public class ParticleSystem extends SceneObject implements Comparator<ParticleIn
     @Override
     public void render(Camera camera) {
         // do nothing if we have no active particles to render
-        if (mActiveParticles.size() == 0) return;
+        ParticleFrame frame = mFrames.acquire();
+        int count = frame.mCount;
+        if (count == 0) return;
 
         float[] mvp = camera.calculateMVP();
-        mRenderCamera = camera;
 
         mParticleBuffer.position(0);
-        synchronized(mActiveParticles) {
-            // sort the particles from back to front if the emission program wants it
-            if (mRequiresSorting) { Collections.sort(mActiveParticles, this); }
+        if (mRequiresSorting) {
+            // sort the particles from back to front, the squared distance in the high bits of
+            // each key and the particle in the low bits
+            float[] cameraPos = camera.getTransformedEyePosition();
+            for (int x = 0; x < count; x++) {
+                int base = x * ParticleInstance.PARTICLE_BUFFER_SIZE;
+                float xdiff = cameraPos[0] - frame.mData[base + ParticleInstance.X];
+                float ydiff = cameraPos[1] - frame.mData[base + ParticleInstance.Y];
+                float zdiff = cameraPos[2] - frame.mData[base + ParticleInstance.Z];
+                float distance = (xdiff * xdiff) + (ydiff * ydiff) + (zdiff * zdiff);
+                mSortKeys[x] = ((long) Float.floatToIntBits(distance) << 32) | x;
+            }
+            Arrays.sort(mSortKeys, 0, count);
 
-            // copy each particle into the buffer
-            for (ParticleInstance particle : mActiveParticles) {
-                mParticleBuffer.put(particle.getVertexBuffer(), 0, ParticleInstance.PARTICLE_BUFFER_SIZE);
+            // the one that is further away is "first"
+            for (int x = count - 1; x >= 0; x--) {
+                int particle = (int) mSortKeys[x];
+                mParticleBuffer.put(frame.mData, particle * ParticleInstance.PARTICLE_BUFFER_SIZE,
+                        ParticleInstance.PARTICLE_BUFFER_SIZE);
             }
+        } else {
+            mParticleBuffer.put(frame.mData, 0, count * ParticleInstance.PARTICLE_BUFFER_SIZE);
         }
         mParticleBuffer.position(0);
 
@@ -165,7 +221,7 @@ public class ParticleSystem extends SceneObject implements Comparator<ParticleIn
 
         // enable and copy in the vertex buffer object
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVBOID[0]);
-        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, mActiveParticles.size() * ParticleInstance.PARTICLE_BUFFER_SIZE * 4,
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, count * ParticleInstance.PARTICLE_BUFFER_SIZE * 4,
                 mParticleBuffer);
 
         // configure the position vertex attribute array
@@ -194,7 +250,7 @@ public class ParticleSystem extends SceneObject implements Comparator<ParticleIn
                 ParticleInstance.PARTICLE_BUFFER_SIZE * 4, ParticleInstance.U * 4);
 
         // Draw the point sprites
-        GLES20.glDrawArrays(GLES20.GL_POINTS, 0, mActiveParticles.size());
+        GLES20.glDrawArrays(GLES20.GL_POINTS, 0, count);
 
         // Disable vertex array
         GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
@@ -257,29 +313,15 @@ public class ParticleSystem extends SceneObject implements Comparator<ParticleIn
 
     public void cleanup() {}
 
-    @Override
-    public int compare(ParticleInstance p1, ParticleInstance p2) {
-        float[] cameraPos = mRenderCamera.getTransformedEyePosition();
-
-        // calculate distances from each particle to the camera
-        float[] p1b = p1.getVertexBuffer();
-        float xdiff = cameraPos[0] - p1b[ParticleInstance.X];
-        float ydiff = cameraPos[1] - p1b[ParticleInstance.Y];
-        float zdiff = cameraPos[2] - p1b[ParticleInstance.Z];
-        double p1d = Math.sqrt((xdiff * xdiff) + (ydiff * ydiff) + (zdiff * zdiff));
-
-        float[] p2b = p2.getVertexBuffer();
-        xdiff = cameraPos[0] - p2b[ParticleInstance.X];
-        ydiff = cameraPos[1] - p2b[ParticleInstance.Y];
-        zdiff = cameraPos[2] - p2b[ParticleInstance.Z];
-        double p2d = Math.sqrt((xdiff * xdiff) + (ydiff * ydiff) + (zdiff * zdiff));
-
-        // the one that is further away is "first"
-        if (p1d > p2d) {
-            return -1;
-        } else if (p1d == p2d) {
-            return 0;
+    /**
+     * The packed particle buffers from one update.
+     */
+    private static class ParticleFrame {
+        final float[] mData;
+        int mCount;
+
+        ParticleFrame(int maxParticles) {
+            mData = new float[maxParticles * ParticleInstance.PARTICLE_BUFFER_SIZE];
         }
-        return 1;
     }
 }
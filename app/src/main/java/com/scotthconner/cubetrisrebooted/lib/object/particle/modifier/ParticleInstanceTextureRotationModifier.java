@@ -1,5 +1,6 @@
 package com.scotthconner.cubetrisrebooted.lib.object.particle.modifier;
 
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
 import com.scotthconner.cubetrisrebooted.lib.object.particle.ParticleInstance;
 
 import java.util.Random;
@@ -14,7 +15,6 @@ public class ParticleInstanceTextureRotationModifier implements IParticleModifie
     private float mRadiansPerSecond;            // the radians per second it should rotate each time
     private float mVarianceRadians;             // the natural variance between resets
     private float mActiveRadiansPerSecond;      // the current radians per second
-    private Random random;
 
     /**
      *
@@ -24,7 +24,6 @@ public class ParticleInstanceTextureRotationModifier implements IParticleModifie
     public ParticleInstanceTextureRotationModifier(float radiansPerSecond, float variance) {
         mRadiansPerSecond = radiansPerSecond;
         mVarianceRadians = variance;
-        random = new Random();
         generateNewRotationSpeed();
     }
 
@@ -40,7 +39,9 @@ public class ParticleInstanceTextureRotationModifier implements IParticleModifie
     }
 
     private void generateNewRotationSpeed() {
-        // this actually changes state for the modifier
+        // this actually changes state for the modifier. the stream is looked up each time, so
+        // it's whichever game is updating on this thread
+        Random random = RandomStreams.getCurrent().get(RandomStreams.EFFECTS);
         mActiveRadiansPerSecond = mRadiansPerSecond - (mVarianceRadians / 2.0f) +
                 mVarianceRadians * random.nextFloat();
     }
@@ -1,5 +1,6 @@
 package com.scotthconner.cubetrisrebooted.lib.object.particle.modifier;
 
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
 import com.scotthconner.cubetrisrebooted.lib.core.Vertex;
 import com.scotthconner.cubetrisrebooted.lib.object.particle.ParticleInstance;
 
@@ -19,8 +20,6 @@ public class ParticleInstanceVelocityModifier implements IParticleModifier {
     private static int Y = ParticleInstance.Y;
     private static int Z = ParticleInstance.Z;
 
-    private Random mRandom;
-
     // configuration for angle and magnitude of velocity vector
     private float mX;
     private float mXVariance;
@@ -34,7 +33,6 @@ public class ParticleInstanceVelocityModifier implements IParticleModifier {
     private Vertex mAcceleration;
 
     public ParticleInstanceVelocityModifier(float x, float y, float z, float vx, float vy, float vz) {
-        mRandom = new Random();
         mX = x;
         mY = y;
         mZ = z;
@@ -81,8 +79,10 @@ public class ParticleInstanceVelocityModifier implements IParticleModifier {
     }
 
     private void generateNewVelocity() {
-        mVelocity.x = mX - (mXVariance / 2.0f) + mXVariance * mRandom.nextFloat();
-        mVelocity.y = mY - (mYVariance / 2.0f) + mYVariance * mRandom.nextFloat();
-        mVelocity.z = mZ - (mZVariance / 2.0f) + mZVariance * mRandom.nextFloat();
+        // whichever game is updating on this thread
+        Random random = RandomStreams.getCurrent().get(RandomStreams.EFFECTS);
+        mVelocity.x = mX - (mXVariance / 2.0f) + mXVariance * random.nextFloat();
+        mVelocity.y = mY - (mYVariance / 2.0f) + mYVariance * random.nextFloat();
+        mVelocity.z = mZ - (mZVariance / 2.0f) + mZVariance * random.nextFloat();
     }
 }
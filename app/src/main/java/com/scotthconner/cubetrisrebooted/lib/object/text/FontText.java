@@ -18,8 +18,7 @@ public class FontText extends SceneObject {
     private Font                   mFont;          // the font to use to render the text
     private IBlendFunction         mBlendFunction; // the blend function to render with
     private Font.TextJustification mJustification; // how the text justifies to the position
-    private String                 mText;          // the text to render itself
-    private int                    mTextWidth;     // calculated width
+    private volatile Line          mLine;          // the text and its width, swapped as one
 
     // FONTTEXT METHODS /////////////////////////////////////////////
     public FontText(Font f) {
@@ -33,8 +32,7 @@ public class FontText extends SceneObject {
      * @param t what you want to set the text to
      */
     public void setText(String t) {
-        mText = t;
-        mTextWidth = mFont.calculateTextWidth(mText);
+        mLine = new Line(t, mFont.calculateTextWidth(t));
     }
     // END FONTTEXT METHODS /////////////////////////////////////////
 
@@ -46,15 +44,19 @@ public class FontText extends SceneObject {
 
     @Override
     public void render(Camera camera) {
+        // the text can change on the update thread mid frame, so read it once
+        Line line = mLine;
+        String text = line.mText;
+
         // calculate the true position based on the text
         // width and the justification
         float xCursor = mPosition.x;
         switch(mJustification) {
             case JUSTIFY_CENTER:
-                xCursor -= mTextWidth / 2.0f;
+                xCursor -= line.mWidth / 2.0f;
                 break;
             case JUSTIFY_RIGHT:
-                xCursor -= mTextWidth;
+                xCursor -= line.mWidth;
                 break;
             default:
             case JUSTIFY_LEFT:
@@ -62,10 +64,10 @@ public class FontText extends SceneObject {
         }
 
         // get each sprint, and render it at the offset, added, and kerned position
-        int textLength = mText.length();
+        int textLength = text.length();
         mBlendFunction.enable();
         for(int x = 0; x < textLength; x++) {
-            char c = mText.charAt(x);
+            char c = text.charAt(x);
 
             // grab each sprite, and render it at the location using the camera
             mFont.getLetterSprite(c).render(camera,
@@ -77,7 +79,7 @@ public class FontText extends SceneObject {
             // of the next character if there is one
             xCursor += mFont.getCharacterAdvance(c);
             if (x + 1 < textLength) {
-                xCursor += mFont.getKerningValue(c, mText.charAt(x+1));
+                xCursor += mFont.getKerningValue(c, text.charAt(x+1));
             }
         }
         mBlendFunction.disable();
@@ -102,4 +104,17 @@ public class FontText extends SceneObject {
         return this;
     }
     /////////////////////////////////////////////////////////////////
+
+    /**
+     * A string and its width, never changed once made.
+     */
+    private static class Line {
+        final String mText;
+        final int    mWidth;
+
+        Line(String text, int width) {
+            mText = text;
+            mWidth = width;
+        }
+    }
 }
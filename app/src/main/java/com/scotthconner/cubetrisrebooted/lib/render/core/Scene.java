@@ -2,8 +2,7 @@ package com.scotthconner.cubetrisrebooted.lib.render.core;
 
 
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by scottc on 12/26/15.
@@ -11,18 +10,19 @@ import java.util.Vector;
  * Scene
  *
  * A scene has a camera, and can hold a list of renderables that it shows. It is self
- * contained.
+ * contained. The list is copied whenever it changes, so update and render each walk a
+ * snapshot of it without locking out the other.
  */
 public class Scene {
     // used to hold active renderables.
-    private final Vector<IRenderable> renderables;
+    private final CopyOnWriteArrayList<IRenderable> renderables;
 
     // one supported internal light
     private HashMap<String, Light> mLights;
     private float mAmbientFactor;
 
     public Scene() {
-        renderables = new Vector<>();
+        renderables = new CopyOnWriteArrayList<>();
         mLights = new HashMap<>();
         mLights.put("sun", new Light());
         mAmbientFactor = 0;
@@ -55,37 +55,26 @@ public class Scene {
 
     public void addRenderable(IRenderable r) {
         r.setScene(this);
-        synchronized (renderables) {
-            renderables.add(r);
-        }
+        renderables.add(r);
     }
 
     public void removeRenderable(IRenderable r) {
-        synchronized (renderables) {
-            renderables.remove(r);
-        }
+        renderables.remove(r);
     }
 
     public void update(long msDelta) {
-        synchronized (renderables) {
-            // update all of the objects
-            Iterator<IRenderable> i = renderables.iterator();
-            while (i.hasNext()) {
-                IRenderable r = i.next();
-                if(!r.update(msDelta)) {
-                    i.remove();
-                    r.cleanup();
-                }
+        // update all of the objects
+        for (IRenderable r : renderables) {
+            if(!r.update(msDelta)) {
+                renderables.remove(r);
+                r.cleanup();
             }
         }
     }
 
     public void render(Camera camera) {
-        synchronized (renderables) {
-            Iterator iter = renderables.iterator();
-            for(IRenderable renderable : renderables ){
-                renderable.render(camera);
-            }
+        for(IRenderable renderable : renderables ){
+            renderable.render(camera);
         }
     }
 }
@@ -4,8 +4,7 @@ import android.util.Log;
 
 import com.scotthconner.cubetrisrebooted.lib.core.Vertex;
 
-import java.util.Stack;
-import java.util.Vector;
+import java.util.ArrayList;
 
 /**
  * SceneObject
@@ -14,7 +13,9 @@ import java.util.Vector;
  * for managing a scene position.
  *
  * Allows the ability to add children, with helper update and render methods that makes attaching
- * pieces into the scene graph easier to manage.
+ * pieces into the scene graph easier to manage. Children are only added and removed on the
+ * update thread, and take effect between updates. Each update that changes them publishes an
+ * array of them for render, so rendering the children never waits on updating them.
  *
  * Created by scottc on 3/2/16.
  */
@@ -24,9 +25,10 @@ public abstract class SceneObject implements IRenderable {
 
     // the parent and children references in the graph
     protected SceneObject mParent;
-    protected final Vector<IRenderable> mChildren;
-    private Stack<IRenderable> mIncomingChildren;
-    private Stack<IRenderable> mDustBin;
+    protected final ArrayList<IRenderable> mChildren;
+    private final ArrayList<IRenderable> mIncomingChildren;
+    private final ArrayList<IRenderable> mDustBin;
+    private volatile IRenderable[] mRenderChildren;     // the children as of the last update
 
     // object state
     protected float[] mModelMatrix;
@@ -35,10 +37,11 @@ public abstract class SceneObject implements IRenderable {
 
     public SceneObject() {
         mModelMatrix = new float[16];
-        mIncomingChildren = new Stack<>();
-        mDustBin = new Stack<>();
+        mIncomingChildren = new ArrayList<>();
+        mDustBin = new ArrayList<>();
         mPosition = new Vertex();
-        mChildren = new Vector<>();
+        mChildren = new ArrayList<>();
+        mRenderChildren = new IRenderable[0];
         mParent = null;
         mIsDead = false;
     }
@@ -68,48 +71,54 @@ public abstract class SceneObject implements IRenderable {
     }
 
     public void addChild(IRenderable renderable) {
-        synchronized(mChildren) {
-            mIncomingChildren.add(renderable);
-        }
+        mIncomingChildren.add(renderable);
     }
 
     public boolean removeChild(IRenderable renderable) {
-        synchronized(mChildren) {
-            mDustBin.push(renderable);
-        }
+        mDustBin.add(renderable);
         return true;
     }
 
     public void updateChildren(long msDelta) {
-        synchronized(mChildren) {
-            while(!mDustBin.empty()) {
-                mChildren.remove(mDustBin.pop());
+        boolean changed = applyChildChanges();
+
+        // children that add or remove children during their update wait for the next pass
+        for (int x = 0; x < mChildren.size(); x++) {
+            IRenderable renderable = mChildren.get(x);
+            if(!renderable.update(msDelta)) {
+                Log.d("SceneObject", "Cleaning up object = " + renderable.toString());
+                renderable.cleanup();
+                mDustBin.add(renderable);
             }
+        }
 
-            for(IRenderable  incoming: mIncomingChildren) {
-                mChildren.add(incoming);
-            }
-            mIncomingChildren.clear();
-
-            for(IRenderable renderable : mChildren) {
-                if(!renderable.update(msDelta)) {
-                    Log.d("SceneObject", "Cleaning up object = " + renderable.toString());
-                    renderable.cleanup();
-                    mDustBin.push(renderable);
-                }
-            }
+        if (applyChildChanges() || changed) {
+            mRenderChildren = mChildren.toArray(new IRenderable[mChildren.size()]);
+        }
+    }
 
-            while (!mDustBin.empty()) {
-                mChildren.remove(mDustBin.pop());
-            }
+    /**
+     * Takes out the removed children and puts in the new ones.
+     *
+     * @return true if the children changed
+     */
+    private boolean applyChildChanges() {
+        if (mDustBin.isEmpty() && mIncomingChildren.isEmpty()) {
+            return false;
+        }
+
+        for (int x = 0; x < mDustBin.size(); x++) {
+            mChildren.remove(mDustBin.get(x));
         }
+        mDustBin.clear();
+        mChildren.addAll(mIncomingChildren);
+        mIncomingChildren.clear();
+        return true;
     }
 
     public void renderChildren(Camera camera) {
-        synchronized(mChildren) {
-            for (IRenderable child : mChildren) {
-                child.render(camera);
-            }
+        for (IRenderable child : mRenderChildren) {
+            child.render(camera);
         }
     }
 
@@ -118,14 +127,13 @@ public abstract class SceneObject implements IRenderable {
     }
 
     public void cleanupChildren() {
-        synchronized(mChildren) {
-            for (IRenderable child : mChildren) {
-                // only clean up the child if it isn't in the dustbin by being removed.
-                // if its been removed at this point, we can assume the ownership has changed
-                if (!mDustBin.contains(child)) { child.cleanup(); }
-            }
-            mChildren.clear();
+        for (IRenderable child : mChildren) {
+            // only clean up the child if it isn't in the dustbin by being removed.
+            // if its been removed at this point, we can assume the ownership has changed
+            if (!mDustBin.contains(child)) { child.cleanup(); }
         }
+        mChildren.clear();
+        mRenderChildren = new IRenderable[0];
     }
 
     @Override
@@ -0,0 +1,51 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the bag guarantees and the preview queue of CubeBagRandomizer.
+ */
+public class CubeBagRandomizerTest {
+    private static final int STYLE_COUNT = 7;
+
+    @Test
+    public void everyBagHoldsEachStyleOnce() {
+        CubeBagRandomizer bag = new CubeBagRandomizer(STYLE_COUNT, 3, new RandomStream(42));
+        for (int round = 0; round < 500; round++) {
+            boolean[] seen = new boolean[STYLE_COUNT];
+            for (int x = 0; x < STYLE_COUNT; x++) {
+                int style = bag.next();
+                assertFalse("style " + style + " repeated within a bag", seen[style]);
+                seen[style] = true;
+            }
+        }
+    }
+
+    @Test
+    public void previewPredictsNext() {
+        CubeBagRandomizer bag = new CubeBagRandomizer(STYLE_COUNT, 5, new RandomStream(3));
+        for (int x = 0; x < 200; x++) {
+            int[] preview = new int[bag.getPreviewCount()];
+            for (int p = 0; p < preview.length; p++) {
+                preview[p] = bag.peek(p);
+            }
+            assertEquals(preview[0], bag.next());
+            for (int p = 1; p < preview.length; p++) {
+                assertEquals(preview[p], bag.peek(p - 1));
+            }
+        }
+    }
+
+    @Test
+    public void sameSeedDealsSameSequence() {
+        CubeBagRandomizer a = new CubeBagRandomizer(STYLE_COUNT, 3, new RandomStream(99));
+        CubeBagRandomizer b = new CubeBagRandomizer(STYLE_COUNT, 3, new RandomStream(99));
+        for (int x = 0; x < 1000; x++) {
+            assertEquals(a.next(), b.next());
+        }
+    }
+}
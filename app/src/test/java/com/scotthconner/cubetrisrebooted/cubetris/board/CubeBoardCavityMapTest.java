@@ -0,0 +1,176 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the packed cavity map against the recursive flood fill CubeBoard used to run.
+ */
+public class CubeBoardCavityMapTest {
+    private static final int SIDE_COUNT = 4;
+
+    private static boolean referenceHasSafeLanding(boolean[][] board, int x, int y) {
+        if (y < 0 || board[x][y]) {
+            return true;
+        }
+        return referenceCanFindTop(board, new HashSet<String>(), x, y);
+    }
+
+    private static boolean referenceCanFindTop(boolean[][] board, HashSet<String> paths, int x, int y) {
+        String hashKey = "(" + x + "," + y + ")";
+        if (x < 0 || x >= board.length || y < 0) {
+            return false;
+        }
+        if (y >= (board[0].length - 1)) {
+            return true;
+        }
+
+        boolean foundTop = false;
+        if (!board[x][y] && !paths.contains(hashKey)) {
+            paths.add(hashKey);
+            foundTop = referenceCanFindTop(board, paths, x - 1, y) || referenceCanFindTop(board, paths, x + 1, y) ||
+                    referenceCanFindTop(board, paths, x, y - 1) || referenceCanFindTop(board, paths, x, y + 1);
+        }
+        return foundTop;
+    }
+
+    private static void verify(int sideWidth, int boardHeight, long seed) {
+        Random r = new Random(seed);
+        int boardWidth = SIDE_COUNT * sideWidth - SIDE_COUNT;
+        boolean[][] board = new boolean[boardWidth][boardHeight];
+        CubeBoardOccupancy occupancy = new CubeBoardOccupancy(SIDE_COUNT, sideWidth, boardHeight);
+        CubeBoardCavityMap cavities = new CubeBoardCavityMap(occupancy);
+
+        for (int trial = 0; trial < 30; trial++) {
+            float density = 0.2f + 0.6f * r.nextFloat();
+            occupancy.clearAll();
+            for (int x = 0; x < boardWidth; x++) {
+                for (int y = 0; y < boardHeight; y++) {
+                    board[x][y] = r.nextFloat() < density;
+                    if (board[x][y]) {
+                        occupancy.set(x, y);
+                    }
+                }
+            }
+
+            int holes = 0;
+            for (int x = 0; x < boardWidth; x++) {
+                for (int y = -1; y < boardHeight; y++) {
+                    boolean expected = referenceHasSafeLanding(board, x, y);
+                    assertEquals("(" + x + "," + y + ")", expected, cavities.hasSafeLanding(x, y));
+                    if (y >= 0 && !expected) {
+                        holes++;
+                    }
+                }
+            }
+            assertEquals(holes, cavities.getHoleCount());
+
+            // single cell changes must be picked up
+            int x = r.nextInt(boardWidth);
+            int y = r.nextInt(boardHeight);
+            board[x][y] = !board[x][y];
+            if (board[x][y]) { occupancy.set(x, y); } else { occupancy.clear(x, y); }
+            for (int cx = 0; cx < boardWidth; cx++) {
+                assertEquals(referenceHasSafeLanding(board, cx, 0), cavities.hasSafeLanding(cx, 0));
+            }
+        }
+    }
+
+    @Test
+    public void matchesRecursiveSearch_standardBoard() {
+        verify(7, 18, 7);
+    }
+
+    @Test
+    public void matchesRecursiveSearch_multiWordBoard() {
+        verify(23, 10, 23);
+    }
+
+    @Test
+    public void sealedPocketIsAHole() {
+        CubeBoardOccupancy occupancy = new CubeBoardOccupancy(SIDE_COUNT, 7, 18);
+        CubeBoardCavityMap cavities = new CubeBoardCavityMap(occupancy);
+        assertTrue(cavities.hasSafeLanding(3, 0));
+        assertEquals(0, cavities.getHoleCount());
+
+        // cap (3,0) with a roof and walls
+        occupancy.set(2, 0);
+        occupancy.set(4, 0);
+        occupancy.set(3, 1);
+        assertFalse(cavities.hasSafeLanding(3, 0));
+        assertEquals(1, cavities.getHoleCount());
+
+        // clearing the roof reopens it
+        occupancy.removeRow(1);
+        assertTrue(cavities.hasSafeLanding(3, 0));
+    }
+
+    @Test
+    public void fillingCellByCellMatchesRecursiveSearch() {
+        Random r = new Random(11);
+        int sideWidth = 7;
+        int boardHeight = 18;
+        int boardWidth = SIDE_COUNT * sideWidth - SIDE_COUNT;
+        boolean[][] board = new boolean[boardWidth][boardHeight];
+        CubeBoardOccupancy occupancy = new CubeBoardOccupancy(SIDE_COUNT, sideWidth, boardHeight);
+        CubeBoardCavityMap cavities = new CubeBoardCavityMap(occupancy);
+
+        for (int step = 0; step < 1200; step++) {
+            // mostly fills low on the board, with the odd row clear thrown in
+            if (step % 61 == 60) {
+                int y = r.nextInt(boardHeight);
+                occupancy.removeRow(y);
+                for (int x = 0; x < boardWidth; x++) {
+                    System.arraycopy(board[x], y + 1, board[x], y, boardHeight - y - 1);
+                    board[x][boardHeight - 1] = false;
+                }
+            } else {
+                int x = r.nextInt(boardWidth);
+                int y = Math.min(boardHeight - 1, (int) (Math.abs(r.nextGaussian()) * boardHeight / 3));
+                board[x][y] = true;
+                occupancy.set(x, y);
+            }
+
+            int holes = 0;
+            for (int x = 0; x < boardWidth; x++) {
+                for (int y = 0; y < boardHeight; y++) {
+                    boolean expected = referenceHasSafeLanding(board, x, y);
+                    assertEquals("step " + step + " (" + x + "," + y + ")", expected, cavities.hasSafeLanding(x, y));
+                    if (!expected) {
+                        holes++;
+                    }
+                }
+            }
+            assertEquals(holes, cavities.getHoleCount());
+        }
+    }
+
+    @Test
+    public void fillingBelowCutsOffAPocketAbove() {
+        CubeBoardOccupancy occupancy = new CubeBoardOccupancy(SIDE_COUNT, 7, 18);
+        CubeBoardCavityMap cavities = new CubeBoardCavityMap(occupancy);
+
+        // a pocket up column 1 under a roof, only open through a tunnel along row 3 to the
+        // well up column 3
+        for (int x = 0; x < occupancy.getBoardWidth(); x++) {
+            for (int y = 0; y < 16; y++) {
+                boolean pocket = x == 1 && y >= 3 && y <= 8;
+                boolean tunnel = x == 2 && y == 3;
+                boolean well = x == 3 && y >= 3;
+                if (!pocket && !tunnel && !well) {
+                    occupancy.set(x, y);
+                }
+            }
+        }
+        assertTrue(cavities.hasSafeLanding(1, 8));
+
+        // plugging the tunnel five rows under the top of the pocket seals all of it off
+        occupancy.set(2, 3);
+        assertFalse(cavities.hasSafeLanding(1, 8));
+        assertEquals(6, cavities.getHoleCount());
+    }
+}
@@ -0,0 +1,81 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.Vertex;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks where board slots are laid out around boards with any number of sides.
+ */
+public class CubeBoardGeometryTest {
+    private static final float EPSILON = 1e-4f;
+
+    @Test
+    public void squareBoardMatchesTheOriginalLayout() {
+        // the four sided 7 wide board the game shipped with
+        CubeBoardGeometry geometry = new CubeBoardGeometry(4, 7);
+        int[][] slots = {
+                { 0, -3, 3 }, { 3, 0, 3 }, { 6, 3, 3 },       // front, left to right
+                { 9, 3, 0 }, { 12, 3, -3 },                    // right, front to back
+                { 15, 0, -3 }, { 18, -3, -3 },                 // back
+                { 21, -3, 0 }, { 23, -3, 2 }                   // left, back to front
+        };
+        Vertex v = new Vertex();
+        for (int[] slot : slots) {
+            geometry.getSlotPosition(slot[0], 5, v);
+            assertEquals("x of slot " + slot[0], slot[1], v.x, EPSILON);
+            assertEquals(5, v.y, EPSILON);
+            assertEquals("z of slot " + slot[0], slot[2], v.z, EPSILON);
+        }
+
+        assertEquals(3, geometry.getApothem(), EPSILON);
+        assertVertex(0, 0, 1, geometry.getFaceNormal(0));
+        assertVertex(1, 0, 0, geometry.getFaceNormal(1));
+        assertVertex(0, 0, -1, geometry.getFaceNormal(2));
+        assertVertex(-1, 0, 0, geometry.getFaceNormal(3));
+    }
+
+    @Test
+    public void slotsAreAUnitApartAroundAnyBoard() {
+        for (int sides = CubeBoardModel.MIN_SIDE_COUNT; sides <= 8; sides++) {
+            for (int width = 4; width <= 15; width++) {
+                CubeBoardGeometry geometry = new CubeBoardGeometry(sides, width);
+                int boardWidth = CubeBoardModel.getBoardWidth(sides, width);
+                Vertex a = new Vertex();
+                Vertex b = new Vertex();
+                for (int x = 0; x < boardWidth; x++) {
+                    geometry.getSlotPosition(x, 0, a);
+                    geometry.getSlotPosition((x + 1) % boardWidth, 0, b);
+                    float dx = b.x - a.x;
+                    float dz = b.z - a.z;
+                    assertEquals(sides + "x" + width + " slot " + x, 1.0f, (float) Math.sqrt(dx * dx + dz * dz), EPSILON);
+                }
+
+                // the middle of each face sits right in front of it when the board turns to it
+                for (int face = 0; face < sides; face++) {
+                    Vertex normal = geometry.getFaceNormal(face);
+                    float middleX = (geometry.getCornerX(face) + geometry.getCornerX((face + 1) % sides)) / 2;
+                    float middleZ = (geometry.getCornerZ(face) + geometry.getCornerZ((face + 1) % sides)) / 2;
+                    assertEquals(normal.x * geometry.getApothem(), middleX, EPSILON);
+                    assertEquals(normal.z * geometry.getApothem(), middleZ, EPSILON);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void faceRotationsGoAllTheWayRound() {
+        for (int sides = CubeBoardModel.MIN_SIDE_COUNT; sides <= 8; sides++) {
+            assertEquals(0.0f, CubeBoardModel.getFaceRotation(sides, 0), EPSILON);
+            assertEquals(360.0f - 360.0f / sides, CubeBoardModel.getFaceRotation(sides, sides - 1), EPSILON);
+        }
+    }
+
+    private static void assertVertex(float x, float y, float z, Vertex v) {
+        assertEquals(x, v.x, EPSILON);
+        assertEquals(y, v.y, EPSILON);
+        assertEquals(z, v.z, EPSILON);
+    }
+}
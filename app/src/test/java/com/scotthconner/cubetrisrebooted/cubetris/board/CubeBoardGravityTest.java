@@ -0,0 +1,122 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plays the same inputs at different frame rates and checks the games come out identical.
+ */
+public class CubeBoardGravityTest {
+    private static final int SIDE_WIDTH = 7;
+    private static final int BOARD_HEIGHT = 18;
+    private static final long INPUT_MS = 32;       // inputs land on this grid, a 30 Hz frame
+    private static final int INPUT_COUNT = 1500;
+
+    @Test
+    public void defaultGravityMatchesAtAnyFrameRate() {
+        assertFrameRatesMatch(CubeBoardPieceModel.DEFAULT_FALL_SPEED, 5);
+    }
+
+    @Test
+    public void fastGravityMatchesAtAnyFrameRate() {
+        assertFrameRatesMatch(7, 6);
+    }
+
+    @Test
+    public void instantGravityMatchesAtAnyFrameRate() {
+        assertFrameRatesMatch(CubeBoardPieceModel.INSTANT_FALL_SPEED, 7);
+    }
+
+    @Test
+    public void longUpdateFallsEveryRowItCovers() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(3));
+        model.setFallSpeed(100);
+        model.start();
+        CubeBoardPieceModel piece = model.getActivePiece();
+        int faceY = piece.getFaceY();
+
+        // a single slow frame still falls a row for every 100 ms of it
+        model.update(350);
+        assertEquals(faceY - 3, piece.getFaceY());
+        model.update(50);
+        assertEquals(faceY - 4, piece.getFaceY());
+    }
+
+    @Test
+    public void instantGravityCrossesTheBoardInAFrame() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(4));
+        model.setFallSpeed(CubeBoardPieceModel.INSTANT_FALL_SPEED);
+        model.start();
+        model.update(BOARD_HEIGHT);
+        assertEquals(2, model.getPieceCount());
+        assertFalse(model.isGameOver());
+    }
+
+    /**
+     * Runs one scripted game at 30, 60 and 120 Hz and with ragged frames, comparing the saved
+     * games every time an input is due.
+     */
+    private static void assertFrameRatesMatch(int fallSpeed, long seed) {
+        List<byte[]> expected = play(fallSpeed, seed, new long[] { 32 });
+        assertFalse(expected.isEmpty());
+        long[][] frameRates = { { 16 }, { 8 }, { 5, 11, 1, 15 } };
+        for (long[] frames : frameRates) {
+            List<byte[]> actual = play(fallSpeed, seed, frames);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals("frames " + Arrays.toString(frames) + " split at " + i * INPUT_MS + " ms",
+                        expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    /**
+     * @param frames frame lengths to cycle through, cut short wherever an input is due
+     * @return the saved game each time an input was due
+     */
+    private static List<byte[]> play(int fallSpeed, long seed, long[] frames) {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(seed));
+        model.setFallSpeed(fallSpeed);
+        model.start();
+
+        Random script = new Random(seed);
+        ByteBuffer buffer = ByteBuffer.allocate(model.getMaxStateSize());
+        List<byte[]> states = new ArrayList<byte[]>();
+        int frame = 0;
+        for (int input = 0; input < INPUT_COUNT && !model.isGameOver(); input++) {
+            buffer.clear();
+            model.saveState(buffer);
+            states.add(Arrays.copyOf(buffer.array(), buffer.position()));
+            playInput(model, script);
+
+            for (long left = INPUT_MS; left > 0; frame++) {
+                long msDelta = Math.min(frames[frame % frames.length], left);
+                model.update(msDelta);
+                left -= msDelta;
+            }
+        }
+        return states;
+    }
+
+    private static void playInput(CubeBoardModel model, Random script) {
+        switch (script.nextInt(12)) {
+            case 0: model.movePiece(-1, 0); break;
+            case 1: model.movePiece(1, 0); break;
+            case 2: model.rotatePiece(1); break;
+            case 3: model.rotatePiece(-1); break;
+            case 4: model.rotate(script.nextBoolean() ? 1 : -1); break;
+            case 5: model.modulePieceSpeed(2 + script.nextInt(3)); break;
+            case 6: if (script.nextInt(4) == 0) { model.dropActivePiece(); } break;
+            default: break;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeSolver;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeWeightedHeuristic;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rewinds a game the solver is playing and checks it comes back exactly as it was.
+ */
+public class CubeBoardHistoryTest {
+    private static final int SIDE_WIDTH = 7;
+    private static final int BOARD_HEIGHT = 18;
+    private static final long FRAME_MS = 16;
+
+    @Test
+    public void rewindMatchesTheGameAsItWas() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(5));
+        model.setHistoryLimit(500);
+        List<byte[]> spawns = recordSpawns(model);
+        model.testFill();
+        model.start();
+
+        CubeSolver solver = new CubeSolver(SIDE_WIDTH, BOARD_HEIGHT, new CubeWeightedHeuristic(), 1);
+        try {
+            int garbage = play(model, solver, 100);
+            assertEquals(100, model.getHistorySize());
+
+            // snapshots only hold the rows each piece changed
+            assertTrue(model.getHistory().getRetainedRowCount() <= 4 * 100 + garbage);
+
+            assertTrue(model.rewind(0));
+            assertArrayEquals(spawns.get(100), model.saveState());
+            assertMatchesRebuild(model);
+            assertTrue(model.rewind(7));
+            assertArrayEquals(spawns.get(93), model.saveState());
+            assertMatchesRebuild(model);
+            assertEquals(93, model.getHistorySize());
+            assertFalse(model.rewind(93));
+
+            // play on from there, then go back past where the rewind landed
+            play(model, solver, 120);
+            assertTrue(rewindKeepingRows(model, 50));
+            assertArrayEquals(spawns.get(70), model.saveState());
+            assertMatchesRebuild(model);
+            assertTrue(model.rewind(69));
+            assertArrayEquals(spawns.get(1), model.saveState());
+            assertMatchesRebuild(model);
+        } finally {
+            solver.shutdown();
+        }
+    }
+
+    @Test
+    public void historyForgetsTheOldestPieces() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(9));
+        model.setHistoryLimit(10);
+        List<byte[]> spawns = recordSpawns(model);
+        model.start();
+
+        CubeSolver solver = new CubeSolver(SIDE_WIDTH, BOARD_HEIGHT, new CubeWeightedHeuristic(), 1);
+        try {
+            play(model, solver, 30);
+        } finally {
+            solver.shutdown();
+        }
+
+        assertEquals(10, model.getHistorySize());
+        assertFalse(model.rewind(10));
+        assertTrue(model.rewind(9));
+        assertArrayEquals(spawns.get(21), model.saveState());
+        assertMatchesRebuild(model);
+    }
+
+    @Test
+    public void rewindWithoutAHistoryDoesNothing() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(1));
+        model.start();
+        assertEquals(0, model.getHistorySize());
+        assertFalse(model.rewind(0));
+    }
+
+    /**
+     * Rewinds, checking every row the model says it kept holds what it held before the rewind.
+     */
+    private static boolean rewindKeepingRows(CubeBoardModel model, int pieces) {
+        int[][] before = new int[BOARD_HEIGHT][model.getBoardWidth()];
+        for (int y = 0; y < BOARD_HEIGHT; y++) {
+            for (int x = 0; x < model.getBoardWidth(); x++) {
+                before[y][x] = model.getCell(x, y);
+            }
+        }
+
+        int[] from = new int[BOARD_HEIGHT];
+        if (!model.rewind(pieces, from)) {
+            return false;
+        }
+        boolean[] kept = new boolean[BOARD_HEIGHT];
+        int putBack = 0;
+        for (int y = 0; y < BOARD_HEIGHT; y++) {
+            if (from[y] < 0) {
+                putBack++;
+                continue;
+            }
+            assertFalse(kept[from[y]]);
+            kept[from[y]] = true;
+            for (int x = 0; x < model.getBoardWidth(); x++) {
+                assertEquals(before[from[y]][x], model.getCell(x, y));
+            }
+        }
+        assertTrue(putBack < BOARD_HEIGHT);
+        return true;
+    }
+
+    /**
+     * Checks what rewind kept up to date against a board restored from scratch.
+     */
+    private static void assertMatchesRebuild(CubeBoardModel model) {
+        CubeBoardModel rebuilt = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(0));
+        rebuilt.restoreState(ByteBuffer.wrap(model.saveState()));
+
+        assertEquals(rebuilt.getBoardHash(), model.getBoardHash());
+        CubeBoardSurface surface = model.getSurface();
+        CubeBoardSurface expected = rebuilt.getSurface();
+        for (int x = 0; x < model.getBoardWidth(); x++) {
+            assertEquals(expected.getColumnHeight(x), surface.getColumnHeight(x));
+            for (int y = 0; y < BOARD_HEIGHT; y++) {
+                assertEquals(rebuilt.getOccupancy().isOccupied(x, y), model.getOccupancy().isOccupied(x, y));
+            }
+        }
+        assertEquals(expected.getHoleCount(), surface.getHoleCount());
+        assertEquals(expected.getBumpiness(), surface.getBumpiness());
+        assertEquals(expected.getWellDepthSum(), surface.getWellDepthSum());
+    }
+
+    /**
+     * @return the saved state at each spawn, by piece count, kept in step with rewinds
+     */
+    private static List<byte[]> recordSpawns(CubeBoardModel model) {
+        final List<byte[]> spawns = new ArrayList<byte[]>();
+        model.setListener(new ICubeBoardModelListener() {
+            public void onPieceSpawn(CubeBoardModel model) {
+                while (spawns.size() > model.getPieceCount()) {
+                    spawns.remove(spawns.size() - 1);
+                }
+                while (spawns.size() < model.getPieceCount()) {
+                    spawns.add(null);
+                }
+                spawns.add(model.saveState());
+            }
+            public void onPieceCellCommit(CubeBoardModel model, int cell, int boardX, int boardY) {}
+            public void onCellFill(CubeBoardModel model, int boardX, int boardY, int color) {}
+            public void onRowClear(CubeBoardModel model, int boardY) {}
+            public void onRowInsert(CubeBoardModel model) {}
+            public void onBoardRotate(CubeBoardModel model) {}
+            public void onBoardRotateBlock(CubeBoardModel model) {}
+            public void onPieceDrop(CubeBoardModel model) {}
+            public void onPieceSlide(CubeBoardModel model) {}
+            public void onPieceHurry(CubeBoardModel model) {}
+            public void onPieceMove(CubeBoardModel model) {}
+            public void onPieceRotate(CubeBoardModel model) {}
+            public void onPieceCommit(CubeBoardModel model) {}
+            public void onLineComplete(CubeBoardModel model) {}
+        });
+        return spawns;
+    }
+
+    /**
+     * Lets the solver play until the given piece has spawned, with a garbage row every so often.
+     *
+     * @return the number of garbage rows pushed in
+     */
+    private static int play(CubeBoardModel model, CubeSolver solver, int pieces) {
+        int garbage = 0;
+        while (model.getPieceCount() < pieces) {
+            assertFalse(model.isGameOver());
+            int piece = model.getPieceCount();
+            solver.solve(model, 0, 4).applyTo(model, FRAME_MS);
+
+            if (piece % 15 == 0) {
+                model.insertGarbageRow(piece % model.getBoardWidth(), 0);
+                garbage++;
+            }
+        }
+        return garbage;
+    }
+}
@@ -0,0 +1,247 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives CubeBoardModel without any rendering to check the board rules.
+ */
+public class CubeBoardModelTest {
+    private static final int SIDE_WIDTH = 7;
+    private static final int BOARD_HEIGHT = 18;
+    private static final int COLOR_COUNT = 6;
+    private static final long FRAME_MS = 16;
+
+    @Test
+    public void droppedPieceCompletesRow() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, COLOR_COUNT, new RandomStreams(7));
+        CountingListener listener = new CountingListener();
+        model.setListener(listener);
+        model.start();
+
+        // fill the bottom row everywhere except under the piece's lowest cells
+        CubeBoardPieceModel piece = model.getActivePiece();
+        boolean[] gap = new boolean[model.getBoardWidth()];
+        int lowest = Integer.MAX_VALUE;
+        for (int i = 0; i < piece.getCellCount(); i++) {
+            lowest = Math.min(lowest, piece.getCellY(i));
+        }
+        for (int i = 0; i < piece.getCellCount(); i++) {
+            if (piece.getCellY(i) == lowest) {
+                gap[model.trueX(piece.getFaceX() + piece.getCellX(i))] = true;
+            }
+        }
+        for (int x = 0; x < model.getBoardWidth(); x++) {
+            if (!gap[x]) {
+                model.fillCell(x, 0, 0);
+            }
+        }
+
+        // the piece object is recycled for the next spawn, so watch the commits instead
+        int cellCount = piece.getCellCount();
+        model.dropActivePiece();
+        while (listener.commits == 0) {
+            model.update(FRAME_MS);
+        }
+
+        assertEquals(1, listener.rowsCleared);
+        assertEquals(1, listener.lineCompletes);
+        assertEquals(cellCount, listener.cellsCommitted);
+        assertEquals(1, listener.commits);
+        assertEquals(2, model.getPieceCount());
+        assertBoardMatchesOccupancy(model);
+    }
+
+    @Test
+    public void oneDropClearsSeveralRows() {
+        // find a game that opens with a standing I piece
+        CubeBoardModel model = null;
+        for (long seed = 0; null == model || model.getActivePiece().getStyle() != 6; seed++) {
+            model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, COLOR_COUNT, new RandomStreams(seed));
+            model.start();
+        }
+        CountingListener listener = new CountingListener();
+        model.setListener(listener);
+
+        // four rows with a well the piece drops straight into, and a marker cube on top of
+        // them that should come down all four rows
+        CubeBoardPieceModel piece = model.getActivePiece();
+        int well = model.trueX(piece.getFaceX());
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < model.getBoardWidth(); x++) {
+                if (x != well) {
+                    model.fillCell(x, y, 1);
+                }
+            }
+        }
+        int marker = well + 1;
+        model.fillCell(marker, 4, 3);
+
+        model.dropActivePiece();
+        while (listener.commits == 0) {
+            model.update(FRAME_MS);
+        }
+
+        assertEquals(4, listener.rowsCleared);
+        assertEquals(1, listener.lineCompletes);
+        assertEquals(3, model.getCell(marker, 0));
+        for (int x = 0; x < model.getBoardWidth(); x++) {
+            assertEquals(x == marker, model.getCell(x, 0) != CubeBoardModel.EMPTY);
+            assertEquals(CubeBoardModel.EMPTY, model.getCell(x, 1));
+        }
+        assertBoardMatchesOccupancy(model);
+    }
+
+    @Test
+    public void garbageRowsPushTheBoardUp() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, COLOR_COUNT, new RandomStreams(3));
+        CountingListener listener = new CountingListener();
+        model.setListener(listener);
+        model.fillCell(2, 0, 4);
+        model.start();
+
+        model.insertGarbageRow(5, 1);
+        model.insertGarbageRow(0, 2);
+        assertEquals(2, listener.rowsInserted);
+        assertEquals(4, model.getCell(2, 2));
+        for (int x = 0; x < model.getBoardWidth(); x++) {
+            assertEquals(x == 0 ? CubeBoardModel.EMPTY : 2, model.getCell(x, 0));
+            assertEquals(x == 5 ? CubeBoardModel.EMPTY : 1, model.getCell(x, 1));
+        }
+        assertBoardMatchesOccupancy(model);
+
+        // the rows still clear like any other once the gap is plugged
+        for (int x = 0; x < model.getBoardWidth(); x++) {
+            if (x != 2) {
+                model.fillCell(x, 2, 3);
+            }
+        }
+        model.dropActivePiece();
+        while (listener.commits == 0) {
+            model.update(FRAME_MS);
+        }
+        assertBoardMatchesOccupancy(model);
+        assertFalse(model.isGameOver());
+
+        // pushing a filled row off the top ends the game
+        for (int y = 0; y < BOARD_HEIGHT; y++) {
+            model.insertGarbageRow(y % model.getBoardWidth(), 0);
+        }
+        assertTrue(model.isGameOver());
+        assertBoardMatchesOccupancy(model);
+    }
+
+    @Test
+    public void droppingEveryPieceTopsOut() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, COLOR_COUNT, new RandomStreams(11));
+        CountingListener listener = new CountingListener();
+        model.setListener(listener);
+        model.start();
+
+        for (int frame = 0; frame < 100000 && !model.isGameOver(); frame++) {
+            model.dropActivePiece();
+            model.update(FRAME_MS);
+        }
+
+        assertTrue(model.isGameOver());
+        assertEquals(listener.spawns, listener.commits);
+        assertBoardMatchesOccupancy(model);
+    }
+
+    @Test
+    public void sameSeedPlaysSameGame() {
+        CubeBoardModel a = playScriptedGame(1234);
+        CubeBoardModel b = playScriptedGame(1234);
+        for (int y = 0; y < BOARD_HEIGHT; y++) {
+            for (int x = 0; x < a.getBoardWidth(); x++) {
+                assertEquals(a.getCell(x, y), b.getCell(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void steadyStatePlayDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long id = Thread.currentThread().getId();
+
+        // let the JIT settle on the game loop first
+        for (int seed = 0; seed < 20; seed++) {
+            playScriptedGame(seed);
+        }
+
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, COLOR_COUNT, new RandomStreams(99));
+        CountingListener listener = new CountingListener();
+        model.setListener(listener);
+        model.testFill();
+
+        // reading the counter can cost something itself, so measure that too
+        long overheadStart = threads.getThreadAllocatedBytes(id);
+        long overhead = threads.getThreadAllocatedBytes(id) - overheadStart;
+
+        long start = threads.getThreadAllocatedBytes(id);
+        model.start();
+        playScript(model);
+        long allocated = threads.getThreadAllocatedBytes(id) - start - overhead;
+
+        assertTrue(listener.commits > 10);
+        assertEquals("bytes allocated over " + listener.spawns + " pieces", 0, allocated);
+    }
+
+    private static CubeBoardModel playScriptedGame(long seed) {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, COLOR_COUNT, new RandomStreams(seed));
+        model.testFill();
+        model.start();
+        playScript(model);
+        return model;
+    }
+
+    private static void playScript(CubeBoardModel model) {
+        for (int frame = 0; frame < 5000 && !model.isGameOver(); frame++) {
+            switch (frame % 40) {
+                case 5: model.movePiece(-1, 0); break;
+                case 10: model.rotatePiece(1); break;
+                case 20: model.rotate(1); break;
+                case 30: model.dropActivePiece(); break;
+            }
+            model.update(FRAME_MS);
+        }
+    }
+
+    private static void assertBoardMatchesOccupancy(CubeBoardModel model) {
+        CubeBoardOccupancy occupancy = model.getOccupancy();
+        for (int y = 0; y < model.getBoardHeight(); y++) {
+            for (int x = 0; x < model.getBoardWidth(); x++) {
+                assertEquals(model.getCell(x, y) != CubeBoardModel.EMPTY, occupancy.isOccupied(x, y));
+            }
+        }
+    }
+
+    private static class CountingListener implements ICubeBoardModelListener {
+        int spawns, cellsCommitted, rowsCleared, rowsInserted, commits, lineCompletes;
+
+        public void onPieceSpawn(CubeBoardModel model) { spawns++; }
+        public void onPieceCellCommit(CubeBoardModel model, int cell, int boardX, int boardY) { cellsCommitted++; }
+        public void onCellFill(CubeBoardModel model, int boardX, int boardY, int color) {}
+        public void onRowClear(CubeBoardModel model, int boardY) { rowsCleared++; }
+        public void onRowInsert(CubeBoardModel model) { rowsInserted++; }
+        public void onBoardRotate(CubeBoardModel model) {}
+        public void onBoardRotateBlock(CubeBoardModel model) {}
+        public void onPieceDrop(CubeBoardModel model) {}
+        public void onPieceSlide(CubeBoardModel model) {}
+        public void onPieceHurry(CubeBoardModel model) {}
+        public void onPieceMove(CubeBoardModel model) {}
+        public void onPieceRotate(CubeBoardModel model) {}
+        public void onPieceCommit(CubeBoardModel model) { commits++; }
+        public void onLineComplete(CubeBoardModel model) { lineCompletes++; }
+    }
+}
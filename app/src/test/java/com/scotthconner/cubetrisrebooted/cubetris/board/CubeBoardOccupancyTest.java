@@ -0,0 +1,201 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Proves the packed occupancy answers match the CubeInstance[][] scans CubeBoard used to do.
+ * The reference methods below are the original array logic, kept verbatim over a boolean grid.
+ */
+public class CubeBoardOccupancyTest {
+    private static final int SIDE_COUNT = 4;
+
+    private static boolean referenceIsFaceSpaceOccupied(boolean[][] board, int sideWidth,
+                                                        int activeFace, int faceX, int faceY) {
+        int boardWidth = board.length;
+        int boardHeight = board[0].length;
+        if (faceY >= boardHeight) {
+            return false;
+        }
+        if (faceY < 0) {
+            return true;
+        }
+        if (faceX < 0 || faceX > (sideWidth - 1)) {
+            return true;
+        }
+        return board[(activeFace * sideWidth - activeFace + faceX) % boardWidth][faceY];
+    }
+
+    private static boolean referenceRotationBlocked(boolean[][] board, int sideWidth, int activeFace,
+                                                    int px, int py, int direction) {
+        int boardWidth = board.length;
+        int boardHeight = board[0].length;
+        for (int diff = 0; diff < sideWidth; diff++) {
+            int trux = (activeFace * sideWidth - activeFace + px) + (direction * diff);
+            if (trux < 0) { trux = boardWidth + trux; }
+            trux = trux % boardWidth;
+
+            if (py < boardHeight && board[trux][py] ||
+                    py == 0 ||
+                    (py < boardHeight && board[trux][py - 1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean referenceRowComplete(boolean[][] board, int y) {
+        for (boolean[] column : board) {
+            if (!column[y]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void referenceRemoveRow(boolean[][] board, int y) {
+        int boardHeight = board[0].length;
+        for (boolean[] column : board) {
+            for (int moveY = y; moveY < boardHeight; moveY++) {
+                column[moveY] = (moveY + 1 < boardHeight) && column[moveY + 1];
+            }
+        }
+    }
+
+    private static void fill(boolean[][] board, CubeBoardOccupancy occupancy, Random r, float density) {
+        for (int x = 0; x < board.length; x++) {
+            for (int y = 0; y < board[x].length; y++) {
+                board[x][y] = r.nextFloat() < density;
+                if (board[x][y]) {
+                    occupancy.set(x, y);
+                } else {
+                    occupancy.clear(x, y);
+                }
+            }
+        }
+    }
+
+    private static void assertMatches(boolean[][] board, CubeBoardOccupancy occupancy, int sideWidth) {
+        int boardHeight = board[0].length;
+        for (int face = 0; face < SIDE_COUNT; face++) {
+            for (int faceX = -2; faceX < sideWidth + 2; faceX++) {
+                for (int faceY = -2; faceY < boardHeight + 3; faceY++) {
+                    assertEquals("face space (" + face + "," + faceX + "," + faceY + ")",
+                            referenceIsFaceSpaceOccupied(board, sideWidth, face, faceX, faceY),
+                            occupancy.isFaceSpaceOccupied(face, faceX, faceY));
+                }
+            }
+
+            for (int faceX = 0; faceX < sideWidth; faceX++) {
+                for (int faceY = 0; faceY < boardHeight + 3; faceY++) {
+                    for (int direction = -1; direction <= 1; direction += 2) {
+                        assertEquals("sweep (" + face + "," + faceX + "," + faceY + "," + direction + ")",
+                                referenceRotationBlocked(board, sideWidth, face, faceX, faceY, direction),
+                                occupancy.isRotationSweepBlocked(face, faceX, faceY, direction));
+                    }
+                }
+            }
+
+            for (int y = 0; y < boardHeight; y++) {
+                long row = occupancy.getFaceRow(face, y);
+                for (int faceX = 0; faceX < sideWidth; faceX++) {
+                    assertEquals(referenceIsFaceSpaceOccupied(board, sideWidth, face, faceX, y),
+                            ((row >>> faceX) & 1L) != 0);
+                }
+            }
+        }
+
+        for (int y = 0; y < boardHeight; y++) {
+            assertEquals("row " + y, referenceRowComplete(board, y), occupancy.isRowComplete(y));
+        }
+    }
+
+    private static void verifyRandomBoards(int sideWidth, int boardHeight) {
+        Random r = new Random(sideWidth * 1000 + boardHeight);
+        boolean[][] board = new boolean[SIDE_COUNT * sideWidth - SIDE_COUNT][boardHeight];
+        CubeBoardOccupancy occupancy = new CubeBoardOccupancy(SIDE_COUNT, sideWidth, boardHeight);
+        assertEquals(board.length, occupancy.getBoardWidth());
+
+        for (int trial = 0; trial < 40; trial++) {
+            fill(board, occupancy, r, 0.15f + 0.8f * r.nextFloat());
+            assertMatches(board, occupancy, sideWidth);
+        }
+    }
+
+    @Test
+    public void matchesArrayLogic_standardBoard() {
+        verifyRandomBoards(7, 18);
+    }
+
+    @Test
+    public void matchesArrayLogic_boardsWiderThanOneWord() {
+        verifyRandomBoards(17, 12);
+        verifyRandomBoards(30, 6);
+    }
+
+    @Test
+    public void completedRowsRemoveLikeTheArray() {
+        int sideWidth = 7;
+        int boardHeight = 18;
+        Random r = new Random(42);
+        boolean[][] board = new boolean[SIDE_COUNT * sideWidth - SIDE_COUNT][boardHeight];
+        CubeBoardOccupancy occupancy = new CubeBoardOccupancy(SIDE_COUNT, sideWidth, boardHeight);
+
+        for (int trial = 0; trial < 20; trial++) {
+            fill(board, occupancy, r, 0.5f);
+
+            // force a few completed rows
+            for (int i = 0; i < 3; i++) {
+                int y = r.nextInt(boardHeight);
+                for (int x = 0; x < board.length; x++) {
+                    board[x][y] = true;
+                    occupancy.set(x, y);
+                }
+            }
+
+            // clear from the top like CubeBoard#testLineCompletion
+            for (int y = boardHeight - 1; y >= 0; y--) {
+                if (referenceRowComplete(board, y)) {
+                    assertTrue(occupancy.isRowComplete(y));
+                    referenceRemoveRow(board, y);
+                    occupancy.removeRow(y);
+                }
+            }
+
+            assertMatches(board, occupancy, sideWidth);
+            assertTrue(occupancy.isRowEmpty(boardHeight - 1));
+        }
+    }
+
+    @Test
+    public void removingRowsAtOnceMatchesRemovingThemOneByOne() {
+        int sideWidth = 7;
+        int boardHeight = 18;
+        Random r = new Random(7);
+        boolean[][] board = new boolean[SIDE_COUNT * sideWidth - SIDE_COUNT][boardHeight];
+        CubeBoardOccupancy occupancy = new CubeBoardOccupancy(SIDE_COUNT, sideWidth, boardHeight);
+        int[] rows = new int[4];
+
+        for (int trial = 0; trial < 50; trial++) {
+            fill(board, occupancy, r, 0.5f);
+
+            // pick up to four distinct rows, ascending, including the top and bottom now and then
+            int count = 0;
+            for (int y = 0; y < boardHeight && count < rows.length; y++) {
+                if (r.nextInt(5) == 0) {
+                    rows[count++] = y;
+                }
+            }
+
+            for (int i = count - 1; i >= 0; i--) {
+                referenceRemoveRow(board, rows[i]);
+            }
+            occupancy.removeRows(rows, count);
+
+            assertMatches(board, occupancy, sideWidth);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks packing and unpacking piece placements, and that the piece keeps its placement whole.
+ */
+public class CubeBoardPiecePlacementTest {
+
+    @Test
+    public void packedPartsComeBackOut() {
+        int[] positions = { -3, -1, 0, 1, 6, 18, 300, -300 };
+        for (int style = 0; style < CubeBoardPieceModel.STYLES.length; style++) {
+            for (int rotation = 0; rotation < CubeBoardPieceShapes.ROTATIONS; rotation++) {
+                for (int faceX : positions) {
+                    for (int faceY : positions) {
+                        long placement = CubeBoardPiecePlacement.pack(style, rotation, faceX, faceY);
+                        assertEquals(style, CubeBoardPiecePlacement.getStyle(placement));
+                        assertEquals(rotation, CubeBoardPiecePlacement.getRotation(placement));
+                        assertEquals(faceX, CubeBoardPiecePlacement.getFaceX(placement));
+                        assertEquals(faceY, CubeBoardPiecePlacement.getFaceY(placement));
+
+                        long moved = CubeBoardPiecePlacement.move(placement, -2, 5);
+                        assertEquals(faceX - 2, CubeBoardPiecePlacement.getFaceX(moved));
+                        assertEquals(faceY + 5, CubeBoardPiecePlacement.getFaceY(moved));
+                        assertEquals(rotation, CubeBoardPiecePlacement.getRotation(moved));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pieceMovesSwapTheWholePlacement() {
+        CubeBoardModel model = new CubeBoardModel(7, 18, 6, new RandomStreams(4));
+        model.start();
+        CubeBoardPieceModel piece = model.getActivePiece();
+
+        long start = piece.getPlacement();
+        assertEquals(piece.getStyle(), CubeBoardPiecePlacement.getStyle(start));
+        assertEquals(piece.getFaceX(), CubeBoardPiecePlacement.getFaceX(start));
+        assertEquals(piece.getFaceY(), CubeBoardPiecePlacement.getFaceY(start));
+
+        assertTrue(model.movePiece(-1, 0));
+        assertEquals(CubeBoardPiecePlacement.move(start, -1, 0), piece.getPlacement());
+        for (int i = 0; i < piece.getCellCount(); i++) {
+            assertEquals(piece.getFaceX() + piece.getCellX(i),
+                    CubeBoardPiecePlacement.getCellFaceX(piece.getPlacement(), i));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the precomputed rotation tables against working the shapes out by hand.
+ */
+public class CubeBoardPieceShapesTest {
+
+    @Test
+    public void turnsMatchRotatingTheOffsets() {
+        for (int style = 0; style < CubeBoardPieceModel.STYLES.length; style++) {
+            for (int rotation = 0; rotation < CubeBoardPieceShapes.ROTATIONS; rotation++) {
+                for (int direction = -1; direction <= 1; direction += 2) {
+                    int turned = CubeBoardPieceShapes.turn(rotation, direction);
+                    for (int i = 0; i < CubeBoardPieceShapes.CELL_X[style][rotation].length; i++) {
+                        int x = CubeBoardPieceShapes.CELL_X[style][rotation][i];
+                        int y = CubeBoardPieceShapes.CELL_Y[style][rotation][i];
+                        assertEquals(direction * y, CubeBoardPieceShapes.CELL_X[style][turned][i]);
+                        assertEquals(-direction * x, CubeBoardPieceShapes.CELL_Y[style][turned][i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void extentsAndContactsMatchTheCells() {
+        for (int style = 0; style < CubeBoardPieceModel.STYLES.length; style++) {
+            for (int rotation = 0; rotation < CubeBoardPieceShapes.ROTATIONS; rotation++) {
+                int[] cellX = CubeBoardPieceShapes.CELL_X[style][rotation];
+                int[] cellY = CubeBoardPieceShapes.CELL_Y[style][rotation];
+                int minX = 0, maxX = 0;
+                for (int i = 0; i < cellX.length; i++) {
+                    minX = Math.min(minX, cellX[i]);
+                    maxX = Math.max(maxX, cellX[i]);
+
+                    boolean below = false, left = false, right = false;
+                    for (int j = 0; j < cellX.length; j++) {
+                        below |= cellX[j] == cellX[i] && cellY[j] == cellY[i] - 1;
+                        left |= cellX[j] == cellX[i] - 1 && cellY[j] == cellY[i];
+                        right |= cellX[j] == cellX[i] + 1 && cellY[j] == cellY[i];
+                    }
+                    assertEquals(!below, (CubeBoardPieceShapes.BOTTOM_CONTACT[style][rotation] & (1 << i)) != 0);
+                    assertEquals(!left, (CubeBoardPieceShapes.LEFT_CONTACT[style][rotation] & (1 << i)) != 0);
+                    assertEquals(!right, (CubeBoardPieceShapes.RIGHT_CONTACT[style][rotation] & (1 << i)) != 0);
+                }
+                assertEquals(minX, CubeBoardPieceShapes.MIN_X[style][rotation]);
+                assertEquals(maxX, CubeBoardPieceShapes.MAX_X[style][rotation]);
+                assertEquals(rotation, CubeBoardPieceShapes.findRotation(style, cellX, cellY));
+            }
+        }
+
+        // a standing I piece only touches down with its last block
+        int i = 6;
+        assertEquals(1 << 3, CubeBoardPieceShapes.BOTTOM_CONTACT[i][0]);
+        assertEquals(0xF, CubeBoardPieceShapes.LEFT_CONTACT[i][0]);
+    }
+}
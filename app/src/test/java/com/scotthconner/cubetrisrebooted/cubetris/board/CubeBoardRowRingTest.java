@@ -0,0 +1,56 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the row ring against a plain list of rows being shuffled around.
+ */
+public class CubeBoardRowRingTest {
+    private static final int BOARD_HEIGHT = 18;
+
+    @Test
+    public void ringMatchesMovingTheRows() {
+        Random random = new Random(4);
+        CubeBoardRowRing ring = new CubeBoardRowRing(BOARD_HEIGHT);
+        List<Integer> rows = new ArrayList<>();
+        for (int y = 0; y < BOARD_HEIGHT; y++) {
+            rows.add(y);
+        }
+
+        for (int step = 0; step < 2000; step++) {
+            if (random.nextInt(4) == 0) {
+                int top = rows.remove(BOARD_HEIGHT - 1);
+                rows.add(0, top);
+                assertEquals(top, ring.insertBottom());
+            } else {
+                int y = random.nextInt(BOARD_HEIGHT);
+                int removed = rows.remove(y);
+                rows.add(removed);
+                assertEquals(removed, ring.remove(y));
+            }
+
+            for (int y = 0; y < BOARD_HEIGHT; y++) {
+                assertEquals((int) rows.get(y), ring.get(y));
+            }
+        }
+    }
+
+    @Test
+    public void removingSeveralRowsKeepsTheirOrder() {
+        CubeBoardRowRing ring = new CubeBoardRowRing(BOARD_HEIGHT);
+        ring.insertBottom();
+        ring.remove(new int[] { 1, 2, 16 }, 3);
+
+        // the old top row went to the bottom, then the removed rows went to the top, top down
+        int[] expected = { 17, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 16, 15, 1, 0 };
+        for (int y = 0; y < BOARD_HEIGHT; y++) {
+            assertEquals(expected[y], ring.get(y));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Times piece commits, line clears and filling the render buffer on boards from the original
+ * size up to much bigger ones. Commits and clears only touch the rows the piece landed in, so
+ * their cost has to grow slower than the board does. Filling the render buffer is a cube at a
+ * time by nature, so its cost per cube mustn't grow.
+ *
+ * Wall clock ratios are too noisy for a shared build machine and the biggest render buffer is
+ * ~100MB, so it is left out of the unit tests; take the @Ignore off to run it by hand.
+ */
+public class CubeBoardScalingBenchmarkTest {
+    // side count, side width, board height
+    private static final int[][] SIZES = {
+            { 4, 7, 18 }, { 5, 9, 40 }, { 6, 11, 80 }, { 8, 15, 200 }
+    };
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 500;
+    private static final int FILL_WARMUP = 10;       // a full buffer for the biggest board is ~100MB
+    private static final int FILL_ITERATIONS = 30;
+    private static final int STYLE_I = 6;
+    private static final int CUBE_FLOATS = 24 * 3 * CubeInstance.VERTEX_STRIDE / 4;
+
+    @Ignore("benchmark, run by hand")
+    @Test
+    public void benchmarkBoardSizes() {
+        long[] commits = new long[SIZES.length];
+        long[] clears = new long[SIZES.length];
+        long[] fills = new long[SIZES.length];
+        for (int x = 0; x < SIZES.length; x++) {
+            int[] size = SIZES[x];
+            commits[x] = timeCommit(size[0], size[1], size[2], false);
+            clears[x] = timeCommit(size[0], size[1], size[2], true);
+            fills[x] = timeRenderFill(size[0], size[1], size[2]);
+            System.out.printf("%dx%dx%d: commit %.1fus, clear %.1fus, render fill %.1fus%n",
+                    size[0], size[1], size[2], commits[x] / 1e3 / ITERATIONS,
+                    clears[x] / 1e3 / ITERATIONS, fills[x] / 1e3 / FILL_ITERATIONS);
+        }
+
+        // the biggest board has ~48 times the cells of the smallest
+        int last = SIZES.length - 1;
+        double growth = (double) cellCount(SIZES[last]) / cellCount(SIZES[0]);
+        assertTrue("commit grew with the board", (double) commits[last] / commits[0] < growth);
+        assertTrue("line clear grew with the board", (double) clears[last] / clears[0] < growth);
+        assertTrue("render fill grew faster than the board", (double) fills[last] / fills[0] < growth * 2);
+    }
+
+    private static int cellCount(int[] size) {
+        return CubeBoardModel.getBoardWidth(size[0], size[1]) * size[2];
+    }
+
+    /**
+     * Puts an upright I piece at the bottom of the front face and times the update that commits
+     * it, starting from the same board every time.
+     *
+     * @param clear true to fill the four rows around the piece, so the commit clears them
+     * @return the total nanoseconds spent over ITERATIONS commits
+     */
+    private static long timeCommit(int sideCount, int sideWidth, int boardHeight, boolean clear) {
+        CubeBoardModel model = new CubeBoardModel(sideCount, sideWidth, boardHeight, 6, new RandomStreams(1));
+        model.start();
+        int column = model.trueX(sideWidth / 2);
+        if (clear) {
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < model.getBoardWidth(); x++) {
+                    if (x != column) {
+                        model.fillCell(x, y, x % 6);
+                    }
+                }
+            }
+        }
+
+        ByteBuffer start = ByteBuffer.allocate(model.getMaxStateSize());
+        model.saveState(start);
+        start.flip();
+
+        long total = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            start.rewind();
+            model.restoreState(start);
+            model.getActivePiece().reset(STYLE_I, 0);
+            assertTrue(model.movePiece(0, 2 - boardHeight));
+
+            int piece = model.getPieceCount();
+            long before = System.nanoTime();
+            model.update(CubeBoardPieceModel.DEFAULT_FALL_SPEED);
+            long elapsed = System.nanoTime() - before;
+            if (i >= WARMUP) {
+                total += elapsed;
+            }
+
+            assertEquals(piece + 1, model.getPieceCount());
+            assertEquals(clear ? CubeBoardModel.EMPTY : 0, model.getCell(column, 0));
+            assertEquals(clear ? CubeBoardModel.EMPTY : 0, model.getCell(column, 3));
+            assertEquals(CubeBoardModel.EMPTY, model.getCell(column, 4));
+        }
+        return total;
+    }
+
+    /**
+     * Times expanding a full board's frame into a native vertex buffer, the way the renderer
+     * does every frame.
+     *
+     * @return the total nanoseconds spent over FILL_ITERATIONS fills
+     */
+    private static long timeRenderFill(int sideCount, int sideWidth, int boardHeight) {
+        int boardWidth = CubeBoardModel.getBoardWidth(sideCount, sideWidth);
+        int cubes = boardWidth * boardHeight;
+        float[] reference = new float[CUBE_FLOATS];
+        CubeBoardFrame frame = new CubeBoardFrame(cubes);
+        frame.begin(0);
+        for (int y = 0; y < boardHeight; y++) {
+            for (int x = 0; x < boardWidth; x++) {
+                CubeInstance cube = new CubeInstance(reference);
+                cube.setPositionY(y);
+                frame.addBoardCube(cube);
+            }
+        }
+        FloatBuffer buffer = ByteBuffer.allocateDirect(cubes * CUBE_FLOATS * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        float[] scratch = new float[CUBE_FLOATS];
+
+        long total = 0;
+        for (int i = 0; i < FILL_WARMUP + FILL_ITERATIONS; i++) {
+            buffer.position(0);
+            long before = System.nanoTime();
+            int triangles = CubeBoardRenderer.putCubes(buffer, frame, 0, cubes, scratch);
+            long elapsed = System.nanoTime() - before;
+            if (i >= FILL_WARMUP) {
+                total += elapsed;
+            }
+
+            assertEquals(24 * cubes, triangles);
+            assertEquals(buffer.capacity(), buffer.position());
+        }
+        return total;
+    }
+}
@@ -0,0 +1,128 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeSolver;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeWeightedHeuristic;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the surface the model keeps up as it plays against measuring the board by hand.
+ */
+public class CubeBoardSurfaceTest {
+    private static final int SIDE_WIDTH = 7;
+    private static final int BOARD_HEIGHT = 18;
+    private static final long FRAME_MS = 16;
+
+    @Test
+    public void surfaceKeepsUpWithPlay() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(21));
+        final int[] rowsCleared = new int[1];
+        model.setListener(new ICubeBoardModelListener() {
+            public void onPieceSpawn(CubeBoardModel model) {}
+            public void onPieceCellCommit(CubeBoardModel model, int cell, int boardX, int boardY) {}
+            public void onCellFill(CubeBoardModel model, int boardX, int boardY, int color) {}
+            public void onRowClear(CubeBoardModel model, int boardY) { rowsCleared[0]++; }
+            public void onRowInsert(CubeBoardModel model) {}
+            public void onBoardRotate(CubeBoardModel model) {}
+            public void onBoardRotateBlock(CubeBoardModel model) {}
+            public void onPieceDrop(CubeBoardModel model) {}
+            public void onPieceSlide(CubeBoardModel model) {}
+            public void onPieceHurry(CubeBoardModel model) {}
+            public void onPieceMove(CubeBoardModel model) {}
+            public void onPieceRotate(CubeBoardModel model) {}
+            public void onPieceCommit(CubeBoardModel model) {}
+            public void onLineComplete(CubeBoardModel model) {}
+        });
+        model.testFill();
+        model.start();
+        assertSurfaceMatchesBoard(model);
+
+        // let the solver play so that rows actually clear, with some garbage coming in
+        CubeSolver solver = new CubeSolver(SIDE_WIDTH, BOARD_HEIGHT, new CubeWeightedHeuristic(), 1);
+        Random random = new Random(21);
+        try {
+            while (model.getPieceCount() < 80 && !model.isGameOver()) {
+                int piece = model.getPieceCount();
+                solver.solve(model, 0, 4).applyTo(model, FRAME_MS);
+                assertSurfaceMatchesBoard(model);
+
+                if (piece % 10 == 0) {
+                    model.insertGarbageRow(random.nextInt(model.getBoardWidth()), 0);
+                    assertSurfaceMatchesBoard(model);
+                }
+            }
+        } finally {
+            solver.shutdown();
+        }
+        assertTrue(rowsCleared[0] > 0);
+    }
+
+    @Test
+    public void landingMatchesDroppingThePiece() {
+        for (int seed = 0; seed < 30; seed++) {
+            CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(seed));
+            model.testFill();
+            model.start();
+
+            // walk the piece around a bit so it doesn't always start in the same place
+            Random random = new Random(seed);
+            for (int i = 0; i < 5; i++) {
+                model.movePiece(random.nextInt(3) - 1, 0);
+                model.rotatePiece(1);
+            }
+
+            CubeBoardPieceModel piece = model.getActivePiece();
+            int landing = model.getLandingY();
+            int y = piece.getFaceY();
+            while (piece.movePiece(0, -1, false)) {
+                piece.movePiece(0, -1, true);
+                y--;
+                assertEquals("seed " + seed, landing, model.getLandingY());
+            }
+            assertEquals("seed " + seed, y, landing);
+        }
+    }
+
+    private static void assertSurfaceMatchesBoard(CubeBoardModel model) {
+        CubeBoardSurface surface = model.getSurface();
+        int width = model.getBoardWidth();
+        int[] heights = new int[width];
+        int aggregate = 0, holes = 0, maxHeight = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < model.getBoardHeight(); y++) {
+                if (model.getCell(x, y) != CubeBoardModel.EMPTY) {
+                    heights[x] = y + 1;
+                }
+            }
+            for (int y = 0; y < heights[x]; y++) {
+                if (model.getCell(x, y) == CubeBoardModel.EMPTY) {
+                    holes++;
+                }
+            }
+            aggregate += heights[x];
+            maxHeight = Math.max(maxHeight, heights[x]);
+            assertEquals("column " + x + " of piece " + model.getPieceCount(), heights[x], surface.getColumnHeight(x));
+        }
+
+        int bumpiness = 0, wells = 0;
+        for (int x = 0; x < width; x++) {
+            int left = heights[(x + width - 1) % width];
+            int right = heights[(x + 1) % width];
+            bumpiness += Math.abs(heights[x] - right);
+            int well = Math.max(0, Math.min(left, right) - heights[x]);
+            wells += well;
+            assertEquals(well, surface.getWellDepth(x));
+        }
+
+        assertEquals(aggregate, surface.getAggregateHeight());
+        assertEquals(maxHeight, surface.getMaxHeight());
+        assertEquals(holes, surface.getHoleCount());
+        assertEquals(bumpiness, surface.getBumpiness());
+        assertEquals(wells, surface.getWellDepthSum());
+    }
+}
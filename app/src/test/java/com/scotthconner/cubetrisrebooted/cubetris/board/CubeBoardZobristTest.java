@@ -0,0 +1,123 @@
+package com.scotthconner.cubetrisrebooted.cubetris.board;
+
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubePlacement;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeSolver;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeWeightedHeuristic;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the hash the model keeps up as it plays against hashing a fresh copy of the game.
+ */
+public class CubeBoardZobristTest {
+    private static final int SIDE_WIDTH = 7;
+    private static final int BOARD_HEIGHT = 18;
+    private static final long FRAME_MS = 16;
+
+    @Test
+    public void hashKeepsUpWithPlay() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(13));
+        CubeBoardModel copy = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(0));
+        ByteBuffer buffer = ByteBuffer.allocate(model.getMaxStateSize());
+        model.testFill();
+        model.start();
+        assertHashMatchesCopy(model, copy, buffer);
+
+        CubeSolver solver = new CubeSolver(SIDE_WIDTH, BOARD_HEIGHT, new CubeWeightedHeuristic(), 1);
+        try {
+            while (model.getPieceCount() < 80 && !model.isGameOver()) {
+                CubePlacement placement = solver.solve(model, 0, 4);
+                int piece = model.getPieceCount();
+                for (int i = 0; i < placement.getMoveCount() && model.getPieceCount() == piece; i++) {
+                    CubePlacement.applyMove(model, placement.getMove(i));
+                    while (model.isRotating()) {
+                        model.update(FRAME_MS);
+                    }
+                    assertHashMatchesCopy(model, copy, buffer);
+                }
+                model.dropActivePiece();
+                while (model.getPieceCount() == piece && !model.isGameOver()) {
+                    model.update(FRAME_MS);
+                }
+                assertHashMatchesCopy(model, copy, buffer);
+
+                if (piece % 10 == 0) {
+                    model.insertGarbageRow(piece % model.getBoardWidth(), 1);
+                    assertHashMatchesCopy(model, copy, buffer);
+                }
+            }
+        } finally {
+            solver.shutdown();
+        }
+    }
+
+    @Test
+    public void hashTracksThePieceAndFace() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(2));
+        model.start();
+        long board = model.getBoardHash();
+        long start = model.getHash();
+        assertEquals(0, board);
+
+        assertTrue(model.movePiece(1, 0));
+        long moved = model.getHash();
+        assertNotEquals(start, moved);
+        assertTrue(model.movePiece(-1, 0));
+        assertEquals(start, model.getHash());
+
+        // a piece that can't turn, like the square, keeps its hash
+        int rotation = model.getActivePiece().getRotation();
+        model.rotatePiece(1);
+        assertEquals(rotation == model.getActivePiece().getRotation(), start == model.getHash());
+        model.rotatePiece(-1);
+        assertEquals(start, model.getHash());
+
+        model.rotate(1);
+        model.update(1000);
+        assertNotEquals(start, model.getHash());
+        assertEquals(board, model.getBoardHash());
+
+        // filling and emptying a slot's color lands back where it started
+        model.fillCell(3, 0, 2);
+        long filled = model.getBoardHash();
+        assertNotEquals(board, filled);
+        model.fillCell(3, 0, 4);
+        assertNotEquals(filled, model.getBoardHash());
+        model.fillCell(3, 0, 2);
+        assertEquals(filled, model.getBoardHash());
+    }
+
+    @Test
+    public void occupancyHashOnlySeesFilledSlots() {
+        CubeBoardOccupancy a = new CubeBoardOccupancy(CubeBoardModel.DEFAULT_SIDE_COUNT, SIDE_WIDTH, BOARD_HEIGHT);
+        CubeBoardOccupancy b = new CubeBoardOccupancy(CubeBoardModel.DEFAULT_SIDE_COUNT, SIDE_WIDTH, BOARD_HEIGHT);
+        assertEquals(0, CubeBoardZobrist.hash(a));
+
+        a.set(4, 0);
+        a.set(5, 1);
+        assertNotEquals(CubeBoardZobrist.hash(a), CubeBoardZobrist.hash(b));
+        b.set(5, 1);
+        b.set(4, 0);
+        assertEquals(CubeBoardZobrist.hash(a), CubeBoardZobrist.hash(b));
+
+        // the same row contents on a different row is a different board
+        b.clearAll();
+        b.set(4, 1);
+        b.set(5, 2);
+        assertNotEquals(CubeBoardZobrist.hash(a), CubeBoardZobrist.hash(b));
+    }
+
+    private static void assertHashMatchesCopy(CubeBoardModel model, CubeBoardModel copy, ByteBuffer buffer) {
+        buffer.clear();
+        model.saveState(buffer);
+        buffer.flip();
+        copy.restoreState(buffer);
+        assertEquals(copy.getBoardHash(), model.getBoardHash());
+        assertEquals(copy.getHash(), model.getHash());
+    }
+}
@@ -0,0 +1,87 @@
+package com.scotthconner.cubetrisrebooted.cubetris.controllers;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardCavityMap;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardOccupancy;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeWeightedHeuristic;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.ICubePlacementHeuristic;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the bot keeps its thinking off the game loop, and that it can hold its own.
+ */
+public class CubeBotControllerTest {
+    private static final int SIDE_WIDTH = 7;
+    private static final int BOARD_HEIGHT = 18;
+
+    @Test
+    public void thinkingNeverBlocksTheGameLoop() throws Exception {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(7));
+        model.start();
+
+        // a heuristic that can't finish until we say so
+        final CountDownLatch release = new CountDownLatch(1);
+        final ICubePlacementHeuristic weighted = new CubeWeightedHeuristic();
+        ICubePlacementHeuristic stuck = new ICubePlacementHeuristic() {
+            @Override
+            public float score(CubeBoardOccupancy board, CubeBoardCavityMap cavities, int linesCleared) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return weighted.score(board, cavities, linesCleared);
+            }
+        };
+
+        CubeBotController bot = new CubeBotController(model, stuck, 10, 0, 4);
+        try {
+            // the game keeps running while the bot is stuck thinking
+            int startY = model.getActivePiece().getFaceY();
+            for (int frame = 0; frame < 100; frame++) {
+                bot.update(16);
+                model.update(16);
+            }
+            assertTrue(bot.isThinking());
+            assertTrue(model.getActivePiece().getFaceY() < startY);
+            assertEquals(1, model.getPieceCount());
+
+            // once it comes unstuck it plays
+            release.countDown();
+            while (model.getPieceCount() < 5) {
+                bot.update(16);
+                model.update(16);
+                Thread.sleep(1);
+            }
+            assertFalse(model.isGameOver());
+        } finally {
+            bot.shutdown();
+        }
+    }
+
+    @Test
+    public void botPlaysALongGame() throws Exception {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(2016));
+        model.start();
+
+        CubeBotController bot = new CubeBotController(model, new CubeWeightedHeuristic(), 20, 0, 8);
+        try {
+            while (model.getPieceCount() < 60 && !model.isGameOver()) {
+                bot.update(16);
+                model.update(16);
+                Thread.sleep(1);
+            }
+        } finally {
+            bot.shutdown();
+        }
+
+        assertFalse("the bot topped out after " + model.getPieceCount() + " pieces", model.isGameOver());
+        assertTrue(bot.getLastLookahead() >= 0);
+    }
+}
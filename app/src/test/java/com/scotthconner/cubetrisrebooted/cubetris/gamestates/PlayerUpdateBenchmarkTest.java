@@ -0,0 +1,245 @@
+package com.scotthconner.cubetrisrebooted.cubetris.gamestates;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubePlacement;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeSolver;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeWeightedHeuristic;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+import com.scotthconner.cubetrisrebooted.lib.core.WorkerPool;
+import com.scotthconner.cubetrisrebooted.lib.object.particle.IParticleEmissionProgram;
+import com.scotthconner.cubetrisrebooted.lib.object.particle.ParticleEmitter;
+import com.scotthconner.cubetrisrebooted.lib.object.particle.ParticleInstance;
+import com.scotthconner.cubetrisrebooted.lib.object.particle.modifier.ParticleInstanceTextureRotationModifier;
+import com.scotthconner.cubetrisrebooted.lib.object.particle.modifier.ParticleInstanceVelocityModifier;
+import com.scotthconner.cubetrisrebooted.lib.object.particle.modifier.ParticleLifeSpanModifier;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs one to four headless players one after another and then side by side on a WorkerPool,
+ * the way ArcadeGameState does. Each player is a board with a solver choosing its moves, or a
+ * game's particles, a stand in for an experience's update. Both runs have to end in exactly the
+ * same games, and parallel has to keep up with serial.
+ */
+public class PlayerUpdateBenchmarkTest {
+    private static final int MAX_PLAYERS = 4;
+    private static final int SIDE_WIDTH = 7;
+    private static final int BOARD_HEIGHT = 18;
+    private static final long TICK_MS = 16;
+    private static final int WARMUP_TICKS = 300;
+    private static final int TICKS = 1500;
+    private static final int PARTICLES = 600;
+    private static final int PARTICLE_CHUNK = 64;
+    private static final long PARTICLE_LIFE_MS = 500;
+
+    @Test
+    public void benchmarkSerialAgainstParallel() {
+        for (int players = 1; players <= MAX_PLAYERS; players++) {
+            long[] serialGames = new long[players];
+            long[] parallelGames = new long[players];
+            long serial = timeTicks(players, new WorkerPool(0, "serial"), serialGames);
+            long parallel = timeTicks(players, new WorkerPool(players - 1, "parallel"), parallelGames);
+            assertArrayEquals("players " + players, serialGames, parallelGames);
+
+            // handing players to the pool costs a little per tick, never a multiple of the work
+            assertTrue("players " + players, parallel < serial * 3);
+        }
+    }
+
+    @Test
+    public void particlesMatchASerialRun() {
+        for (int players = 2; players <= MAX_PLAYERS; players++) {
+            long[] serial = playEffects(players, new WorkerPool(0, "serial"));
+            long[] parallel = playEffects(players, new WorkerPool(players - 1, "parallel"));
+            assertArrayEquals("players " + players, serial, parallel);
+        }
+    }
+
+    /**
+     * Plays fresh games for WARMUP_TICKS + TICKS ticks and times the last TICKS of them.
+     *
+     * @param games receives each game's board hash and piece count once it's done
+     * @return the total nanoseconds spent over TICKS ticks
+     */
+    private static long timeTicks(int playerCount, WorkerPool pool, long[] games) {
+        final HeadlessPlayer[] players = new HeadlessPlayer[playerCount];
+        for (int x = 0; x < playerCount; x++) {
+            players[x] = new HeadlessPlayer(100 + x);
+        }
+        WorkerPool.IJob tick = new WorkerPool.IJob() {
+            public void run(int index) {
+                players[index].update(TICK_MS);
+            }
+        };
+
+        long total = 0;
+        try {
+            for (int i = 0; i < WARMUP_TICKS + TICKS; i++) {
+                long before = System.nanoTime();
+                pool.run(tick, playerCount);
+                if (i >= WARMUP_TICKS) {
+                    total += System.nanoTime() - before;
+                }
+            }
+        } finally {
+            pool.shutdown();
+            for (HeadlessPlayer player : players) {
+                player.mSolver.shutdown();
+            }
+        }
+
+        for (int x = 0; x < playerCount; x++) {
+            assertTrue(players[x].mModel.getPieceCount() > 10);
+            games[x] = players[x].mModel.getHash() * 31 + players[x].mModel.getPieceCount();
+        }
+        return total;
+    }
+
+    /**
+     * Runs every player's particles for TICKS ticks.
+     *
+     * @return each player's particles, hashed once they're done
+     */
+    private static long[] playEffects(int playerCount, final WorkerPool pool) {
+        final HeadlessEffects[] players = new HeadlessEffects[playerCount];
+        for (int x = 0; x < playerCount; x++) {
+            players[x] = new HeadlessEffects(200 + x, pool);
+        }
+        WorkerPool.IJob tick = new WorkerPool.IJob() {
+            public void run(int index) {
+                players[index].update(TICK_MS);
+            }
+        };
+
+        try {
+            for (int i = 0; i < TICKS; i++) {
+                pool.run(tick, playerCount);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        long[] games = new long[playerCount];
+        for (int x = 0; x < playerCount; x++) {
+            games[x] = players[x].getHash();
+        }
+        return games;
+    }
+
+    /**
+     * A game's particles, respawned from its own effects stream and advanced in chunks on the
+     * pool, the way a ParticleSystem is inside an experience's update.
+     */
+    private static class HeadlessEffects implements IParticleEmissionProgram {
+        final RandomStreams mStreams;
+        final ParticleInstance[] mParticles;
+        final WorkerPool mPool;
+        private long mDelta;
+        private final WorkerPool.IJob mAdvance = new WorkerPool.IJob() {
+            public void run(int index) {
+                int last = Math.min(mParticles.length, (index + 1) * PARTICLE_CHUNK);
+                for (int x = index * PARTICLE_CHUNK; x < last; x++) {
+                    mParticles[x].update(mDelta);
+                }
+            }
+        };
+
+        HeadlessEffects(long seed, WorkerPool pool) {
+            mStreams = new RandomStreams(seed);
+            mPool = pool;
+            mParticles = new ParticleInstance[PARTICLES];
+
+            RandomStreams previous = RandomStreams.setCurrent(mStreams);
+            try {
+                ParticleEmitter emitter = new ParticleEmitter(this);
+                for (int x = 0; x < PARTICLES; x++) {
+                    mParticles[x] = createParticle().withParentEmitter(emitter);
+                }
+            } finally {
+                RandomStreams.setCurrent(previous);
+            }
+        }
+
+        void update(long msDelta) {
+            RandomStreams previous = RandomStreams.setCurrent(mStreams);
+            try {
+                // respawning draws from whichever game is bound, advancing draws nothing
+                for (ParticleInstance particle : mParticles) {
+                    if (particle.isDead()) {
+                        resetParticle(particle);
+                    }
+                }
+                mDelta = msDelta;
+                mPool.run(mAdvance, (PARTICLES + PARTICLE_CHUNK - 1) / PARTICLE_CHUNK);
+            } finally {
+                RandomStreams.setCurrent(previous);
+            }
+        }
+
+        long getHash() {
+            long hash = 0;
+            for (ParticleInstance particle : mParticles) {
+                for (float value : particle.getVertexBuffer()) {
+                    hash = hash * 31 + Float.floatToIntBits(value);
+                }
+            }
+            return hash;
+        }
+
+        public boolean isRelativePositioned() { return false; }
+        public int getMaxParticleCount() { return 0; }
+        public long getEmitterLifespan() { return ParticleEmitter.INFINITE_LIFE; }
+        public int getEmissionRate() { return 0; }
+
+        public ParticleInstance createParticle() {
+            return new ParticleInstance()
+                    .withModifier(new ParticleLifeSpanModifier(PARTICLE_LIFE_MS))
+                    .withModifier(new ParticleInstanceVelocityModifier(0, 2, 0, 3, 3, 3)
+                            .withAcceleration(0, -9.8f, 0))
+                    .withModifier(new ParticleInstanceTextureRotationModifier(3, 2));
+        }
+
+        public void resetParticle(ParticleInstance particle) {
+            particle.setPosition(0, 0, 0);
+            particle.reset();
+        }
+    }
+
+    /**
+     * A board played by a solver, a move each tick, the way a bot seat plays.
+     */
+    private static class HeadlessPlayer {
+        final CubeBoardModel mModel;
+        final CubeSolver mSolver;
+        private CubePlacement mPlan;
+        private int mPlanPiece;
+        private int mMove;
+
+        HeadlessPlayer(long seed) {
+            mModel = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(seed));
+            mSolver = new CubeSolver(SIDE_WIDTH, BOARD_HEIGHT, new CubeWeightedHeuristic(), 1);
+            mModel.start();
+        }
+
+        void update(long msDelta) {
+            if (!mModel.isGameOver() && !mModel.isRotating()) {
+                if (null == mPlan || mPlanPiece != mModel.getPieceCount()) {
+                    mPlan = mSolver.solve(mModel, 0, 4);
+                    mPlanPiece = mModel.getPieceCount();
+                    mMove = 0;
+                }
+                if (null != mPlan) {
+                    if (mMove < mPlan.getMoveCount()) {
+                        CubePlacement.applyMove(mModel, mPlan.getMove(mMove));
+                    } else if (mMove == mPlan.getMoveCount()) {
+                        mModel.dropActivePiece();
+                    }
+                    mMove++;
+                }
+            }
+            mModel.update(msDelta);
+        }
+    }
+}
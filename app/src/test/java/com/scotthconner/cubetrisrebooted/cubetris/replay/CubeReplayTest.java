@@ -0,0 +1,116 @@
+package com.scotthconner.cubetrisrebooted.cubetris.replay;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Records scripted games and checks that seeking lands on exactly the recorded state.
+ */
+public class CubeReplayTest {
+    private static final int SIDE_WIDTH = 7;
+    private static final int BOARD_HEIGHT = 18;
+    private static final int COLOR_COUNT = 6;
+    private static final int KEYFRAME_INTERVAL = 4;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void seekMatchesRecordedState() throws Exception {
+        File file = mFolder.newFile("game.cbr");
+        List<byte[]> states = recordGame(file, 2016);
+        assertTrue("the script should play a decent number of pieces", states.size() > 3 * KEYFRAME_INTERVAL);
+
+        CubeReplay replay = new CubeReplay(file);
+        try {
+            // a keyframe for the first piece and every KEYFRAME_INTERVAL after, slot 0 is the end
+            assertEquals(1 + (states.size() - 2) / KEYFRAME_INTERVAL, replay.getKeyframeCount());
+            CubeReplayPlayer player = replay.createPlayer(replay.createModel());
+
+            // out of order on purpose, seeks shouldn't depend on where the player was
+            int[] pieces = { states.size() - 1, 1, 7, KEYFRAME_INTERVAL + 1, 3, states.size() / 2 };
+            for (int piece : pieces) {
+                assertTrue("seek to " + piece, player.seekToPiece(piece));
+                assertArrayEquals("state at piece " + piece, states.get(piece), player.getModel().saveState());
+            }
+
+            // and playing through to the end lands on the final state
+            assertTrue(player.seekToPiece(1));
+            while (player.step()) {}
+            assertTrue(player.isFinished());
+            assertArrayEquals(states.get(0), player.getModel().saveState());
+        } finally {
+            replay.close();
+        }
+    }
+
+    @Test
+    public void truncatedRecordingStillSeeks() throws Exception {
+        File file = mFolder.newFile("game.cbr");
+        List<byte[]> states = recordGame(file, 77);
+
+        // lose the index and the tail of the records, as if the game died
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() * 2 / 3);
+        raf.close();
+
+        CubeReplay replay = new CubeReplay(file);
+        try {
+            assertTrue(replay.getKeyframeCount() > 0);
+            CubeReplayPlayer player = replay.createPlayer(replay.createModel());
+            assertTrue(player.seekToPiece(KEYFRAME_INTERVAL + 2));
+            assertArrayEquals(states.get(KEYFRAME_INTERVAL + 2), player.getModel().saveState());
+            assertFalse(player.seekToPiece(states.size() - 1));
+        } finally {
+            replay.close();
+        }
+    }
+
+    /**
+     * Plays a scripted game while recording it.
+     *
+     * @return the model state right after each piece spawned, indexed by piece number, with
+     *         the final state in slot 0
+     */
+    private static List<byte[]> recordGame(File file, long seed) throws Exception {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, COLOR_COUNT, new RandomStreams(seed));
+        model.testFill();
+
+        CubeReplayRecorder recorder = new CubeReplayRecorder(model, file, KEYFRAME_INTERVAL);
+        List<byte[]> states = new ArrayList<>();
+        states.add(null);
+        model.start();
+        states.add(model.saveState());
+
+        for (int frame = 0; frame < 20000 && !model.isGameOver(); frame++) {
+            switch (frame % 37) {
+                case 3: model.movePiece(frame % 2 == 0 ? -1 : 1, 0); break;
+                case 9: model.rotatePiece(1); break;
+                case 15: model.modulePieceSpeed(4); break;
+                case 21: model.rotate(frame % 3 == 0 ? -1 : 1); break;
+                case 30: model.dropActivePiece(); break;
+            }
+
+            int pieces = model.getPieceCount();
+            model.update(frame % 5 == 0 ? 17 : 16);
+            if (model.getPieceCount() != pieces) {
+                states.add(model.saveState());
+            }
+        }
+
+        recorder.close();
+        states.set(0, model.saveState());
+        return states;
+    }
+}
@@ -0,0 +1,194 @@
+package com.scotthconner.cubetrisrebooted.cubetris.solver;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardOccupancy;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardPieceModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardPieceShapes;
+import com.scotthconner.cubetrisrebooted.cubetris.board.ICubeBoardModelListener;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the placement search against brute force, and that the solver can actually play.
+ */
+public class CubeSolverTest {
+    private static final int SIDE_WIDTH = 7;
+    private static final int BOARD_HEIGHT = 18;
+    private static final int BOARD_WIDTH = CubeBoardModel.getBoardWidth(CubeBoardModel.DEFAULT_SIDE_COUNT, SIDE_WIDTH);
+
+    @Test
+    public void searchFindsEveryRestingSpotOnAnEmptyBoard() {
+        CubeBoardOccupancy board = new CubeBoardOccupancy(CubeBoardModel.DEFAULT_SIDE_COUNT, SIDE_WIDTH, BOARD_HEIGHT);
+        CubePlacementSearch search = new CubePlacementSearch(SIDE_WIDTH, BOARD_HEIGHT);
+
+        for (int style = 0; style < CubeBoardPieceModel.STYLES.length; style++) {
+            // on an empty board every position sitting on the floor can be reached
+            Set<Set<Integer>> expected = new HashSet<>();
+            int rotations = (style == 0) ? 1 : CubeBoardPieceShapes.ROTATIONS;
+            for (int face = 0; face < CubeBoardModel.DEFAULT_SIDE_COUNT; face++) {
+                for (int rotation = 0; rotation < rotations; rotation++) {
+                    for (int x = -2; x < SIDE_WIDTH + 2; x++) {
+                        for (int y = 0; y < 3; y++) {
+                            if (isValid(board, style, face, rotation, x, y) && !isValid(board, style, face, rotation, x, y - 1)) {
+                                expected.add(cells(style, face, rotation, x, y));
+                            }
+                        }
+                    }
+                }
+            }
+
+            search.search(board, style, 0, 0, SIDE_WIDTH / 2, BOARD_HEIGHT);
+            Set<Set<Integer>> found = new HashSet<>();
+            for (int i = 0; i < search.getPlacementCount(); i++) {
+                found.add(cells(style, search.getPlacementFace(i), search.getPlacementRotation(i),
+                        search.getPlacementX(i), search.getPlacementY(i)));
+            }
+            assertEquals("style " + style, expected, found);
+            assertEquals("placements should be distinct", found.size(), search.getPlacementCount());
+        }
+    }
+
+    @Test
+    public void everyPlacementRestsOnSomething() {
+        Random random = new Random(5);
+        CubePlacementSearch search = new CubePlacementSearch(SIDE_WIDTH, BOARD_HEIGHT);
+        for (int trial = 0; trial < 50; trial++) {
+            CubeBoardOccupancy board = randomBoard(random);
+            int style = random.nextInt(CubeBoardPieceModel.STYLES.length);
+            int count = search.search(board, style, 0, random.nextInt(CubeBoardModel.DEFAULT_SIDE_COUNT), SIDE_WIDTH / 2, BOARD_HEIGHT);
+            assertTrue(count > 0);
+            for (int i = 0; i < count; i++) {
+                int face = search.getPlacementFace(i);
+                int rotation = search.getPlacementRotation(i);
+                int x = search.getPlacementX(i);
+                int y = search.getPlacementY(i);
+                assertTrue(isValid(board, style, face, rotation, x, y));
+                assertFalse(isValid(board, style, face, rotation, x, y - 1));
+            }
+        }
+    }
+
+    @Test
+    public void threadCountDoesNotChangeTheAnswer() {
+        CubeSolver single = new CubeSolver(SIDE_WIDTH, BOARD_HEIGHT, new CubeWeightedHeuristic(), 1);
+        CubeSolver pooled = new CubeSolver(SIDE_WIDTH, BOARD_HEIGHT, new CubeWeightedHeuristic(), 3);
+        try {
+            for (int seed = 0; seed < 10; seed++) {
+                CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(seed));
+                model.testFill();
+                model.start();
+
+                CubePlacement a = single.solve(model, 2, 16);
+                CubePlacement b = pooled.solve(model, 2, 16);
+                assertEquals(a.getFace(), b.getFace());
+                assertEquals(a.getRotation(), b.getRotation());
+                assertEquals(a.getFaceX(), b.getFaceX());
+                assertEquals(a.getFaceY(), b.getFaceY());
+                assertEquals(a.getScore(), b.getScore(), 0.0f);
+                assertTrue(pooled.getLastPlacementsEvaluated() > 0);
+                assertTrue(pooled.getLastPlacementsPerSecond() > 0);
+            }
+        } finally {
+            single.shutdown();
+            pooled.shutdown();
+        }
+    }
+
+    @Test
+    public void solverPlaysALongGame() {
+        CubeBoardModel model = new CubeBoardModel(SIDE_WIDTH, BOARD_HEIGHT, 6, new RandomStreams(2016));
+        final int[] rowsCleared = new int[1];
+        model.setListener(new ICubeBoardModelListener() {
+            public void onPieceSpawn(CubeBoardModel model) {}
+            public void onPieceCellCommit(CubeBoardModel model, int cell, int boardX, int boardY) {}
+            public void onCellFill(CubeBoardModel model, int boardX, int boardY, int color) {}
+            public void onRowClear(CubeBoardModel model, int boardY) { rowsCleared[0]++; }
+            public void onRowInsert(CubeBoardModel model) {}
+            public void onBoardRotate(CubeBoardModel model) {}
+            public void onBoardRotateBlock(CubeBoardModel model) {}
+            public void onPieceDrop(CubeBoardModel model) {}
+            public void onPieceSlide(CubeBoardModel model) {}
+            public void onPieceHurry(CubeBoardModel model) {}
+            public void onPieceMove(CubeBoardModel model) {}
+            public void onPieceRotate(CubeBoardModel model) {}
+            public void onPieceCommit(CubeBoardModel model) {}
+            public void onLineComplete(CubeBoardModel model) {}
+        });
+        model.start();
+
+        CubeSolver solver = new CubeSolver(SIDE_WIDTH, BOARD_HEIGHT, new CubeWeightedHeuristic(), 2);
+        try {
+            while (model.getPieceCount() < 200 && !model.isGameOver()) {
+                CubePlacement placement = solver.solve(model, 1, 8);
+                assertNotNull(placement);
+                placement.applyTo(model, 16);
+            }
+        } finally {
+            solver.shutdown();
+        }
+
+        assertFalse("the solver topped out after " + model.getPieceCount() + " pieces", model.isGameOver());
+        assertTrue(rowsCleared[0] > 0);
+    }
+
+    @Test
+    public void solverPlaysBoardsWithOtherSideCounts() {
+        int[][] sizes = { { 3, 7, 18 }, { 5, 9, 24 }, { 8, 15, 40 } };
+        for (int[] size : sizes) {
+            CubeBoardModel model = new CubeBoardModel(size[0], size[1], size[2], 6, new RandomStreams(size[0]));
+            model.start();
+
+            CubeSolver solver = new CubeSolver(size[0], size[1], size[2], new CubeWeightedHeuristic(), 1);
+            try {
+                while (model.getPieceCount() < 60 && !model.isGameOver()) {
+                    solver.solve(model, 0, 4).applyTo(model, 16);
+                }
+            } finally {
+                solver.shutdown();
+            }
+
+            assertFalse(size[0] + " sides topped out after " + model.getPieceCount() + " pieces",
+                    model.isGameOver());
+        }
+    }
+
+    private static CubeBoardOccupancy randomBoard(Random random) {
+        CubeBoardOccupancy board = new CubeBoardOccupancy(CubeBoardModel.DEFAULT_SIDE_COUNT, SIDE_WIDTH, BOARD_HEIGHT);
+        int height = 2 + random.nextInt(8);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < BOARD_WIDTH; x++) {
+                if (random.nextInt(3) != 0) {
+                    board.set(x, y);
+                }
+            }
+        }
+        return board;
+    }
+
+    private static boolean isValid(CubeBoardOccupancy board, int style, int face, int rotation, int x, int y) {
+        for (int i = 0; i < CubeBoardPieceShapes.CELL_X[style][rotation].length; i++) {
+            int cx = x + CubeBoardPieceShapes.CELL_X[style][rotation][i];
+            int cy = y + CubeBoardPieceShapes.CELL_Y[style][rotation][i];
+            if (cx < 0 || cx >= SIDE_WIDTH || board.isFaceSpaceOccupied(face, cx, cy)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<Integer> cells(int style, int face, int rotation, int x, int y) {
+        Set<Integer> cells = new HashSet<>();
+        for (int i = 0; i < CubeBoardPieceShapes.CELL_X[style][rotation].length; i++) {
+            int bx = (face * (SIDE_WIDTH - 1) + x + CubeBoardPieceShapes.CELL_X[style][rotation][i]) % BOARD_WIDTH;
+            cells.add(bx * BOARD_HEIGHT + y + CubeBoardPieceShapes.CELL_Y[style][rotation][i]);
+        }
+        return cells;
+    }
+}
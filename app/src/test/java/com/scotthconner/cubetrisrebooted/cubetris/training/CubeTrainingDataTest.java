@@ -0,0 +1,182 @@
+package com.scotthconner.cubetrisrebooted.cubetris.training;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardOccupancy;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubePlacement;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeSolver;
+import com.scotthconner.cubetrisrebooted.cubetris.solver.CubeWeightedHeuristic;
+import com.scotthconner.cubetrisrebooted.lib.core.RandomStreams;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exports solver games and checks every record reads back the way it was taken.
+ */
+public class CubeTrainingDataTest {
+    private static final int BLOCK_SIZE = 16;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void recordsReadBackAsWritten() throws Exception {
+        int[][] sizes = { { 4, 7, 18 }, { 5, 15, 24 } };
+        for (int[] size : sizes) {
+            File file = mFolder.newFile("training" + size[0] + ".cbt");
+            CapturingWriter writer = export(file, size, 70);
+            assertTrue(writer.mRecords.size() > 2 * BLOCK_SIZE);
+
+            CubeTrainingData data = new CubeTrainingData(file);
+            try {
+                assertEquals(size[0], data.getSideCount());
+                assertEquals(size[1], data.getSideWidth());
+                assertEquals(size[2], data.getBoardHeight());
+                assertEquals(writer.mRecords.size(), data.getRecordCount());
+                assertEquals((writer.mRecords.size() + BLOCK_SIZE - 1) / BLOCK_SIZE, data.getBlockCount());
+
+                CubeTrainingRecord cursor = data.createCursor();
+                for (Expected expected : writer.mRecords) {
+                    assertTrue(cursor.next());
+                    assertRecord(expected, cursor, data);
+                }
+                assertFalse(cursor.next());
+
+                // seeking lands on the same records, out of order on purpose
+                long[] seeks = { data.getRecordCount() - 1, 0, BLOCK_SIZE, 5, BLOCK_SIZE - 1 };
+                for (long seek : seeks) {
+                    cursor.seek(seek);
+                    assertEquals(seek, cursor.getRecordNumber());
+                    assertRecord(writer.mRecords.get((int) seek), cursor, data);
+                }
+                cursor.seek(BLOCK_SIZE - 1);
+                assertTrue(cursor.next());
+                assertRecord(writer.mRecords.get(BLOCK_SIZE), cursor, data);
+            } finally {
+                data.close();
+            }
+        }
+    }
+
+    @Test
+    public void truncatedFileKeepsItsWholeBlocks() throws Exception {
+        File file = mFolder.newFile("training.cbt");
+        CapturingWriter writer = export(file, new int[] { 4, 7, 18 }, 70);
+
+        // lose the index and the last blocks, as if the export died
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() / 2);
+        raf.close();
+
+        CubeTrainingData data = new CubeTrainingData(file);
+        try {
+            assertTrue(data.getBlockCount() > 0);
+            assertEquals(data.getBlockCount() * (long) BLOCK_SIZE, data.getRecordCount());
+            CubeTrainingRecord cursor = data.createCursor();
+            int read = 0;
+            while (cursor.next()) {
+                assertRecord(writer.mRecords.get(read++), cursor, data);
+            }
+            assertEquals(data.getRecordCount(), read);
+        } finally {
+            data.close();
+        }
+    }
+
+    private static CapturingWriter export(File file, int[] size, int pieces) throws IOException {
+        CubeBoardModel model = new CubeBoardModel(size[0], size[1], size[2], 6, new RandomStreams(size[0] + size[1]));
+        CubeSolver solver = new CubeSolver(size[0], size[1], size[2], new CubeWeightedHeuristic(), 1);
+        CapturingWriter writer = new CapturingWriter(file, size);
+        try {
+            int written = new CubeTrainingExporter(solver, 0, 4).export(model, writer, pieces);
+            assertEquals(writer.mRecords.size(), written);
+            assertEquals(written, writer.getRecordCount());
+        } finally {
+            writer.close();
+            solver.shutdown();
+        }
+        return writer;
+    }
+
+    private static void assertRecord(Expected expected, CubeTrainingRecord cursor, CubeTrainingData data) {
+        String record = "record " + cursor.getRecordNumber();
+        for (int y = 0; y < data.getBoardHeight(); y++) {
+            for (int x = 0; x < data.getBoardWidth(); x++) {
+                assertEquals(record + " slot " + x + "," + y, expected.mBoard.isOccupied(x, y), cursor.isOccupied(x, y));
+            }
+        }
+        assertEquals(record, expected.mStyle, cursor.getStyle());
+        assertEquals(record, expected.mNext, cursor.getNextStyle());
+        assertEquals(record, expected.mActiveFace, cursor.getActiveFace());
+        assertEquals(record, expected.mFace, cursor.getFace());
+        assertEquals(record, expected.mRotation, cursor.getRotation());
+        assertEquals(record, expected.mFaceX, cursor.getFaceX());
+        assertEquals(record, expected.mFaceY, cursor.getFaceY());
+        assertEquals(record, expected.mLines, cursor.getLinesCleared());
+        assertEquals(record, expected.mHoles, cursor.getHoleCount());
+        assertEquals(record, expected.mMaxHeight, cursor.getMaxHeight());
+        assertEquals(record, expected.mToppedOut, cursor.isToppedOut());
+
+        CubeBoardOccupancy copy = new CubeBoardOccupancy(data.getSideCount(), data.getSideWidth(), data.getBoardHeight());
+        cursor.copyOccupancy(copy);
+        for (int y = 0; y < data.getBoardHeight(); y++) {
+            for (int x = 0; x < data.getBoardWidth(); x++) {
+                assertEquals(record, expected.mBoard.isOccupied(x, y), copy.isOccupied(x, y));
+            }
+        }
+    }
+
+    private static class Expected {
+        CubeBoardOccupancy mBoard;
+        int mStyle, mNext, mActiveFace;
+        int mFace, mRotation, mFaceX, mFaceY;
+        int mLines, mHoles, mMaxHeight;
+        boolean mToppedOut;
+    }
+
+    /**
+     * Keeps its own copy of everything it's handed, to check the file against.
+     */
+    private static class CapturingWriter extends CubeTrainingWriter {
+        final List<Expected> mRecords = new ArrayList<>();
+        Expected mPending;
+
+        CapturingWriter(File file, int[] size) throws IOException {
+            super(file, size[0], size[1], size[2], BLOCK_SIZE);
+        }
+
+        @Override
+        public void beginRecord(CubeBoardModel model) {
+            super.beginRecord(model);
+            mPending = new Expected();
+            mPending.mBoard = new CubeBoardOccupancy(model.getSideCount(), model.getSideWidth(), model.getBoardHeight());
+            mPending.mBoard.copyFrom(model.getOccupancy());
+            mPending.mStyle = model.getActivePiece().getStyle();
+            mPending.mNext = model.getPreviewStyle(0);
+            mPending.mActiveFace = model.getActiveFace();
+        }
+
+        @Override
+        public void endRecord(CubePlacement placement, CubeBoardModel model) throws IOException {
+            super.endRecord(placement, model);
+            mPending.mFace = placement.getFace();
+            mPending.mRotation = placement.getRotation();
+            mPending.mFaceX = placement.getFaceX();
+            mPending.mFaceY = placement.getFaceY();
+            mPending.mLines = model.getLastMoveLineCompletionCount();
+            mPending.mHoles = model.getHoleCount();
+            mPending.mMaxHeight = model.getSurface().getMaxHeight();
+            mPending.mToppedOut = model.isGameOver();
+            mRecords.add(mPending);
+        }
+    }
+}
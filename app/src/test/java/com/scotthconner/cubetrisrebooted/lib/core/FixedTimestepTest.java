@@ -0,0 +1,76 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the fixed timestep with a hand moved clock.
+ */
+public class FixedTimestepTest {
+    private static final long MS = 1000000L;
+
+    @Test
+    public void leftoverTimeCarriesIntoTheNextPoll() {
+        ManualClock clock = new ManualClock();
+        FixedTimestep timestep = new FixedTimestep(clock, 8, 100);
+        assertEquals(0, timestep.poll());
+
+        // 5 ms frames hand out a tick every 8 ms of them, nothing lost in between
+        int ticks = 0;
+        for (int frame = 0; frame < 160; frame++) {
+            clock.mNow += 5 * MS;
+            ticks += timestep.poll();
+        }
+        assertEquals(100, ticks);
+        assertEquals(100, timestep.getTickCount());
+        assertEquals(0, timestep.getSkippedTickCount());
+    }
+
+    @Test
+    public void stallsOnlyCatchUpToTheCap() {
+        ManualClock clock = new ManualClock();
+        FixedTimestep timestep = new FixedTimestep(clock, 8, 4);
+        timestep.poll();
+
+        clock.mNow += 80 * MS + 3 * MS;
+        assertEquals(4, timestep.poll());
+        assertEquals(6, timestep.getSkippedTickCount());
+
+        // the part tick from before the stall still counts toward the next one
+        clock.mNow += 5 * MS;
+        assertEquals(1, timestep.poll());
+    }
+
+    @Test
+    public void waitingSleepsUntilTheNextTick() throws InterruptedException {
+        ManualClock clock = new ManualClock();
+        clock.mNow = 1000 * MS;
+        FixedTimestep timestep = new FixedTimestep(clock, 8, 4);
+        timestep.poll();
+
+        for (int x = 1; x <= 10; x++) {
+            clock.mNow += 2 * MS; // the tick's work
+            timestep.waitForNextTick();
+            assertEquals(1000 * MS + 8 * MS * x, clock.mNow);
+            assertEquals(1, timestep.poll());
+        }
+        assertEquals(10, clock.mSleeps);
+    }
+
+    private static class ManualClock implements IGameClock {
+        long mNow;
+        int mSleeps;
+
+        @Override
+        public long nanoTime() {
+            return mNow;
+        }
+
+        @Override
+        public void sleepUntil(long deadline) {
+            mSleeps++;
+            mNow = Math.max(mNow, deadline);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks inputs come out of the ring whole, once each and in the order they went in.
+ */
+public class InputRingTest {
+    private static final int INPUT_COUNT = 200000;
+
+    @Test
+    public void inputsComeOutInOrder() {
+        InputRing ring = new InputRing(4);
+        InputRing.Record record = new InputRing.Record();
+        assertFalse(ring.poll(record));
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int x = 0; x < 4; x++) {
+                assertTrue(ring.offer(lap, InputRing.AXIS, x, x / 4.0f, lap * 100L + x));
+            }
+
+            // full, the input is turned away rather than waiting
+            assertFalse(ring.offer(9, InputRing.KEY_DOWN, 9, 0, 9));
+            assertEquals(lap + 1, ring.getDroppedCount());
+
+            for (int x = 0; x < 4; x++) {
+                assertTrue(ring.poll(record));
+                assertEquals(lap, record.getDeviceId());
+                assertEquals(InputRing.AXIS, record.getType());
+                assertEquals(x, record.getCode());
+                assertEquals(x / 4.0f, record.getValue(), 0.0f);
+                assertEquals(lap * 100L + x, record.getEventTime());
+            }
+            assertFalse(ring.poll(record));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMustBeAPowerOfTwo() {
+        new InputRing(6);
+    }
+
+    @Test
+    public void producerOnAnotherThread() throws Exception {
+        final InputRing ring = new InputRing(64);
+        final AtomicBoolean stop = new AtomicBoolean();
+
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                for (int x = 0; x < INPUT_COUNT && !stop.get(); ) {
+                    if (ring.offer(x % 5, x % 3, x, x * 0.5f, x * 7L)) {
+                        x++;
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        InputRing.Record record = new InputRing.Record();
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 20000;
+        try {
+            while (received < INPUT_COUNT && System.currentTimeMillis() < deadline) {
+                if (!ring.poll(record)) {
+                    Thread.yield();
+                    continue;
+                }
+                assertEquals("input out of order", received, record.getCode());
+                assertEquals("input was torn", received % 5, record.getDeviceId());
+                assertEquals("input was torn", received % 3, record.getType());
+                assertEquals("input was torn", received * 0.5f, record.getValue(), 0.0f);
+                assertEquals("input was torn", received * 7L, record.getEventTime());
+                received++;
+            }
+        } finally {
+            stop.set(true);
+            producer.join(10000);
+        }
+        assertEquals(INPUT_COUNT, received);
+        assertFalse(ring.poll(record));
+    }
+}
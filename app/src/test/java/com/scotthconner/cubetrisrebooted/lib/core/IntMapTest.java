@@ -0,0 +1,47 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks keys land in order and find their values, whatever order they're put in.
+ */
+public class IntMapTest {
+    @Test
+    public void putAndGet() {
+        IntMap<String> map = new IntMap<>(2);
+        assertEquals(0, map.size());
+        assertNull(map.get(3));
+
+        int[] keys = { 7, -1000, 3, 12, -999, 0 };
+        for (int key : keys) {
+            map.put(key, "device " + key);
+        }
+        assertEquals(keys.length, map.size());
+        for (int key : keys) {
+            assertEquals("device " + key, map.get(key));
+        }
+        assertNull(map.get(4));
+        assertTrue(map.indexOfKey(4) < 0);
+
+        // walked in key order
+        int[] sorted = { -1000, -999, 0, 3, 7, 12 };
+        for (int x = 0; x < sorted.length; x++) {
+            assertEquals(sorted[x], map.keyAt(x));
+            assertEquals("device " + sorted[x], map.valueAt(x));
+        }
+    }
+
+    @Test
+    public void putReplaces() {
+        IntMap<String> map = new IntMap<>();
+        map.put(5, "first");
+        map.put(5, "second");
+        map.put(6, null);
+        assertEquals(2, map.size());
+        assertEquals("second", map.get(5));
+        assertNull(map.get(6));
+        assertTrue(map.indexOfKey(6) >= 0);
+    }
+}
@@ -0,0 +1,121 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks records come out of the ring once each, whole and in the order each producer put them.
+ */
+public class RecordRingTest {
+    private static final int PRODUCER_COUNT = 3;
+    private static final int RECORD_COUNT = 100000;
+
+    @Test
+    public void recordsComeOutInOrder() {
+        RecordRing<long[]> ring = new RecordRing<>(records(4));
+        assertNull(ring.peek());
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int x = 0; x < 4; x++) {
+                long position = ring.claim();
+                assertEquals(lap * 4 + x, position);
+                ring.get(position)[0] = position;
+                ring.publish(position);
+            }
+
+            // full, the claim is turned away rather than waiting
+            assertEquals(-1, ring.claim());
+            assertEquals(lap + 1, ring.getDroppedCount());
+
+            for (int x = 0; x < 4; x++) {
+                assertEquals(lap * 4 + x, ring.peek()[0]);
+                ring.release();
+            }
+            assertNull(ring.peek());
+        }
+    }
+
+    @Test
+    public void unpublishedRecordHoldsUpTheOnesBehindIt() {
+        RecordRing<long[]> ring = new RecordRing<>(records(4));
+        long first = ring.claim();
+        long second = ring.claim();
+        ring.publish(second);
+        assertNull(ring.peek());
+
+        ring.get(first)[0] = 7;
+        ring.publish(first);
+        assertEquals(7, ring.peek()[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMustBeAPowerOfTwo() {
+        new RecordRing<>(records(6));
+    }
+
+    @Test
+    public void producersOnManyThreads() throws Exception {
+        final RecordRing<long[]> ring = new RecordRing<>(records(64));
+        final AtomicBoolean stop = new AtomicBoolean();
+
+        Thread[] producers = new Thread[PRODUCER_COUNT];
+        for (int p = 0; p < PRODUCER_COUNT; p++) {
+            final int producer = p;
+            producers[p] = new Thread(new Runnable() {
+                public void run() {
+                    for (int x = 0; x < RECORD_COUNT && !stop.get(); ) {
+                        long position = ring.claim();
+                        if (position < 0) {
+                            Thread.yield();
+                            continue;
+                        }
+                        long[] record = ring.get(position);
+                        record[0] = producer;
+                        record[1] = x;
+                        record[2] = producer * 31L + x;
+                        ring.publish(position);
+                        x++;
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        long[] next = new long[PRODUCER_COUNT];
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 20000;
+        try {
+            while (received < PRODUCER_COUNT * RECORD_COUNT && System.currentTimeMillis() < deadline) {
+                long[] record = ring.peek();
+                if (null == record) {
+                    Thread.yield();
+                    continue;
+                }
+                int producer = (int) record[0];
+                assertEquals("record out of order", next[producer]++, record[1]);
+                assertEquals("record was torn", producer * 31L + record[1], record[2]);
+                ring.release();
+                received++;
+            }
+        } finally {
+            // stops the producers, whether or not they got everything through
+            stop.set(true);
+            for (Thread producer : producers) {
+                producer.join(10000);
+            }
+        }
+        assertEquals(PRODUCER_COUNT * RECORD_COUNT, received);
+        assertNull(ring.peek());
+    }
+
+    private static long[][] records(int count) {
+        long[][] records = new long[count][];
+        for (int x = 0; x < count; x++) {
+            records[x] = new long[3];
+        }
+        return records;
+    }
+}
@@ -0,0 +1,95 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import com.scotthconner.cubetrisrebooted.cubetris.board.CubeBoardModel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that snapshots come back exactly as written, and that damaged ones are turned away.
+ */
+public class SnapshotFileTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void gameComesBackFromDisk() throws Exception {
+        CubeBoardModel model = new CubeBoardModel(7, 18, 6, new RandomStreams(42));
+        model.testFill();
+        model.start();
+        for (int frame = 0; frame < 3000; frame++) {
+            if (frame % 30 == 0) { model.dropActivePiece(); }
+            model.update(16);
+        }
+
+        File file = new File(mFolder.getRoot(), "game.snapshot");
+        ByteBuffer state = ByteBuffer.allocate(model.getMaxStateSize());
+        model.saveState(state);
+        state.flip();
+        SnapshotFile.write(file, state);
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        CubeBoardModel resumed = new CubeBoardModel(7, 18, 6, new RandomStreams(0));
+        resumed.restoreState(SnapshotFile.read(file));
+
+        // both carry on the same way
+        for (int frame = 0; frame < 3000; frame++) {
+            if (frame % 25 == 0) {
+                model.dropActivePiece();
+                resumed.dropActivePiece();
+            }
+            model.update(16);
+            resumed.update(16);
+        }
+        assertEquals(model.getPieceCount(), resumed.getPieceCount());
+        for (int y = 0; y < model.getBoardHeight(); y++) {
+            for (int x = 0; x < model.getBoardWidth(); x++) {
+                assertEquals(model.getCell(x, y), resumed.getCell(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void newSnapshotReplacesTheOldOne() throws Exception {
+        File file = new File(mFolder.getRoot(), "game.snapshot");
+        SnapshotFile.write(file, ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        SnapshotFile.write(file, ByteBuffer.wrap(new byte[] { 4, 5 }));
+
+        ByteBuffer read = SnapshotFile.read(file);
+        assertEquals(2, read.remaining());
+        assertEquals(4, read.get());
+        assertEquals(5, read.get());
+    }
+
+    @Test
+    public void damagedOrMissingSnapshotsAreIgnored() throws Exception {
+        File file = new File(mFolder.getRoot(), "game.snapshot");
+        assertNull(SnapshotFile.read(file));
+
+        SnapshotFile.write(file, ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(raf.length() - 3);
+            raf.write(99);
+        } finally {
+            raf.close();
+        }
+        assertNull(SnapshotFile.read(file));
+
+        // a write cut short
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 1);
+        } finally {
+            raf.close();
+        }
+        assertNull(SnapshotFile.read(file));
+    }
+}
@@ -0,0 +1,73 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks frames go from writer to reader whole and in order.
+ */
+public class TripleBufferTest {
+    private static final int FRAME_SIZE = 256;
+    private static final int FRAME_COUNT = 200000;
+
+    @Test
+    public void readerSeesTheNewestFrame() {
+        TripleBuffer<int[]> buffer = new TripleBuffer<>(new int[1], new int[1], new int[1]);
+        assertEquals(0, buffer.acquire()[0]);
+
+        buffer.getWriteSlot()[0] = 1;
+        buffer.publish();
+        buffer.getWriteSlot()[0] = 2;
+        buffer.publish();
+        assertEquals(2, buffer.acquire()[0]);
+
+        // nothing new, the reader keeps what it has while the writer carries on
+        buffer.getWriteSlot()[0] = 3;
+        assertEquals(2, buffer.acquire()[0]);
+        buffer.publish();
+        assertEquals(3, buffer.acquire()[0]);
+        assertEquals(2, buffer.getAcquireCount());
+        assertEquals(3, buffer.getPublishCount());
+    }
+
+    @Test
+    public void framesNeverTearAcrossThreads() throws Exception {
+        final TripleBuffer<int[]> buffer = new TripleBuffer<>(new int[FRAME_SIZE], new int[FRAME_SIZE], new int[FRAME_SIZE]);
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                int last = 0;
+                while (last < FRAME_COUNT && null == failure.get()) {
+                    int[] frame = buffer.acquire();
+                    for (int x = 1; x < FRAME_SIZE; x++) {
+                        if (frame[x] != frame[0]) {
+                            failure.set("frame " + frame[0] + " was torn at " + x);
+                            return;
+                        }
+                    }
+                    if (frame[0] < last) {
+                        failure.set("frame " + frame[0] + " came after " + last);
+                        return;
+                    }
+                    last = frame[0];
+                }
+            }
+        });
+        reader.start();
+
+        for (int frame = 1; frame <= FRAME_COUNT; frame++) {
+            int[] slot = buffer.getWriteSlot();
+            for (int x = 0; x < FRAME_SIZE; x++) {
+                slot[x] = frame;
+            }
+            buffer.publish();
+        }
+        reader.join(10000);
+        assertFalse(reader.isAlive());
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,249 @@
+package com.scotthconner.cubetrisrebooted.lib.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks every job in a batch runs exactly once and that run waits for all of them, that jobs
+ * run after what they depend on, spread over the pool, and that failures and timings make it
+ * back to whoever waits.
+ */
+public class WorkerPoolTest {
+    private static final int BATCH_COUNT = 5000;
+    private static final int JOB_COUNT = 7;
+
+    @Test
+    public void everyJobRunsOncePerBatch() {
+        WorkerPool pool = new WorkerPool(3, "test");
+        try {
+            final AtomicIntegerArray runs = new AtomicIntegerArray(JOB_COUNT);
+            final int[] done = new int[JOB_COUNT];
+            WorkerPool.IJob task = new WorkerPool.IJob() {
+                public void run(int index) {
+                    runs.incrementAndGet(index);
+                    done[index]++;
+                }
+            };
+
+            int expected = 0;
+            for (int batch = 1; batch <= BATCH_COUNT; batch++) {
+                int count = 1 + batch % JOB_COUNT;
+                pool.run(task, count);
+                expected += count;
+
+                // everything the jobs wrote is visible once run returns
+                for (int x = 0; x < JOB_COUNT; x++) {
+                    assertEquals(runs.get(x), done[x]);
+                }
+            }
+
+            int total = 0;
+            for (int x = 0; x < JOB_COUNT; x++) {
+                total += runs.get(x);
+            }
+            assertEquals(expected, total);
+            assertEquals(BATCH_COUNT, pool.getBatchCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void dependenciesRunFirst() {
+        WorkerPool pool = new WorkerPool(3, "test");
+        try {
+            final AtomicInteger clock = new AtomicInteger();
+            final int[] finished = new int[4];
+            WorkerPool.IJob task = new WorkerPool.IJob() {
+                public void run(int index) {
+                    finished[index] = clock.incrementAndGet();
+                }
+            };
+
+            // a diamond: 0 before 1 and 2, both of them before 3
+            for (int frame = 0; frame < BATCH_COUNT; frame++) {
+                Job first = pool.create("first", task, 0);
+                Job left = pool.create("left", task, 1);
+                Job right = pool.create("right", task, 2);
+                Job last = pool.create("last", task, 3);
+                left.dependsOn(first);
+                right.dependsOn(first);
+                last.dependsOn(left);
+                last.dependsOn(right);
+
+                // submitted backwards, so nothing could run in order by accident
+                pool.submit(last);
+                pool.submit(right);
+                pool.submit(left);
+                pool.submit(first);
+                pool.waitFor(last);
+
+                assertTrue(finished[0] < finished[1]);
+                assertTrue(finished[0] < finished[2]);
+                assertTrue(finished[1] < finished[3]);
+                assertTrue(finished[2] < finished[3]);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void poolThreadsStealFromTheSubmitter() {
+        WorkerPool pool = new WorkerPool(3, "test");
+        try {
+            final AtomicIntegerArray runs = new AtomicIntegerArray(64);
+            pool.run("busy", new WorkerPool.IJob() {
+                public void run(int index) {
+                    long until = System.nanoTime() + 500000;
+                    while (System.nanoTime() < until) {
+                        Thread.yield();
+                    }
+                    runs.incrementAndGet(index);
+                }
+            }, 64);
+
+            for (int x = 0; x < 64; x++) {
+                assertEquals(1, runs.get(x));
+            }
+            assertTrue(pool.getStealCount() > 0);
+            assertEquals(65, pool.getRunCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void failureSurfacesAfterTheBatch() {
+        WorkerPool pool = new WorkerPool(2, "test");
+        try {
+            final AtomicIntegerArray runs = new AtomicIntegerArray(4);
+            try {
+                pool.run(new WorkerPool.IJob() {
+                    public void run(int index) {
+                        runs.incrementAndGet(index);
+                        if (index == 1) {
+                            throw new IllegalStateException("job 1");
+                        }
+                    }
+                }, 4);
+                fail("the failure should have come back out of run");
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            for (int x = 0; x < 4; x++) {
+                assertEquals(1, runs.get(x));
+            }
+
+            // and the pool carries on
+            pool.run(new WorkerPool.IJob() {
+                public void run(int index) {
+                    runs.incrementAndGet(index);
+                }
+            }, 4);
+            assertEquals(2, runs.get(3));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void failurePassesOnToWhoeverWaits() {
+        WorkerPool pool = new WorkerPool(2, "test");
+        try {
+            final AtomicIntegerArray runs = new AtomicIntegerArray(2);
+            WorkerPool.IJob task = new WorkerPool.IJob() {
+                public void run(int index) {
+                    runs.incrementAndGet(index);
+                    if (index == 0) {
+                        throw new IllegalStateException("job 0");
+                    }
+                }
+            };
+            Job broken = pool.create("broken", task, 0);
+            Job after = pool.create("after", task, 1);
+            after.dependsOn(broken);
+            pool.submit(after);
+            pool.submit(broken);
+            try {
+                pool.waitFor(after);
+                fail("the failure should have come back out of waitFor");
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+
+            // the job after still ran, and the pool carries on
+            assertEquals(1, runs.get(1));
+            Job again = pool.create("again", task, 1);
+            pool.submit(again);
+            pool.waitFor(again);
+            assertEquals(2, runs.get(1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void jobsAreTimed() {
+        WorkerPool pool = new WorkerPool(1, "test");
+        try {
+            Job job = pool.create("sleep", new WorkerPool.IJob() {
+                public void run(int index) {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, 0);
+            assertEquals(0, job.getRunNanos());
+            pool.submit(job);
+            pool.waitFor(job);
+
+            assertEquals("sleep", job.getName());
+            assertTrue(job.getRunNanos() >= 4000000);
+            assertTrue(job.getQueuedNanos() >= 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void noThreadsRunsOnTheWaiter() {
+        WorkerPool pool = new WorkerPool(0, "test");
+        final Thread caller = Thread.currentThread();
+        final int[] runs = new int[1];
+        WorkerPool.IJob task = new WorkerPool.IJob() {
+            public void run(int index) {
+                assertSame(caller, Thread.currentThread());
+                runs[0]++;
+            }
+        };
+        Job first = pool.create("first", task, 0);
+        Job second = pool.create("second", task, 1);
+        second.dependsOn(first);
+        pool.submit(first);
+        pool.submit(second);
+        pool.waitFor(second);
+        assertEquals(2, runs[0]);
+
+        pool.run(task, 5);
+        assertEquals(7, runs[0]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void poolRunsOutOfJobsInFlight() {
+        WorkerPool pool = new WorkerPool(0, "test");
+        WorkerPool.IJob task = new WorkerPool.IJob() {
+            public void run(int index) {
+            }
+        };
+        for (int x = 0; x <= WorkerPool.POOL_SIZE; x++) {
+            pool.create("never submitted", task, x);
+        }
+    }
+}